@@ -0,0 +1,37 @@
+package edu.ntnu.stud.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so the allocation rate is reported next to the
+ * throughput of every benchmark.
+ *
+ * <p>It takes the same command line options as the normal JMH runner. For example
+ * "-p size=1000,100000 RegistryBenchmark" runs only the RegistryBenchmark for two sizes.
+ */
+public final class BenchmarkMain {
+
+  private BenchmarkMain() {
+  }
+
+  /**
+   * Main method for the benchmarks.
+   *
+   * @param args the JMH command line options
+   * @throws CommandLineOptionException if the options are not valid
+   * @throws RunnerException if a benchmark fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,123 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.ChangeBatch;
+import edu.ntnu.stud.model.RegistryChangeFeed;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.util.SplittableRandom;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of setting delays in a registry that publishes its changes with a RegistryChangeFeed,
+ * compared with a registry without a feed.
+ *
+ * <p>With the "stalled" subscriber, the subscriber never requests a batch, so its buffer is full
+ * after the first batches and every later batch is dropped for it. With the "draining" subscriber,
+ * every batch is requested and thrown away on the common pool. Neither should slow down the
+ * thread that sets the delays by more than the cost of collecting and offering the changes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ChangeFeedBenchmark {
+  private static final int PICKS = 1 << 12;
+
+  @Param({"100000"})
+  int size;
+
+  @Param({"none", "stalled", "draining"})
+  String subscriber;
+
+  private TrainDepartureRegistry registry;
+  private RegistryChangeFeed feed;
+  private int[] trainNumbers;
+  private int[] delays;
+  private int next;
+
+  /**
+   * A subscriber that requests one batch at a time, or none at all.
+   */
+  private static class NullSubscriber implements Flow.Subscriber<ChangeBatch> {
+    private final boolean draining;
+    private Flow.Subscription subscription;
+
+    NullSubscriber(boolean draining) {
+      this.draining = draining;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (draining) {
+        subscription.request(1);
+      }
+    }
+
+    @Override
+    public void onNext(ChangeBatch batch) {
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+
+  /**
+   * Fills the registry, opens the feed with the subscriber and picks the delays.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    registry = TimetableGenerator.generateRegistry(size, 42);
+    if (!subscriber.equals("none")) {
+      feed = RegistryChangeFeed.open(registry);
+      feed.subscribe(new NullSubscriber(subscriber.equals("draining")));
+    }
+    SplittableRandom random = new SplittableRandom(7);
+    trainNumbers = new int[PICKS];
+    delays = new int[PICKS];
+    for (int i = 0; i < PICKS; i++) {
+      trainNumbers[i] = 1 + random.nextInt(size);
+      delays[i] = random.nextInt(31);
+    }
+  }
+
+  /**
+   * Closes the feed.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (feed != null) {
+      feed.close();
+    }
+  }
+
+  /**
+   * Sets the delay of a departure.
+   */
+  @Benchmark
+  public Object setDelay() {
+    next = (next + 1) & (PICKS - 1);
+    return registry.setDelay(trainNumbers[next], 0, delays[next]);
+  }
+}
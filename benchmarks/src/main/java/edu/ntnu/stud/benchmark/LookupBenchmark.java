@@ -0,0 +1,114 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of looking up departures by train number, compared with the way it was done before the
+ * registry could read a departure directly from its map.
+ *
+ * <p>The old path is measured on a HashMap with the same departures, like the one the registry
+ * used to keep: it checks containsKey and then streams over every value to filter on the train
+ * number. Next to it are searchTrainDeparture, findTrainDeparture and a findTrainDepartures call
+ * for 50 trains, like a request from a display feed.
+ *
+ * <p>The train numbers are picked at random before the measurement, so picking them is not
+ * measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+  private static final int PICKS = 1 << 12;
+  private static final int BATCH_SIZE = 50;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  int size;
+
+  private TrainDepartureRegistry registry;
+  private HashMap<Integer, TrainDeparture> hashMap;
+  private int[] trainNumbers;
+  private int[][] batches;
+  private int next;
+
+  /**
+   * Fills the registry and the HashMap and picks the train numbers to look up.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    registry = TimetableGenerator.generateRegistry(size, 42);
+    registry.getMetrics().setEnabled(false);
+    hashMap = new HashMap<>();
+    for (TrainDeparture trainDeparture : registry.getTrainDepartureSorted()) {
+      hashMap.put(trainDeparture.getTrainNumber(), trainDeparture);
+    }
+    SplittableRandom random = new SplittableRandom(7);
+    trainNumbers = new int[PICKS];
+    batches = new int[PICKS][BATCH_SIZE];
+    for (int i = 0; i < PICKS; i++) {
+      trainNumbers[i] = 1 + random.nextInt(size);
+      for (int j = 0; j < BATCH_SIZE; j++) {
+        batches[i][j] = 1 + random.nextInt(size);
+      }
+    }
+  }
+
+  private int pick() {
+    next = (next + 1) & (PICKS - 1);
+    return next;
+  }
+
+  /**
+   * Looks up a departure the way searchTrainDeparture did before, by checking containsKey and
+   * filtering every value of the map.
+   */
+  @Benchmark
+  public List<TrainDeparture> searchTrainDepartureByStream() {
+    int trainNumber = trainNumbers[pick()];
+    if (!hashMap.containsKey(trainNumber)) {
+      throw new IllegalArgumentException("Train number does not exist");
+    }
+    return hashMap.values().stream()
+        .filter(trainDeparture -> trainDeparture.getTrainNumber() == trainNumber)
+        .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<TrainDeparture> searchTrainDeparture() {
+    return registry.searchTrainDeparture(trainNumbers[pick()]);
+  }
+
+  @Benchmark
+  public Optional<TrainDeparture> findTrainDeparture() {
+    return registry.findTrainDeparture(trainNumbers[pick()]);
+  }
+
+  /**
+   * Looks up 50 departures in one call.
+   */
+  @Benchmark
+  public TrainDeparture[] findTrainDepartures() {
+    return registry.findTrainDepartures(batches[pick()]);
+  }
+}
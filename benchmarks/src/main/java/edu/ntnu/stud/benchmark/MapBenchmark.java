@@ -0,0 +1,80 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of a lookup in the TrainDepartureMap compared with a HashMap from Integer to
+ * TrainDeparture, which the registry used before.
+ *
+ * <p>Both maps are filled with the same departures from the TimetableGenerator. The train numbers
+ * are picked at random before the measurement and are all in the maps. The memory the maps use
+ * is measured by MapFootprint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class MapBenchmark {
+  private static final int PICKS = 1 << 12;
+
+  @Param({"10000", "100000", "1000000"})
+  int size;
+
+  private TrainDepartureMap trainDepartureMap;
+  private HashMap<Integer, TrainDeparture> hashMap;
+  private int[] trainNumbers;
+  private int next;
+
+  /**
+   * Fills the maps and picks the train numbers to look up.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    List<TrainDeparture> trainDepartures = TimetableGenerator.generate(size, 42);
+    trainDepartureMap = new TrainDepartureMap();
+    hashMap = new HashMap<>();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      trainDepartureMap.put(trainDeparture.getTrainNumber(), trainDeparture);
+      hashMap.put(trainDeparture.getTrainNumber(), trainDeparture);
+    }
+    SplittableRandom random = new SplittableRandom(7);
+    trainNumbers = new int[PICKS];
+    for (int i = 0; i < PICKS; i++) {
+      trainNumbers[i] = 1 + random.nextInt(size);
+    }
+  }
+
+  private int pick() {
+    next = (next + 1) & (PICKS - 1);
+    return next;
+  }
+
+  @Benchmark
+  public TrainDeparture trainDepartureMapGet() {
+    return trainDepartureMap.get(trainNumbers[pick()]);
+  }
+
+  @Benchmark
+  public TrainDeparture hashMapGet() {
+    return hashMap.get(trainNumbers[pick()]);
+  }
+}
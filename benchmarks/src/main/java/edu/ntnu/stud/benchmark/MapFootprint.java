@@ -0,0 +1,57 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureMap;
+import java.util.HashMap;
+import java.util.List;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Measures the memory a TrainDepartureMap and a HashMap from Integer to TrainDeparture use for
+ * the same departures, with JOL.
+ *
+ * <p>JOL walks every object that can be reached from a map and the departures and adds up their
+ * sizes. The size of the departures alone, and everything they point to, is then subtracted, so
+ * only the arrays, entries and boxed train numbers of the map are counted. The size is printed in total and per
+ * departure. Both maps are filled one departure at a time, so they have grown the way they do in
+ * the registry, and the result depends on how far each map is from its next resize.
+ *
+ * <p>It is not a JMH benchmark, and is run with
+ * "java -Djdk.attach.allowAttachSelf=true -cp target/benchmarks.jar
+ * edu.ntnu.stud.benchmark.MapFootprint [sizes]", where the option lets JOL read the object sizes
+ * from the JVM. The default sizes are 10000, 100000 and 1000000.
+ */
+public final class MapFootprint {
+
+  private MapFootprint() {
+  }
+
+  /**
+   * Main method for the footprint measurement.
+   *
+   * @param args the numbers of departures to measure, or none for the default sizes
+   */
+  public static void main(String[] args) {
+    String[] sizes = args.length == 0 ? new String[] {"10000", "100000", "1000000"} : args;
+    System.out.printf("%10s %20s %20s%n", "n", "HashMap", "TrainDepartureMap");
+    for (String size : sizes) {
+      int n = Integer.parseInt(size);
+      List<TrainDeparture> trainDepartures = TimetableGenerator.generate(n, 42);
+      TrainDepartureMap trainDepartureMap = new TrainDepartureMap();
+      HashMap<Integer, TrainDeparture> hashMap = new HashMap<>();
+      for (TrainDeparture trainDeparture : trainDepartures) {
+        trainDepartureMap.put(trainDeparture.getTrainNumber(), trainDeparture);
+        hashMap.put(trainDeparture.getTrainNumber(), trainDeparture);
+      }
+      Object[] departures = trainDepartures.toArray();
+      long departureBytes = GraphLayout.parseInstance((Object) departures).totalSize();
+      long hashMapBytes =
+          GraphLayout.parseInstance(hashMap, departures).totalSize() - departureBytes;
+      long trainDepartureMapBytes =
+          GraphLayout.parseInstance(trainDepartureMap, departures).totalSize() - departureBytes;
+      System.out.printf("%10d %12d (%5.1f B) %12d (%5.1f B)%n", n,
+          hashMapBytes, (double) hashMapBytes / n,
+          trainDepartureMapBytes, (double) trainDepartureMapBytes / n);
+    }
+  }
+}
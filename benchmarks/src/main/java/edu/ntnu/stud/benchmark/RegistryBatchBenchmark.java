@@ -0,0 +1,126 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.DelayReport;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The TrainDepartureRegistry operations that change the size of the registry, adding departures
+ * and removing passed departures, and delaying all departures of a line at once.
+ *
+ * <p>Repeating these operations for a second would grow or empty the registry, so the result
+ * would not be for the size that is asked for. Instead each iteration gets a newly filled registry
+ * and runs a fixed batch of operations once, so the reported time is for the whole batch. The time
+ * to fill the registry is not measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class RegistryBatchBenchmark {
+  private static final int ADDS = 1000;
+  private static final int MINUTES = 60;
+  private static final DepartureQuery LINE_AFTER_TWO = new DepartureQuery()
+      .withLine(TimetableGenerator.lineName(0))
+      .withTimeWindow(LocalDate.EPOCH.atTime(14, 0), LocalDateTime.MAX);
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  int size;
+
+  private TrainDepartureRegistry registry;
+  private int[] hours;
+  private int[] minutes;
+  private String[] lines;
+  private String[] destinations;
+
+  /**
+   * Picks the departures that are added, the same for every iteration.
+   */
+  @Setup(Level.Trial)
+  public void pickDepartures() {
+    SplittableRandom random = new SplittableRandom(11);
+    hours = new int[ADDS];
+    minutes = new int[ADDS];
+    lines = new String[ADDS];
+    destinations = new String[ADDS];
+    for (int i = 0; i < ADDS; i++) {
+      hours[i] = 5 + random.nextInt(19);
+      minutes[i] = random.nextInt(60);
+      lines[i] = TimetableGenerator.lineName(random.nextInt(40));
+      destinations[i] = TimetableGenerator.DESTINATIONS.get(
+          random.nextInt(TimetableGenerator.DESTINATIONS.size()));
+    }
+  }
+
+  /**
+   * Fills a new registry before each iteration.
+   */
+  @Setup(Level.Iteration)
+  public void fillRegistry() {
+    registry = TimetableGenerator.generateRegistry(size, 42);
+  }
+
+  /**
+   * Adds 1000 new departures without a track to the registry, one at a time.
+   */
+  @Benchmark
+  public TrainDepartureRegistry addTrainDeparture() {
+    for (int i = 0; i < ADDS; i++) {
+      registry.addTrainDeparture(size + 1 + i, hours[i], minutes[i], lines[i], destinations[i]);
+    }
+    return registry;
+  }
+
+  /**
+   * Moves the time forward one minute at a time from 05:00 to 06:00, removing the passed
+   * departures each minute, like the registry of a running station.
+   */
+  @Benchmark
+  public TrainDepartureRegistry removePassedTrainDepartures() {
+    for (int i = 1; i <= MINUTES; i++) {
+      registry.removePassedTrainDepartures(LocalTime.of(5, 0).plusMinutes(i));
+    }
+    return registry;
+  }
+
+  /**
+   * Delays every departure of one line leaving after 14:00 by 20 minutes with one call, which is
+   * about one in 80 departures of the registry.
+   */
+  @Benchmark
+  public DelayReport setDelays() {
+    return registry.setDelays(LINE_AFTER_TWO, 0, 20);
+  }
+
+  /**
+   * Delays the same departures as setDelays one at a time, the way it had to be done before
+   * there was a call for it.
+   */
+  @Benchmark
+  public TrainDepartureRegistry setDelayOneAtATime() {
+    for (TrainDeparture trainDeparture : registry.searchTrainDepartures(LINE_AFTER_TWO)) {
+      registry.setDelay(trainDeparture.getServiceDate(), trainDeparture.getTrainNumber(), 0, 20);
+    }
+    return registry;
+  }
+}
@@ -0,0 +1,238 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.DepartureOrder;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the TrainDepartureRegistry operations that can be repeated on the same registry:
+ * lookups, sorting, the next departures, time windows, compound queries, assigning tracks and
+ * setting delays.
+ *
+ * <p>The registry is filled once for each size with a timetable from the TimetableGenerator. The
+ * train numbers, destinations, tracks and delays used by the operations are picked at random
+ * before the measurement, so picking them is not measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+  private static final int PICKS = 1 << 12;
+  private static final int NEXT_COUNT = 20;
+  private static final int WINDOW_MINUTES = 30;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  int size;
+
+  /**
+   * How many calls there are for each call that is timed in the metrics of the registry, or 0 to
+   * turn the timing off.
+   */
+  @Param({"16"})
+  int sampleRate;
+
+  private TrainDepartureRegistry registry;
+  private int[] trainNumbers;
+  private String[] destinations;
+  private int[] tracks;
+  private int[] delays;
+  private LocalDateTime[] times;
+  private String[] lines;
+  private int next;
+
+  /**
+   * Fills the registry and picks the arguments of the operations.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    registry = TimetableGenerator.generateRegistry(size, 42);
+    registry.getMetrics().setEnabled(sampleRate > 0);
+    registry.getMetrics().setSampleRate(Math.max(1, sampleRate));
+    SplittableRandom random = new SplittableRandom(7);
+    trainNumbers = new int[PICKS];
+    destinations = new String[PICKS];
+    tracks = new int[PICKS];
+    delays = new int[PICKS];
+    times = new LocalDateTime[PICKS];
+    lines = new String[PICKS];
+    for (int i = 0; i < PICKS; i++) {
+      trainNumbers[i] = 1 + random.nextInt(size);
+      destinations[i] = TimetableGenerator.DESTINATIONS.get(
+          random.nextInt(TimetableGenerator.DESTINATIONS.size()));
+      tracks[i] = 1 + random.nextInt(Math.max(1, size / 50));
+      delays[i] = random.nextInt(31);
+      times[i] = LocalDate.EPOCH.atTime(5 + random.nextInt(18),
+          random.nextInt(60));
+      lines[i] = TimetableGenerator.lineName(random.nextInt(TimetableGenerator.LINES));
+    }
+  }
+
+  private int pick() {
+    next = (next + 1) & (PICKS - 1);
+    return next;
+  }
+
+  @Benchmark
+  public List<TrainDeparture> searchTrainDeparture() {
+    return registry.searchTrainDeparture(trainNumbers[pick()]);
+  }
+
+  @Benchmark
+  public List<TrainDeparture> searchTrainDepartureDestination() {
+    return registry.searchTrainDepartureDestination(destinations[pick()]);
+  }
+
+  @Benchmark
+  public List<TrainDeparture> getTrainDepartureSorted() {
+    return registry.getTrainDepartureSorted();
+  }
+
+  @Benchmark
+  public List<TrainDeparture> getTrainDepartureSortedByNewDepartureTime() {
+    return registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+  }
+
+  /**
+   * Gets the next 20 departures after a random time of the day from the index.
+   */
+  @Benchmark
+  public List<TrainDeparture> getNextTrainDepartures() {
+    return registry.getNextTrainDepartures(times[pick()], NEXT_COUNT);
+  }
+
+  /**
+   * Gets the next 20 departures after a random time of the day the way it was done before there
+   * was a query for it, by reading the whole day sorted by new departure time.
+   */
+  @Benchmark
+  public List<TrainDeparture> getNextTrainDeparturesFromSortedDay() {
+    LocalDateTime from = times[pick()];
+    return registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).stream()
+        .filter(trainDeparture -> !trainDeparture.getNewDepartureDateTime().isBefore(from))
+        .limit(NEXT_COUNT).toList();
+  }
+
+  /**
+   * Gets the departures in a window of 30 minutes from a random time of the day from the index.
+   */
+  @Benchmark
+  public List<TrainDeparture> getTrainDeparturesBetween() {
+    LocalDateTime from = times[pick()];
+    return registry.getTrainDeparturesBetween(from, from.plusMinutes(WINDOW_MINUTES));
+  }
+
+  /**
+   * Gets the departures in a window of 30 minutes the way it was done before there was a query
+   * for it, by filtering the whole day sorted by new departure time.
+   */
+  @Benchmark
+  public List<TrainDeparture> getTrainDeparturesBetweenFromSortedDay() {
+    LocalDateTime from = times[pick()];
+    LocalDateTime to = from.plusMinutes(WINDOW_MINUTES);
+    return registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).stream()
+        .filter(trainDeparture -> !trainDeparture.getNewDepartureDateTime().isBefore(from)
+            && trainDeparture.getNewDepartureDateTime().isBefore(to))
+        .toList();
+  }
+
+  /**
+   * Gets the departures of a random line in a window of 30 minutes.
+   */
+  @Benchmark
+  public List<TrainDeparture> searchTrainDeparturesOnLineInWindow() {
+    int i = pick();
+    return registry.searchTrainDepartures(new DepartureQuery().withLine(lines[i])
+        .withTimeWindow(times[i], times[i].plusMinutes(WINDOW_MINUTES)));
+  }
+
+  /**
+   * Gets the departures from a random track in a window of 30 minutes.
+   */
+  @Benchmark
+  public List<TrainDeparture> searchTrainDeparturesOnTrackInWindow() {
+    int i = pick();
+    return registry.searchTrainDepartures(new DepartureQuery().withTrack(tracks[i])
+        .withTimeWindow(times[i], times[i].plusMinutes(WINDOW_MINUTES)));
+  }
+
+  /**
+   * Gets the first 10 departures without a track of a random line to a random destination in a
+   * window of two hours, which the registry reads from the smallest of its indexes.
+   */
+  @Benchmark
+  public List<TrainDeparture> searchTrainDeparturesCompound() {
+    return registry.searchTrainDepartures(compoundQuery(pick()));
+  }
+
+  /**
+   * Gets the same departures as searchTrainDeparturesCompound by filtering the whole day sorted
+   * by new departure time.
+   */
+  @Benchmark
+  public List<TrainDeparture> searchTrainDeparturesCompoundFromSortedDay() {
+    DepartureQuery query = compoundQuery(pick());
+    return registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).stream()
+        .filter(query::matches).limit(query.getLimit()).toList();
+  }
+
+  private DepartureQuery compoundQuery(int i) {
+    return new DepartureQuery().withLine(lines[i]).withDestination(destinations[i]).withTrack(-1)
+        .withTimeWindow(times[i], times[i].plusHours(2)).withLimit(10);
+  }
+
+  @Benchmark
+  public Optional<TrainDeparture> findNextTrainDepartureTo() {
+    return registry.findNextTrainDepartureTo(destinations[pick()]);
+  }
+
+  @Benchmark
+  public List<TrainDeparture> getNextTrainDeparturePerDestination() {
+    return registry.getNextTrainDeparturePerDestination();
+  }
+
+  /**
+   * Assigns a random track to a random departure. When the track is taken at that time, the
+   * registry throws an exception, which is part of what is measured.
+   */
+  @Benchmark
+  public boolean assignTrack() {
+    int i = pick();
+    try {
+      registry.assignTrack(trainNumbers[i], tracks[i]);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Sets a random delay of up to 30 minutes on a random departure.
+   */
+  @Benchmark
+  public List<TrainDeparture> setDelay() {
+    int i = pick();
+    return registry.setDelay(trainNumbers[i], 0, delays[i]);
+  }
+}
@@ -0,0 +1,161 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.view.DepartureBoardRenderer;
+import edu.ntnu.stud.view.IncrementalBoardRenderer;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of printing a departure table with the DepartureBoardRenderer, compared with
+ * formatting every row with String.format and printing it with println, the way the UI printed
+ * tables before.
+ *
+ * <p>The text is written to a stream that throws it away, behind a PrintStream that flushes on
+ * every line like System.out, so the cost of formatting and encoding is measured, but not the
+ * terminal. Writing to a real terminal adds the cost of one write for every flush.
+ *
+ * <p>The refresh benchmarks show the whole table on one page of an IncrementalBoardRenderer, like
+ * a display wall, and change the delay of one departure before every refresh, so only that row is
+ * formatted and written.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class RendererBenchmark {
+  private static final String FORMAT = "%-6s %-9s | %-6s | %-8s | %-13s | %-7s | %-5s";
+  private static final String ANSI_RESET = "\u001B[0m";
+  private static final String ANSI_CROSSED_OUT = "\u001B[9m";
+
+  @Param({"1000", "100000"})
+  int size;
+
+  private List<TrainDeparture> departures;
+  private LocalDate date;
+  private DepartureBoardRenderer renderer;
+  private IncrementalBoardRenderer board;
+  private PrintStream out;
+  private int changed;
+
+  /**
+   * Fills a registry, delays every tenth departure and reads the sorted table.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    List<TrainDeparture> trainDepartures = TimetableGenerator.generate(size, 42);
+    for (int i = 0; i < trainDepartures.size(); i += 10) {
+      trainDepartures.get(i).setDelay(0, 5 + i % 20);
+    }
+    departures = trainDepartures;
+    date = departures.get(0).getServiceDate();
+    renderer = new DepartureBoardRenderer(DepartureBoardRenderer.DEFAULT_PAGE_SIZE,
+        StandardCharsets.UTF_8);
+    out = new PrintStream(new BufferedOutputStream(OutputStream.nullOutputStream()), true,
+        StandardCharsets.UTF_8);
+    board = new IncrementalBoardRenderer(size, StandardCharsets.UTF_8);
+    board.beginScreen();
+    board.addPage(departures, 1, date);
+    board.writeChangesTo(out);
+  }
+
+  /**
+   * Prints the whole table with the renderer.
+   */
+  @Benchmark
+  public PrintStream renderTable() {
+    renderer.clear();
+    renderer.appendTop(departures, departures.size(), date);
+    renderer.writeTo(out);
+    return out;
+  }
+
+  /**
+   * Prints the first page of the table with the renderer, which is what the UI shows first.
+   */
+  @Benchmark
+  public PrintStream renderFirstPage() {
+    renderer.clear();
+    renderer.appendPage(departures, 1, date);
+    renderer.writeTo(out);
+    return out;
+  }
+
+  /**
+   * Changes the delay of one departure and refreshes the board on a terminal.
+   */
+  @Benchmark
+  public PrintStream refreshOneChange() {
+    nextChange();
+    board.beginScreen();
+    board.addPage(departures, 1, date);
+    board.writeChangesTo(out);
+    return out;
+  }
+
+  /**
+   * Changes the delay of one departure and writes the changes of the board as a diff.
+   */
+  @Benchmark
+  public PrintStream refreshOneChangeAsDiff() {
+    nextChange();
+    board.beginScreen();
+    board.addPage(departures, 1, date);
+    board.writeDiffTo(out);
+    return out;
+  }
+
+  /**
+   * Prints the whole table with String.format and one println for every row.
+   */
+  @Benchmark
+  public PrintStream formatTable() {
+    for (TrainDeparture trainDeparture : departures) {
+      out.println(format(trainDeparture));
+    }
+    return out;
+  }
+
+  private void nextChange() {
+    changed = (changed + 7919) % departures.size();
+    TrainDeparture trainDeparture = departures.get(changed);
+    trainDeparture.setDelay(0, (trainDeparture.getDelay().getMinute() + 1) % 30);
+  }
+
+  private static String format(TrainDeparture trainDeparture) {
+    String trainNumber = String.valueOf(trainDeparture.getTrainNumber());
+    String departureTime = String.valueOf(trainDeparture.getDepartureTime());
+    String newDepartureTime = "";
+    String track = "";
+    String delay = "";
+    if (trainDeparture.getTrack() != -1) {
+      track = String.valueOf(trainDeparture.getTrack());
+    }
+    if (trainDeparture.getDelay().getHour() != 0 || trainDeparture.getDelay().getMinute() != 0) {
+      delay = "+" + trainDeparture.getDelay();
+      newDepartureTime = String.valueOf(trainDeparture.getNewDepartureTime());
+      departureTime = ANSI_CROSSED_OUT + departureTime + ANSI_RESET + " ";
+    }
+    return String.format(FORMAT, departureTime, newDepartureTime, trainDeparture.getLine(),
+        trainNumber, trainDeparture.getDestination(), delay, track);
+  }
+}
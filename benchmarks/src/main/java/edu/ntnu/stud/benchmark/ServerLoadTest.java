@@ -0,0 +1,266 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.metrics.LatencyHistogram;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import edu.ntnu.stud.server.DepartureServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load test of the DepartureServer with many displays that poll the board at the same time,
+ * while the registry is changed a few times every second.
+ *
+ * <p>Every display has a connection of its own that is kept open, and polls /board with the ETag
+ * it got last, so most polls are answered with 304, and every change is fetched once by every
+ * display. The displays are run by one thread with a selector, so the test itself uses little of
+ * the processor that the server also runs on. After a warm-up of five seconds, in which every
+ * display connects and fetches the whole board once, the number of polls, the answers by status,
+ * the connections that were closed and the latencies are measured and printed at the end.
+ *
+ * <p>It is not a JMH benchmark, and is run with
+ * "java -cp target/benchmarks.jar edu.ntnu.stud.benchmark.ServerLoadTest [displays] [seconds]
+ * [poll interval in ms] [departures] [changes per second]". The defaults are 2000 displays for
+ * 20 seconds, polling every second, on a board of 500 departures with 2 changes every second.
+ */
+public final class ServerLoadTest {
+  private static final int WARMUP_SECONDS = 5;
+
+  private final int displays;
+  private final int seconds;
+  private final long pollNanos;
+  private final TrainDepartureRegistry registry;
+  private final int changesPerSecond;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final Map<Integer, Integer> statuses = new TreeMap<>();
+  private long bytes;
+  private int closed;
+
+  /**
+   * The state of one display: its connection, the ETag it got last and the answer it is reading.
+   */
+  private static class Display {
+    private final SocketChannel channel;
+    private final ByteBuffer headers = ByteBuffer.allocate(1024);
+    private String etag = "";
+    private long due;
+    private long sent;
+    private long bodyLeft = -1;
+    private int status;
+
+    Display(SocketChannel channel) {
+      this.channel = channel;
+    }
+  }
+
+  private ServerLoadTest(int displays, int seconds, int pollMillis, int size,
+      int changesPerSecond) {
+    this.displays = displays;
+    this.seconds = seconds;
+    this.pollNanos = TimeUnit.MILLISECONDS.toNanos(pollMillis);
+    this.registry = TimetableGenerator.generateRegistry(size, 42);
+    this.changesPerSecond = changesPerSecond;
+  }
+
+  /**
+   * Main method for the load test.
+   *
+   * @param args the number of displays, the number of seconds, the poll interval in
+   *             milliseconds, the number of departures and the number of changes every second
+   * @throws IOException if the server cannot be started or a display cannot connect
+   */
+  public static void main(String[] args) throws IOException {
+    int displays = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    int pollMillis = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+    int size = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+    int changesPerSecond = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+    new ServerLoadTest(displays, seconds, pollMillis, size, changesPerSecond).run();
+  }
+
+  private void run() throws IOException {
+    DepartureServer server = DepartureServer.start(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    InetSocketAddress address =
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    System.out.println(displays + " displays polling every " + pollNanos / 1_000_000 + " ms for "
+        + seconds + " s, " + changesPerSecond + " changes every second, virtual threads: "
+        + server.usesVirtualThreads());
+
+    Selector selector = Selector.open();
+    ArrayDeque<Display> waiting = new ArrayDeque<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < displays; i++) {
+      SocketChannel channel = SocketChannel.open(address);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      channel.configureBlocking(false);
+      Display display = new Display(channel);
+      display.due = start + pollNanos * i / displays;
+      channel.register(selector, 0, display);
+      waiting.add(display);
+    }
+
+    ScheduledExecutorService changer = Executors.newSingleThreadScheduledExecutor();
+    if (changesPerSecond > 0) {
+      List<TrainDeparture> departures = registry.getTrainDepartureSorted();
+      SplittableRandom random = new SplittableRandom(7);
+      changer.scheduleAtFixedRate(() -> {
+        TrainDeparture trainDeparture = departures.get(random.nextInt(departures.size()));
+        registry.setDelay(trainDeparture.getServiceDate(), trainDeparture.getTrainNumber(), 0,
+            random.nextInt(30));
+      }, 0, 1_000_000 / changesPerSecond, TimeUnit.MICROSECONDS);
+    }
+
+    long measured = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+    long end = measured + TimeUnit.SECONDS.toNanos(seconds);
+    ByteBuffer body = ByteBuffer.allocate(64 * 1024);
+    long now = System.nanoTime();
+    boolean warmingUp = true;
+    while (now < end) {
+      if (warmingUp && now >= measured) {
+        warmingUp = false;
+        latencies.reset();
+        statuses.clear();
+        bytes = 0;
+        start = now;
+      }
+      while (!waiting.isEmpty() && waiting.peek().due <= now) {
+        send(waiting.poll(), selector, now);
+      }
+      long wait = waiting.isEmpty() ? pollNanos : waiting.peek().due - now;
+      selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+      now = System.nanoTime();
+      for (SelectionKey key : selector.selectedKeys()) {
+        Display display = (Display) key.attachment();
+        if (read(display, body, now)) {
+          key.interestOps(0);
+          display.due = now + pollNanos;
+          waiting.add(display);
+        } else if (!display.channel.isOpen()) {
+          key.cancel();
+          closed++;
+        }
+      }
+      selector.selectedKeys().clear();
+    }
+    long elapsed = now - start;
+    changer.shutdownNow();
+    selector.close();
+    server.close();
+
+    long polls = latencies.getCount();
+    System.out.printf("polls: %d (%.0f/s), answers by status: %s, closed: %d, %.1f MB read%n",
+        polls, polls * 1e9 / elapsed, statuses, closed, bytes / 1e6);
+    System.out.printf("latency ms: p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+        latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6,
+        latencies.getValueAtPercentile(99.9) / 1e6, latencies.getMax() / 1e6);
+  }
+
+  private void send(Display display, Selector selector, long now) throws IOException {
+    if (!display.channel.isOpen()) {
+      return;
+    }
+    ByteBuffer request = ByteBuffer.wrap(("GET /board HTTP/1.1\r\nHost: localhost\r\n"
+        + "If-None-Match: " + display.etag + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    display.sent = now;
+    display.headers.clear();
+    display.bodyLeft = -1;
+    try {
+      display.channel.write(request);
+      display.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+    } catch (IOException e) {
+      display.channel.close();
+      closed++;
+    }
+  }
+
+  /**
+   * Reads what has arrived of the answer of a display.
+   *
+   * @return true if the whole answer has been read
+   */
+  private boolean read(Display display, ByteBuffer body, long now) throws IOException {
+    try {
+      while (true) {
+        int count;
+        if (display.bodyLeft < 0) {
+          count = display.channel.read(display.headers);
+          if (count > 0 && !parseHeaders(display)) {
+            continue;
+          }
+        } else if (display.bodyLeft > 0) {
+          body.clear();
+          body.limit((int) Math.min(body.capacity(), display.bodyLeft));
+          count = display.channel.read(body);
+          if (count > 0) {
+            display.bodyLeft -= count;
+            bytes += count;
+          }
+        } else {
+          latencies.record(now - display.sent);
+          statuses.merge(display.status, 1, Integer::sum);
+          return true;
+        }
+        if (count < 0) {
+          display.channel.close();
+          return false;
+        }
+        if (count == 0) {
+          return false;
+        }
+      }
+    } catch (IOException e) {
+      display.channel.close();
+      return false;
+    }
+  }
+
+  /**
+   * Parses the headers of an answer if all of them have been read, and moves the part of the
+   * body that was read with them out of the header buffer.
+   *
+   * @return true if the headers were complete
+   */
+  private boolean parseHeaders(Display display) {
+    ByteBuffer headers = display.headers;
+    String text = new String(headers.array(), 0, headers.position(), StandardCharsets.US_ASCII);
+    int end = text.indexOf("\r\n\r\n");
+    if (end < 0) {
+      return false;
+    }
+    display.status = Integer.parseInt(text.substring(9, 12));
+    long length = 0;
+    for (String line : text.substring(0, end).split("\r\n")) {
+      int colon = line.indexOf(':');
+      if (colon < 0) {
+        continue;
+      }
+      String name = line.substring(0, colon).trim();
+      String value = line.substring(colon + 1).trim();
+      if (name.equalsIgnoreCase("Content-length")) {
+        length = Long.parseLong(value);
+      } else if (name.equalsIgnoreCase("ETag")) {
+        display.etag = value;
+      }
+    }
+    int alreadyRead = headers.position() - end - 4;
+    bytes += headers.position();
+    display.bodyLeft = length - alreadyRead;
+    return true;
+  }
+}
@@ -0,0 +1,196 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Generates timetables for the benchmarks that look like the timetable of a large station.
+ *
+ * <p>The departures are spread over the day from 05:00, with more departures in the morning and
+ * afternoon rush hours. Each line goes to a few destinations. Some departures are delayed, and
+ * most have a track, chosen so no two departures occupy the same track at the same time, so every
+ * generated departure can be added to a registry. All departures run on the service date
+ * 1970-01-01, the date the clock of a generated registry stands still at. The same size and seed
+ * always give the same timetable.
+ */
+public final class TimetableGenerator {
+  /**
+   * The destinations used in the generated timetables.
+   */
+  public static final List<String> DESTINATIONS = List.of(
+      "Oslo S", "Trondheim S", "Bergen", "Stavanger", "Bodø", "Mosjøen", "Lillehammer",
+      "Hamar", "Gjøvik", "Drammen", "Kongsberg", "Skien", "Larvik", "Kristiansand",
+      "Arendal", "Egersund", "Haugesund", "Voss", "Myrdal", "Flåm", "Ål", "Gol", "Hønefoss",
+      "Jessheim", "Lillestrøm", "Ski", "Moss", "Fredrikstad", "Sarpsborg", "Halden",
+      "Kongsvinger", "Elverum", "Røros", "Støren", "Steinkjer", "Levanger", "Stjørdal",
+      "Åndalsnes", "Dombås", "Otta", "Mo i Rana", "Fauske", "Narvik", "Asker", "Sandvika",
+      "Spikkestad", "Eidsvoll", "Årnes", "Mysen", "Rakkestad", "Tønsberg", "Sandefjord",
+      "Porsgrunn", "Notodden", "Nelaug", "Grong", "Snåsa", "Mosjøen sentrum", "Hell",
+      "Oppdal");
+
+  /**
+   * The number of lines in the generated timetables, see lineName.
+   */
+  public static final int LINES = 40;
+
+  private static final LocalDate SERVICE_DATE = LocalDate.EPOCH;
+  private static final int DESTINATIONS_PER_LINE = 3;
+  private static final int[] DEPARTURES_PER_HOUR = {
+      0, 0, 0, 0, 0, 2, 5, 9, 9, 6, 4, 4, 4, 4, 5, 8, 9, 8, 5, 4, 3, 3, 2, 1};
+
+  private TimetableGenerator() {
+  }
+
+  /**
+   * Generates a timetable with new TrainDeparture objects.
+   *
+   * @param size the number of departures
+   * @param seed the seed of the random numbers
+   * @return the departures, in random order
+   */
+  public static List<TrainDeparture> generate(int size, long seed) {
+    return generate(size, seed, true);
+  }
+
+  /**
+   * Generates a timetable with new TrainDeparture objects, where the departures can be left
+   * without tracks, for example to give them tracks with a TrackAllocator.
+   *
+   * @param size the number of departures
+   * @param seed the seed of the random numbers
+   * @param withTracks true to give most departures a track, false to give none a track
+   * @return the departures, in random order
+   */
+  public static List<TrainDeparture> generate(int size, long seed, boolean withTracks) {
+    SplittableRandom random = new SplittableRandom(seed);
+    int[] trainNumbers = new int[size];
+    for (int i = 0; i < size; i++) {
+      trainNumbers[i] = i + 1;
+    }
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = trainNumbers[i];
+      trainNumbers[i] = trainNumbers[j];
+      trainNumbers[j] = swap;
+    }
+
+    int totalWeight = 0;
+    for (int weight : DEPARTURES_PER_HOUR) {
+      totalWeight += weight;
+    }
+    List<TrainDeparture> trainDepartures = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      int hour = pickHour(random.nextInt(totalWeight));
+      int minute = random.nextInt(60);
+      int line = random.nextInt(LINES);
+      String destination = DESTINATIONS.get(
+          (line * DESTINATIONS_PER_LINE + random.nextInt(DESTINATIONS_PER_LINE))
+              % DESTINATIONS.size());
+      TrainDeparture trainDeparture = new TrainDeparture(trainNumbers[i], SERVICE_DATE, hour,
+          minute, lineName(line), destination, LocalDateTime.MIN);
+      if (random.nextInt(10) == 0) {
+        int delay = Math.min(1 + random.nextInt(30), 23 * 60 + 59 - (hour * 60 + minute));
+        if (delay > 0) {
+          trainDeparture.setDelay(delay / 60, delay % 60);
+        }
+      }
+      trainDepartures.add(trainDeparture);
+    }
+    if (withTracks) {
+      assignTracks(trainDepartures, random);
+    }
+    return trainDepartures;
+  }
+
+  /**
+   * Creates a registry with the default dwell time and fills it with a generated timetable. The
+   * clock of the registry stays at midnight, so no departure is in the past.
+   *
+   * @param size the number of departures
+   * @param seed the seed of the random numbers
+   * @return the filled registry
+   */
+  public static TrainDepartureRegistry generateRegistry(int size, long seed) {
+    return generateRegistry(size, seed, true);
+  }
+
+  /**
+   * Creates a registry like generateRegistry, where the departures can be left without tracks.
+   *
+   * @param size the number of departures
+   * @param seed the seed of the random numbers
+   * @param withTracks true to give most departures a track, false to give none a track
+   * @return the filled registry
+   */
+  public static TrainDepartureRegistry generateRegistry(int size, long seed,
+      boolean withTracks) {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+    List<TrainDeparture> trainDepartures = generate(size, seed, withTracks);
+    if (!registry.addTrainDepartures(trainDepartures).isEmpty()) {
+      throw new IllegalStateException("The generated timetable has departures that conflict");
+    }
+    return registry;
+  }
+
+  /**
+   * Gets the name of a line, like the names of the lines around Oslo.
+   *
+   * @param line the number of the line
+   * @return the name of the line
+   */
+  public static String lineName(int line) {
+    return (line % 4 == 0 ? "F" : line % 4 == 1 ? "R" : line % 4 == 2 ? "L" : "RE") + (line + 1);
+  }
+
+  private static int pickHour(int weight) {
+    int hour = 0;
+    while (weight >= DEPARTURES_PER_HOUR[hour]) {
+      weight -= DEPARTURES_PER_HOUR[hour];
+      hour++;
+    }
+    return hour;
+  }
+
+  /**
+   * Gives most departures a track. The departures are handled in order of new departure time, and
+   * each gets the track that has been free the longest, or a new track if no track is free for the
+   * whole dwell time before it leaves.
+   */
+  private static void assignTracks(List<TrainDeparture> trainDepartures,
+      SplittableRandom random) {
+    int dwellMinutes = (int) TrainDepartureRegistry.DEFAULT_DWELL_TIME.toMinutes();
+    List<TrainDeparture> sorted = new ArrayList<>(trainDepartures);
+    sorted.sort(Comparator.comparing(TrainDeparture::getNewDepartureTime));
+    PriorityQueue<int[]> freeTracks = new PriorityQueue<>(Comparator.comparingInt(
+        (int[] track) -> track[0]));
+    int tracks = 0;
+    for (TrainDeparture trainDeparture : sorted) {
+      if (random.nextInt(5) == 0) {
+        continue;
+      }
+      LocalTime time = trainDeparture.getNewDepartureTime();
+      int end = time.getHour() * 60 + time.getMinute();
+      int[] track = freeTracks.peek();
+      if (track != null && track[0] <= end - dwellMinutes) {
+        freeTracks.poll();
+      } else {
+        track = new int[] {0, ++tracks};
+      }
+      track[0] = end;
+      trainDeparture.setTrack(track[1]);
+      freeTracks.add(track);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package edu.ntnu.stud.benchmark;
+
+import edu.ntnu.stud.model.AllocationReport;
+import edu.ntnu.stud.model.TrackAllocator;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Giving tracks to the departures of a day with a TrackAllocator, and moving the departures that
+ * a delay puts in conflict.
+ *
+ * <p>Like in the RegistryBatchBenchmark, every iteration gets a newly filled registry and runs
+ * the operation once, since the tracks can only be given once. The time to fill the registry is
+ * not measured. The station has more tracks than the busiest minute of the day needs, so every
+ * departure gets a track, and the lines that end in 1 prefer the first ten tracks.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class TrackAllocatorBenchmark {
+  private static final int DELAYS = 1000;
+
+  @Param({"10000", "50000"})
+  int size;
+
+  private TrainDepartureRegistry withoutTracks;
+  private TrainDepartureRegistry withTracks;
+  private TrainDepartureRegistry allocated;
+  private TrackAllocator allocator;
+  private List<TrainDeparture> delayed;
+  private int[] delays;
+
+  /**
+   * Sets up the allocator and picks the delays, the same for every iteration.
+   */
+  @Setup(Level.Trial)
+  public void pickDelays() {
+    allocator = new TrackAllocator(size / 10);
+    for (int line = 0; line < TimetableGenerator.LINES; line += 10) {
+      allocator = allocator.withPreferredTracks(TimetableGenerator.lineName(line),
+          1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+    }
+    SplittableRandom random = new SplittableRandom(5);
+    delays = new int[DELAYS];
+    for (int i = 0; i < DELAYS; i++) {
+      delays[i] = random.nextInt(60);
+    }
+  }
+
+  /**
+   * Fills new registries before each iteration, one where no departure has a track, one where
+   * most departures have a track and one where every departure got its track from the allocator.
+   */
+  @Setup(Level.Iteration)
+  public void fillRegistries() {
+    withoutTracks = TimetableGenerator.generateRegistry(size, 42, false);
+    withTracks = TimetableGenerator.generateRegistry(size, 42);
+    allocated = TimetableGenerator.generateRegistry(size, 42, false);
+    allocated.allocateTracks(allocator);
+    List<TrainDeparture> sorted = allocated.getTrainDepartureSorted();
+    SplittableRandom random = new SplittableRandom(7);
+    delayed = random.ints(DELAYS, 0, sorted.size()).mapToObj(sorted::get).toList();
+  }
+
+  /**
+   * Gives every departure of the day a track.
+   */
+  @Benchmark
+  public AllocationReport allocateAllTracks() {
+    return withoutTracks.allocateTracks(allocator);
+  }
+
+  /**
+   * Gives a track to the one in five departures that has none, around the tracks of the others.
+   */
+  @Benchmark
+  public AllocationReport allocateRemainingTracks() {
+    return withTracks.allocateTracks(allocator);
+  }
+
+  /**
+   * Delays 1000 departures with allocated tracks one at a time, moving the departures that are
+   * put in conflict to a free track.
+   */
+  @Benchmark
+  public TrainDepartureRegistry setDelayAndReplan() {
+    for (int i = 0; i < DELAYS; i++) {
+      TrainDeparture trainDeparture = delayed.get(i);
+      allocated.setDelay(trainDeparture.getServiceDate(), trainDeparture.getTrainNumber(), 0,
+          delays[i]);
+    }
+    return allocated;
+  }
+}
@@ -1,20 +1,140 @@
 package edu.ntnu.stud;
 
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import edu.ntnu.stud.server.DepartureServer;
+import edu.ntnu.stud.view.BatchCommandRunner;
 import edu.ntnu.stud.view.TrainDispatchUi;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This is the main class for the train dispatch application. Used to start the application.
  */
 public class TrainDispatchApp {
+  private static final String HTTP_OPTION = "--http=";
+  private static final String BATCH_OPTION = "--batch=";
+  private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
   /**
    * Main method for the application.
    * Creates a new TrainDispatchUi object and calls the init and start methods.
    *
+   * <p>If a file is given as the first command line argument, the departures are loaded from
+   * that journal directory, snapshot or timetable file instead of using the default departures.
+   * If a second file is given, the departures are saved to it as a snapshot when the application
+   * exits.
+   *
+   * <p>With the option --http=[port], a DepartureServer answers queries about the departures on
+   * the given port while the application runs, and its metrics are registered with JMX next to
+   * the metrics of the registry.
+   *
+   * <p>With the option --batch=[file], the commands in the file are run by a BatchCommandRunner
+   * instead of starting the menu, and the results are written to standard output. With
+   * --batch=- the commands are read from standard input. A summary with the number of commands
+   * every second is written to standard error at the end. In batch mode, the registry starts
+   * empty unless a file to load the departures from is given.
+   *
    * @param args the command line arguments
    */
   public static void main(String[] args) {
+    List<String> files = new ArrayList<>();
+    int httpPort = -1;
+    String batch = null;
+    for (String arg : args) {
+      if (arg.startsWith(HTTP_OPTION)) {
+        try {
+          httpPort = Integer.parseInt(arg.substring(HTTP_OPTION.length()));
+        } catch (NumberFormatException e) {
+          System.out.println("The port must be a number: " + arg);
+          return;
+        }
+      } else if (arg.startsWith(BATCH_OPTION)) {
+        batch = arg.substring(BATCH_OPTION.length());
+      } else {
+        files.add(arg);
+      }
+    }
     TrainDispatchUi ui = new TrainDispatchUi();
-    ui.init();
-    ui.start();
+    TrainDepartureRegistry registry;
+    if (!files.isEmpty()) {
+      try {
+        ui.init(Path.of(files.get(0)));
+      } catch (IOException e) {
+        System.out.println("Could not import the timetable: " + e.getMessage());
+        return;
+      }
+      registry = ui.getRegistry();
+    } else if (batch == null) {
+      ui.init();
+      registry = ui.getRegistry();
+    } else {
+      registry = new TrainDepartureRegistry(new SimulatedClock(LocalDate.now().atStartOfDay()));
+    }
+    if (files.size() > 1) {
+      ui.setSnapshotFile(Path.of(files.get(1)));
+    }
+    DepartureServer server = null;
+    if (httpPort >= 0) {
+      try {
+        server = DepartureServer.start(registry, new InetSocketAddress(httpPort));
+        System.out.println("Answering queries on http://localhost:" + server.getPort() + "/board");
+      } catch (IOException | IllegalArgumentException e) {
+        System.out.println("Could not start the HTTP server: " + e.getMessage());
+      }
+    }
+    if (server != null) {
+      try {
+        server.getMetrics().register("dispatcher");
+      } catch (IllegalStateException e) {
+        System.out.println("Could not register the metrics: " + e.getMessage());
+      }
+    }
+    if (batch == null) {
+      ui.start();
+    } else {
+      runBatch(registry, batch);
+      if (ui.getRegistry() != null) {
+        ui.stop();
+      }
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  /**
+   * Runs the commands in the given file, or on standard input if the file is "-", and writes
+   * the summary to standard error.
+   *
+   * @param registry the registry to run the commands for
+   * @param file the file with the commands, or "-" for standard input
+   */
+  private static void runBatch(TrainDepartureRegistry registry, String file) {
+    BatchCommandRunner runner = new BatchCommandRunner(registry);
+    Writer out = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), BATCH_BUFFER_SIZE);
+    try (BufferedReader in = file.equals("-")
+        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+            BATCH_BUFFER_SIZE)
+        : Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+      runner.run(in, out);
+    } catch (IOException e) {
+      System.err.println("Could not run the commands: " + e.getMessage());
+    }
+    System.err.println(runner.getSummary());
   }
 }
@@ -0,0 +1,29 @@
+package edu.ntnu.stud.io;
+
+/**
+ * How often a RegistryJournal forces the changes it has written to the disk.
+ *
+ * <p>Forcing a file to the disk is slow compared to changing the registry, so the policy decides
+ * how many changes can be lost when the computer stops against how many changes can be made each
+ * second.
+ */
+public enum FsyncPolicy {
+  /**
+   * Every change is forced to the disk before the method that made it returns. Changes made by
+   * different threads at the same time are forced together (group commit), so the threads share
+   * the time it takes.
+   */
+  ALWAYS,
+
+  /**
+   * Changes are written and forced to the disk by a background thread at a fixed interval. The
+   * changes of the last interval can be lost if the computer stops.
+   */
+  BATCH,
+
+  /**
+   * Changes are written to the file by a background thread, but never forced to the disk. The
+   * changes survive the application stopping, but not the computer stopping.
+   */
+  NEVER
+}
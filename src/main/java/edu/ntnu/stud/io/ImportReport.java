@@ -0,0 +1,110 @@
+package edu.ntnu.stud.io;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of importing a timetable with the TimetableImporter.
+ *
+ * <p>It stores how many rows were read, how many departures were added to the registry and an
+ * error for every row that could not be imported.
+ */
+public class ImportReport {
+  private final int rowCount;
+  private final int importedCount;
+  private final int skippedCount;
+  private final List<RowError> errors;
+
+  /**
+   * Constructs an ImportReport object.
+   *
+   * @param rowCount the number of rows read, not counting the header
+   * @param importedCount the number of departures added to the registry
+   * @param skippedCount the number of rows skipped because they were for another stop
+   * @param errors the errors of the rows that could not be imported
+   */
+  ImportReport(int rowCount, int importedCount, int skippedCount, List<RowError> errors) {
+    this.rowCount = rowCount;
+    this.importedCount = importedCount;
+    this.skippedCount = skippedCount;
+    this.errors = Collections.unmodifiableList(errors);
+  }
+
+  /**
+   * Gets the number of rows read, not counting the header and empty lines.
+   *
+   * @return number of rows
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Gets the number of departures added to the registry.
+   *
+   * @return number of imported departures
+   */
+  public int getImportedCount() {
+    return importedCount;
+  }
+
+  /**
+   * Gets the number of rows skipped because they were for another stop than the one imported.
+   *
+   * @return number of skipped rows
+   */
+  public int getSkippedCount() {
+    return skippedCount;
+  }
+
+  /**
+   * Gets the errors of the rows that could not be imported, sorted by line number.
+   *
+   * @return an unmodifiable list of errors
+   */
+  public List<RowError> getErrors() {
+    return errors;
+  }
+
+  /**
+   * The reason one row of the timetable could not be imported.
+   */
+  public static class RowError {
+    private final long lineNumber;
+    private final String message;
+
+    /**
+     * Constructs a RowError object.
+     *
+     * @param lineNumber the line number of the row in the file, starting at 1 for the header
+     * @param message the reason the row could not be imported
+     */
+    RowError(long lineNumber, String message) {
+      this.lineNumber = lineNumber;
+      this.message = message;
+    }
+
+    /**
+     * Gets the line number of the row in the file, starting at 1 for the header.
+     *
+     * @return line number
+     */
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    /**
+     * Gets the reason the row could not be imported.
+     *
+     * @return message
+     */
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      return "Line " + lineNumber + ": " + message;
+    }
+  }
+}
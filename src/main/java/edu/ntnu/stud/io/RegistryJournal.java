@@ -0,0 +1,787 @@
+package edu.ntnu.stud.io;
+
+import edu.ntnu.stud.model.RegistryListener;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A journal that writes every change made to a TrainDepartureRegistry to files, so the changes
+ * are not lost if the application stops.
+ *
+ * <p>The journal is a RegistryListener. Every added departure, assigned track, set delay and
+ * removal of passed departures is written as a small binary record at the end of the current
+ * journal segment, together with the version of the registry after the change. A track chosen by
+ * a TrackAllocator has a record type of its own, so it is still moved by a later delay after the
+ * registry has been recovered. Each record ends
+ * with a CRC32 checksum, so a record that was only partly written when the application stopped is
+ * found and ignored. When the journal is told the current time, like when the time of the
+ * TimeManager is updated, that date and time is written as well, so it can be restored.
+ *
+ * <p>The records store the service date of the departures they change. Segments of format
+ * version 1, written before departures had a service date, can still be replayed, and their
+ * changes are made on the current date of the registry.
+ *
+ * <p>The records are collected in memory and written to the file in groups. The FsyncPolicy
+ * decides when the file is forced to the disk. With ALWAYS, the thread that made a change waits
+ * until the change is on the disk, but all changes made while another thread was forcing the file
+ * are forced together, so many threads can make changes without each paying for its own force.
+ *
+ * <p>The journal lives in one directory, with snapshots named snapshot-N.bin and journal
+ * segments named journal-N.log. When the current segment gets large, the journal is compacted in
+ * the background: a new segment is started, a snapshot of the registry is written with
+ * RegistrySnapshot, and the older snapshots and segments are deleted. When the journal is opened,
+ * the newest snapshot is loaded and the records that are newer than the snapshot are replayed, and
+ * then the journal is compacted, so the recovered registry starts with a fresh snapshot.
+ *
+ * <p>If the journal cannot be written, it stops writing and keeps the first error, which can be
+ * read with getFailure. The changes to the registry have already been made when the journal is
+ * told about them, so they are not stopped. sync and close throw the error instead.
+ */
+public class RegistryJournal implements RegistryListener, Closeable {
+  /**
+   * How often the changes are written to the file when no interval is given, for the BATCH and
+   * NEVER policies.
+   */
+  public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(10);
+
+  /**
+   * The size a segment can grow to before the journal is compacted, when no size is set.
+   */
+  public static final long DEFAULT_COMPACTION_SIZE = 64L * 1024 * 1024;
+
+  private static final int MAGIC = 0x5444524A;
+  private static final int FORMAT_VERSION = 2;
+  private static final int UNDATED_FORMAT_VERSION = 1;
+  private static final int SEGMENT_HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 9;
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+  private static final int FLUSH_SIZE = 1 << 20;
+  private static final byte ADD = 1;
+  private static final byte TRACK = 2;
+  private static final byte DELAY = 3;
+  private static final byte TIME = 4;
+  private static final byte ALLOCATE = 5;
+  private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.bin");
+  private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.log");
+
+  private final Path directory;
+  private final TrainDepartureRegistry registry;
+  private final FsyncPolicy policy;
+  private final Object appendLock;
+  private final ReentrantLock flushLock;
+  private final ReentrantLock compactLock;
+  private final CRC32 checksum;
+  private final ThreadLocal<long[]> lastAppended;
+  private final AtomicBoolean flushScheduled;
+  private final AtomicBoolean compactionScheduled;
+  private ScheduledExecutorService flusher;
+  private ExecutorService compactor;
+
+  private ByteBuffer pending;
+  private long appendedCount;
+  private LocalDateTime lastTime;
+
+  private ByteBuffer writing;
+  private FileChannel segment;
+  private long generation;
+  private volatile long segmentSize;
+  private volatile long syncedCount;
+
+  private volatile long compactionSize;
+  private volatile IOException failure;
+  private volatile boolean closed;
+  private int replayedCount;
+  private int skippedCount;
+  private LocalDateTime recoveredTime;
+
+  private RegistryJournal(Path directory, TrainDepartureRegistry registry, FsyncPolicy policy) {
+    this.directory = directory;
+    this.registry = registry;
+    this.policy = policy;
+    this.appendLock = new Object();
+    this.flushLock = new ReentrantLock();
+    this.compactLock = new ReentrantLock();
+    this.checksum = new CRC32();
+    this.lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+    this.flushScheduled = new AtomicBoolean();
+    this.compactionScheduled = new AtomicBoolean();
+    this.pending = ByteBuffer.allocate(64 * 1024);
+    this.writing = ByteBuffer.allocate(64 * 1024);
+    this.compactionSize = DEFAULT_COMPACTION_SIZE;
+  }
+
+  /**
+   * Opens the journal in the given directory with the default sync interval. See the other open
+   * method.
+   *
+   * @param directory the directory of the journal, created if it does not exist
+   * @param registry the registry to recover into and to write the changes of
+   * @param policy when the changes are forced to the disk
+   * @return the opened journal
+   * @throws IOException if the journal cannot be read or written
+   * @throws IllegalArgumentException if an argument is null
+   */
+  public static RegistryJournal open(Path directory, TrainDepartureRegistry registry,
+      FsyncPolicy policy) throws IOException, IllegalArgumentException {
+    return open(directory, registry, policy, DEFAULT_SYNC_INTERVAL);
+  }
+
+  /**
+   * Opens the journal in the given directory. The departures of the newest snapshot are added to
+   * the registry, and the changes in the journal that are newer than the snapshot are made again.
+   * The registry should be empty, and no other thread should change it until the journal is open.
+   * Then the journal is compacted and starts writing the changes made to the registry.
+   *
+   * @param directory the directory of the journal, created if it does not exist
+   * @param registry the registry to recover into and to write the changes of
+   * @param policy when the changes are forced to the disk
+   * @param syncInterval how often the changes are written for the BATCH and NEVER policies
+   * @return the opened journal
+   * @throws IOException if the journal cannot be read or written
+   * @throws IllegalArgumentException if an argument is null or the interval is not positive
+   */
+  public static RegistryJournal open(Path directory, TrainDepartureRegistry registry,
+      FsyncPolicy policy, Duration syncInterval) throws IOException, IllegalArgumentException {
+    if (directory == null || registry == null || policy == null) {
+      throw new IllegalArgumentException("Directory, registry and policy cannot be null");
+    }
+    if (syncInterval == null || syncInterval.isNegative() || syncInterval.isZero()) {
+      throw new IllegalArgumentException("Sync interval must be positive");
+    }
+    RegistryJournal journal = new RegistryJournal(directory, registry, policy);
+    journal.recover();
+    journal.start(syncInterval);
+    registry.addListener(journal);
+    return journal;
+  }
+
+  /**
+   * Gets the policy for forcing the changes to the disk.
+   *
+   * @return fsync policy
+   */
+  public FsyncPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Gets the number of changes that were made again from the journal when it was opened, not
+   * counting the departures loaded from the snapshot.
+   *
+   * @return number of replayed changes
+   */
+  public int getReplayedCount() {
+    return replayedCount;
+  }
+
+  /**
+   * Gets the number of changes in the journal that could not be made again when it was opened,
+   * like a track that was already taken.
+   *
+   * @return number of skipped changes
+   */
+  public int getSkippedCount() {
+    return skippedCount;
+  }
+
+  /**
+   * Gets the last date and time passed departures were removed at, read from the journal when it
+   * was opened. It can be used to set the time of the TimeManager back to where it was.
+   *
+   * @return the last date and time, or an empty Optional if no time was written
+   */
+  public Optional<LocalDateTime> getRecoveredTime() {
+    return Optional.ofNullable(recoveredTime);
+  }
+
+  /**
+   * Gets the error that stopped the journal from writing. The changes made to the registry after
+   * the error are not in the journal.
+   *
+   * @return the error, or an empty Optional if the journal has not failed
+   */
+  public Optional<IOException> getFailure() {
+    return Optional.ofNullable(failure);
+  }
+
+  /**
+   * Sets the size the current segment can grow to before the journal is compacted.
+   *
+   * @param compactionSize the size in bytes
+   * @throws IllegalArgumentException if the size is not positive
+   */
+  public void setCompactionSize(long compactionSize) throws IllegalArgumentException {
+    if (compactionSize <= 0) {
+      throw new IllegalArgumentException("Compaction size must be positive");
+    }
+    this.compactionSize = compactionSize;
+  }
+
+  /**
+   * Writes all changes made so far to the file and forces them to the disk, whatever the policy.
+   *
+   * @throws IOException if the journal cannot be written
+   */
+  public void sync() throws IOException {
+    checkFailure();
+    flushLock.lock();
+    try {
+      flushLocked(true);
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Compacts the journal. A new segment is started, a snapshot of the registry is written and the
+   * older snapshots and segments are deleted. The registry can be changed while compacting, the
+   * changes are written to the new segment.
+   *
+   * @throws IOException if the segment or the snapshot cannot be written
+   */
+  public void compact() throws IOException {
+    compactLock.lock();
+    try {
+      long newGeneration;
+      flushLock.lock();
+      try {
+        synchronized (appendLock) {
+          if (segment != null) {
+            flushLocked(true);
+            segment.close();
+          }
+          newGeneration = generation + 1;
+          segment = FileChannel.open(segmentFile(newGeneration),
+              StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+          ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+          header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+          while (header.hasRemaining()) {
+            segment.write(header);
+          }
+          generation = newGeneration;
+          segmentSize = SEGMENT_HEADER_SIZE;
+          if (lastTime != null) {
+            // the new segment starts with the time, so it is kept when the old ones are deleted
+            appendTime(lastTime, 0);
+          }
+        }
+      } catch (IOException e) {
+        fail(e);
+        throw e;
+      } finally {
+        flushLock.unlock();
+      }
+
+      RegistrySnapshot.write(registry, snapshotFile(newGeneration));
+      for (Path file : listFiles(SNAPSHOT_NAME).headMap(newGeneration).values()) {
+        Files.deleteIfExists(file);
+      }
+      for (Path file : listFiles(SEGMENT_NAME).headMap(newGeneration).values()) {
+        Files.deleteIfExists(file);
+      }
+    } finally {
+      compactLock.unlock();
+    }
+  }
+
+  /**
+   * Writes and forces the remaining changes, stops the background threads and stops listening to
+   * the registry. With the NEVER policy the changes are written but not forced.
+   *
+   * @throws IOException if the journal cannot be written, or has failed before
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    registry.removeListener(this);
+    flusher.shutdown();
+    compactor.shutdown();
+    try {
+      flusher.awaitTermination(1, TimeUnit.MINUTES);
+      compactor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushLock.lock();
+    try {
+      checkFailure();
+      flushLocked(policy != FsyncPolicy.NEVER);
+    } finally {
+      segment.close();
+      flushLock.unlock();
+    }
+  }
+
+  @Override
+  public void departureAdded(TrainDeparture trainDeparture, long version) {
+    byte[] line = trainDeparture.getLine().getBytes(StandardCharsets.UTF_8);
+    byte[] destination = trainDeparture.getDestination().getBytes(StandardCharsets.UTF_8);
+    if (failure != null) {
+      return;
+    }
+    synchronized (appendLock) {
+      int start = startRecord(ADD, version, 24 + line.length + destination.length);
+      pending.putInt(epochDay(trainDeparture.getServiceDate()));
+      pending.putInt(trainDeparture.getTrainNumber());
+      pending.putShort((short) minuteOfDay(trainDeparture.getDepartureTime()));
+      pending.putShort((short) minuteOfDay(trainDeparture.getDelay()));
+      pending.putInt(trainDeparture.getTrack());
+      pending.putInt(line.length);
+      pending.put(line);
+      pending.putInt(destination.length);
+      pending.put(destination);
+      endRecord(start);
+    }
+  }
+
+  @Override
+  public void trackAssigned(LocalDate serviceDate, int trainNumber, int track, long version) {
+    appendTrack(TRACK, serviceDate, trainNumber, track, version);
+  }
+
+  @Override
+  public void trackAllocated(LocalDate serviceDate, int trainNumber, int track, long version) {
+    appendTrack(ALLOCATE, serviceDate, trainNumber, track, version);
+  }
+
+  @Override
+  public void delaySet(LocalDate serviceDate, int trainNumber, LocalTime delay, long version) {
+    if (failure != null) {
+      return;
+    }
+    synchronized (appendLock) {
+      int start = startRecord(DELAY, version, 10);
+      pending.putInt(epochDay(serviceDate));
+      pending.putInt(trainNumber);
+      pending.putShort((short) minuteOfDay(delay));
+      endRecord(start);
+    }
+  }
+
+  @Override
+  public void passedDeparturesRemoved(LocalDateTime currentDateTime, long version) {
+    if (failure != null) {
+      return;
+    }
+    synchronized (appendLock) {
+      lastTime = currentDateTime;
+      appendTime(currentDateTime, version);
+    }
+  }
+
+  /**
+   * Waits until the change is forced to the disk when the policy is ALWAYS. If another thread is
+   * already forcing the file, this thread waits for it, and then forces all changes made in the
+   * meantime at once, unless another thread has done it already. If the journal cannot be
+   * written, the error is kept instead of thrown, since the change has already been made.
+   */
+  @Override
+  public void changeCommitted() {
+    if (failure != null) {
+      return;
+    }
+    if (policy == FsyncPolicy.ALWAYS) {
+      long count = lastAppended.get()[0];
+      if (syncedCount < count) {
+        flushLock.lock();
+        try {
+          if (syncedCount < count) {
+            flushLocked(true);
+          }
+        } catch (IOException e) {
+          fail(e);
+        } finally {
+          flushLock.unlock();
+        }
+      }
+    }
+    scheduleCompactionIfNeeded();
+  }
+
+  /**
+   * Loads the newest snapshot, replays the segments from the generation of the snapshot and
+   * compacts the journal.
+   */
+  private void recover() throws IOException {
+    Files.createDirectories(directory);
+    TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_NAME);
+    TreeMap<Long, Path> segments = listFiles(SEGMENT_NAME);
+    long snapshotGeneration = 0;
+    long snapshotVersion = 0;
+    if (!snapshots.isEmpty()) {
+      snapshotGeneration = snapshots.lastKey();
+      snapshotVersion = RegistrySnapshot.readVersion(snapshots.lastEntry().getValue());
+      RegistrySnapshot.read(snapshots.lastEntry().getValue(), registry);
+    }
+    for (Path file : segments.tailMap(snapshotGeneration, true).values()) {
+      replay(file, snapshotVersion);
+    }
+    generation = Math.max(snapshotGeneration, segments.isEmpty() ? 0 : segments.lastKey());
+    lastTime = recoveredTime;
+    compact();
+  }
+
+  /**
+   * Replays the records of one segment. The records with a version that is already in the
+   * snapshot are skipped, except for the time records. The rest of the segment after a record
+   * that is not complete or has a wrong checksum is ignored, since it was being written when the
+   * application stopped.
+   */
+  private void replay(Path file, long snapshotVersion) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("The journal segment " + file + " is too large");
+      }
+      buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // read until the buffer is full, the size of the file was checked above
+      }
+      buffer.flip();
+    }
+    if (buffer.remaining() < SEGMENT_HEADER_SIZE) {
+      return;
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("The file " + file + " is not a journal segment");
+    }
+    int format = buffer.getInt();
+    if (format != FORMAT_VERSION && format != UNDATED_FORMAT_VERSION) {
+      throw new IOException("The journal segment " + file + " has format version " + format
+          + ", only version " + UNDATED_FORMAT_VERSION + " and " + FORMAT_VERSION
+          + " can be read");
+    }
+    boolean dated = format == FORMAT_VERSION;
+
+    CRC32 recordChecksum = new CRC32();
+    List<TrainDeparture> added = new ArrayList<>();
+    while (buffer.remaining() >= Integer.BYTES) {
+      int length = buffer.getInt();
+      if (length < RECORD_HEADER_SIZE || length > MAX_RECORD_SIZE
+          || buffer.remaining() < length + Integer.BYTES) {
+        break;
+      }
+      recordChecksum.reset();
+      recordChecksum.update(buffer.array(), buffer.position(), length);
+      if ((int) recordChecksum.getValue() != buffer.getInt(buffer.position() + length)) {
+        break;
+      }
+      ByteBuffer record = buffer.slice(buffer.position(), length);
+      buffer.position(buffer.position() + length + Integer.BYTES);
+      try {
+        replayRecord(record, dated, snapshotVersion, added);
+      } catch (RuntimeException e) {
+        // a record that cannot be read is not replayed, but the following records are
+        skippedCount++;
+      }
+    }
+    addReplayed(added);
+  }
+
+  /**
+   * Replays one record. The records of an undated segment have no service date, so their changes
+   * are made on the current date of the registry.
+   */
+  private void replayRecord(ByteBuffer record, boolean dated, long snapshotVersion,
+      List<TrainDeparture> added) {
+    byte type = record.get();
+    long version = record.getLong();
+    LocalDate serviceDate = dated ? LocalDate.ofEpochDay(record.getInt())
+        : registry.getCurrentDate();
+    if (type == TIME) {
+      addReplayed(added);
+      recoveredTime = serviceDate.atTime(toTime(record.getShort()));
+      registry.removePassedTrainDepartures(recoveredTime);
+      return;
+    }
+    if (version <= snapshotVersion) {
+      return;
+    }
+    if (type == ADD) {
+      int trainNumber = record.getInt();
+      int departureMinute = record.getShort();
+      int delayMinutes = record.getShort();
+      int track = record.getInt();
+      String line = readText(record);
+      String destination = readText(record);
+      // the departure was valid when it was added, so it is not checked against the current time
+      TrainDeparture trainDeparture = new TrainDeparture(trainNumber, serviceDate,
+          departureMinute / 60, departureMinute % 60, line, destination, LocalDateTime.MIN);
+      if (track != -1) {
+        trainDeparture.setTrack(track);
+      }
+      if (delayMinutes != 0) {
+        trainDeparture.setDelay(delayMinutes / 60, delayMinutes % 60);
+      }
+      added.add(trainDeparture);
+      return;
+    }
+    addReplayed(added);
+    try {
+      if (type == TRACK) {
+        int trainNumber = record.getInt();
+        int track = record.getInt();
+        if (dated) {
+          registry.assignTrack(serviceDate, trainNumber, track);
+        } else {
+          registry.assignTrack(trainNumber, track);
+        }
+      } else if (type == ALLOCATE) {
+        int trainNumber = record.getInt();
+        int track = record.getInt();
+        registry.allocateTrack(serviceDate, trainNumber, track);
+      } else if (type == DELAY) {
+        int trainNumber = record.getInt();
+        int delayMinutes = record.getShort();
+        if (dated) {
+          registry.setDelay(serviceDate, trainNumber, delayMinutes / 60, delayMinutes % 60);
+        } else {
+          registry.setDelay(trainNumber, delayMinutes / 60, delayMinutes % 60);
+        }
+      } else {
+        throw new IllegalArgumentException("Unknown record type " + type);
+      }
+      replayedCount++;
+    } catch (IllegalArgumentException e) {
+      skippedCount++;
+    }
+  }
+
+  /**
+   * Adds the departures collected from a row of add records with one call, and clears the list.
+   */
+  private void addReplayed(List<TrainDeparture> added) {
+    if (!added.isEmpty()) {
+      Map<Integer, String> rejected = registry.addTrainDepartures(added);
+      replayedCount += added.size() - rejected.size();
+      skippedCount += rejected.size();
+      added.clear();
+    }
+  }
+
+  private void start(Duration syncInterval) {
+    flusher = Executors.newSingleThreadScheduledExecutor(threadFactory("registry-journal"));
+    compactor = Executors.newSingleThreadExecutor(threadFactory("registry-journal-compaction"));
+    if (policy != FsyncPolicy.ALWAYS) {
+      long interval = syncInterval.toNanos();
+      flusher.scheduleWithFixedDelay(this::backgroundFlush, interval, interval,
+          TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private void backgroundFlush() {
+    flushScheduled.set(false);
+    if (failure != null) {
+      return;
+    }
+    flushLock.lock();
+    try {
+      flushLocked(policy == FsyncPolicy.BATCH);
+    } catch (IOException e) {
+      fail(e);
+    } finally {
+      flushLock.unlock();
+    }
+    scheduleCompactionIfNeeded();
+  }
+
+  private void scheduleCompactionIfNeeded() {
+    if (failure == null && segmentSize >= compactionSize && !closed
+        && compactionScheduled.compareAndSet(false, true)) {
+      compactor.execute(() -> {
+        try {
+          compact();
+        } catch (IOException e) {
+          // the older snapshot and segments are kept, so nothing is lost, and the next compaction
+          // tries again
+        } finally {
+          compactionScheduled.set(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * Writes the records collected in memory to the segment and forces the segment to the disk if
+   * asked. The records are swapped to a second buffer, so new records can be added while writing.
+   * Must be called while holding the flush lock.
+   */
+  private void flushLocked(boolean force) throws IOException {
+    long count;
+    synchronized (appendLock) {
+      ByteBuffer full = pending;
+      pending = writing;
+      writing = full;
+      count = appendedCount;
+    }
+    writing.flip();
+    segmentSize += writing.remaining();
+    while (writing.hasRemaining()) {
+      segment.write(writing);
+    }
+    writing.clear();
+    if (force && syncedCount < count) {
+      segment.force(false);
+      syncedCount = count;
+    }
+  }
+
+  /**
+   * Keeps the first error the journal got, which stops it from writing. The records that were
+   * not written are dropped, since they can no longer be written in order.
+   */
+  private void fail(IOException e) {
+    synchronized (appendLock) {
+      if (failure == null) {
+        failure = e;
+        pending.clear();
+      }
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("The journal could not be written", failure);
+    }
+  }
+
+  private void appendTrack(byte type, LocalDate serviceDate, int trainNumber, int track,
+      long version) {
+    if (failure != null) {
+      return;
+    }
+    synchronized (appendLock) {
+      int start = startRecord(type, version, 12);
+      pending.putInt(epochDay(serviceDate));
+      pending.putInt(trainNumber);
+      pending.putInt(track);
+      endRecord(start);
+    }
+  }
+
+  private void appendTime(LocalDateTime time, long version) {
+    int start = startRecord(TIME, version, 6);
+    pending.putInt(epochDay(time.toLocalDate()));
+    pending.putShort((short) minuteOfDay(time.toLocalTime()));
+    endRecord(start);
+  }
+
+  /**
+   * Starts a record in the buffer, leaving room for its length. Must be called while holding the
+   * append lock.
+   */
+  private int startRecord(byte type, long version, int payloadSize) {
+    int needed = Integer.BYTES + RECORD_HEADER_SIZE + payloadSize + Integer.BYTES;
+    if (pending.remaining() < needed) {
+      ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+          pending.position() + needed));
+      pending.flip();
+      larger.put(pending);
+      pending = larger;
+    }
+    int start = pending.position();
+    pending.position(start + Integer.BYTES);
+    pending.put(type);
+    pending.putLong(version);
+    return start;
+  }
+
+  /**
+   * Ends a record by writing its length and checksum. Must be called while holding the append
+   * lock.
+   */
+  private void endRecord(int start) {
+    int length = pending.position() - start - Integer.BYTES;
+    pending.putInt(start, length);
+    checksum.reset();
+    checksum.update(pending.array(), start + Integer.BYTES, length);
+    pending.putInt((int) checksum.getValue());
+    appendedCount++;
+    lastAppended.get()[0] = appendedCount;
+    if (pending.position() >= FLUSH_SIZE && policy != FsyncPolicy.ALWAYS && !closed
+        && flushScheduled.compareAndSet(false, true)) {
+      flusher.execute(this::backgroundFlush);
+    }
+  }
+
+  private TreeMap<Long, Path> listFiles(Pattern name) throws IOException {
+    TreeMap<Long, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        Matcher matcher = name.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          files.put(Long.parseLong(matcher.group(1)), file);
+        }
+      }
+    }
+    return files;
+  }
+
+  private Path snapshotFile(long generation) {
+    return directory.resolve("snapshot-" + generation + ".bin");
+  }
+
+  private Path segmentFile(long generation) {
+    return directory.resolve("journal-" + generation + ".log");
+  }
+
+  private static String readText(ByteBuffer record) {
+    byte[] bytes = new byte[record.getInt()];
+    record.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int epochDay(LocalDate date) {
+    return Math.toIntExact(date.toEpochDay());
+  }
+
+  private static int minuteOfDay(LocalTime time) {
+    return time.getHour() * 60 + time.getMinute();
+  }
+
+  private static LocalTime toTime(int minuteOfDay) {
+    return LocalTime.of(minuteOfDay / 60, minuteOfDay % 60);
+  }
+}
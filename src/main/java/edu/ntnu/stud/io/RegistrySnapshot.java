@@ -0,0 +1,308 @@
+package edu.ntnu.stud.io;
+
+import edu.ntnu.stud.model.DepartureBoard;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import edu.ntnu.stud.model.TrainDepartureSnapshot;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the departures of a TrainDepartureRegistry to a binary snapshot file and loads them back.
+ *
+ * <p>The file starts with a header, followed by a dictionary of all lines and destinations, where
+ * every text is only stored once, and then one record of the same size for every departure. A
+ * record stores the service date as a day number, the train number, the departure time and the
+ * delay in minutes, the track, the positions of the line and the destination in the dictionary
+ * and whether the track was chosen by a TrackAllocator. Snapshots of format version 1, written
+ * before departures had a service date, can still be loaded, and their departures run on the
+ * current date of the registry. Snapshots of format version 2 have no allocated tracks, so all
+ * their tracks are loaded as assigned by hand. The file ends
+ * with a CRC32 checksum of everything before it, so a damaged file is found before anything is
+ * loaded.
+ *
+ * <p>A snapshot is written to a temporary file next to the snapshot, which is then moved in place
+ * of the old snapshot in one step. If the application stops while writing, the old snapshot is
+ * still there and complete. A snapshot is loaded by mapping the file into memory, so the records
+ * are read straight from the file without copying it, and all departures are added to the
+ * registry with one call to addTrainDepartures.
+ */
+public final class RegistrySnapshot {
+  private static final int MAGIC = 0x54445253;
+  private static final int FORMAT_VERSION = 3;
+  private static final int UNALLOCATED_FORMAT_VERSION = 2;
+  private static final int UNDATED_FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 24;
+  private static final int RECORD_SIZE = 25;
+  private static final int UNALLOCATED_RECORD_SIZE = 24;
+  private static final int UNDATED_RECORD_SIZE = 20;
+  private static final int CHECKSUM_SIZE = 4;
+
+  private RegistrySnapshot() {
+  }
+
+  /**
+   * Writes a snapshot of all departures in the registry to the given file. The departures are
+   * taken from the DepartureBoard of the registry, so the snapshot shows the registry at one
+   * version even if it is changed while writing. An existing file is replaced.
+   *
+   * @param registry the registry to save
+   * @param file the file to write the snapshot to
+   * @return the version of the registry in the snapshot
+   * @throws IOException if the file cannot be written or the registry is too large for a snapshot
+   * @throws IllegalArgumentException if the registry or the file is null
+   */
+  public static long write(TrainDepartureRegistry registry, Path file)
+      throws IOException, IllegalArgumentException {
+    if (registry == null || file == null) {
+      throw new IllegalArgumentException("Registry and file cannot be null");
+    }
+    DepartureBoard board = registry.getDepartureBoard();
+    List<TrainDepartureSnapshot> departures = board.getTrainDepartures();
+
+    Map<String, Integer> dictionary = new HashMap<>();
+    List<byte[]> texts = new ArrayList<>();
+    long textSize = 0;
+    for (TrainDepartureSnapshot departure : departures) {
+      for (String text : new String[] {departure.getLine(), departure.getDestination()}) {
+        if (!dictionary.containsKey(text)) {
+          byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+          dictionary.put(text, texts.size());
+          texts.add(bytes);
+          textSize += Integer.BYTES + bytes.length;
+        }
+      }
+    }
+    long size = HEADER_SIZE + textSize + (long) RECORD_SIZE * departures.size() + CHECKSUM_SIZE;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("The registry is too large to be saved in a snapshot");
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    buffer.putInt(MAGIC);
+    buffer.putInt(FORMAT_VERSION);
+    buffer.putLong(board.getVersion());
+    buffer.putInt(texts.size());
+    buffer.putInt(departures.size());
+    for (byte[] text : texts) {
+      buffer.putInt(text.length);
+      buffer.put(text);
+    }
+    for (TrainDepartureSnapshot departure : departures) {
+      buffer.putInt(Math.toIntExact(departure.getServiceDate().toEpochDay()));
+      buffer.putInt(departure.getTrainNumber());
+      buffer.putShort((short) minuteOfDay(departure.getDepartureTime()));
+      buffer.putShort((short) minuteOfDay(departure.getDelay()));
+      buffer.putInt(dictionary.get(departure.getLine()));
+      buffer.putInt(dictionary.get(departure.getDestination()));
+      buffer.putInt(departure.getTrack());
+      buffer.put((byte) (departure.isTrackAllocated() ? 1 : 0));
+    }
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) checksum.getValue());
+    buffer.flip();
+
+    Path directory = file.toAbsolutePath().getParent();
+    Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      try {
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+    return board.getVersion();
+  }
+
+  /**
+   * Loads the departures in the snapshot file into the registry. The departures keep their track
+   * and delay, and a track that was chosen by a TrackAllocator is marked as allocated again.
+   * The allocated tracks are restored in the same call to addTrainDepartures as the departures,
+   * so the write lock is taken once and the version of the registry is increased once, however
+   * many tracks were allocated. Departures that cannot be added, like departures with a train
+   * number that is already in the registry, are skipped. Loading is fastest when the registry is
+   * empty.
+   *
+   * @param file the snapshot file to load
+   * @param registry the registry the departures are added to
+   * @return the number of departures added to the registry
+   * @throws IOException if the file cannot be read or is not a complete and valid snapshot
+   * @throws IllegalArgumentException if the file or the registry is null
+   */
+  public static int read(Path file, TrainDepartureRegistry registry)
+      throws IOException, IllegalArgumentException {
+    if (file == null || registry == null) {
+      throw new IllegalArgumentException("File and registry cannot be null");
+    }
+    List<TrainDeparture> departures;
+    Set<Integer> allocated = new HashSet<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("The file is not a snapshot");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      int format = readHeader(buffer);
+      int recordSize = format == FORMAT_VERSION ? RECORD_SIZE
+          : format == UNALLOCATED_FORMAT_VERSION ? UNALLOCATED_RECORD_SIZE : UNDATED_RECORD_SIZE;
+
+      CRC32 checksum = new CRC32();
+      checksum.update(buffer.duplicate().position(0).limit((int) size - CHECKSUM_SIZE));
+      if ((int) checksum.getValue() != buffer.getInt((int) size - CHECKSUM_SIZE)) {
+        throw new IOException("The snapshot is damaged, the checksum does not match");
+      }
+
+      buffer.position(HEADER_SIZE);
+      buffer.limit((int) size - CHECKSUM_SIZE);
+      if (buffer.getInt(16) > buffer.remaining() / Integer.BYTES) {
+        throw new IOException("The snapshot is damaged, it has more texts than fit in the file");
+      }
+      String[] texts = new String[buffer.getInt(16)];
+      int departureCount = buffer.getInt(20);
+      for (int i = 0; i < texts.length; i++) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          throw new IOException("The snapshot is damaged, a text is longer than the file");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        texts[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      if (buffer.remaining() != (long) recordSize * departureCount) {
+        throw new IOException("The snapshot is damaged, the number of departures does not match");
+      }
+
+      LocalDate currentDate = registry.getCurrentDate();
+      departures = new ArrayList<>(departureCount);
+      for (int i = 0; i < departureCount; i++) {
+        LocalDate serviceDate = format != UNDATED_FORMAT_VERSION
+            ? LocalDate.ofEpochDay(buffer.getInt()) : currentDate;
+        TrainDeparture trainDeparture = readDeparture(buffer, serviceDate, texts, i);
+        departures.add(trainDeparture);
+        if (format == FORMAT_VERSION && buffer.get() != 0 && trainDeparture.getTrack() != -1) {
+          allocated.add(i);
+        }
+      }
+    }
+    Map<Integer, String> rejected = registry.addTrainDepartures(departures, allocated);
+    return departures.size() - rejected.size();
+  }
+
+  /**
+   * Reads the version of the registry the snapshot was written from, without loading the
+   * departures.
+   *
+   * @param file the snapshot file
+   * @return the version of the registry in the snapshot
+   * @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public static long readVersion(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("The file is not a snapshot");
+        }
+      }
+      readHeader(buffer);
+      return buffer.getLong(8);
+    }
+  }
+
+  /**
+   * Checks if the file starts like a snapshot written by this class. The rest of the file is not
+   * checked.
+   *
+   * @param file the file to check
+   * @return true if the file looks like a snapshot
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isSnapshot(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          return false;
+        }
+      }
+      return buffer.getInt(0) == MAGIC;
+    }
+  }
+
+  private static int readHeader(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("The file is not a snapshot");
+    }
+    int format = buffer.getInt(4);
+    if (format < UNDATED_FORMAT_VERSION || format > FORMAT_VERSION) {
+      throw new IOException("The snapshot has format version " + format
+          + ", only version " + UNDATED_FORMAT_VERSION + " to " + FORMAT_VERSION
+          + " can be read");
+    }
+    if (buffer.getInt(16) < 0 || buffer.getInt(20) < 0) {
+      throw new IOException("The snapshot is damaged, the header is not valid");
+    }
+    return format;
+  }
+
+  private static TrainDeparture readDeparture(ByteBuffer buffer, LocalDate serviceDate,
+      String[] texts, int index) throws IOException {
+    int trainNumber = buffer.getInt();
+    int departureMinute = buffer.getShort();
+    int delayMinutes = buffer.getShort();
+    int line = buffer.getInt();
+    int destination = buffer.getInt();
+    int track = buffer.getInt();
+    if (line < 0 || line >= texts.length || destination < 0 || destination >= texts.length) {
+      throw new IOException("Departure " + index + " in the snapshot refers to a missing text");
+    }
+    try {
+      // the departures were valid when saved, so they are not checked against the current time
+      TrainDeparture trainDeparture = new TrainDeparture(trainNumber, serviceDate,
+          departureMinute / 60, departureMinute % 60, texts[line], texts[destination],
+          LocalDateTime.MIN);
+      if (track != -1) {
+        trainDeparture.setTrack(track);
+      }
+      if (delayMinutes != 0) {
+        trainDeparture.setDelay(delayMinutes / 60, delayMinutes % 60);
+      }
+      return trainDeparture;
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Departure " + index + " in the snapshot is not valid: "
+          + e.getMessage(), e);
+    }
+  }
+
+  private static int minuteOfDay(LocalTime time) {
+    return time.getHour() * 60 + time.getMinute();
+  }
+}
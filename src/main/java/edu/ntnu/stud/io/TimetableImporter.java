@@ -0,0 +1,612 @@
+package edu.ntnu.stud.io;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports a timetable from a CSV file or a GTFS feed into a TrainDepartureRegistry.
+ *
+ * <p>The first line of the file must be a header with the names of the columns. The columns can
+ * be in any order and columns that are not used are ignored. The following column names are
+ * used, where the first name in each row is the simple one and the others are GTFS names, which
+ * are accepted for files where the trip and route have already been joined into each row:
+ * <ul>
+ *   <li>train_number or trip_id, must be a positive number</li>
+ *   <li>departure_time, written as HH:MM or HH:MM:SS. Like in GTFS, a time of 24:00 or later is
+ *   a time after midnight at the end of the service date, and the departure is put on the next
+ *   day</li>
+ *   <li>line, route_short_name or route_id</li>
+ *   <li>destination, stop_headsign or trip_headsign</li>
+ *   <li>track or platform_code, optional</li>
+ *   <li>delay, written as HH:MM, optional</li>
+ *   <li>stop_id, optional, only used when a stop to import is set</li>
+ *   <li>service_date or date, written as YYYY-MM-DD or YYYYMMDD, optional. Departures without a
+ *   service date run on the current date of the registry</li>
+ * </ul>
+ *
+ * <p>A GTFS feed is imported with importGtfs. Its stop_times.txt does not have the line and the
+ * train number, so routes.txt and trips.txt are read first and joined with it by trip_id and
+ * route_id. The line is the route_short_name, or the route_id if the route has no short name.
+ * The train number is the trip_short_name if it is a number, since that is where most railways
+ * put it, then the trip_id if it is a number, and otherwise a number after the largest of those
+ * is given to each trip in the order of trips.txt. The destination is the stop_headsign, or the
+ * trip_headsign if the stop has none. The calendar of the feed is not read, so the departures
+ * run on the current date of the registry, and a stop should be set, since every stop of a trip
+ * would otherwise be a departure with the same train number.
+ *
+ * <p>The file is read as a stream, so it is never held in memory as a whole. The lines are read in
+ * batches, and the batches are parsed and checked by several threads at the same time. The parsed
+ * batches are added to the registry in the same order as in the file, one batch at a time with
+ * addTrainDepartures. A row that cannot be imported does not stop the import, instead the reason is
+ * added to the ImportReport together with the line number.
+ */
+public class TimetableImporter {
+  /**
+   * The number of lines in each batch when no batch size is given to the constructor.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 8192;
+
+  private final TrainDepartureRegistry registry;
+  private final int batchSize;
+  private final int threads;
+  private String stopId;
+
+  /**
+   * Constructs a TimetableImporter object that adds departures to the given registry, with the
+   * default batch size and one thread for each processor.
+   *
+   * @param registry the registry the departures are added to
+   * @throws IllegalArgumentException if the registry is null
+   */
+  public TimetableImporter(TrainDepartureRegistry registry) throws IllegalArgumentException {
+    this(registry, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a TimetableImporter object that adds departures to the given registry.
+   *
+   * @param registry the registry the departures are added to
+   * @param batchSize the number of lines parsed and added together
+   * @param threads the number of threads parsing lines
+   * @throws IllegalArgumentException if the registry is null or
+   *                                  if batch size or threads is not a positive number
+   */
+  public TimetableImporter(TrainDepartureRegistry registry, int batchSize, int threads)
+      throws IllegalArgumentException {
+    if (registry == null) {
+      throw new IllegalArgumentException("Registry cannot be null");
+    }
+    if (batchSize <= 0 || threads <= 0) {
+      throw new IllegalArgumentException("Batch size and threads must be positive numbers");
+    }
+    this.registry = registry;
+    this.batchSize = batchSize;
+    this.threads = threads;
+  }
+
+  /**
+   * Sets the stop to import. When a stop is set, rows with another stop_id are skipped. This is
+   * used when importing a GTFS stop_times.txt file, which has rows for every stop of every trip.
+   *
+   * @param stopId the stop_id of the station, or null to import all rows
+   */
+  public void setStopId(String stopId) {
+    this.stopId = stopId;
+  }
+
+  /**
+   * Imports the timetable in the given file. The file must be UTF-8.
+   *
+   * @param file the file to import
+   * @return a report of the import
+   * @throws IOException if the file cannot be read or does not have a valid header
+   */
+  public ImportReport importFile(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return importFrom(reader);
+    }
+  }
+
+  /**
+   * Imports the timetable read from the given reader. The reader is not closed.
+   *
+   * @param reader the reader to import from
+   * @return a report of the import
+   * @throws IOException if the reader cannot be read or the timetable does not have a valid header
+   */
+  public ImportReport importFrom(Reader reader) throws IOException {
+    return importFrom(reader, null);
+  }
+
+  /**
+   * Imports the GTFS feed in the given directory, from its routes.txt, trips.txt and
+   * stop_times.txt files. The files must be UTF-8.
+   *
+   * @param directory the directory with the files of the feed
+   * @return a report of the import, with the rows and line numbers of stop_times.txt
+   * @throws IOException if a file cannot be read or does not have a valid header
+   */
+  public ImportReport importGtfs(Path directory) throws IOException {
+    try (BufferedReader routes = Files.newBufferedReader(directory.resolve("routes.txt"),
+            StandardCharsets.UTF_8);
+        BufferedReader trips = Files.newBufferedReader(directory.resolve("trips.txt"),
+            StandardCharsets.UTF_8);
+        BufferedReader stopTimes = Files.newBufferedReader(directory.resolve("stop_times.txt"),
+            StandardCharsets.UTF_8)) {
+      return importGtfs(routes, trips, stopTimes);
+    }
+  }
+
+  /**
+   * Imports a GTFS feed read from the given readers. The readers are not closed.
+   *
+   * @param routes the reader of routes.txt
+   * @param trips the reader of trips.txt
+   * @param stopTimes the reader of stop_times.txt
+   * @return a report of the import, with the rows and line numbers of stop_times.txt
+   * @throws IOException if a reader cannot be read or a file does not have a valid header
+   */
+  public ImportReport importGtfs(Reader routes, Reader trips, Reader stopTimes)
+      throws IOException {
+    Map<String, String> lines = readRoutes(buffered(routes));
+    return importFrom(stopTimes, readTrips(buffered(trips), lines));
+  }
+
+  /**
+   * Imports the rows read from the reader. If trips are given, the rows are GTFS stop times, and
+   * the train number, line and destination are taken from the trip of each row.
+   */
+  private ImportReport importFrom(Reader reader, Map<String, Trip> trips) throws IOException {
+    BufferedReader bufferedReader = buffered(reader);
+    String header = bufferedReader.readLine();
+    if (header == null) {
+      throw new IOException("The timetable is empty");
+    }
+    Columns columns = new Columns(readNames(header), trips != null);
+    LocalDateTime currentTime = registry.getCurrentDateTime();
+
+    List<ImportReport.RowError> errors = new ArrayList<>();
+    int[] counts = new int[3];
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "timetable-import");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      ArrayDeque<Future<ParsedBatch>> parsing = new ArrayDeque<>();
+      long lineNumber = 1;
+      List<String> lines = new ArrayList<>(batchSize);
+      long firstLineNumber = lineNumber + 1;
+      String line;
+      while ((line = bufferedReader.readLine()) != null) {
+        lineNumber++;
+        lines.add(line);
+        if (lines.size() == batchSize) {
+          parsing.add(submit(executor, lines, firstLineNumber, columns, trips, currentTime));
+          lines = new ArrayList<>(batchSize);
+          firstLineNumber = lineNumber + 1;
+          if (parsing.size() > threads * 2) {
+            insert(take(parsing.poll()), errors, counts);
+          }
+        }
+      }
+      if (!lines.isEmpty()) {
+        parsing.add(submit(executor, lines, firstLineNumber, columns, trips, currentTime));
+      }
+      while (!parsing.isEmpty()) {
+        insert(take(parsing.poll()), errors, counts);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    errors.sort(Comparator.comparingLong(ImportReport.RowError::getLineNumber));
+    return new ImportReport(counts[0], counts[1], counts[2], errors);
+  }
+
+  private Future<ParsedBatch> submit(ExecutorService executor, List<String> lines,
+      long firstLineNumber, Columns columns, Map<String, Trip> trips,
+      LocalDateTime currentTime) {
+    return executor.submit(() -> parseBatch(lines, firstLineNumber, columns, trips, currentTime));
+  }
+
+  /**
+   * Reads routes.txt into the line of each route_id.
+   */
+  private static Map<String, String> readRoutes(BufferedReader reader) throws IOException {
+    String header = reader.readLine();
+    if (header == null) {
+      throw new IOException("The routes are empty");
+    }
+    List<String> names = readNames(header);
+    int routeId = Columns.required(names, "route_id");
+    int shortName = Columns.find(names, "route_short_name");
+    Map<String, String> lines = new HashMap<>();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!line.isBlank()) {
+        List<String> fields = parseCsvLine(line);
+        String id = optionalField(fields, routeId);
+        String name = optionalField(fields, shortName);
+        lines.put(id, name.isEmpty() ? id : name);
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Reads trips.txt into the trip of each trip_id, and gives each trip a train number.
+   */
+  private static Map<String, Trip> readTrips(BufferedReader reader, Map<String, String> lines)
+      throws IOException {
+    String header = reader.readLine();
+    if (header == null) {
+      throw new IOException("The trips are empty");
+    }
+    List<String> names = readNames(header);
+    int tripId = Columns.required(names, "trip_id");
+    int routeId = Columns.required(names, "route_id");
+    int shortName = Columns.find(names, "trip_short_name");
+    int headsign = Columns.find(names, "trip_headsign");
+    Map<String, Trip> trips = new LinkedHashMap<>();
+    int largest = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isBlank()) {
+        continue;
+      }
+      List<String> fields = parseCsvLine(line);
+      String id = optionalField(fields, tripId);
+      String route = optionalField(fields, routeId);
+      int trainNumber = parseTrainNumber(optionalField(fields, shortName));
+      if (trainNumber < 0) {
+        trainNumber = parseTrainNumber(id);
+      }
+      largest = Math.max(largest, trainNumber);
+      trips.put(id, new Trip(trainNumber, lines.getOrDefault(route, route),
+          optionalField(fields, headsign)));
+    }
+    for (Trip trip : trips.values()) {
+      if (trip.trainNumber < 0) {
+        trip.trainNumber = ++largest;
+      }
+    }
+    return trips;
+  }
+
+  /**
+   * Parses a train number of a GTFS trip.
+   *
+   * @return the train number, or -1 if the text is not a positive number
+   */
+  private static int parseTrainNumber(String text) {
+    try {
+      int trainNumber = Integer.parseInt(text.trim());
+      return trainNumber > 0 ? trainNumber : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static ParsedBatch take(Future<ParsedBatch> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("The import was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IOException("A batch of the timetable could not be parsed", e.getCause());
+    }
+  }
+
+  /**
+   * Adds a parsed batch to the registry and adds the errors of the batch to the list of errors.
+   * The counts are the number of rows, imported departures and skipped rows.
+   */
+  private void insert(ParsedBatch batch, List<ImportReport.RowError> errors, int[] counts) {
+    errors.addAll(batch.errors);
+    Map<Integer, String> rejected = registry.addTrainDepartures(batch.trainDepartures);
+    for (Map.Entry<Integer, String> entry : rejected.entrySet()) {
+      errors.add(new ImportReport.RowError(batch.lineNumbers[entry.getKey()], entry.getValue()));
+    }
+    counts[0] += batch.rowCount;
+    counts[1] += batch.trainDepartures.size() - rejected.size();
+    counts[2] += batch.skippedCount;
+  }
+
+  /**
+   * Parses a batch of lines into TrainDeparture objects. Runs on one of the import threads.
+   */
+  private ParsedBatch parseBatch(List<String> lines, long firstLineNumber, Columns columns,
+      Map<String, Trip> trips, LocalDateTime currentTime) {
+    ParsedBatch batch = new ParsedBatch(lines.size());
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.isBlank()) {
+        continue;
+      }
+      long lineNumber = firstLineNumber + i;
+      batch.rowCount++;
+      try {
+        List<String> fields = parseCsvLine(line);
+        if (stopId != null && columns.stopId >= 0
+            && !stopId.equals(columns.field(fields, columns.stopId))) {
+          batch.skippedCount++;
+          continue;
+        }
+        batch.add(parseDeparture(fields, columns, trips, currentTime), lineNumber);
+      } catch (IllegalArgumentException e) {
+        batch.errors.add(new ImportReport.RowError(lineNumber, e.getMessage()));
+      }
+    }
+    return batch;
+  }
+
+  private static TrainDeparture parseDeparture(List<String> fields, Columns columns,
+      Map<String, Trip> trips, LocalDateTime currentTime) throws IllegalArgumentException {
+    int trainNumber;
+    String line;
+    String destination;
+    if (trips == null) {
+      trainNumber = parseNumber(columns.field(fields, columns.trainNumber), "Train number");
+      line = columns.field(fields, columns.line);
+      destination = columns.field(fields, columns.destination);
+    } else {
+      String tripId = columns.field(fields, columns.trainNumber);
+      Trip trip = trips.get(tripId);
+      if (trip == null) {
+        throw new IllegalArgumentException("The trip \"" + tripId + "\" is not in trips.txt");
+      }
+      trainNumber = trip.trainNumber;
+      line = trip.line;
+      destination = optionalField(fields, columns.destination);
+      if (destination.isEmpty()) {
+        destination = trip.headsign;
+      }
+    }
+    int[] departureTime = parseTime(columns.field(fields, columns.departureTime),
+        "Departure time");
+    LocalDate serviceDate = currentTime.toLocalDate();
+    if (columns.serviceDate >= 0 && !columns.field(fields, columns.serviceDate).isEmpty()) {
+      serviceDate = parseDate(columns.field(fields, columns.serviceDate));
+    }
+    if (departureTime[0] >= 24 && departureTime[0] < 48) {
+      serviceDate = serviceDate.plusDays(1);
+      departureTime[0] -= 24;
+    }
+    TrainDeparture trainDeparture = new TrainDeparture(trainNumber, serviceDate,
+        departureTime[0], departureTime[1], line, destination, currentTime);
+    if (columns.track >= 0 && !columns.field(fields, columns.track).isEmpty()) {
+      int track = parseNumber(columns.field(fields, columns.track), "Track");
+      if (track != -1) {
+        trainDeparture.setTrack(track);
+      }
+    }
+    if (columns.delay >= 0 && !columns.field(fields, columns.delay).isEmpty()) {
+      int[] delay = parseTime(columns.field(fields, columns.delay), "Delay");
+      trainDeparture.setDelay(delay[0], delay[1]);
+    }
+    return trainDeparture;
+  }
+
+  private static int parseNumber(String text, String name) throws IllegalArgumentException {
+    try {
+      return Integer.parseInt(text.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " must be a number, was \"" + text + "\"");
+    }
+  }
+
+  /**
+   * Parses a date written as YYYY-MM-DD, or as YYYYMMDD like in GTFS.
+   */
+  private static LocalDate parseDate(String text) throws IllegalArgumentException {
+    String date = text.trim();
+    try {
+      return date.length() == 8 ? LocalDate.parse(date, DateTimeFormatter.BASIC_ISO_DATE)
+          : LocalDate.parse(date);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(
+          "Service date must be written as YYYY-MM-DD, was \"" + text + "\"");
+    }
+  }
+
+  /**
+   * Parses a time written as H:MM, HH:MM or HH:MM:SS into hours and minutes. The seconds are
+   * ignored.
+   */
+  private static int[] parseTime(String text, String name) throws IllegalArgumentException {
+    String time = text.trim();
+    int firstColon = time.indexOf(':');
+    int secondColon = time.indexOf(':', firstColon + 1);
+    int minutesEnd = secondColon < 0 ? time.length() : secondColon;
+    if (firstColon < 1 || minutesEnd - firstColon != 3) {
+      throw new IllegalArgumentException(name + " must be written as HH:MM, was \"" + text + "\"");
+    }
+    try {
+      return new int[] {Integer.parseInt(time, 0, firstColon, 10),
+          Integer.parseInt(time, firstColon + 1, minutesEnd, 10)};
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " must be written as HH:MM, was \"" + text + "\"");
+    }
+  }
+
+  /**
+   * Splits a CSV line into fields. Fields can be quoted with double quotes, and a double quote in
+   * a quoted field is written as two double quotes.
+   */
+  private static List<String> parseCsvLine(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static String stripByteOrderMark(String line) {
+    return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+  }
+
+  /**
+   * Splits a header into the names of the columns, trimmed and in lower case.
+   */
+  private static List<String> readNames(String header) {
+    List<String> names = new ArrayList<>();
+    for (String name : parseCsvLine(stripByteOrderMark(header))) {
+      names.add(name.trim().toLowerCase(Locale.ROOT));
+    }
+    return names;
+  }
+
+  /**
+   * Gets the field in the column, or an empty string if the column is missing from the header
+   * or the row.
+   */
+  private static String optionalField(List<String> fields, int column) {
+    return column >= 0 && column < fields.size() ? fields.get(column) : "";
+  }
+
+  private static BufferedReader buffered(Reader reader) {
+    return reader instanceof BufferedReader
+        ? (BufferedReader) reader : new BufferedReader(reader);
+  }
+
+  /**
+   * The positions of the used columns in the header, or -1 for optional columns that are missing.
+   */
+  private static class Columns {
+    private final int trainNumber;
+    private final int departureTime;
+    private final int line;
+    private final int destination;
+    private final int track;
+    private final int delay;
+    private final int stopId;
+    private final int serviceDate;
+
+    /**
+     * Finds the columns in the names of the header. The stop times of a GTFS feed have the
+     * trip_id instead of the train number, and the line and destination come from the trip.
+     */
+    private Columns(List<String> names, boolean gtfs) throws IOException {
+      if (gtfs) {
+        trainNumber = required(names, "trip_id");
+        line = -1;
+        destination = find(names, "stop_headsign");
+      } else {
+        trainNumber = required(names, "train_number", "trip_id");
+        line = required(names, "line", "route_short_name", "route_id");
+        destination = required(names, "destination", "stop_headsign", "trip_headsign");
+      }
+      departureTime = required(names, "departure_time");
+      track = find(names, "track", "platform_code");
+      delay = find(names, "delay");
+      stopId = find(names, "stop_id");
+      serviceDate = find(names, "service_date", "date");
+    }
+
+    private String field(List<String> fields, int column) throws IllegalArgumentException {
+      if (column >= fields.size()) {
+        throw new IllegalArgumentException("The row has " + fields.size() + " columns, expected "
+            + (column + 1) + " or more");
+      }
+      return fields.get(column);
+    }
+
+    private static int required(List<String> names, String... candidates) throws IOException {
+      int column = find(names, candidates);
+      if (column < 0) {
+        throw new IOException("The header is missing the column " + candidates[0]);
+      }
+      return column;
+    }
+
+    private static int find(List<String> names, String... candidates) {
+      for (String candidate : candidates) {
+        int column = names.indexOf(candidate);
+        if (column >= 0) {
+          return column;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * A trip of a GTFS feed, with the train number, line and destination of its departures.
+   */
+  private static class Trip {
+    private int trainNumber;
+    private final String line;
+    private final String headsign;
+
+    private Trip(int trainNumber, String line, String headsign) {
+      this.trainNumber = trainNumber;
+      this.line = line;
+      this.headsign = headsign;
+    }
+  }
+
+  /**
+   * The departures and errors of one parsed batch of lines.
+   */
+  private static class ParsedBatch {
+    private final List<TrainDeparture> trainDepartures;
+    private final long[] lineNumbers;
+    private final List<ImportReport.RowError> errors;
+    private int rowCount;
+    private int skippedCount;
+
+    private ParsedBatch(int size) {
+      trainDepartures = new ArrayList<>(size);
+      lineNumbers = new long[size];
+      errors = new ArrayList<>();
+    }
+
+    private void add(TrainDeparture trainDeparture, long lineNumber) {
+      lineNumbers[trainDepartures.size()] = lineNumber;
+      trainDepartures.add(trainDeparture);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package edu.ntnu.stud.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds that many threads can record into at the same time
+ * without locking.
+ *
+ * <p>Like an HDR histogram, the buckets grow with the value: values below 64 get a bucket each,
+ * and above that every power of two is split into 32 buckets of the same width. So a recorded
+ * value is kept with an error of at most about 3%, from nanoseconds up to hours, in a fixed
+ * array of counters. Recording a value increments one counter and one LongAdder and only writes
+ * the maximum when it grows, so it does not allocate and takes a few nanoseconds.
+ *
+ * <p>The counts are read without stopping the threads that record, so a percentile read while
+ * values are recorded may miss the values recorded during the read.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+  private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final LongAdder sum;
+  private final AtomicLong max;
+
+  /**
+   * Constructs an empty LatencyHistogram.
+   */
+  public LatencyHistogram() {
+    counts = new AtomicLongArray(BUCKETS);
+    sum = new LongAdder();
+    max = new AtomicLong();
+  }
+
+  /**
+   * Records a latency. Negative values, which can only come from a clock that went backwards,
+   * are recorded as zero.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(bucketOf(value));
+    sum.add(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Gets the number of recorded latencies.
+   *
+   * @return count
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the mean of the recorded latencies, or 0 if nothing has been recorded.
+   *
+   * @return the mean latency in nanoseconds
+   */
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) sum.sum() / count;
+  }
+
+  /**
+   * Gets the highest recorded latency, or 0 if nothing has been recorded.
+   *
+   * @return the highest latency in nanoseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets the latency that the given percentage of the recorded latencies are at or below. The
+   * highest value of the bucket is returned, so the result is never lower than the real
+   * percentile, and never higher than the highest recorded latency.
+   *
+   * @param percentile the percentage, from 0 to 100
+   * @return the latency in nanoseconds, or 0 if nothing has been recorded
+   * @throws IllegalArgumentException if the percentile is not from 0 to 100
+   */
+  public long getValueAtPercentile(double percentile) throws IllegalArgumentException {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException("Percentile must be from 0 to 100");
+    }
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Removes all recorded latencies. Latencies recorded while resetting may be partly kept.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    sum.reset();
+    max.set(0);
+  }
+
+  private static int bucketOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long highestValueOf(int bucket) {
+    if (bucket < LINEAR_LIMIT) {
+      return bucket;
+    }
+    int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    long lowest = (long) (SUB_BUCKETS + (bucket - LINEAR_LIMIT) % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,237 @@
+package edu.ntnu.stud.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the operations of one object, like a TrainDepartureRegistry or the UI.
+ *
+ * <p>A call is timed by calling start before it and record on the OperationMetrics of the
+ * operation after it. Every call is counted, but reading the clock twice can cost more than a
+ * lookup in the registry, so only a random sample of the calls can be timed instead of all of
+ * them. A sample rate of 16 times about one in 16 calls, which gives the same percentiles once
+ * enough calls have been made, but can miss the single slowest call. When the group is turned
+ * off, no calls are timed.
+ *
+ * <p>The group can be registered with the platform MBeanServer, so the metrics can be read with
+ * JMX by tools like JConsole or a monitoring agent. Each operation is registered as an MXBean
+ * named "edu.ntnu.stud:type=[type],name=[name],operation=[operation]".
+ */
+public final class MetricsGroup {
+  /**
+   * The JMX domain the metrics are registered in.
+   */
+  public static final String DOMAIN = "edu.ntnu.stud";
+
+  private final String type;
+  private final Map<String, OperationMetrics> operations;
+  private volatile boolean enabled;
+  private volatile int sampleRate;
+  private String registeredName;
+
+  /**
+   * Constructs a turned on MetricsGroup without any operations.
+   *
+   * @param type the type of the object the metrics are for, used in the JMX names
+   * @throws IllegalArgumentException if the type is null or empty
+   */
+  public MetricsGroup(String type) throws IllegalArgumentException {
+    if (type == null || type.isEmpty()) {
+      throw new IllegalArgumentException("Type cannot be null or empty");
+    }
+    this.type = type;
+    operations = new TreeMap<>();
+    enabled = true;
+    sampleRate = 1;
+  }
+
+  /**
+   * Gets the type of the object the metrics are for.
+   *
+   * @return type
+   */
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Gets the metrics of the operation with the given name, and creates them if the operation has
+   * no metrics yet. If the group is registered with JMX, new metrics are registered as well.
+   *
+   * @param name the name of the operation
+   * @return the metrics of the operation
+   * @throws IllegalArgumentException if the name is null or empty
+   */
+  public synchronized OperationMetrics operation(String name) throws IllegalArgumentException {
+    OperationMetrics metrics = operations.get(name);
+    if (metrics == null) {
+      metrics = new OperationMetrics(name);
+      operations.put(name, metrics);
+      if (registeredName != null) {
+        register(metrics, registeredName);
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Gets the metrics of all operations, sorted by name.
+   *
+   * @return a list of the metrics of all operations
+   */
+  public synchronized List<OperationMetrics> getOperations() {
+    return new ArrayList<>(operations.values());
+  }
+
+  /**
+   * Checks if calls are timed.
+   *
+   * @return true if the group is turned on
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns the timing of calls on or off. Calls and rejections are counted either way.
+   *
+   * @param enabled true to time calls
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Gets how many calls there are for each call that is timed.
+   *
+   * @return sample rate
+   */
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Sets how many calls there are for each call that is timed. With 1 every call is timed.
+   *
+   * @param sampleRate the number of calls for each timed call
+   * @throws IllegalArgumentException if the sample rate is not a positive number
+   */
+  public void setSampleRate(int sampleRate) throws IllegalArgumentException {
+    if (sampleRate < 1) {
+      throw new IllegalArgumentException("Sample rate must be a positive number");
+    }
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Gets the start time of a call, to be given to OperationMetrics.record when the call has
+   * finished.
+   *
+   * @return the value of System.nanoTime, or 0 if the call is not timed, because the group is
+   *         turned off or the call is not in the sample
+   */
+  public long start() {
+    if (!enabled) {
+      return 0;
+    }
+    int rate = sampleRate;
+    if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    return now == 0 ? 1 : now;
+  }
+
+  /**
+   * Registers the metrics of all operations with the platform MBeanServer.
+   *
+   * @param name the name of the object the metrics are for, which must be different for every
+   *             registered group of the same type
+   * @throws IllegalArgumentException if the name is null or empty or cannot be used in a JMX name
+   * @throws IllegalStateException if the group is already registered or if another group of the
+   *                               same type is registered with the same name
+   */
+  public synchronized void register(String name)
+      throws IllegalArgumentException, IllegalStateException {
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("Name cannot be null or empty");
+    }
+    if (registeredName != null) {
+      throw new IllegalStateException("Metrics are already registered as " + registeredName);
+    }
+    try {
+      new ObjectName(DOMAIN, "name", name);
+    } catch (JMException e) {
+      throw new IllegalArgumentException("Not a valid JMX name: " + e.getMessage(), e);
+    }
+    List<OperationMetrics> registered = new ArrayList<>();
+    try {
+      for (OperationMetrics metrics : operations.values()) {
+        register(metrics, name);
+        registered.add(metrics);
+      }
+    } catch (RuntimeException e) {
+      for (OperationMetrics metrics : registered) {
+        unregister(metrics, name);
+      }
+      throw e;
+    }
+    registeredName = name;
+  }
+
+  /**
+   * Removes the metrics of all operations from the platform MBeanServer. Does nothing if the
+   * group is not registered.
+   */
+  public synchronized void unregister() {
+    if (registeredName == null) {
+      return;
+    }
+    for (OperationMetrics metrics : operations.values()) {
+      unregister(metrics, registeredName);
+    }
+    registeredName = null;
+  }
+
+  /**
+   * Gets the JMX name of the metrics of an operation.
+   *
+   * @param name the name of the object the metrics are for
+   * @param operation the name of the operation
+   * @return the JMX name
+   * @throws IllegalArgumentException if the names cannot be used in a JMX name
+   */
+  public ObjectName getObjectName(String name, String operation) throws IllegalArgumentException {
+    try {
+      return new ObjectName(DOMAIN + ":type=" + type + ",name=" + name
+          + ",operation=" + operation);
+    } catch (JMException e) {
+      throw new IllegalArgumentException("Not a valid JMX name: " + e.getMessage(), e);
+    }
+  }
+
+  private void register(OperationMetrics metrics, String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(metrics, getObjectName(name, metrics.getName()));
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not register the metrics: " + e.getMessage(), e);
+    }
+  }
+
+  private void unregister(OperationMetrics metrics, String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(getObjectName(name, metrics.getName()));
+    } catch (JMException e) {
+      // already removed by someone else, which is what was wanted
+    }
+  }
+}
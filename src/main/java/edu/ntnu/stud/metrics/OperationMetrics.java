@@ -0,0 +1,180 @@
+package edu.ntnu.stud.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one operation: a histogram of how long the calls took and the number of calls
+ * that were rejected, counted by reason.
+ *
+ * <p>The reason of a rejection is the message of the exception, since the messages of the
+ * registry and the departures name the rule that was broken. To keep the number of counters
+ * bounded, at most 32 different reasons are counted, and later reasons are counted as "Other".
+ * Numbers that could not be read from the user get their own reason, since the message of a
+ * NumberFormatException contains the text that was entered.
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+  /**
+   * The highest number of different reasons that are counted separately.
+   */
+  public static final int MAX_REASONS = 32;
+
+  private final String name;
+  private final LatencyHistogram latencies;
+  private final LongAdder calls;
+  private final LongAdder rejected;
+  private final Map<String, LongAdder> rejectionsByReason;
+
+  /**
+   * Constructs an OperationMetrics object without any calls.
+   *
+   * @param name the name of the operation
+   * @throws IllegalArgumentException if the name is null or empty
+   */
+  public OperationMetrics(String name) throws IllegalArgumentException {
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("Name cannot be null or empty");
+    }
+    this.name = name;
+    latencies = new LatencyHistogram();
+    calls = new LongAdder();
+    rejected = new LongAdder();
+    rejectionsByReason = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Gets the name of the operation.
+   *
+   * @return name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the histogram with the latencies of the calls, in nanoseconds.
+   *
+   * @return latencies
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * Records that a call has finished, also when it was rejected. The start time is the value
+   * returned by MetricsGroup.start when the call started. If it is 0, because the call is not
+   * timed, the call is only counted.
+   *
+   * @param startNanos the value of System.nanoTime when the call started, or 0
+   */
+  public void record(long startNanos) {
+    calls.increment();
+    if (startNanos != 0) {
+      latencies.record(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Records that a call was rejected with the given exception.
+   *
+   * @param exception the exception the call was rejected with
+   */
+  public void reject(RuntimeException exception) {
+    if (exception instanceof NumberFormatException) {
+      reject("Not a number");
+    } else if (exception.getMessage() == null) {
+      reject(exception.getClass().getSimpleName());
+    } else {
+      reject(exception.getMessage());
+    }
+  }
+
+  /**
+   * Records that a call, or a part of a call, was rejected for the given reason.
+   *
+   * @param reason the reason the call was rejected, or null if it is not known
+   */
+  public void reject(String reason) {
+    rejected.increment();
+    if (reason == null) {
+      reason = "Unknown";
+    }
+    LongAdder counter = rejectionsByReason.get(reason);
+    if (counter == null) {
+      if (rejectionsByReason.size() >= MAX_REASONS) {
+        reason = "Other";
+      }
+      counter = rejectionsByReason.computeIfAbsent(reason, key -> new LongAdder());
+    }
+    counter.increment();
+  }
+
+  @Override
+  public long getCount() {
+    return calls.sum();
+  }
+
+  @Override
+  public long getTimedCount() {
+    return latencies.getCount();
+  }
+
+  @Override
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  @Override
+  public Map<String, Long> getRejectionsByReason() {
+    Map<String, Long> counts = new TreeMap<>();
+    rejectionsByReason.forEach((reason, counter) -> counts.put(reason, counter.sum()));
+    return counts;
+  }
+
+  @Override
+  public double getMeanMicros() {
+    return latencies.getMean() / 1000;
+  }
+
+  @Override
+  public double getP50Micros() {
+    return latencies.getValueAtPercentile(50) / 1000.0;
+  }
+
+  @Override
+  public double getP90Micros() {
+    return latencies.getValueAtPercentile(90) / 1000.0;
+  }
+
+  @Override
+  public double getP99Micros() {
+    return latencies.getValueAtPercentile(99) / 1000.0;
+  }
+
+  @Override
+  public double getP999Micros() {
+    return latencies.getValueAtPercentile(99.9) / 1000.0;
+  }
+
+  @Override
+  public double getMaxMicros() {
+    return latencies.getMax() / 1000.0;
+  }
+
+  @Override
+  public void reset() {
+    latencies.reset();
+    calls.reset();
+    rejected.reset();
+    rejectionsByReason.clear();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%-40s %10d calls %8d rejected   p50 %9.1f us   p99 %9.1f us   "
+        + "max %9.1f us", name, getCount(), getRejectedCount(), getP50Micros(), getP99Micros(),
+        getMaxMicros());
+  }
+}
@@ -0,0 +1,85 @@
+package edu.ntnu.stud.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of one operation, as seen through JMX. All latencies
+ * are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+
+  /**
+   * Gets the number of calls that have been made.
+   *
+   * @return count
+   */
+  long getCount();
+
+  /**
+   * Gets the number of calls that have been timed, which the latencies are calculated from.
+   *
+   * @return timed count
+   */
+  long getTimedCount();
+
+  /**
+   * Gets the number of calls that were rejected with an exception.
+   *
+   * @return rejected count
+   */
+  long getRejectedCount();
+
+  /**
+   * Gets the number of rejected calls for each reason, which is the message of the exception.
+   *
+   * @return a map from reason to number of rejected calls
+   */
+  Map<String, Long> getRejectionsByReason();
+
+  /**
+   * Gets the mean latency.
+   *
+   * @return mean latency in microseconds
+   */
+  double getMeanMicros();
+
+  /**
+   * Gets the latency that half of the calls were faster than.
+   *
+   * @return median latency in microseconds
+   */
+  double getP50Micros();
+
+  /**
+   * Gets the latency that 90% of the calls were at or below.
+   *
+   * @return 90th percentile latency in microseconds
+   */
+  double getP90Micros();
+
+  /**
+   * Gets the latency that 99% of the calls were at or below.
+   *
+   * @return 99th percentile latency in microseconds
+   */
+  double getP99Micros();
+
+  /**
+   * Gets the latency that 99.9% of the calls were at or below.
+   *
+   * @return 99.9th percentile latency in microseconds
+   */
+  double getP999Micros();
+
+  /**
+   * Gets the highest latency.
+   *
+   * @return highest latency in microseconds
+   */
+  double getMaxMicros();
+
+  /**
+   * Removes all counts and latencies, so the metrics start over.
+   */
+  void reset();
+}
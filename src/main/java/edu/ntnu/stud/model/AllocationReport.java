@@ -0,0 +1,63 @@
+package edu.ntnu.stud.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The result of giving tracks to the departures without a track in a TrainDepartureRegistry with
+ * a TrackAllocator.
+ *
+ * <p>It stores the departures that were given a track and the departures that were left without
+ * one because every track of the station was occupied while they were.
+ */
+public class AllocationReport {
+  private final List<TrainDeparture> assigned;
+  private final List<TrainDeparture> unassigned;
+  private final List<Integer> tracks;
+
+  /**
+   * Constructs an AllocationReport object.
+   *
+   * @param assigned the departures that were given a track
+   * @param unassigned the departures that were left without a track
+   */
+  AllocationReport(List<TrainDeparture> assigned, List<TrainDeparture> unassigned) {
+    this.assigned = Collections.unmodifiableList(assigned);
+    this.unassigned = Collections.unmodifiableList(unassigned);
+    TreeSet<Integer> used = new TreeSet<>();
+    for (TrainDeparture trainDeparture : assigned) {
+      used.add(trainDeparture.getTrack());
+    }
+    this.tracks = Collections.unmodifiableList(new ArrayList<>(used));
+  }
+
+  /**
+   * Gets the departures that were given a track, sorted by new departure time.
+   *
+   * @return an unmodifiable list of the departures, empty if no departure was given a track
+   */
+  public List<TrainDeparture> getAssigned() {
+    return assigned;
+  }
+
+  /**
+   * Gets the departures that were left without a track because every track was occupied, sorted
+   * by new departure time.
+   *
+   * @return an unmodifiable list of the departures, empty if every departure got a track
+   */
+  public List<TrainDeparture> getUnassigned() {
+    return unassigned;
+  }
+
+  /**
+   * Gets the tracks the departures were given.
+   *
+   * @return an unmodifiable list of the tracks in increasing order
+   */
+  public List<Integer> getTracks() {
+    return tracks;
+  }
+}
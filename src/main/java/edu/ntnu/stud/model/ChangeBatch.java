@@ -0,0 +1,57 @@
+package edu.ntnu.stud.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes made to a TrainDepartureRegistry by one or more changes in a row, as published by a
+ * RegistryChangeFeed.
+ *
+ * <p>A batch knows the version of the registry before its first change and after its last change.
+ * If the previous version of a batch is not the version of the last batch a subscriber got, the
+ * subscriber has missed changes and should read the registry again.
+ */
+public final class ChangeBatch {
+  private final long previousVersion;
+  private final long version;
+  private final List<RegistryChange> changes;
+
+  /**
+   * Constructs a ChangeBatch object.
+   *
+   * @param previousVersion the version of the registry before the first change
+   * @param changes the changes, in the order they were made
+   */
+  ChangeBatch(long previousVersion, List<RegistryChange> changes) {
+    this.previousVersion = previousVersion;
+    this.version = changes.get(changes.size() - 1).getVersion();
+    this.changes = Collections.unmodifiableList(changes);
+  }
+
+  /**
+   * Gets the version of the registry before the first change of the batch.
+   *
+   * @return previous version
+   */
+  public long getPreviousVersion() {
+    return previousVersion;
+  }
+
+  /**
+   * Gets the version of the registry after the last change of the batch.
+   *
+   * @return version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the changes of the batch, in the order they were made.
+   *
+   * @return an unmodifiable list of the changes, never empty
+   */
+  public List<RegistryChange> getChanges() {
+    return changes;
+  }
+}
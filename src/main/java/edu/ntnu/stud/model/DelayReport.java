@@ -0,0 +1,47 @@
+package edu.ntnu.stud.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of delaying all departures that match a DepartureQuery in a TrainDepartureRegistry.
+ *
+ * <p>It stores the departures that were delayed and the departures that now occupy a track at the
+ * same time as one of the delayed departures, so the conflicts can be solved by assigning other
+ * tracks.
+ */
+public class DelayReport {
+  private final List<TrainDeparture> delayed;
+  private final List<TrainDeparture> conflicts;
+
+  /**
+   * Constructs a DelayReport object.
+   *
+   * @param delayed the departures that were delayed
+   * @param conflicts the departures in conflict with a delayed departure on its track
+   */
+  DelayReport(List<TrainDeparture> delayed, List<TrainDeparture> conflicts) {
+    this.delayed = Collections.unmodifiableList(delayed);
+    this.conflicts = Collections.unmodifiableList(conflicts);
+  }
+
+  /**
+   * Gets the departures that were delayed, sorted by new departure time.
+   *
+   * @return an unmodifiable list of the delayed departures, empty if no departure matched
+   */
+  public List<TrainDeparture> getDelayed() {
+    return delayed;
+  }
+
+  /**
+   * Gets the departures that occupy their track at the same time as one of the delayed
+   * departures, sorted by new departure time. Two delayed departures that now overlap on the same
+   * track are both in the list.
+   *
+   * @return an unmodifiable list of the departures in conflict, empty if there are no conflicts
+   */
+  public List<TrainDeparture> getConflicts() {
+    return conflicts;
+  }
+}
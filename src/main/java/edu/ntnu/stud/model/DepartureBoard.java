@@ -0,0 +1,92 @@
+package edu.ntnu.stud.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * An unchangeable view of all departures in a TrainDepartureRegistry at one version.
+ *
+ * <p>The registry counts every change it makes, and the board is marked with the count at the
+ * time it was made. Two boards with the same version show the same departures. Since the board
+ * and the TrainDepartureSnapshot objects in it cannot be changed, it can be read by any number of
+ * threads without locking.
+ */
+public final class DepartureBoard {
+  private final long version;
+  private final List<TrainDepartureSnapshot> byDepartureTime;
+  private final List<TrainDepartureSnapshot> byNewDepartureTime;
+
+  /**
+   * Constructs a DepartureBoard object by copying the departures from the sorted indexes of a
+   * registry. Must be called while the registry can not be changed.
+   *
+   * @param version the version of the registry
+   * @param departureTimeIndex the departures sorted by departure time
+   * @param newDepartureTimeIndex the departures sorted by new departure time
+   * @param allocated checks if the track of a departure was chosen by a TrackAllocator
+   */
+  DepartureBoard(long version, Collection<TrainDeparture> departureTimeIndex,
+      Collection<TrainDeparture> newDepartureTimeIndex, Predicate<TrainDeparture> allocated) {
+    IdentityHashMap<TrainDeparture, TrainDepartureSnapshot> snapshots =
+        new IdentityHashMap<>(departureTimeIndex.size());
+    this.version = version;
+    this.byDepartureTime = copy(departureTimeIndex, snapshots, allocated);
+    this.byNewDepartureTime = copy(newDepartureTimeIndex, snapshots, allocated);
+  }
+
+  /**
+   * Gets the version of the registry this board shows.
+   *
+   * @return version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the number of departures on the board.
+   *
+   * @return number of departures
+   */
+  public int size() {
+    return byDepartureTime.size();
+  }
+
+  /**
+   * Gets the departures on the board sorted by departure time.
+   *
+   * @return an unmodifiable list of the departures
+   */
+  public List<TrainDepartureSnapshot> getTrainDepartures() {
+    return byDepartureTime;
+  }
+
+  /**
+   * Gets the departures on the board in the given order.
+   *
+   * @param order the order of the departures
+   * @return an unmodifiable list of the departures
+   */
+  public List<TrainDepartureSnapshot> getTrainDepartures(DepartureOrder order) {
+    return order == DepartureOrder.DEPARTURE_TIME ? byDepartureTime : byNewDepartureTime;
+  }
+
+  /**
+   * Copies the departures to a list of snapshots. Each departure is only copied once, so both
+   * lists share the same snapshot objects.
+   */
+  private static List<TrainDepartureSnapshot> copy(Collection<TrainDeparture> trainDepartures,
+      IdentityHashMap<TrainDeparture, TrainDepartureSnapshot> snapshots,
+      Predicate<TrainDeparture> allocated) {
+    List<TrainDepartureSnapshot> list = new ArrayList<>(trainDepartures.size());
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      list.add(snapshots.computeIfAbsent(trainDeparture, departure ->
+          new TrainDepartureSnapshot(departure, allocated.test(departure))));
+    }
+    return Collections.unmodifiableList(list);
+  }
+}
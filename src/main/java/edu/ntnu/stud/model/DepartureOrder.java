@@ -0,0 +1,56 @@
+package edu.ntnu.stud.model;
+
+import java.util.Comparator;
+
+/**
+ * The orders the departures in a TrainDepartureRegistry can be read in.
+ *
+ * <p>DEPARTURE_TIME orders the departures by the service date and the scheduled departure time,
+ * while NEW_DEPARTURE_TIME orders them by the date and time they leave including the delay, so a
+ * departure delayed past midnight comes after the departures of that evening. Departures with the
+ * same time are ordered by train number, so the order is always the same.
+ */
+public enum DepartureOrder {
+  DEPARTURE_TIME(DepartureOrder::compareDepartureTimes),
+  NEW_DEPARTURE_TIME(DepartureOrder::compareNewDepartureTimes);
+
+  private final Comparator<TrainDeparture> comparator;
+
+  DepartureOrder(Comparator<TrainDeparture> comparator) {
+    this.comparator = comparator;
+  }
+
+  /**
+   * Compares the service dates and departure times, and then the train numbers. The date and time
+   * are compared as one number of minutes, which is much faster than comparing a LocalDate and a
+   * LocalTime, since the sorted indexes of the registry compare departures on every change.
+   */
+  private static int compareDepartureTimes(TrainDeparture first, TrainDeparture second) {
+    int compared = Long.compare(first.getDepartureMinute(), second.getDepartureMinute());
+    return compared != 0 ? compared
+        : Integer.compare(first.getTrainNumber(), second.getTrainNumber());
+  }
+
+  /**
+   * Compares the new departure dates and times, then the train numbers and then the service
+   * dates, in minutes like compareDepartureTimes. Departures with the same train number and new
+   * departure time have different service dates, so they are ordered by departure time.
+   */
+  private static int compareNewDepartureTimes(TrainDeparture first, TrainDeparture second) {
+    int compared = Long.compare(first.getNewDepartureMinute(), second.getNewDepartureMinute());
+    if (compared == 0) {
+      compared = Integer.compare(first.getTrainNumber(), second.getTrainNumber());
+    }
+    return compared != 0 ? compared
+        : Long.compare(first.getDepartureMinute(), second.getDepartureMinute());
+  }
+
+  /**
+   * Gets the comparator that orders departures in this order.
+   *
+   * @return comparator for this order
+   */
+  public Comparator<TrainDeparture> getComparator() {
+    return comparator;
+  }
+}
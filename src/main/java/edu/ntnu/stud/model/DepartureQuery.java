@@ -0,0 +1,277 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A selection of the departures in a TrainDepartureRegistry by line, destination, track and time
+ * window.
+ *
+ * <p>A query without any conditions selects every departure. Each condition that is added must
+ * also match, so a query with a line and a time window selects the departures of that line that
+ * leave in the window. Lines and destinations are compared without caring about upper and lower
+ * case, like the search by destination. The time window is compared with the new departure time,
+ * so a departure that is already delayed is selected by the time it will actually leave. A track
+ * of -1 selects the departures that have no track yet.
+ *
+ * <p>The matching departures are sorted by new departure time, or by departure time if that order
+ * is chosen, and a limit can be set to only get the first of them. The registry chooses which of
+ * its indexes to read the departures from, see TrainDepartureRegistry.explainTrainDepartures.
+ *
+ * <p>Queries cannot be changed. The methods that add a condition return a new query, so a query
+ * can be kept and used again.
+ */
+public class DepartureQuery {
+  private final String line;
+  private final String destination;
+  private final Integer track;
+  private final LocalDateTime from;
+  private final LocalDateTime to;
+  private final long fromMinute;
+  private final long toMinute;
+  private final DepartureOrder order;
+  private final int limit;
+
+  /**
+   * Constructs a DepartureQuery object that selects every departure.
+   */
+  public DepartureQuery() {
+    this(null, null, null, null, null, DepartureOrder.NEW_DEPARTURE_TIME, Integer.MAX_VALUE);
+  }
+
+  private DepartureQuery(String line, String destination, Integer track, LocalDateTime from,
+      LocalDateTime to, DepartureOrder order, int limit) {
+    this.line = line;
+    this.destination = destination;
+    this.track = track;
+    this.from = from;
+    this.to = to;
+    this.fromMinute = from == null ? 0 : TrainDeparture.searchKey(from).getNewDepartureMinute();
+    this.toMinute = to == null ? 0 : TrainDeparture.searchKey(to).getNewDepartureMinute();
+    this.order = order;
+    this.limit = limit;
+  }
+
+  /**
+   * Gets a query that also requires the departures to operate on the given line.
+   *
+   * @param line the line of the departures
+   * @return the new query
+   * @throws IllegalArgumentException if the line is null or empty
+   */
+  public DepartureQuery withLine(String line) throws IllegalArgumentException {
+    if (line == null || line.isEmpty()) {
+      throw new IllegalArgumentException("Line cannot be null or empty");
+    }
+    return new DepartureQuery(line, destination, track, from, to, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires the departures to go to the given destination.
+   *
+   * @param destination the destination of the departures
+   * @return the new query
+   * @throws IllegalArgumentException if the destination is null or empty
+   */
+  public DepartureQuery withDestination(String destination) throws IllegalArgumentException {
+    if (destination == null || destination.isEmpty()) {
+      throw new IllegalArgumentException("Destination cannot be null or empty");
+    }
+    return new DepartureQuery(line, destination, track, from, to, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires the departures to leave from the given track.
+   *
+   * @param track the track of the departures, or -1 for the departures without a track
+   * @return the new query
+   * @throws IllegalArgumentException if the track is not a positive number or -1
+   */
+  public DepartureQuery withTrack(int track) throws IllegalArgumentException {
+    if (track < 1 && track != -1) {
+      throw new IllegalArgumentException("Track must be a positive number or -1");
+    }
+    return new DepartureQuery(line, destination, track, from, to, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires the departures to leave in the given time window, counting
+   * their delay. LocalDateTime.MAX can be used as the end to select every departure leaving at or
+   * after the start.
+   *
+   * @param from the start of the window, inclusive
+   * @param to the end of the window, exclusive
+   * @return the new query
+   * @throws IllegalArgumentException if from or to is null or if to is before from
+   */
+  public DepartureQuery withTimeWindow(LocalDateTime from, LocalDateTime to)
+      throws IllegalArgumentException {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Time cannot be null");
+    }
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("End time cannot be before start time");
+    }
+    return new DepartureQuery(line, destination, track, from, to, order, limit);
+  }
+
+  /**
+   * Gets a query that sorts the departures in the given order instead of by new departure time.
+   *
+   * @param order the order of the departures
+   * @return the new query
+   * @throws IllegalArgumentException if the order is null
+   */
+  public DepartureQuery withOrder(DepartureOrder order) throws IllegalArgumentException {
+    if (order == null) {
+      throw new IllegalArgumentException("Order cannot be null");
+    }
+    return new DepartureQuery(line, destination, track, from, to, order, limit);
+  }
+
+  /**
+   * Gets a query that only selects the first departures in the order of the query.
+   *
+   * @param limit the largest number of departures to select
+   * @return the new query
+   * @throws IllegalArgumentException if the limit is not a positive number
+   */
+  public DepartureQuery withLimit(int limit) throws IllegalArgumentException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit must be a positive number");
+    }
+    return new DepartureQuery(line, destination, track, from, to, order, limit);
+  }
+
+  /**
+   * Gets the line the departures must operate on.
+   *
+   * @return line, or null if any line matches
+   */
+  public String getLine() {
+    return line;
+  }
+
+  /**
+   * Gets the destination the departures must go to.
+   *
+   * @return destination, or null if any destination matches
+   */
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * Gets the track the departures must leave from.
+   *
+   * @return track, -1 for the departures without a track, or null if any track matches
+   */
+  public Integer getTrack() {
+    return track;
+  }
+
+  /**
+   * Gets the start of the time window the departures must leave in.
+   *
+   * @return start of the window, inclusive, or null if there is no time window
+   */
+  public LocalDateTime getFrom() {
+    return from;
+  }
+
+  /**
+   * Gets the end of the time window the departures must leave in.
+   *
+   * @return end of the window, exclusive, or null if there is no time window
+   */
+  public LocalDateTime getTo() {
+    return to;
+  }
+
+  /**
+   * Gets the order the departures are sorted in.
+   *
+   * @return order
+   */
+  public DepartureOrder getOrder() {
+    return order;
+  }
+
+  /**
+   * Gets the largest number of departures the query selects.
+   *
+   * @return limit, or Integer.MAX_VALUE if there is no limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Checks if the query has a time window.
+   *
+   * @return true if the departures must leave in a time window
+   */
+  public boolean hasTimeWindow() {
+    return from != null;
+  }
+
+  /**
+   * Checks if the query has a limit.
+   *
+   * @return true if only the first departures are selected
+   */
+  public boolean hasLimit() {
+    return limit != Integer.MAX_VALUE;
+  }
+
+  /**
+   * Checks if a departure matches every condition of the query. The time window is compared in
+   * whole minutes, which is what departures are set in, so no dates and times are compared.
+   *
+   * @param trainDeparture the departure to check
+   * @return true if the departure is selected by the query
+   */
+  public boolean matches(TrainDeparture trainDeparture) {
+    if (line != null && !trainDeparture.getLine().equalsIgnoreCase(line)) {
+      return false;
+    }
+    if (destination != null && !trainDeparture.getDestination().equalsIgnoreCase(destination)) {
+      return false;
+    }
+    if (track != null && trainDeparture.getTrack() != track) {
+      return false;
+    }
+    if (from != null) {
+      long newDepartureMinute = trainDeparture.getNewDepartureMinute();
+      return newDepartureMinute >= fromMinute && newDepartureMinute < toMinute;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the conditions, order and limit of the query as text, like
+   * "line=L1 track=- from=2024-03-04T10:00 to=2024-03-04T10:30 order=NEW_DEPARTURE_TIME limit=5".
+   *
+   * @return the query as text
+   */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    if (line != null) {
+      text.append("line=").append(line).append(' ');
+    }
+    if (destination != null) {
+      text.append("destination=").append(destination).append(' ');
+    }
+    if (track != null) {
+      text.append("track=").append(track == -1 ? "-" : track).append(' ');
+    }
+    if (from != null) {
+      text.append("from=").append(from).append(" to=").append(to).append(' ');
+    }
+    text.append("order=").append(order);
+    if (hasLimit()) {
+      text.append(" limit=").append(limit);
+    }
+    return text.toString();
+  }
+}
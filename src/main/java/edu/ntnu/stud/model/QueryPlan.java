@@ -0,0 +1,220 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How a TrainDepartureRegistry found the departures matching a DepartureQuery, as given by
+ * explainTrainDepartures.
+ *
+ * <p>Every service day chooses the index to read on its own, since a line can have many
+ * departures on one day and few on another. For each day that was searched, the plan has the
+ * index that was read, the number of departures each index the query could use has in the time
+ * window, how many departures were read from the chosen index and how many of them matched the
+ * whole query. The counts of the indexes are only counted up to the count of the best index found
+ * before, so a count that is equal to that count means the index has at least that many
+ * departures.
+ *
+ * <p>A plan is filled while the registry searches, and cannot be changed after it is returned.
+ */
+public class QueryPlan {
+
+  /**
+   * The indexes of a service day the departures of a query can be read from.
+   */
+  public enum Index {
+    /**
+     * The departures of the day sorted by new departure time. Only used by queries without a
+     * line, destination or track, since the other indexes never have more departures.
+     */
+    TIME,
+    /**
+     * The departures of the line of the query.
+     */
+    LINE,
+    /**
+     * The departures to the destination of the query.
+     */
+    DESTINATION,
+    /**
+     * The departures from the track of the query, or the departures without a track.
+     */
+    TRACK
+  }
+
+  /**
+   * How the departures of one service day were found.
+   */
+  public static final class DayPlan {
+    private final LocalDate serviceDate;
+    private final Index index;
+    private final Map<Index, Integer> counts;
+    private final int read;
+    private final int matched;
+
+    private DayPlan(LocalDate serviceDate, Index index, Map<Index, Integer> counts, int read,
+        int matched) {
+      this.serviceDate = serviceDate;
+      this.index = index;
+      this.counts = Collections.unmodifiableMap(new EnumMap<>(counts));
+      this.read = read;
+      this.matched = matched;
+    }
+
+    /**
+     * Gets the service date of the day.
+     *
+     * @return service date
+     */
+    public LocalDate getServiceDate() {
+      return serviceDate;
+    }
+
+    /**
+     * Gets the index the departures were read from.
+     *
+     * @return index
+     */
+    public Index getIndex() {
+      return index;
+    }
+
+    /**
+     * Gets the number of departures in the time window of every index the query could use.
+     *
+     * @return an unmodifiable map from the index to its count
+     */
+    public Map<Index, Integer> getCounts() {
+      return counts;
+    }
+
+    /**
+     * Gets the number of departures read from the chosen index.
+     *
+     * @return number of departures read
+     */
+    public int getRead() {
+      return read;
+    }
+
+    /**
+     * Gets the number of departures read that matched the query.
+     *
+     * @return number of matching departures
+     */
+    public int getMatched() {
+      return matched;
+    }
+
+    /**
+     * Gets the plan of the day as text, like "2024-03-04: LINE, read 12, matched 3, counts
+     * {LINE=12, DESTINATION=40}".
+     *
+     * @return the plan of the day as text
+     */
+    @Override
+    public String toString() {
+      return serviceDate + ": " + index + ", read " + read + ", matched " + matched
+          + ", counts " + counts;
+    }
+  }
+
+  private final DepartureQuery query;
+  private final List<DayPlan> days = new ArrayList<>();
+  private List<TrainDeparture> trainDepartures = Collections.emptyList();
+
+  /**
+   * Constructs an empty QueryPlan object for the given query.
+   *
+   * @param query the query that is searched for
+   */
+  QueryPlan(DepartureQuery query) {
+    this.query = query;
+  }
+
+  /**
+   * Adds how the departures of a service day were found.
+   *
+   * @param serviceDate the service date of the day
+   * @param index the index the departures were read from
+   * @param counts the number of departures in the time window of every index the query could use
+   * @param read the number of departures read from the index
+   * @param matched the number of departures that matched the query
+   */
+  void addDay(LocalDate serviceDate, Index index, Map<Index, Integer> counts, int read,
+      int matched) {
+    days.add(new DayPlan(serviceDate, index, counts, read, matched));
+  }
+
+  /**
+   * Sets the departures that were found.
+   *
+   * @param trainDepartures the departures matching the query, in the order of the query
+   */
+  void setTrainDepartures(List<TrainDeparture> trainDepartures) {
+    this.trainDepartures = Collections.unmodifiableList(trainDepartures);
+  }
+
+  /**
+   * Gets the query that was searched for.
+   *
+   * @return query
+   */
+  public DepartureQuery getQuery() {
+    return query;
+  }
+
+  /**
+   * Gets how the departures of each service day that was searched were found, sorted by date.
+   * Days that cannot have departures in the time window of the query, and days after the limit of
+   * the query was reached, are not searched.
+   *
+   * @return an unmodifiable list of the plans of the days
+   */
+  public List<DayPlan> getDays() {
+    return Collections.unmodifiableList(days);
+  }
+
+  /**
+   * Gets the departures that matched the query, like searchTrainDepartures gives them.
+   *
+   * @return an unmodifiable list of the departures, in the order of the query
+   */
+  public List<TrainDeparture> getTrainDepartures() {
+    return trainDepartures;
+  }
+
+  /**
+   * Gets the number of departures read from the indexes on all days.
+   *
+   * @return number of departures read
+   */
+  public int getRead() {
+    int read = 0;
+    for (DayPlan day : days) {
+      read += day.getRead();
+    }
+    return read;
+  }
+
+  /**
+   * Gets the plan as text, with the query and the number of departures found and read on the
+   * first line, and the plan of each day on a line of its own.
+   *
+   * @return the plan as text
+   */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    text.append(query).append(": ").append(trainDepartures.size()).append(" departures, read ")
+        .append(getRead());
+    for (DayPlan day : days) {
+      text.append('\n').append(day);
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,163 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * One change made to a TrainDepartureRegistry, as published by a RegistryChangeFeed.
+ *
+ * <p>Which fields are set depends on the type of the change. Changes cannot be changed, so they
+ * can be read by any number of threads.
+ */
+public final class RegistryChange {
+
+  /**
+   * The types of changes made to a registry.
+   */
+  public enum Type {
+    /**
+     * A departure was added. The departure is set.
+     */
+    ADDED,
+    /**
+     * A delay was set for a departure. The service date, train number and delay are set.
+     */
+    DELAYED,
+    /**
+     * A track was assigned to a departure. The service date, train number and track are set.
+     */
+    TRACK_ASSIGNED,
+    /**
+     * The departures that left before a date and time were removed. The expiry time is set.
+     */
+    EXPIRED
+  }
+
+  private final Type type;
+  private final long version;
+  private final TrainDepartureSnapshot departure;
+  private final LocalDate serviceDate;
+  private final int trainNumber;
+  private final int track;
+  private final LocalTime delay;
+  private final LocalDateTime expiredBefore;
+
+  private RegistryChange(Type type, long version, TrainDepartureSnapshot departure,
+      LocalDate serviceDate, int trainNumber, int track, LocalTime delay,
+      LocalDateTime expiredBefore) {
+    this.type = type;
+    this.version = version;
+    this.departure = departure;
+    this.serviceDate = serviceDate;
+    this.trainNumber = trainNumber;
+    this.track = track;
+    this.delay = delay;
+    this.expiredBefore = expiredBefore;
+  }
+
+  static RegistryChange added(TrainDeparture trainDeparture, long version) {
+    return new RegistryChange(Type.ADDED, version, new TrainDepartureSnapshot(trainDeparture),
+        trainDeparture.getServiceDate(), trainDeparture.getTrainNumber(),
+        trainDeparture.getTrack(), trainDeparture.getDelay(), null);
+  }
+
+  static RegistryChange delayed(LocalDate serviceDate, int trainNumber, LocalTime delay,
+      long version) {
+    return new RegistryChange(Type.DELAYED, version, null, serviceDate, trainNumber, -1, delay,
+        null);
+  }
+
+  static RegistryChange trackAssigned(LocalDate serviceDate, int trainNumber, int track,
+      long version) {
+    return new RegistryChange(Type.TRACK_ASSIGNED, version, null, serviceDate, trainNumber,
+        track, null, null);
+  }
+
+  static RegistryChange expired(LocalDateTime expiredBefore, long version) {
+    return new RegistryChange(Type.EXPIRED, version, null, null, -1, -1, null, expiredBefore);
+  }
+
+  /**
+   * Gets the type of the change.
+   *
+   * @return type
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Gets the version of the registry after the change.
+   *
+   * @return version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets a copy of the departure that was added, as it was when it was added.
+   *
+   * @return the added departure, or null if the change is not ADDED
+   */
+  public TrainDepartureSnapshot getDeparture() {
+    return departure;
+  }
+
+  /**
+   * Gets the service date of the departure that was changed.
+   *
+   * @return service date, or null if the change is EXPIRED
+   */
+  public LocalDate getServiceDate() {
+    return serviceDate;
+  }
+
+  /**
+   * Gets the train number of the departure that was changed.
+   *
+   * @return train number, or -1 if the change is EXPIRED
+   */
+  public int getTrainNumber() {
+    return trainNumber;
+  }
+
+  /**
+   * Gets the track of the departure. For an added departure, it is the track it was added with.
+   *
+   * @return track, or -1 if the change is DELAYED or EXPIRED or no track is assigned
+   */
+  public int getTrack() {
+    return track;
+  }
+
+  /**
+   * Gets the delay of the departure. For an added departure, it is the delay it was added with.
+   *
+   * @return delay, or null if the change is TRACK_ASSIGNED or EXPIRED
+   */
+  public LocalTime getDelay() {
+    return delay;
+  }
+
+  /**
+   * Gets the date and time the removed departures left before.
+   *
+   * @return expiry time, or null if the change is not EXPIRED
+   */
+  public LocalDateTime getExpiredBefore() {
+    return expiredBefore;
+  }
+
+  @Override
+  public String toString() {
+    return switch (type) {
+      case ADDED -> "ADDED " + serviceDate + " " + trainNumber + " @" + version;
+      case DELAYED -> "DELAYED " + serviceDate + " " + trainNumber + " +" + delay + " @" + version;
+      case TRACK_ASSIGNED -> "TRACK_ASSIGNED " + serviceDate + " " + trainNumber + " track "
+          + track + " @" + version;
+      case EXPIRED -> "EXPIRED before " + expiredBefore + " @" + version;
+    };
+  }
+}
@@ -0,0 +1,184 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes the changes made to a TrainDepartureRegistry to any number of subscribers, so other
+ * systems, like platform signs or a passenger app, can follow the registry without reading all
+ * departures again and again.
+ *
+ * <p>The feed is a RegistryListener. The changes are collected while the registry holds its write
+ * lock, and when the lock is released they are published as one ChangeBatch, so a bulk change,
+ * like adding a whole timetable or delaying every departure of a line, reaches the subscribers as
+ * one item. The batches are delivered to each subscriber on the threads of an executor, through
+ * a buffer of its own that holds a limited number of batches.
+ *
+ * <p>Publishing never waits for a subscriber. When the buffer of a subscriber is full, because it
+ * has not requested more batches or takes too long with them, the batch is dropped for that
+ * subscriber only and counted. The subscriber sees that changes are missing by the previous
+ * version of the next batch it gets, and should then read the registry again, for example with
+ * getDepartureBoard, and ignore the batches up to the version of the board. A new subscriber
+ * should do the same when it starts.
+ */
+public class RegistryChangeFeed implements RegistryListener, Flow.Publisher<ChangeBatch>,
+    AutoCloseable {
+  /**
+   * The number of batches buffered for each subscriber when no buffer size is given.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 256;
+
+  private final TrainDepartureRegistry registry;
+  private final SubmissionPublisher<ChangeBatch> publisher;
+  private final LongAdder droppedCount;
+  private List<RegistryChange> pending;
+  private long lastPublishedVersion;
+
+  private RegistryChangeFeed(TrainDepartureRegistry registry, Executor executor,
+      int bufferSize) {
+    this.registry = registry;
+    this.lastPublishedVersion = registry.getVersion();
+    this.publisher = new SubmissionPublisher<>(executor, bufferSize);
+    this.droppedCount = new LongAdder();
+    this.pending = new ArrayList<>();
+  }
+
+  /**
+   * Opens a feed of the changes made to the registry, with the default buffer size, that
+   * delivers the batches on the common fork join pool.
+   *
+   * @param registry the registry to publish the changes of
+   * @return the opened feed
+   * @throws IllegalArgumentException if the registry is null
+   */
+  public static RegistryChangeFeed open(TrainDepartureRegistry registry)
+      throws IllegalArgumentException {
+    return open(registry, ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Opens a feed of the changes made to the registry. Only the changes made after the feed is
+   * opened are published.
+   *
+   * @param registry the registry to publish the changes of
+   * @param executor the executor the batches are delivered on, which should not run them on the
+   *                 thread that submits them, or the subscribers slow down the registry
+   * @param bufferSize the largest number of batches buffered for each subscriber
+   * @return the opened feed
+   * @throws IllegalArgumentException if the registry or the executor is null or if the buffer
+   *                                  size is not a positive number
+   */
+  public static RegistryChangeFeed open(TrainDepartureRegistry registry, Executor executor,
+      int bufferSize) throws IllegalArgumentException {
+    if (registry == null || executor == null) {
+      throw new IllegalArgumentException("Registry and executor cannot be null");
+    }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be a positive number");
+    }
+    RegistryChangeFeed feed = new RegistryChangeFeed(registry, executor, bufferSize);
+    registry.addListener(feed);
+    return feed;
+  }
+
+  /**
+   * Adds a subscriber. It gets the batches published after it has subscribed, as many as it
+   * requests.
+   *
+   * @param subscriber the subscriber to add
+   * @throws NullPointerException if the subscriber is null, as required by Flow.Publisher
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super ChangeBatch> subscriber) {
+    publisher.subscribe(subscriber);
+  }
+
+  /**
+   * Gets the number of subscribers.
+   *
+   * @return number of subscribers
+   */
+  public int getSubscriberCount() {
+    return publisher.getNumberOfSubscribers();
+  }
+
+  /**
+   * Gets the number of batches that were dropped because the buffer of a subscriber was full,
+   * counted once for every subscriber that missed the batch.
+   *
+   * @return number of dropped batches
+   */
+  public long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  /**
+   * Stops listening to the registry. The subscribers get the batches that are already buffered,
+   * and are then told that the feed is complete.
+   */
+  @Override
+  public void close() {
+    registry.removeListener(this);
+    publisher.close();
+  }
+
+  @Override
+  public synchronized void departureAdded(TrainDeparture trainDeparture, long version) {
+    pending.add(RegistryChange.added(trainDeparture, version));
+  }
+
+  @Override
+  public synchronized void trackAssigned(LocalDate serviceDate, int trainNumber, int track,
+      long version) {
+    pending.add(RegistryChange.trackAssigned(serviceDate, trainNumber, track, version));
+  }
+
+  @Override
+  public synchronized void delaySet(LocalDate serviceDate, int trainNumber, LocalTime delay,
+      long version) {
+    pending.add(RegistryChange.delayed(serviceDate, trainNumber, delay, version));
+  }
+
+  @Override
+  public synchronized void passedDeparturesRemoved(LocalDateTime currentDateTime, long version) {
+    pending.add(RegistryChange.expired(currentDateTime, version));
+  }
+
+  /**
+   * Publishes the changes collected since the last batch. If another thread has made a change in
+   * the meantime, its changes are published in the same batch. Offering a batch does not wait
+   * for any subscriber, so it is done while holding the lock of the feed, which keeps the
+   * batches in the order of the changes.
+   *
+   * <p>The previous version of a batch is the version of the last batch that was published, so
+   * a subscriber only sees a gap when it has missed a batch. Removing the passed departures tells
+   * the listeners also when nothing was removed, without a new version. Such changes are not
+   * published on their own, since nothing changed.
+   */
+  @Override
+  public synchronized void changeCommitted() {
+    if (pending.isEmpty() || publisher.isClosed()) {
+      return;
+    }
+    List<RegistryChange> changes = pending;
+    pending = new ArrayList<>();
+    long version = changes.get(changes.size() - 1).getVersion();
+    if (version == lastPublishedVersion) {
+      return;
+    }
+    ChangeBatch batch = new ChangeBatch(lastPublishedVersion, changes);
+    lastPublishedVersion = version;
+    publisher.offer(batch, (subscriber, dropped) -> {
+      droppedCount.increment();
+      return false;
+    });
+  }
+}
@@ -0,0 +1,82 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * A listener that is told about every change made to a TrainDepartureRegistry.
+ *
+ * <p>The change methods are called while the registry holds its write lock, right after the
+ * change is made, so the listeners see the changes in exactly the order they were made and with
+ * the version of the registry after the change. They must be quick and must not call methods of
+ * the registry. When the registry has released the lock, changeCommitted is called on the same
+ * thread, which is where a listener can do slower work, like waiting for a file to be written.
+ *
+ * <p>All methods except trackAllocated do nothing by default, so a listener only has to implement
+ * the methods it needs.
+ */
+public interface RegistryListener {
+
+  /**
+   * Called when a departure has been added to the registry.
+   *
+   * @param trainDeparture the departure that was added, with its track and delay
+   * @param version the version of the registry after the change
+   */
+  default void departureAdded(TrainDeparture trainDeparture, long version) {
+  }
+
+  /**
+   * Called when a track has been assigned to a departure.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @param track the track that was assigned
+   * @param version the version of the registry after the change
+   */
+  default void trackAssigned(LocalDate serviceDate, int trainNumber, int track, long version) {
+  }
+
+  /**
+   * Called when a track chosen by a TrackAllocator has been assigned to a departure. By default
+   * it calls trackAssigned, so a listener that does not care who chose the track sees it as any
+   * other assigned track.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @param track the track that was assigned
+   * @param version the version of the registry after the change
+   */
+  default void trackAllocated(LocalDate serviceDate, int trainNumber, int track, long version) {
+    trackAssigned(serviceDate, trainNumber, track, version);
+  }
+
+  /**
+   * Called when a delay has been set for a departure.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @param delay the delay that was set
+   * @param version the version of the registry after the change
+   */
+  default void delaySet(LocalDate serviceDate, int trainNumber, LocalTime delay, long version) {
+  }
+
+  /**
+   * Called when the departures that left before the given date and time have been removed, also
+   * when no departures were removed.
+   *
+   * @param currentDateTime the date and time the departures were removed before
+   * @param version the version of the registry after the change
+   */
+  default void passedDeparturesRemoved(LocalDateTime currentDateTime, long version) {
+  }
+
+  /**
+   * Called after a change has been made and the registry has released its write lock, on the
+   * thread that made the change.
+   */
+  default void changeCommitted() {
+  }
+}
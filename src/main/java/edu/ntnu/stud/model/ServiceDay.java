@@ -0,0 +1,565 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The departures of one service date in a TrainDepartureRegistry.
+ *
+ * <p>Each service day has its own map, sorted indexes, destination and line indexes and track
+ * occupancy, so reading the departures of one day only looks at that day, and a day where every
+ * departure has left can be dropped from the registry as a whole instead of removing its
+ * departures one by one.
+ * Train numbers are unique within a day, but the same train number can run on many days.
+ *
+ * <p>The destination and line indexes also keep the departures of each text sorted by new
+ * departure time, so the next departure to a destination or on a line is found with one search
+ * in a tree. The departures without a track are kept in an index of their own, sorted the same
+ * way, so they can be found without reading the departures that have a track. The departures
+ * whose track was chosen by a TrackAllocator are kept in a set, so they are dropped with the day.
+ *
+ * <p>A DepartureQuery is answered from the index that has the fewest departures in the time window
+ * of the query, out of the indexes the conditions of the query can use. The other conditions are
+ * only checked for the departures read from that index.
+ *
+ * <p>All departures of a day leave at or after midnight at the start of the day. A delay can move
+ * a departure into the next day, so the occupations of the tracks of a day can overlap with the
+ * days before and after it.
+ */
+class ServiceDay {
+  /**
+   * When more than one in this many departures of the day are delayed at once, the new departure
+   * time index is built again from the sorted departures instead of moving each departure.
+   */
+  private static final int REBUILD_FRACTION = 8;
+
+  private final LocalDate date;
+  private final TrainDepartureMap trainDepartureMap;
+  private final TreeSet<TrainDeparture> departureTimeIndex;
+  private final TreeSet<TrainDeparture> newDepartureTimeIndex;
+  private final TreeSet<TrainDeparture> unassignedIndex;
+  private final TextIndex destinationIndex;
+  private final TextIndex lineIndex;
+  private final TrackOccupancy trackOccupancy;
+  private final Set<TrainDeparture> allocated;
+
+  /**
+   * Constructs an empty ServiceDay object.
+   *
+   * @param date the service date of the departures
+   * @param dwellMinutes the number of minutes a departure occupies its track
+   */
+  ServiceDay(LocalDate date, int dwellMinutes) {
+    this.date = date;
+    trainDepartureMap = new TrainDepartureMap();
+    departureTimeIndex = new TreeSet<>(DepartureOrder.DEPARTURE_TIME.getComparator());
+    newDepartureTimeIndex = new TreeSet<>(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+    unassignedIndex = new TreeSet<>(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+    destinationIndex = new TextIndex(TrainDeparture::getDestination);
+    lineIndex = new TextIndex(TrainDeparture::getLine);
+    trackOccupancy = new TrackOccupancy(dwellMinutes);
+    allocated = Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  /**
+   * Gets the service date of the departures.
+   *
+   * @return service date
+   */
+  LocalDate getDate() {
+    return date;
+  }
+
+  /**
+   * Gets the number of departures of the day.
+   *
+   * @return number of departures
+   */
+  int size() {
+    return trainDepartureMap.size();
+  }
+
+  /**
+   * Checks if the day has no departures.
+   *
+   * @return true if there are no departures
+   */
+  boolean isEmpty() {
+    return trainDepartureMap.isEmpty();
+  }
+
+  /**
+   * Gets the departure with the given train number.
+   *
+   * @param trainNumber the number of the train
+   * @return the departure, or null if the train does not run on this day
+   */
+  TrainDeparture get(int trainNumber) {
+    return trainDepartureMap.get(trainNumber);
+  }
+
+  /**
+   * Checks if a departure with the given train number runs on this day.
+   *
+   * @param trainNumber the number of the train
+   * @return true if the train runs on this day
+   */
+  boolean containsKey(int trainNumber) {
+    return trainDepartureMap.containsKey(trainNumber);
+  }
+
+  /**
+   * Gets the departures of the day sorted in the given order.
+   *
+   * @param order the order of the departures
+   * @return the sorted index for the order, which must not be changed
+   */
+  SortedSet<TrainDeparture> getTrainDepartures(DepartureOrder order) {
+    return order == DepartureOrder.DEPARTURE_TIME ? departureTimeIndex : newDepartureTimeIndex;
+  }
+
+  /**
+   * Gets the departures of the day with the given destination.
+   *
+   * @param destination the destination to search for
+   * @return the departures sorted by departure time
+   */
+  List<TrainDeparture> findByDestination(String destination) {
+    return destinationIndex.find(destination);
+  }
+
+  /**
+   * Gets the departures of the day with a destination that starts with the given prefix.
+   *
+   * @param prefix the start of the destination to search for
+   * @return the departures sorted by departure time
+   */
+  List<TrainDeparture> findByDestinationPrefix(String prefix) {
+    return destinationIndex.findByPrefix(prefix);
+  }
+
+  /**
+   * Gets the departures of the day that match the query, in the order of the query and at most as
+   * many as its limit. Every index the conditions of the query can use is sorted by new departure
+   * time, so only the part of it inside the time window is looked at. Every departure of the day
+   * leaves before midnight at the end of the next day, so the window is first cut to those two
+   * days.
+   *
+   * <p>The index with the fewest departures in the window is read. The new departure time index
+   * has every departure of the day, so it is only read when the query has no line, destination or
+   * track. The other indexes are counted from the one with the fewest departures in total, and
+   * each count stops at the count of the best index found so far, so counting takes about as long
+   * as reading the best index once for each index. When the query is sorted by new departure
+   * time, reading stops when the limit is reached.
+   *
+   * @param query the conditions the departures must match
+   * @param plan the plan to add how the departures were found to, or null
+   * @return the matching departures in the order of the query
+   */
+  List<TrainDeparture> find(DepartureQuery query, QueryPlan plan) {
+    LocalDateTime dayStart = date.atStartOfDay();
+    LocalDateTime dayEnd = date.plusDays(2).atStartOfDay();
+    LocalDateTime windowStart = query.hasTimeWindow() && query.getFrom().isAfter(dayStart)
+        ? query.getFrom() : dayStart;
+    LocalDateTime windowEnd = query.hasTimeWindow() && query.getTo().isBefore(dayEnd)
+        ? query.getTo() : dayEnd;
+    if (!windowStart.isBefore(windowEnd)) {
+      return new ArrayList<>();
+    }
+    TrainDeparture from = TrainDeparture.searchKey(windowStart);
+    TrainDeparture to = TrainDeparture.searchKey(windowEnd);
+
+    Map<QueryPlan.Index, Collection<TrainDeparture>> windows = new EnumMap<>(QueryPlan.Index.class);
+    Map<QueryPlan.Index, Integer> sizes = new EnumMap<>(QueryPlan.Index.class);
+    if (query.getLine() != null) {
+      windows.put(QueryPlan.Index.LINE, lineIndex.findBetween(query.getLine(), from, to));
+      sizes.put(QueryPlan.Index.LINE, lineIndex.count(query.getLine()));
+    }
+    if (query.getDestination() != null) {
+      windows.put(QueryPlan.Index.DESTINATION,
+          destinationIndex.findBetween(query.getDestination(), from, to));
+      sizes.put(QueryPlan.Index.DESTINATION, destinationIndex.count(query.getDestination()));
+    }
+    if (query.getTrack() != null && query.getTrack() == -1) {
+      windows.put(QueryPlan.Index.TRACK, unassignedIndex.subSet(from, to));
+      sizes.put(QueryPlan.Index.TRACK, unassignedIndex.size());
+    } else if (query.getTrack() != null) {
+      windows.put(QueryPlan.Index.TRACK, trackOccupancy.getDepartures(query.getTrack(),
+          Math.toIntExact(from.getNewDepartureMinute()),
+          Math.toIntExact(to.getNewDepartureMinute())));
+      sizes.put(QueryPlan.Index.TRACK, trackOccupancy.count(query.getTrack()));
+    }
+
+    if (windows.isEmpty()) {
+      windows.put(QueryPlan.Index.TIME, newDepartureTimeIndex.subSet(from, to));
+      sizes.put(QueryPlan.Index.TIME, newDepartureTimeIndex.size());
+    }
+    List<QueryPlan.Index> indexes = new ArrayList<>(windows.keySet());
+    indexes.sort(Comparator.comparing(sizes::get));
+    Map<QueryPlan.Index, Integer> counts = new EnumMap<>(QueryPlan.Index.class);
+    QueryPlan.Index best = null;
+    int bestCount = Integer.MAX_VALUE;
+    for (QueryPlan.Index index : indexes) {
+      int count = query.hasTimeWindow() ? count(windows.get(index), bestCount) : sizes.get(index);
+      counts.put(index, count);
+      if (count < bestCount) {
+        best = index;
+        bestCount = count;
+      }
+    }
+
+    boolean sorted = query.getOrder() == DepartureOrder.NEW_DEPARTURE_TIME;
+    List<TrainDeparture> trainDepartures = new ArrayList<>();
+    int read = 0;
+    for (TrainDeparture trainDeparture : windows.get(best)) {
+      if (sorted && trainDepartures.size() == query.getLimit()) {
+        break;
+      }
+      read++;
+      if (query.matches(trainDeparture)) {
+        trainDepartures.add(trainDeparture);
+      }
+    }
+    if (!sorted) {
+      trainDepartures.sort(query.getOrder().getComparator());
+      if (trainDepartures.size() > query.getLimit()) {
+        trainDepartures.subList(query.getLimit(), trainDepartures.size()).clear();
+      }
+    }
+    if (plan != null) {
+      plan.addDay(date, best, counts, read, trainDepartures.size());
+    }
+    return trainDepartures;
+  }
+
+  /**
+   * Counts the departures in the collection, but stops at the given largest count.
+   */
+  private static int count(Collection<TrainDeparture> trainDepartures, int largest) {
+    int count = 0;
+    for (TrainDeparture ignored : trainDepartures) {
+      if (count == largest) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets the first departures of the day that are sorted at or after the search key by new
+   * departure time. Only the departures that are returned are read from the index.
+   *
+   * @param from the search key to start from, see TrainDeparture.searchKey
+   * @param count the largest number of departures to get
+   * @return at most count departures sorted by new departure time
+   */
+  List<TrainDeparture> findNext(TrainDeparture from, int count) {
+    List<TrainDeparture> trainDepartures = new ArrayList<>(Math.min(count, size()));
+    for (TrainDeparture trainDeparture : newDepartureTimeIndex.tailSet(from)) {
+      if (trainDepartures.size() == count) {
+        break;
+      }
+      trainDepartures.add(trainDeparture);
+    }
+    return trainDepartures;
+  }
+
+  /**
+   * Gets the first departure of the day to the given destination that is sorted at or after the
+   * search key by new departure time.
+   *
+   * @param destination the destination, ignoring upper and lower case
+   * @param from the search key to start from, see TrainDeparture.searchKey
+   * @return the departure, or null if there is none
+   */
+  TrainDeparture findNextByDestination(String destination, TrainDeparture from) {
+    return destinationIndex.findNext(destination, from);
+  }
+
+  /**
+   * Gets the first departure of the day on the given line that is sorted at or after the search
+   * key by new departure time.
+   *
+   * @param line the line, ignoring upper and lower case
+   * @param from the search key to start from, see TrainDeparture.searchKey
+   * @return the departure, or null if there is none
+   */
+  TrainDeparture findNextByLine(String line, TrainDeparture from) {
+    return lineIndex.findNext(line, from);
+  }
+
+  /**
+   * Finds the first departure of the day to every destination, or on every line, that is sorted at
+   * or after the search key by new departure time, and keeps it in the map if it is earlier than
+   * the departure found so far. A destination or line whose departure in the map leaves before
+   * the day starts is not searched, since every departure of the day leaves after its start.
+   *
+   * @param byLine true to find the first departure of every line instead of every destination
+   * @param from the search key to start from, see TrainDeparture.searchKey
+   * @param next the first departure found so far for each destination or line in lower case
+   */
+  void findNextOfEach(boolean byLine, TrainDeparture from, Map<String, TrainDeparture> next) {
+    (byLine ? lineIndex : destinationIndex).findNextOfEach(from, date.atStartOfDay(), next);
+  }
+
+  /**
+   * Gets the occupation of the tracks by the departures of the day.
+   *
+   * @return track occupancy
+   */
+  TrackOccupancy getTrackOccupancy() {
+    return trackOccupancy;
+  }
+
+  /**
+   * Gets the departures of the day that have no track, sorted by new departure time.
+   *
+   * @return the departures without a track, which must not be changed
+   */
+  SortedSet<TrainDeparture> getUnassigned() {
+    return unassignedIndex;
+  }
+
+  /**
+   * Puts a departure in the map and all indexes. The departure must run on this day and its train
+   * number must not be taken.
+   *
+   * @param trainDeparture the departure to be added
+   */
+  void add(TrainDeparture trainDeparture) {
+    put(trainDeparture);
+    departureTimeIndex.add(trainDeparture);
+    newDepartureTimeIndex.add(trainDeparture);
+    destinationIndex.add(trainDeparture);
+    lineIndex.add(trainDeparture);
+    if (trainDeparture.getTrack() == -1) {
+      unassignedIndex.add(trainDeparture);
+    }
+  }
+
+  /**
+   * Puts a departure in the map and the track occupancy only. Used when many departures are added
+   * to an empty day, which are then put in the sorted indexes with addAllToIndexes.
+   *
+   * @param trainDeparture the departure to be added
+   */
+  void put(TrainDeparture trainDeparture) {
+    trainDepartureMap.put(trainDeparture.getTrainNumber(), trainDeparture);
+    trackOccupancy.occupy(trainDeparture);
+  }
+
+  /**
+   * Fills the empty sorted indexes from the given departures, which have already been put in the
+   * map. The trees are built from sorted lists in one go instead of one departure at a time.
+   *
+   * @param trainDepartures the departures that were put, in any order
+   */
+  void addAllToIndexes(List<TrainDeparture> trainDepartures) {
+    Comparator<TrainDeparture> byDepartureTime = DepartureOrder.DEPARTURE_TIME.getComparator();
+    trainDepartures.sort(byDepartureTime);
+    departureTimeIndex.addAll(new SortedListSet<>(trainDepartures, byDepartureTime));
+    destinationIndex.addAll(trainDepartures);
+    lineIndex.addAll(trainDepartures);
+    Comparator<TrainDeparture> byNewDepartureTime =
+        DepartureOrder.NEW_DEPARTURE_TIME.getComparator();
+    trainDepartures.sort(byNewDepartureTime);
+    newDepartureTimeIndex.addAll(new SortedListSet<>(trainDepartures, byNewDepartureTime));
+    List<TrainDeparture> unassigned = new ArrayList<>();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      if (trainDeparture.getTrack() == -1) {
+        unassigned.add(trainDeparture);
+      }
+    }
+    unassignedIndex.addAll(new SortedListSet<>(unassigned, byNewDepartureTime));
+  }
+
+  /**
+   * Moves a departure of the day to another track chosen by hand.
+   *
+   * @param trainDeparture the departure
+   * @param track the new track
+   * @throws IllegalArgumentException if the track is not a positive number
+   */
+  void assignTrack(TrainDeparture trainDeparture, int track) throws IllegalArgumentException {
+    moveToTrack(trainDeparture, track);
+    allocated.remove(trainDeparture);
+  }
+
+  /**
+   * Moves a departure of the day to a track chosen by a TrackAllocator, so it can be moved again
+   * when a delay puts it in conflict with another departure.
+   *
+   * @param trainDeparture the departure
+   * @param track the new track
+   * @throws IllegalArgumentException if the track is not a positive number
+   */
+  void allocateTrack(TrainDeparture trainDeparture, int track) throws IllegalArgumentException {
+    moveToTrack(trainDeparture, track);
+    allocated.add(trainDeparture);
+  }
+
+  /**
+   * Marks the track a departure of the day already has as chosen by a TrackAllocator, without
+   * moving it. Used when departures are loaded with the tracks an allocator chose earlier.
+   *
+   * @param trainDeparture the departure, which must have a track
+   */
+  void markAllocated(TrainDeparture trainDeparture) {
+    allocated.add(trainDeparture);
+  }
+
+  /**
+   * Checks if the track of a departure of the day was chosen by a TrackAllocator.
+   *
+   * @param trainDeparture the departure
+   * @return true if the track was chosen by an allocator and not changed by hand since
+   */
+  boolean isAllocated(TrainDeparture trainDeparture) {
+    return allocated.contains(trainDeparture);
+  }
+
+  /**
+   * Checks if any departure of the day has a track chosen by a TrackAllocator.
+   *
+   * @return true if a departure has a track chosen by an allocator
+   */
+  boolean hasAllocated() {
+    return !allocated.isEmpty();
+  }
+
+  private void moveToTrack(TrainDeparture trainDeparture, int track)
+      throws IllegalArgumentException {
+    int oldTrack = trainDeparture.getTrack();
+    trainDeparture.setTrack(track);
+    if (oldTrack != -1) {
+      trackOccupancy.release(trainDeparture, oldTrack);
+    } else {
+      unassignedIndex.remove(trainDeparture);
+    }
+    trackOccupancy.occupy(trainDeparture);
+  }
+
+  /**
+   * Sets the delay of a departure of the day and moves it to its new place in the indexes sorted
+   * by new departure time, the index of departures without a track and the track occupancy.
+   *
+   * @param trainDeparture the departure
+   * @param hours hours of the delay
+   * @param minutes minutes of the delay
+   * @throws IllegalArgumentException if hours or minutes are not between 0 and 23/59
+   */
+  void setDelay(TrainDeparture trainDeparture, int hours, int minutes)
+      throws IllegalArgumentException {
+    boolean unassigned = trainDeparture.getTrack() == -1 && unassignedIndex.remove(trainDeparture);
+    newDepartureTimeIndex.remove(trainDeparture);
+    destinationIndex.removeByNewDepartureTime(trainDeparture);
+    lineIndex.removeByNewDepartureTime(trainDeparture);
+    trackOccupancy.release(trainDeparture);
+    try {
+      trainDeparture.setDelay(hours, minutes);
+    } finally {
+      newDepartureTimeIndex.add(trainDeparture);
+      destinationIndex.addByNewDepartureTime(trainDeparture);
+      lineIndex.addByNewDepartureTime(trainDeparture);
+      trackOccupancy.occupy(trainDeparture);
+      if (unassigned) {
+        unassignedIndex.add(trainDeparture);
+      }
+    }
+  }
+
+  /**
+   * Sets the delay of many departures of the day at once and moves them in the indexes sorted by
+   * new departure time and the track occupancy. If a large part of the day is delayed, the new
+   * departure time index is built again from the departures sorted by their new departure time,
+   * which takes about the same time as reading the day once, instead of moving the departures one
+   * by one. The delays must have been checked before, so all of them can be set.
+   *
+   * @param trainDepartures the departures of the day to delay
+   * @param delayMinutes the new delay of each departure in minutes, in the same order
+   */
+  void setDelays(List<TrainDeparture> trainDepartures, int[] delayMinutes) {
+    boolean rebuild = trainDepartures.size() * REBUILD_FRACTION > size();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      if (!rebuild) {
+        newDepartureTimeIndex.remove(trainDeparture);
+      }
+      destinationIndex.removeByNewDepartureTime(trainDeparture);
+      lineIndex.removeByNewDepartureTime(trainDeparture);
+      trackOccupancy.release(trainDeparture);
+      if (trainDeparture.getTrack() == -1) {
+        unassignedIndex.remove(trainDeparture);
+      }
+    }
+    for (int i = 0; i < trainDepartures.size(); i++) {
+      trainDepartures.get(i).setDelay(delayMinutes[i] / 60, delayMinutes[i] % 60);
+    }
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      if (!rebuild) {
+        newDepartureTimeIndex.add(trainDeparture);
+      }
+      destinationIndex.addByNewDepartureTime(trainDeparture);
+      lineIndex.addByNewDepartureTime(trainDeparture);
+      trackOccupancy.occupy(trainDeparture);
+      if (trainDeparture.getTrack() == -1) {
+        unassignedIndex.add(trainDeparture);
+      }
+    }
+    if (rebuild) {
+      Comparator<TrainDeparture> byNewDepartureTime =
+          DepartureOrder.NEW_DEPARTURE_TIME.getComparator();
+      List<TrainDeparture> sorted = new ArrayList<>(newDepartureTimeIndex);
+      sorted.sort(byNewDepartureTime);
+      newDepartureTimeIndex.clear();
+      newDepartureTimeIndex.addAll(new SortedListSet<>(sorted, byNewDepartureTime));
+    }
+  }
+
+  /**
+   * Checks if every departure of the day leaves before the given time, so the whole day can be
+   * dropped.
+   *
+   * @param currentDateTime the current date and time
+   * @return true if the last new departure time is before the given time
+   */
+  boolean hasPassed(LocalDateTime currentDateTime) {
+    return newDepartureTimeIndex.isEmpty()
+        || newDepartureTimeIndex.last().getNewDepartureDateTime().isBefore(currentDateTime);
+  }
+
+  /**
+   * Removes the departures that leave before the given time. The departures are taken from the
+   * start of the new departure time index until one that has not passed is found.
+   *
+   * @param currentDateTime the current date and time
+   * @return true if any departure was removed
+   */
+  boolean removePassed(LocalDateTime currentDateTime) {
+    boolean removed = false;
+    while (!newDepartureTimeIndex.isEmpty() && newDepartureTimeIndex.first()
+        .getNewDepartureDateTime().isBefore(currentDateTime)) {
+      TrainDeparture trainDeparture = newDepartureTimeIndex.pollFirst();
+      trainDepartureMap.remove(trainDeparture.getTrainNumber());
+      departureTimeIndex.remove(trainDeparture);
+      destinationIndex.remove(trainDeparture);
+      lineIndex.remove(trainDeparture);
+      trackOccupancy.release(trainDeparture);
+      unassignedIndex.remove(trainDeparture);
+      allocated.remove(trainDeparture);
+      removed = true;
+    }
+    return removed;
+  }
+}
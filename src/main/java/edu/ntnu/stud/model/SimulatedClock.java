@@ -0,0 +1,193 @@
+package edu.ntnu.stud.model;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A Clock that only moves when it is told to, used to run a TrainDepartureRegistry in simulated
+ * time.
+ *
+ * <p>The clock can be moved forward by hand with the advance methods, or be run in steps up to an
+ * end time with the run method. When run, the clock waits between the steps so the simulated time
+ * goes a given number of times faster than real time, or does not wait at all if the speed is
+ * infinite. Listeners are told every time the clock has moved, so work that depends on the time,
+ * like removing passed departures, happens at the speed of the simulation.
+ *
+ * <p>A registry that should follow the real time can be given the system clock instead, like
+ * Clock.systemDefaultZone().
+ */
+public class SimulatedClock extends Clock {
+  private final ZoneId zone;
+  private final List<Consumer<LocalDateTime>> listeners;
+  private volatile Instant instant;
+
+  /**
+   * Constructs a SimulatedClock object that starts at the given date and time in UTC.
+   *
+   * @param start the date and time the clock starts at
+   * @throws IllegalArgumentException if start is null
+   */
+  public SimulatedClock(LocalDateTime start) throws IllegalArgumentException {
+    this(start, ZoneOffset.UTC);
+  }
+
+  /**
+   * Constructs a SimulatedClock object that starts at the given date and time in the given zone.
+   *
+   * @param start the date and time the clock starts at
+   * @param zone the time zone of the clock
+   * @throws IllegalArgumentException if start or zone is null
+   */
+  public SimulatedClock(LocalDateTime start, ZoneId zone) throws IllegalArgumentException {
+    if (start == null || zone == null) {
+      throw new IllegalArgumentException("Start time and zone cannot be null");
+    }
+    this.zone = zone;
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.instant = start.atZone(zone).toInstant();
+  }
+
+  @Override
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * Gets a clock with another time zone that shows the same instant as this clock. The returned
+   * clock moves together with this clock.
+   *
+   * @param zone the time zone of the returned clock
+   * @return a clock in the given zone
+   */
+  @Override
+  public Clock withZone(ZoneId zone) {
+    if (zone.equals(this.zone)) {
+      return this;
+    }
+    SimulatedClock base = this;
+    return new Clock() {
+      @Override
+      public ZoneId getZone() {
+        return zone;
+      }
+
+      @Override
+      public Clock withZone(ZoneId otherZone) {
+        return base.withZone(otherZone);
+      }
+
+      @Override
+      public Instant instant() {
+        return base.instant();
+      }
+    };
+  }
+
+  @Override
+  public Instant instant() {
+    return instant;
+  }
+
+  /**
+   * Gets the current date and time of the clock.
+   *
+   * @return current date and time
+   */
+  public LocalDateTime getDateTime() {
+    return LocalDateTime.ofInstant(instant, zone);
+  }
+
+  /**
+   * Adds a listener that is told the new date and time every time the clock has moved.
+   * The listener is called on the thread that moved the clock.
+   *
+   * @param listener the listener to be added
+   * @throws IllegalArgumentException if the listener is null
+   */
+  public void addListener(Consumer<LocalDateTime> listener) throws IllegalArgumentException {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener cannot be null");
+    }
+    listeners.add(listener);
+  }
+
+  /**
+   * Moves the clock forward and tells the listeners.
+   *
+   * @param duration how far the clock is moved
+   * @throws IllegalArgumentException if the duration is null or negative
+   */
+  public void advance(Duration duration) throws IllegalArgumentException {
+    if (duration == null || duration.isNegative()) {
+      throw new IllegalArgumentException("Duration cannot be null or negative");
+    }
+    LocalDateTime dateTime;
+    synchronized (this) {
+      instant = instant.plus(duration);
+      dateTime = getDateTime();
+    }
+    for (Consumer<LocalDateTime> listener : listeners) {
+      listener.accept(dateTime);
+    }
+  }
+
+  /**
+   * Moves the clock forward to the given date and time and tells the listeners.
+   *
+   * @param dateTime the date and time the clock is moved to
+   * @throws IllegalArgumentException if the date and time is null or before the clock
+   */
+  public void advanceTo(LocalDateTime dateTime) throws IllegalArgumentException {
+    if (dateTime == null) {
+      throw new IllegalArgumentException("Time cannot be null");
+    }
+    Duration duration = Duration.between(instant, dateTime.atZone(zone).toInstant());
+    if (duration.isNegative()) {
+      throw new IllegalArgumentException("Time cannot be set before the current time");
+    }
+    advance(duration);
+  }
+
+  /**
+   * Runs the clock in steps until it reaches the end time. Between the steps the thread waits, so
+   * the clock runs the given number of times faster than real time. With a speed of
+   * Double.POSITIVE_INFINITY the clock runs as fast as the listeners allow.
+   *
+   * @param end the date and time to stop at
+   * @param step how far the clock is moved in each step
+   * @param speed how many times faster than real time the clock runs
+   * @throws IllegalArgumentException if end or step is null, if step is not positive or
+   *                                  if speed is not positive
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public void run(LocalDateTime end, Duration step, double speed)
+      throws IllegalArgumentException, InterruptedException {
+    if (end == null || step == null || step.isNegative() || step.isZero()) {
+      throw new IllegalArgumentException("End cannot be null and step must be positive");
+    }
+    if (!(speed > 0)) {
+      throw new IllegalArgumentException("Speed must be positive");
+    }
+    Instant endInstant = end.atZone(zone).toInstant();
+    long stepNanos = (long) Math.min(Long.MAX_VALUE, step.toNanos() / speed);
+    long nextStep = System.nanoTime();
+    while (instant.isBefore(endInstant)) {
+      if (stepNanos > 0) {
+        nextStep += stepNanos;
+        long wait = nextStep - System.nanoTime();
+        if (wait > 0) {
+          Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+      }
+      Duration left = Duration.between(instant, endInstant);
+      advance(left.compareTo(step) < 0 ? left : step);
+    }
+  }
+}
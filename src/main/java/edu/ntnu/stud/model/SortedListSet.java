@@ -0,0 +1,101 @@
+package edu.ntnu.stud.model;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * A SortedSet view of a list that is already sorted, used to fill an empty TreeSet.
+ *
+ * <p>When an empty TreeSet is given a SortedSet with the same comparator, it builds its tree
+ * directly from the sorted elements instead of adding them one at a time, which takes linear
+ * time. Sorting a list and wrapping it in this view is much faster than adding many departures
+ * to a TreeSet one by one. The list must be sorted by the comparator and have no equal elements,
+ * this is not checked.
+ *
+ * <p>The sub sets are views of a range of the list, found with a binary search, so they take
+ * logarithmic time to make and cannot be changed either.
+ *
+ * @param <E> the type of the elements
+ */
+final class SortedListSet<E> extends AbstractSet<E> implements SortedSet<E> {
+  private final List<E> elements;
+  private final Comparator<? super E> comparator;
+
+  /**
+   * Constructs a SortedListSet object that shows the given list.
+   *
+   * @param elements the elements, sorted by the comparator
+   * @param comparator the comparator the elements are sorted by
+   */
+  SortedListSet(List<E> elements, Comparator<? super E> comparator) {
+    this.elements = Collections.unmodifiableList(elements);
+    this.comparator = comparator;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return elements.iterator();
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  @Override
+  public Comparator<? super E> comparator() {
+    return comparator;
+  }
+
+  @Override
+  public E first() {
+    if (elements.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return elements.get(0);
+  }
+
+  @Override
+  public E last() {
+    if (elements.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return elements.get(elements.size() - 1);
+  }
+
+  @Override
+  public SortedSet<E> subSet(E fromElement, E toElement) {
+    if (comparator.compare(fromElement, toElement) > 0) {
+      throw new IllegalArgumentException("From element cannot be after to element");
+    }
+    return view(indexOf(fromElement), indexOf(toElement));
+  }
+
+  @Override
+  public SortedSet<E> headSet(E toElement) {
+    return view(0, indexOf(toElement));
+  }
+
+  @Override
+  public SortedSet<E> tailSet(E fromElement) {
+    return view(indexOf(fromElement), elements.size());
+  }
+
+  /**
+   * Finds the index of the first element that is not before the given element, with a binary
+   * search in the list.
+   */
+  private int indexOf(E element) {
+    int index = Collections.binarySearch(elements, element, comparator);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private SortedSet<E> view(int from, int to) {
+    return new SortedListSet<>(elements.subList(from, Math.max(from, to)), comparator);
+  }
+}
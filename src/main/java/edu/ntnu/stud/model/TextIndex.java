@@ -0,0 +1,243 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Index of TrainDeparture objects by a text of the departure, like the destination or the line,
+ * used by the TrainDepartureRegistry.
+ *
+ * <p>The texts are stored in lower case in a TreeMap, so the index can be searched without
+ * caring about upper and lower case. Because the TreeMap is sorted, all texts starting with the
+ * same prefix are next to each other, which makes it possible to search by prefix without looking
+ * at the other texts. The departures of each text are kept sorted both by departure time, which
+ * does not change when a delay is set, and by new departure time, so the next departure of a text
+ * after a given time, or the departures of a text in a time window, are found with one search. A
+ * departure must be removed from the order by new departure time before its delay is set, and
+ * added again after it.
+ */
+class TextIndex {
+  private final Function<TrainDeparture, String> text;
+  private final TreeMap<String, Departures> departuresByText;
+
+  /**
+   * The departures of one text, in both orders.
+   */
+  private static final class Departures {
+    private final TreeSet<TrainDeparture> byDepartureTime =
+        new TreeSet<>(DepartureOrder.DEPARTURE_TIME.getComparator());
+    private final TreeSet<TrainDeparture> byNewDepartureTime =
+        new TreeSet<>(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+  }
+
+  /**
+   * Constructs an empty TextIndex object.
+   *
+   * @param text the function that gets the indexed text of a departure
+   */
+  TextIndex(Function<TrainDeparture, String> text) {
+    this.text = text;
+    departuresByText = new TreeMap<>();
+  }
+
+  /**
+   * Adds a TrainDeparture object to the index.
+   *
+   * @param trainDeparture the departure to be added
+   */
+  void add(TrainDeparture trainDeparture) {
+    Departures departures = departuresByText.computeIfAbsent(
+        normalize(text.apply(trainDeparture)), key -> new Departures());
+    departures.byDepartureTime.add(trainDeparture);
+    departures.byNewDepartureTime.add(trainDeparture);
+  }
+
+  /**
+   * Adds many TrainDeparture objects to the index. The departures of a text that is not in the
+   * index yet are added to its TreeSets all at once, which is faster than adding them one by
+   * one.
+   *
+   * @param trainDepartures the departures to be added, sorted by departure time
+   */
+  void addAll(List<TrainDeparture> trainDepartures) {
+    Map<String, List<TrainDeparture>> departuresByNewText = new HashMap<>();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      departuresByNewText.computeIfAbsent(normalize(text.apply(trainDeparture)),
+          key -> new ArrayList<>()).add(trainDeparture);
+    }
+    Comparator<TrainDeparture> byDepartureTime = DepartureOrder.DEPARTURE_TIME.getComparator();
+    Comparator<TrainDeparture> byNewDepartureTime =
+        DepartureOrder.NEW_DEPARTURE_TIME.getComparator();
+    for (Map.Entry<String, List<TrainDeparture>> entry : departuresByNewText.entrySet()) {
+      Departures departures = departuresByText.computeIfAbsent(entry.getKey(),
+          key -> new Departures());
+      List<TrainDeparture> sorted = entry.getValue();
+      departures.byDepartureTime.addAll(new SortedListSet<>(sorted, byDepartureTime));
+      sorted.sort(byNewDepartureTime);
+      departures.byNewDepartureTime.addAll(new SortedListSet<>(sorted, byNewDepartureTime));
+    }
+  }
+
+  /**
+   * Removes a TrainDeparture object from the index. When the last departure of a text is removed,
+   * the text is removed as well.
+   *
+   * @param trainDeparture the departure to be removed
+   */
+  void remove(TrainDeparture trainDeparture) {
+    String key = normalize(text.apply(trainDeparture));
+    Departures departures = departuresByText.get(key);
+    if (departures != null && departures.byDepartureTime.remove(trainDeparture)) {
+      departures.byNewDepartureTime.remove(trainDeparture);
+      if (departures.byDepartureTime.isEmpty()) {
+        departuresByText.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Removes a TrainDeparture object from the order by new departure time only. Must be called
+   * before the delay of the departure is set, and be followed by addByNewDepartureTime.
+   *
+   * @param trainDeparture the departure whose delay is going to be set
+   */
+  void removeByNewDepartureTime(TrainDeparture trainDeparture) {
+    Departures departures = departuresByText.get(normalize(text.apply(trainDeparture)));
+    if (departures != null) {
+      departures.byNewDepartureTime.remove(trainDeparture);
+    }
+  }
+
+  /**
+   * Adds a TrainDeparture object that is in the index back to the order by new departure time,
+   * after its delay has been set.
+   *
+   * @param trainDeparture the departure whose delay has been set
+   */
+  void addByNewDepartureTime(TrainDeparture trainDeparture) {
+    Departures departures = departuresByText.get(normalize(text.apply(trainDeparture)));
+    if (departures != null) {
+      departures.byNewDepartureTime.add(trainDeparture);
+    }
+  }
+
+  /**
+   * Gets the departures with the given text, ignoring upper and lower case.
+   *
+   * @param key the text to search for
+   * @return the departures sorted by departure time, or an empty list if there are none
+   */
+  List<TrainDeparture> find(String key) {
+    Departures departures = departuresByText.get(normalize(key));
+    return departures == null ? Collections.emptyList()
+        : new ArrayList<>(departures.byDepartureTime);
+  }
+
+  /**
+   * Gets the number of departures with the given text, ignoring upper and lower case.
+   *
+   * @param key the text to count the departures of
+   * @return number of departures
+   */
+  int count(String key) {
+    Departures departures = departuresByText.get(normalize(key));
+    return departures == null ? 0 : departures.byNewDepartureTime.size();
+  }
+
+  /**
+   * Gets the departures with the given text, ignoring upper and lower case, that are sorted at or
+   * after the first search key and before the second by new departure time. The departures are
+   * not copied, so only the departures in the range are read when the result is read.
+   *
+   * @param key the text to search for
+   * @param from the search key of the start of the range, see TrainDeparture.searchKey
+   * @param to the search key of the end of the range, which must not be sorted before from
+   * @return the departures in the range sorted by new departure time, which must not be changed
+   */
+  SortedSet<TrainDeparture> findBetween(String key, TrainDeparture from, TrainDeparture to) {
+    Departures departures = departuresByText.get(normalize(key));
+    return departures == null ? Collections.emptySortedSet()
+        : departures.byNewDepartureTime.subSet(from, to);
+  }
+
+  /**
+   * Gets the first departure with the given text that is sorted at or after the search key by
+   * new departure time, ignoring upper and lower case.
+   *
+   * @param key the text to search for
+   * @param from the search key to start from, see TrainDeparture.searchKey
+   * @return the departure, or null if no departure with the text leaves at or after the key
+   */
+  TrainDeparture findNext(String key, TrainDeparture from) {
+    Departures departures = departuresByText.get(normalize(key));
+    return departures == null ? null : departures.byNewDepartureTime.ceiling(from);
+  }
+
+  /**
+   * Finds the first departure of every text that is sorted at or after the search key by new
+   * departure time, and puts it in the map if the map has no departure for the text yet or an
+   * earlier departure is found. The map is keyed by the text in lower case, so the departures of
+   * many service days can be collected in the same map.
+   *
+   * <p>A text whose departure in the map leaves before the earliest time of the index is skipped
+   * without searching, since no departure of the index can be earlier. When the service days are
+   * visited in order, most texts are skipped on the later days.
+   *
+   * @param from the search key to start from, see TrainDeparture.searchKey
+   * @param earliest the time no departure of the index leaves before
+   * @param next the first departure found so far for each text in lower case
+   */
+  void findNextOfEach(TrainDeparture from, LocalDateTime earliest,
+      Map<String, TrainDeparture> next) {
+    Comparator<TrainDeparture> comparator = DepartureOrder.NEW_DEPARTURE_TIME.getComparator();
+    for (Map.Entry<String, Departures> entry : departuresByText.entrySet()) {
+      TrainDeparture found = next.get(entry.getKey());
+      if (found != null && found.getNewDepartureDateTime().isBefore(earliest)) {
+        continue;
+      }
+      TrainDeparture first = entry.getValue().byNewDepartureTime.ceiling(from);
+      if (first != null && (found == null || comparator.compare(first, found) < 0)) {
+        next.put(entry.getKey(), first);
+      }
+    }
+  }
+
+  /**
+   * Gets the departures with a text that starts with the given prefix, ignoring upper and lower
+   * case. Only the texts that match are visited.
+   *
+   * @param prefix the start of the text to search for
+   * @return the departures sorted by departure time, or an empty list if there are none
+   */
+  List<TrainDeparture> findByPrefix(String prefix) {
+    String normalizedPrefix = normalize(prefix);
+    List<TrainDeparture> departures = new ArrayList<>();
+    int texts = 0;
+    for (Map.Entry<String, Departures> entry
+        : departuresByText.tailMap(normalizedPrefix, true).entrySet()) {
+      if (!entry.getKey().startsWith(normalizedPrefix)) {
+        break;
+      }
+      departures.addAll(entry.getValue().byDepartureTime);
+      texts++;
+    }
+    if (texts > 1) {
+      departures.sort(DepartureOrder.DEPARTURE_TIME.getComparator());
+    }
+    return departures;
+  }
+
+  private static String normalize(String key) {
+    return key.toLowerCase(Locale.ROOT);
+  }
+}
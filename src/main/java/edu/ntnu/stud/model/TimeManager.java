@@ -1,17 +1,31 @@
 package edu.ntnu.stud.model;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 
 /**
- * This class is responsible managing the time in the program. It sores the current time
- * as a LocalTime object and has methods for getting and setting the current time.
+ * This class is responsible managing the time in the program. It sores the current date and time
+ * as a LocalDateTime object and has methods for getting and setting the current time.
  * The time is stored as a static variable, so the same time is used throughout the program.
- * The current time is set to 00:00 by default.
+ * The current time is set to 00:00 today by default.
+ *
+ * <p>The time can be set to a later time on the same day with setCurrentTime, or to a time on a
+ * later day with setCurrentDateTime, so the program can run over several days.
+ *
+ * <p>The time can also be read as a Clock with the getClock method. This is the clock a
+ * TrainDepartureRegistry uses when it is not given a clock of its own, so the registries and the
+ * user interface follow the same time.
  *
  * <p>Created with help from Copilot.
  */
 public class TimeManager {
-  private static LocalTime currentTime = LocalTime.of(0, 0);
+  private static volatile LocalDateTime currentDateTime = LocalDate.now().atStartOfDay();
+  private static final Clock CLOCK = new TimeManagerClock(ZoneOffset.UTC);
 
   /**
    * Gets the current time.
@@ -19,12 +33,40 @@ public class TimeManager {
    * @return current time
    */
   public static LocalTime getCurrentTime() {
-    return currentTime;
+    return currentDateTime.toLocalTime();
+  }
+
+  /**
+   * Gets the current date.
+   *
+   * @return current date
+   */
+  public static LocalDate getCurrentDate() {
+    return currentDateTime.toLocalDate();
+  }
+
+  /**
+   * Gets the current date and time.
+   *
+   * @return current date and time
+   */
+  public static LocalDateTime getCurrentDateTime() {
+    return currentDateTime;
+  }
+
+  /**
+   * Gets a Clock that shows the current date and time of the TimeManager. The clock changes when
+   * the time is set with setCurrentTime, setCurrentDateTime or resetTime.
+   *
+   * @return clock following the current time
+   */
+  public static Clock getClock() {
+    return CLOCK;
   }
 
   /**
-   * Method that sets the current time. Hours and minutes are given as parameters.
-   * Time cannot be set before the current time or to the current time.
+   * Method that sets the current time on the current date. Hours and minutes are given as
+   * parameters. Time cannot be set before the current time or to the current time.
    * The time must be set using the 24-hour clock.
    *
    * @param hours number of hours
@@ -34,24 +76,71 @@ public class TimeManager {
    *                                  if time is already set to the given time
    */
   public static void setCurrentTime(int hours, int minutes) throws IllegalArgumentException {
+    setCurrentDateTime(getCurrentDate(), hours, minutes);
+  }
+
+  /**
+   * Method that sets the current date and time. The date, hours and minutes are given as
+   * parameters. Time cannot be set before the current time or to the current time, but it can be
+   * set to any time on a later date. The time must be set using the 24-hour clock.
+   *
+   * @param date the date to set
+   * @param hours number of hours
+   * @param minutes number of minutes
+   * @throws IllegalArgumentException if date is null,
+   *                                  if hours or minutes are not between 0 and 23/59,
+   *                                  if time is set before the current time or
+   *                                  if time is already set to the given time
+   */
+  public static void setCurrentDateTime(LocalDate date, int hours, int minutes)
+      throws IllegalArgumentException {
+    if (date == null) {
+      throw new IllegalArgumentException("Date cannot be null");
+    }
     if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
       throw new IllegalArgumentException("Hours must be between 0 and 23, "
           + "minutes must be between 0 and 59");
     }
-    LocalTime setTime = LocalTime.of(hours, minutes);
-    if (setTime.isBefore(currentTime)) {
+    LocalDateTime setTime = date.atTime(hours, minutes);
+    if (setTime.isBefore(currentDateTime)) {
       throw new IllegalArgumentException("Time cannot be set before the current time");
     }
-    if (setTime.equals(currentTime)) {
-      throw new IllegalArgumentException("Time already set to " + currentTime);
+    if (setTime.equals(currentDateTime)) {
+      throw new IllegalArgumentException("Time already set to " + currentDateTime.toLocalTime());
     }
-    currentTime = setTime;
+    currentDateTime = setTime;
   }
 
   /**
-   * Method that resets the current time. Only used for testing.
+   * Method that resets the current time to 00:00 today. Only used for testing.
    */
   public static void resetTime() {
-    currentTime = LocalTime.of(0, 0);
+    currentDateTime = LocalDate.now().atStartOfDay();
+  }
+
+  /**
+   * Clock that reads the current time of the TimeManager.
+   */
+  private static final class TimeManagerClock extends Clock {
+    private final ZoneId zone;
+
+    private TimeManagerClock(ZoneId zone) {
+      this.zone = zone;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return zone.equals(this.zone) ? this : new TimeManagerClock(zone);
+    }
+
+    @Override
+    public Instant instant() {
+      return currentDateTime.atZone(zone).toInstant();
+    }
   }
 }
@@ -0,0 +1,279 @@
+package edu.ntnu.stud.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Chooses tracks for the departures of a TrainDepartureRegistry, used by
+ * TrainDepartureRegistry.allocateTracks to give every departure without a track one, and to move
+ * departures when a delay puts them in conflict with another departure.
+ *
+ * <p>The station has tracks numbered from 1 up to the number of tracks. A departure occupies its
+ * track for the dwell time of the registry before its new departure time, so the tracks are
+ * chosen from the departure times with the current delays. All occupations are equally long, so
+ * when the departures are given tracks in the order of their new departure time, they are also
+ * given tracks in the order their occupations start. The tracks in use are kept in a heap sorted
+ * by when they become free, and a departure takes the track that has been free the longest. A
+ * track that is not in use yet is only taken when every track in use is occupied. This is the
+ * greedy algorithm for interval partitioning, which uses no more tracks than the largest number
+ * of departures at the station at the same time, in O(n log t) time for n departures and t
+ * tracks. Departures that already have a track keep it, and a track is only chosen if it is free
+ * of them as well. A track in use that one of them occupies goes back in the heap sorted by when
+ * that departure leaves, so it is not tried again by every departure before that.
+ *
+ * <p>A line can prefer some tracks, for example the tracks next to its platforms. A departure of
+ * the line takes the first of its preferred tracks that is free, and only uses the other tracks
+ * when all of them are occupied. Lines are compared without caring about upper and lower case.
+ *
+ * <p>If every track is occupied, a departure is left without a track instead of being put in
+ * conflict with another departure.
+ *
+ * <p>Allocators cannot be changed. withPreferredTracks returns a new allocator, so an allocator
+ * can be kept by the registry while another one is set up.
+ */
+public class TrackAllocator {
+  private static final Comparator<int[]> BY_FREE_AT =
+      Comparator.<int[]>comparingInt(entry -> entry[0]).thenComparingInt(entry -> entry[1]);
+
+  private final int numberOfTracks;
+  private final Map<String, int[]> preferredTracks;
+
+  /**
+   * The tracks of a registry as an allocator sees them.
+   */
+  interface Station {
+    /**
+     * Gets when the other departures that would occupy the track at the same time as the
+     * departure leave. No departure leaving before the dwell time after that can use the track.
+     *
+     * @param trainDeparture the departure
+     * @param track the track
+     * @return the latest new departure time of the departures in conflict, in minutes since
+     *         1970-01-01 00:00, or Integer.MIN_VALUE if the track is free while the departure
+     *         occupies it
+     */
+    int getBlockedUntil(TrainDeparture trainDeparture, int track);
+
+    /**
+     * Checks if any departure uses the track.
+     *
+     * @param track the track
+     * @return true if a departure has the track
+     */
+    boolean isUsed(int track);
+
+    /**
+     * Gives the departure the track.
+     *
+     * @param trainDeparture the departure
+     * @param track the track
+     */
+    void assign(TrainDeparture trainDeparture, int track);
+  }
+
+  /**
+   * Constructs a TrackAllocator object for a station with tracks numbered from 1 up to the given
+   * number of tracks, without any preferred tracks.
+   *
+   * @param numberOfTracks the number of tracks at the station
+   * @throws IllegalArgumentException if the number of tracks is not a positive number
+   */
+  public TrackAllocator(int numberOfTracks) throws IllegalArgumentException {
+    if (numberOfTracks < 1) {
+      throw new IllegalArgumentException("Number of tracks must be a positive number");
+    }
+    this.numberOfTracks = numberOfTracks;
+    this.preferredTracks = Collections.emptyMap();
+  }
+
+  private TrackAllocator(int numberOfTracks, Map<String, int[]> preferredTracks) {
+    this.numberOfTracks = numberOfTracks;
+    this.preferredTracks = preferredTracks;
+  }
+
+  /**
+   * Gets an allocator that gives the departures of the line the first of the given tracks that is
+   * free, instead of the tracks preferred before. No tracks removes the preference of the line.
+   *
+   * @param line the line of the departures
+   * @param tracks the preferred tracks, in the order they are tried
+   * @return the new allocator
+   * @throws IllegalArgumentException if the line is null or empty, if the tracks are null or
+   *                                  if a track is not between 1 and the number of tracks
+   */
+  public TrackAllocator withPreferredTracks(String line, int... tracks)
+      throws IllegalArgumentException {
+    if (line == null || line.isEmpty()) {
+      throw new IllegalArgumentException("Line cannot be null or empty");
+    }
+    if (tracks == null) {
+      throw new IllegalArgumentException("Tracks cannot be null");
+    }
+    for (int track : tracks) {
+      if (track < 1 || track > numberOfTracks) {
+        throw new IllegalArgumentException(
+            "Track must be between 1 and the number of tracks, " + numberOfTracks);
+      }
+    }
+    Map<String, int[]> preferred = new HashMap<>(preferredTracks);
+    if (tracks.length == 0) {
+      preferred.remove(key(line));
+    } else {
+      preferred.put(key(line), tracks.clone());
+    }
+    return new TrackAllocator(numberOfTracks, preferred);
+  }
+
+  /**
+   * Gets the number of tracks at the station.
+   *
+   * @return number of tracks
+   */
+  public int getNumberOfTracks() {
+    return numberOfTracks;
+  }
+
+  /**
+   * Gets the tracks the departures of the line prefer.
+   *
+   * @param line the line
+   * @return the preferred tracks in the order they are tried, empty if the line has none
+   */
+  public List<Integer> getPreferredTracks(String line) {
+    int[] tracks = line == null ? null : preferredTracks.get(key(line));
+    List<Integer> preferred = new ArrayList<>();
+    if (tracks != null) {
+      for (int track : tracks) {
+        preferred.add(track);
+      }
+    }
+    return preferred;
+  }
+
+  /**
+   * Gives tracks to departures without a track, in the order of their new departure time.
+   *
+   * @param trainDepartures the departures without a track, sorted by new departure time
+   * @param dwellMinutes the number of minutes a departure occupies its track
+   * @param station the tracks of the registry
+   * @return the departures that were left without a track because every track was occupied
+   */
+  List<TrainDeparture> allocate(List<TrainDeparture> trainDepartures, int dwellMinutes,
+      Station station) {
+    int[] freeAt = new int[numberOfTracks + 1];
+    Arrays.fill(freeAt, Integer.MIN_VALUE);
+    PriorityQueue<int[]> inUse = new PriorityQueue<>(BY_FREE_AT);
+    BitSet unused = new BitSet(numberOfTracks + 1);
+    for (int track = 1; track <= numberOfTracks; track++) {
+      if (station.isUsed(track)) {
+        inUse.add(new int[] {freeAt[track], track});
+      } else {
+        unused.set(track);
+      }
+    }
+    List<int[]> occupied = new ArrayList<>();
+    List<TrainDeparture> unassigned = new ArrayList<>();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      int endMinute = Math.toIntExact(trainDeparture.getNewDepartureMinute());
+      int track = findPreferred(trainDeparture, station);
+      while (track == -1 && !inUse.isEmpty() && inUse.peek()[0] <= endMinute - dwellMinutes) {
+        int[] entry = inUse.poll();
+        if (entry[0] != freeAt[entry[1]]) {
+          continue;
+        }
+        int blockedUntil = station.getBlockedUntil(trainDeparture, entry[1]);
+        if (blockedUntil == Integer.MIN_VALUE) {
+          track = entry[1];
+        } else {
+          freeAt[entry[1]] = blockedUntil;
+          occupied.add(new int[] {blockedUntil, entry[1]});
+        }
+      }
+      inUse.addAll(occupied);
+      occupied.clear();
+      for (int next = unused.nextSetBit(1); track == -1 && next >= 0;
+          next = unused.nextSetBit(next + 1)) {
+        if (isFree(trainDeparture, next, station)) {
+          track = next;
+        }
+      }
+      if (track == -1) {
+        unassigned.add(trainDeparture);
+        continue;
+      }
+      station.assign(trainDeparture, track);
+      unused.clear(track);
+      freeAt[track] = endMinute;
+      inUse.add(new int[] {endMinute, track});
+    }
+    return unassigned;
+  }
+
+  /**
+   * Moves departures that occupy their track at the same time as another departure to a free
+   * track. A departure is left where it is if it is no longer in conflict, for example because a
+   * departure moved before it was in the way, or if no track is free. A preferred track is tried
+   * first, then the tracks in use and last the tracks not in use, each in increasing order.
+   *
+   * @param trainDepartures the departures that can be moved, in the order they are tried
+   * @param station the tracks of the registry
+   * @return the departures that were moved
+   */
+  List<TrainDeparture> replan(List<TrainDeparture> trainDepartures, Station station) {
+    List<TrainDeparture> moved = new ArrayList<>();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      if (isFree(trainDeparture, trainDeparture.getTrack(), station)) {
+        continue;
+      }
+      int track = findPreferred(trainDeparture, station);
+      for (int pass = 0; track == -1 && pass < 2; pass++) {
+        for (int next = 1; track == -1 && next <= numberOfTracks; next++) {
+          if (station.isUsed(next) == (pass == 0) && isFree(trainDeparture, next, station)) {
+            track = next;
+          }
+        }
+      }
+      if (track != -1) {
+        station.assign(trainDeparture, track);
+        moved.add(trainDeparture);
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Finds the first preferred track of the line of the departure that is free.
+   *
+   * @return the track, or -1 if the line has no preferred track that is free
+   */
+  private int findPreferred(TrainDeparture trainDeparture, Station station) {
+    if (preferredTracks.isEmpty()) {
+      return -1;
+    }
+    int[] tracks = preferredTracks.get(key(trainDeparture.getLine()));
+    if (tracks != null) {
+      for (int track : tracks) {
+        if (isFree(trainDeparture, track, station)) {
+          return track;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isFree(TrainDeparture trainDeparture, int track, Station station) {
+    return station.getBlockedUntil(trainDeparture, track) == Integer.MIN_VALUE;
+  }
+
+  private static String key(String line) {
+    return line.toLowerCase(Locale.ROOT);
+  }
+}
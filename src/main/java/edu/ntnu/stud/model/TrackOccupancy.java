@@ -0,0 +1,212 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of when each track is occupied, used by the TrainDepartureRegistry.
+ *
+ * <p>A departure occupies its track from the dwell time before its new departure time until the
+ * new departure time. Times are counted in minutes since 1970-01-01 00:00, so an interval can go
+ * past midnight into the next day.
+ *
+ * <p>Every occupied interval has the same length, the dwell time, so two intervals overlap
+ * exactly when their end times are less than one dwell time apart. Because of this the intervals
+ * of each track can be stored in a TreeMap sorted by end time instead of a full interval tree,
+ * and finding the overlapping intervals only needs a lookup of a range of end times. The keys of
+ * the TreeMap combine the end time and the train number, so departures leaving at the same time
+ * get different keys.
+ */
+class TrackOccupancy {
+  static final int MINUTES_PER_DAY = 24 * 60;
+
+  private final int dwellMinutes;
+  private final HashMap<Integer, TreeMap<Long, TrainDeparture>> departuresByTrack;
+
+  /**
+   * Constructs an empty TrackOccupancy object.
+   *
+   * @param dwellMinutes the number of minutes a departure occupies its track
+   */
+  TrackOccupancy(int dwellMinutes) {
+    this.dwellMinutes = dwellMinutes;
+    this.departuresByTrack = new HashMap<>();
+  }
+
+  /**
+   * Gets the number of minutes a departure occupies its track.
+   *
+   * @return dwell time in minutes
+   */
+  int getDwellMinutes() {
+    return dwellMinutes;
+  }
+
+  /**
+   * Marks the track of the departure as occupied by the departure. Does nothing if the departure
+   * has no track.
+   *
+   * @param trainDeparture the departure occupying its track
+   */
+  void occupy(TrainDeparture trainDeparture) {
+    if (trainDeparture.getTrack() != -1) {
+      departuresByTrack.computeIfAbsent(trainDeparture.getTrack(), track -> new TreeMap<>())
+          .put(key(trainDeparture), trainDeparture);
+    }
+  }
+
+  /**
+   * Marks the track of the departure as no longer occupied by the departure. Must be called before
+   * the track or the new departure time of the departure is changed.
+   *
+   * @param trainDeparture the departure leaving its track
+   */
+  void release(TrainDeparture trainDeparture) {
+    release(trainDeparture, trainDeparture.getTrack());
+  }
+
+  /**
+   * Marks the given track as no longer occupied by the departure. Used when the track of the
+   * departure has already been changed.
+   *
+   * @param trainDeparture the departure leaving the track
+   * @param track the track the departure occupied
+   */
+  void release(TrainDeparture trainDeparture, int track) {
+    TreeMap<Long, TrainDeparture> departures = departuresByTrack.get(track);
+    if (departures != null) {
+      departures.remove(key(trainDeparture));
+      if (departures.isEmpty()) {
+        departuresByTrack.remove(track);
+      }
+    }
+  }
+
+  /**
+   * Gets the departures occupying the track at some point between the start and end minute.
+   *
+   * @param track the track to check
+   * @param startMinute the start of the interval, inclusive
+   * @param endMinute the end of the interval, exclusive
+   * @return the departures occupying the track in the interval sorted by new departure time
+   */
+  List<TrainDeparture> getOccupants(int track, int startMinute, int endMinute) {
+    TreeMap<Long, TrainDeparture> departures = departuresByTrack.get(track);
+    if (departures == null || startMinute >= endMinute) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(departures.subMap(
+        key(startMinute + 1, 0), key(endMinute + dwellMinutes, 0)).values());
+  }
+
+  /**
+   * Gets the number of departures on the track.
+   *
+   * @param track the track
+   * @return number of departures
+   */
+  int count(int track) {
+    TreeMap<Long, TrainDeparture> departures = departuresByTrack.get(track);
+    return departures == null ? 0 : departures.size();
+  }
+
+  /**
+   * Gets the departures on the track with a new departure time between the start and end minute.
+   * The intervals are sorted by end time, which is the new departure time, so the departures are
+   * read from one range of the TreeMap of the track.
+   *
+   * @param track the track
+   * @param startMinute the first minute, inclusive
+   * @param endMinute the last minute, exclusive
+   * @return the departures sorted by new departure time, which must not be changed
+   */
+  Collection<TrainDeparture> getDepartures(int track, int startMinute, int endMinute) {
+    TreeMap<Long, TrainDeparture> departures = departuresByTrack.get(track);
+    if (departures == null || startMinute >= endMinute) {
+      return Collections.emptyList();
+    }
+    return departures.subMap(key(startMinute, 0), key(endMinute, 0)).values();
+  }
+
+  /**
+   * Checks if nothing occupies the track between the start and end minute.
+   *
+   * @param track the track to check
+   * @param startMinute the start of the interval, inclusive
+   * @param endMinute the end of the interval, exclusive
+   * @return true if the track is free in the whole interval
+   */
+  boolean isFree(int track, int startMinute, int endMinute) {
+    TreeMap<Long, TrainDeparture> departures = departuresByTrack.get(track);
+    if (departures == null || startMinute >= endMinute) {
+      return true;
+    }
+    Long next = departures.ceilingKey(key(startMinute + 1, 0));
+    return next == null || next >= key(endMinute + dwellMinutes, 0);
+  }
+
+  /**
+   * Gets the other departures whose occupation of the track overlaps with the occupation of the
+   * given departure if it was on the given track.
+   *
+   * @param trainDeparture the departure to check
+   * @param track the track to check
+   * @return the departures in conflict with the departure sorted by new departure time
+   */
+  List<TrainDeparture> getConflicts(TrainDeparture trainDeparture, int track) {
+    int endMinute = epochMinute(trainDeparture.getNewDepartureDateTime());
+    List<TrainDeparture> conflicts = getOccupants(track, endMinute - dwellMinutes, endMinute);
+    conflicts.remove(trainDeparture);
+    return conflicts;
+  }
+
+  /**
+   * Gets when the last of the other departures whose occupation of the track overlaps with the
+   * occupation of the given departure leaves. Only the two last occupations before the end of the
+   * overlapping range are looked at, so nothing is copied. The departure itself is skipped if it
+   * is on the track.
+   *
+   * @param trainDeparture the departure to check
+   * @param track the track to check
+   * @return the new departure time of the last departure in conflict in minutes since
+   *         1970-01-01 00:00, or Integer.MIN_VALUE if there is no conflict
+   */
+  int getBlockedUntil(TrainDeparture trainDeparture, int track) {
+    TreeMap<Long, TrainDeparture> departures = departuresByTrack.get(track);
+    if (departures == null) {
+      return Integer.MIN_VALUE;
+    }
+    int endMinute = Math.toIntExact(trainDeparture.getNewDepartureMinute());
+    Long last = departures.lowerKey(key(endMinute + dwellMinutes, 0));
+    if (last != null && last == key(endMinute, trainDeparture.getTrainNumber())) {
+      last = departures.lowerKey(last);
+    }
+    return last == null || last < key(endMinute - dwellMinutes + 1, 0) ? Integer.MIN_VALUE
+        : (int) (last >> 32);
+  }
+
+  /**
+   * Gets the number of minutes between 1970-01-01 00:00 and the given date and time.
+   *
+   * @param dateTime the date and time
+   * @return minutes since 1970-01-01 00:00
+   */
+  static int epochMinute(LocalDateTime dateTime) {
+    return Math.toIntExact(dateTime.toLocalDate().toEpochDay() * MINUTES_PER_DAY
+        + dateTime.toLocalTime().toSecondOfDay() / 60);
+  }
+
+  private static long key(TrainDeparture trainDeparture) {
+    return key(epochMinute(trainDeparture.getNewDepartureDateTime()),
+        trainDeparture.getTrainNumber());
+  }
+
+  private static long key(int endMinute, int trainNumber) {
+    return ((long) endMinute << 32) | trainNumber;
+  }
+}
@@ -1,30 +1,46 @@
 package edu.ntnu.stud.model;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 
 /**
  * Instances of this class represent train departures.
  *
  * <p>It stores information about
- * the train number, departure time, line, destination, track and delay.
- * Track and delay can be set after the object is created.
+ * the train number, service date, departure time, line, destination, track and delay.
+ * Track and delay can be set after the object is created. The fields that can change are
+ * volatile, so other threads see a new track or delay as soon as it is set.
+ *
+ * <p>The service date is the day the departure runs on according to the timetable. The same
+ * train number usually runs every day, so a departure is known by its service date and train
+ * number together. A delay can move the new departure time past midnight, to the next day, so the
+ * new departure time is also kept with its date.
  *
  * <p>Created with help from Copilot.
  */
 public class TrainDeparture {
+  private static final long MINUTES_PER_DAY = 24 * 60;
+
   private final int trainNumber;
+  private final LocalDate serviceDate;
   private final LocalTime departureTime;
   private final String line;
   private final String destination;
-  private int track;
-  private LocalTime delay;
-  private LocalTime newDepartureTime;
+  private volatile int track;
+  private volatile LocalTime delay;
+  private volatile LocalDateTime newDepartureDateTime;
+  private final long departureMinute;
+  private volatile long newDepartureMinute;
 
   /**
    * Constructs a TrainDeparture object. All parameters except track and delay are required when
    * creating a new TrainDeparture object. Track and delay are set to -1 and 0 respectively by
    * and default and can be changed later with the setTrack and setDelay methods.
    *
+   * <p>The departure runs on the current date of the TimeManager, and the departure time is
+   * checked against the current time of the TimeManager, which is shared by the whole program.
+   *
    * @param trainNumber the number of the train
    * @param hours the hour of departure
    * @param minutes the minute of departure
@@ -35,9 +51,39 @@ public class TrainDeparture {
    *                                  if time is set before the current time,
    *                                  if line is null or empty or
    *                                  if destination is null or empty
+   * @deprecated use the constructor with a service date and pass the current date and time of the
+   *             registry the departure is added to, like registry.getCurrentDateTime()
    */
+  @Deprecated
   public TrainDeparture(int trainNumber, int hours, int minutes, String line, String destination)
       throws IllegalArgumentException {
+    this(trainNumber, TimeManager.getCurrentDate(), hours, minutes, line, destination,
+        TimeManager.getCurrentDateTime());
+  }
+
+  /**
+   * Constructs a TrainDeparture object that runs on the given service date. The departure time on
+   * the service date is checked against the given current date and time. Used by registries that
+   * have their own clock, and when departures for several days are loaded.
+   *
+   * @param trainNumber the number of the train
+   * @param serviceDate the date the departure runs on
+   * @param hours the hour of departure
+   * @param minutes the minute of departure
+   * @param line the line the train operates on
+   * @param destination the destination of the train
+   * @param currentDateTime the date and time the departure cannot be before, or LocalDateTime.MIN
+   *                        for a departure that is not checked, like one loaded from a file
+   * @throws IllegalArgumentException if trainNumber is not a positive number,
+   *                                  if the service date or current date and time is null,
+   *                                  if hours or minutes are not between 0 and 23/59,
+   *                                  if time is set before the current time,
+   *                                  if line is null or empty or
+   *                                  if destination is null or empty
+   */
+  public TrainDeparture(int trainNumber, LocalDate serviceDate, int hours, int minutes,
+      String line, String destination, LocalDateTime currentDateTime)
+      throws IllegalArgumentException {
     if (trainNumber <= 0) {
       throw new IllegalArgumentException("Train number must be a positive number");
     }
@@ -47,7 +93,11 @@ public class TrainDeparture {
           + "minutes must be between 0 and 59");
     }
 
-    if (LocalTime.of(hours, minutes).isBefore(TimeManager.getCurrentTime())) {
+    if (serviceDate == null || currentDateTime == null) {
+      throw new IllegalArgumentException("Service date and current time cannot be null");
+    }
+
+    if (serviceDate.atTime(hours, minutes).isBefore(currentDateTime)) {
       throw new IllegalArgumentException("Time cannot be set before the current time");
     }
 
@@ -60,14 +110,72 @@ public class TrainDeparture {
     }
 
     this.trainNumber = trainNumber;
+    this.serviceDate = serviceDate;
     this.departureTime = LocalTime.of(hours, minutes);
     this.line = line;
     this.destination = destination;
-    this.newDepartureTime = this.departureTime;
+    this.newDepartureDateTime = serviceDate.atTime(this.departureTime);
+    this.departureMinute = serviceDate.toEpochDay() * MINUTES_PER_DAY + hours * 60 + minutes;
+    this.newDepartureMinute = departureMinute;
     this.track = -1;
     this.delay = LocalTime.of(0, 0);
   }
 
+  /**
+   * Constructs a TrainDeparture object that is only used to search the sorted indexes of the
+   * TrainDepartureRegistry. It leaves at the given date and time and has train number 0, so it is
+   * sorted before every real departure that leaves at the same time.
+   *
+   * @param newDepartureDateTime the date and time to search from
+   */
+  private TrainDeparture(LocalDateTime newDepartureDateTime) {
+    this.trainNumber = 0;
+    this.serviceDate = newDepartureDateTime.toLocalDate();
+    this.departureTime = newDepartureDateTime.toLocalTime();
+    this.line = "";
+    this.destination = "";
+    this.newDepartureDateTime = newDepartureDateTime;
+    LocalTime time = newDepartureDateTime.toLocalTime();
+    this.departureMinute = serviceDate.toEpochDay() * MINUTES_PER_DAY + time.getHour() * 60
+        + time.getMinute() + (time.getSecond() > 0 || time.getNano() > 0 ? 1 : 0);
+    this.newDepartureMinute = departureMinute;
+    this.track = -1;
+    this.delay = LocalTime.of(0, 0);
+  }
+
+  /**
+   * Gets a departure that is sorted right before every departure leaving at or after the given
+   * date and time, both by departure time and by new departure time.
+   *
+   * @param dateTime the date and time to search from
+   * @return search key
+   */
+  static TrainDeparture searchKey(LocalDateTime dateTime) {
+    return new TrainDeparture(dateTime);
+  }
+
+  /**
+   * Gets the departure time as the number of minutes since 1970-01-01 00:00, used by the orders
+   * in DepartureOrder to compare departures without comparing dates and times. A search key for a
+   * time that is not a whole minute gets the next whole minute, so it is still sorted after the
+   * departures before the time.
+   *
+   * @return departure time in minutes since 1970-01-01 00:00
+   */
+  long getDepartureMinute() {
+    return departureMinute;
+  }
+
+  /**
+   * Gets the new departure time as the number of minutes since 1970-01-01 00:00, see
+   * getDepartureMinute.
+   *
+   * @return new departure time in minutes since 1970-01-01 00:00
+   */
+  long getNewDepartureMinute() {
+    return newDepartureMinute;
+  }
+
   /**
    * Gets the train number.
    *
@@ -77,6 +185,15 @@ public class TrainDeparture {
     return trainNumber;
   }
 
+  /**
+   * Gets the date the departure runs on according to the timetable.
+   *
+   * @return service date
+   */
+  public LocalDate getServiceDate() {
+    return serviceDate;
+  }
+
   /**
    * Gets the departure time of the train.
    *
@@ -86,6 +203,15 @@ public class TrainDeparture {
     return departureTime;
   }
 
+  /**
+   * Gets the departure time of the train on its service date.
+   *
+   * @return departure date and time
+   */
+  public LocalDateTime getDepartureDateTime() {
+    return serviceDate.atTime(departureTime);
+  }
+
   /**
    * Gets the line the train operates on.
    *
@@ -123,17 +249,31 @@ public class TrainDeparture {
   }
 
   /**
-   * Gets the new departure time.
+   * Gets the new departure time. If the delay moves the departure past midnight, this is the time
+   * on the next day.
    *
    * @return new departure time
    */
   public LocalTime getNewDepartureTime() {
-    return newDepartureTime;
+    return newDepartureDateTime.toLocalTime();
+  }
+
+  /**
+   * Gets the new departure time with its date, which is the day after the service date if the
+   * delay moves the departure past midnight.
+   *
+   * @return new departure date and time
+   */
+  public LocalDateTime getNewDepartureDateTime() {
+    return newDepartureDateTime;
   }
 
   /**
    * Method that sets the track of the train.
    *
+   * <p>If the departure is in a TrainDepartureRegistry, the track should be assigned with the
+   * assignTrack method of the registry, so the occupation of the track is checked.
+   *
    * @param track the track number of the train
    * @throws IllegalArgumentException if track is not -1 or a positive number
    */
@@ -145,7 +285,11 @@ public class TrainDeparture {
   }
 
   /**
-   * Method that sets the delay of the train. Also sets the new departure time.
+   * Method that sets the delay of the train. Also sets the new departure time, which can be on the
+   * day after the service date.
+   *
+   * <p>If the departure is in a TrainDepartureRegistry, the delay should be set with the setDelay
+   * method of the registry, so the departure is moved in the indexes of the registry.
    *
    * @param hours number of hours of the delay to be set
    * @param minutes number of minutes of the delay to be set
@@ -157,6 +301,7 @@ public class TrainDeparture {
           + "minutes must be between 0 and 59");
     }
     this.delay = LocalTime.of(hours, minutes);
-    this.newDepartureTime = this.departureTime.plusHours(hours).plusMinutes(minutes);
+    this.newDepartureDateTime = getDepartureDateTime().plusHours(hours).plusMinutes(minutes);
+    this.newDepartureMinute = departureMinute + hours * 60 + minutes;
   }
 }
\ No newline at end of file
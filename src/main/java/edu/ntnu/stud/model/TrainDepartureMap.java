@@ -0,0 +1,293 @@
+package edu.ntnu.stud.model;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from train numbers to TrainDeparture objects, used by the TrainDepartureRegistry instead
+ * of a HashMap.
+ *
+ * <p>The train numbers are stored as plain ints in one array and the departures in another array
+ * at the same position, so no Integer objects or map entries are created. A train number is placed
+ * at the position given by its hash, or the next free position after it (open addressing with
+ * linear probing). The arrays are kept at most half full, so a lookup only looks at a few
+ * positions. Because train numbers are always positive, 0 is used to mark a free position.
+ *
+ * <p>The two arrays are kept together in one Table object, which is replaced as a whole when the
+ * arrays grow. Every method reads the table once, so a reader that is not holding a lock, like
+ * an optimistic read of the TrainDepartureRegistry, always sees a train number array and a
+ * departure array of the same length. Such a reader may still see a departure that is being
+ * moved and get a wrong answer, which it must detect by validating its read, but it does not
+ * get an exception.
+ */
+public class TrainDepartureMap {
+  private static final int EMPTY = 0;
+  private static final int MINIMUM_CAPACITY = 16;
+
+  private Table table;
+  private int size;
+  private int modifications;
+
+  /**
+   * Constructs an empty TrainDepartureMap object.
+   */
+  public TrainDepartureMap() {
+    this(MINIMUM_CAPACITY / 2);
+  }
+
+  /**
+   * Constructs an empty TrainDepartureMap object with room for the given number of departures
+   * before the arrays have to grow.
+   *
+   * @param expectedSize the expected number of departures
+   * @throws IllegalArgumentException if the expected size is negative
+   */
+  public TrainDepartureMap(int expectedSize) throws IllegalArgumentException {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("Expected size cannot be negative");
+    }
+    int capacity = MINIMUM_CAPACITY;
+    while (capacity < expectedSize * 2L) {
+      capacity <<= 1;
+    }
+    table = new Table(new int[capacity], new TrainDeparture[capacity]);
+  }
+
+  /**
+   * Gets the number of departures in the map.
+   *
+   * @return number of departures
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the map has no departures.
+   *
+   * @return true if the map is empty
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Checks if the map has a departure with the given train number.
+   *
+   * @param trainNumber the train number to look for
+   * @return true if the train number is in the map
+   */
+  public boolean containsKey(int trainNumber) {
+    if (trainNumber <= 0) {
+      return false;
+    }
+    Table current = table;
+    return current.trainNumbers[indexOf(current.trainNumbers, trainNumber)] == trainNumber;
+  }
+
+  /**
+   * Gets the departure with the given train number.
+   *
+   * @param trainNumber the train number to look for
+   * @return the departure, or null if the train number is not in the map
+   */
+  public TrainDeparture get(int trainNumber) {
+    if (trainNumber <= 0) {
+      return null;
+    }
+    Table current = table;
+    return current.trainDepartures[indexOf(current.trainNumbers, trainNumber)];
+  }
+
+  /**
+   * Puts a departure in the map with the given train number as key. If the train number is
+   * already in the map, the old departure is replaced.
+   *
+   * @param trainNumber the train number of the departure
+   * @param trainDeparture the departure
+   * @return the old departure, or null if the train number was not in the map
+   * @throws IllegalArgumentException if the train number is not positive or
+   *                                  if the departure is null
+   */
+  public TrainDeparture put(int trainNumber, TrainDeparture trainDeparture)
+      throws IllegalArgumentException {
+    if (trainNumber <= 0) {
+      throw new IllegalArgumentException("Train number must be a positive number");
+    }
+    if (trainDeparture == null) {
+      throw new IllegalArgumentException("Train departure cannot be null");
+    }
+    Table current = table;
+    int index = indexOf(current.trainNumbers, trainNumber);
+    TrainDeparture oldTrainDeparture = current.trainDepartures[index];
+    current.trainDepartures[index] = trainDeparture;
+    if (oldTrainDeparture == null) {
+      current.trainNumbers[index] = trainNumber;
+      size++;
+      modifications++;
+      if (size * 2 > current.trainNumbers.length) {
+        resize(current.trainNumbers.length * 2);
+      }
+    }
+    return oldTrainDeparture;
+  }
+
+  /**
+   * Removes the departure with the given train number from the map.
+   *
+   * <p>The departures after the removed one that were pushed forward because its position was
+   * taken are moved back, so a lookup never has to skip removed positions.
+   *
+   * @param trainNumber the train number of the departure
+   * @return the removed departure, or null if the train number was not in the map
+   */
+  public TrainDeparture remove(int trainNumber) {
+    if (trainNumber <= 0) {
+      return null;
+    }
+    Table current = table;
+    int[] trainNumbers = current.trainNumbers;
+    TrainDeparture[] trainDepartures = current.trainDepartures;
+    int index = indexOf(current.trainNumbers, trainNumber);
+    TrainDeparture oldTrainDeparture = trainDepartures[index];
+    if (oldTrainDeparture == null) {
+      return null;
+    }
+    int mask = trainNumbers.length - 1;
+    int free = index;
+    int next = (free + 1) & mask;
+    while (trainNumbers[next] != EMPTY) {
+      int home = hash(trainNumbers[next]) & mask;
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        trainNumbers[free] = trainNumbers[next];
+        trainDepartures[free] = trainDepartures[next];
+        free = next;
+      }
+      next = (next + 1) & mask;
+    }
+    trainNumbers[free] = EMPTY;
+    trainDepartures[free] = null;
+    size--;
+    modifications++;
+    return oldTrainDeparture;
+  }
+
+  /**
+   * Removes all departures from the map.
+   */
+  public void clear() {
+    Table current = table;
+    Arrays.fill(current.trainNumbers, EMPTY);
+    Arrays.fill(current.trainDepartures, null);
+    size = 0;
+    modifications++;
+  }
+
+  /**
+   * Gets a view of the departures in the map. The view is not a copy, so it changes when the map
+   * changes. The departures are in no particular order.
+   *
+   * @return a collection of the departures in the map
+   */
+  public Collection<TrainDeparture> values() {
+    return new AbstractCollection<>() {
+      @Override
+      public Iterator<TrainDeparture> iterator() {
+        return new ValueIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private static int indexOf(int[] trainNumbers, int trainNumber) {
+    int mask = trainNumbers.length - 1;
+    int index = hash(trainNumber) & mask;
+    while (trainNumbers[index] != EMPTY && trainNumbers[index] != trainNumber) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  /**
+   * Moves the departures into larger arrays. The new table is filled before it replaces the old
+   * one, so readers see either the old or the new table, and never a table that is half filled.
+   */
+  private void resize(int capacity) {
+    Table oldTable = table;
+    int[] trainNumbers = new int[capacity];
+    TrainDeparture[] trainDepartures = new TrainDeparture[capacity];
+    for (int i = 0; i < oldTable.trainNumbers.length; i++) {
+      if (oldTable.trainNumbers[i] != EMPTY) {
+        int index = indexOf(trainNumbers, oldTable.trainNumbers[i]);
+        trainNumbers[index] = oldTable.trainNumbers[i];
+        trainDepartures[index] = oldTable.trainDepartures[i];
+      }
+    }
+    table = new Table(trainNumbers, trainDepartures);
+  }
+
+  /**
+   * Spreads the bits of the train number, so train numbers that follow each other do not end up
+   * in long runs of taken positions.
+   */
+  private static int hash(int trainNumber) {
+    int hash = trainNumber * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * The train number array and the departure array, which always have the same length.
+   */
+  private static final class Table {
+    private final int[] trainNumbers;
+    private final TrainDeparture[] trainDepartures;
+
+    private Table(int[] trainNumbers, TrainDeparture[] trainDepartures) {
+      this.trainNumbers = trainNumbers;
+      this.trainDepartures = trainDepartures;
+    }
+  }
+
+  /**
+   * Iterator over the departures in the arrays. Fails if the map is changed while iterating.
+   */
+  private class ValueIterator implements Iterator<TrainDeparture> {
+    private final int expectedModifications = modifications;
+    private final TrainDeparture[] trainDepartures = table.trainDepartures;
+    private int index = nextIndex(0);
+
+    @Override
+    public boolean hasNext() {
+      return index < trainDepartures.length;
+    }
+
+    @Override
+    public TrainDeparture next() {
+      if (modifications != expectedModifications) {
+        throw new ConcurrentModificationException();
+      }
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      TrainDeparture trainDeparture = trainDepartures[index];
+      index = nextIndex(index + 1);
+      return trainDeparture;
+    }
+
+    private int nextIndex(int from) {
+      int i = from;
+      while (i < trainDepartures.length && trainDepartures[i] == null) {
+        i++;
+      }
+      return i;
+    }
+  }
+}
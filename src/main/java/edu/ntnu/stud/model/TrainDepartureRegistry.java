@@ -1,36 +1,315 @@
 package edu.ntnu.stud.model;
 
+import edu.ntnu.stud.metrics.MetricsGroup;
+import edu.ntnu.stud.metrics.OperationMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * This holds a registry of TrainDeparture objects.
  *
- * <p>It stores information about all TrainDeparture objects in a HashMap.
- * It has methods for adding new departures, searching for departures objects by
+ * <p>The departures are kept in one ServiceDay for each service date, sorted by date, so the
+ * registry can hold the timetable of many days. Each day stores its departures in a
+ * TrainDepartureMap, a map from train numbers to departures that does not create an object for
+ * every entry. Next to the map each day keeps two sorted indexes, one ordered by departure time
+ * and one ordered by new departure time. The indexes are updated when departures are added,
+ * delayed or removed, so the departures can be read in order without sorting them every time.
+ * Departures are also indexed by destination and by line, so searching by destination only
+ * looks at the departures that match, and a DepartureQuery selects the departures of a line,
+ * destination, track or time window through one of the indexes. The destination and line indexes
+ * also keep their departures sorted by new departure time, like the track occupancy, so the next
+ * departures, the next departure to a destination or on a line, and the departures in a time
+ * window are found with a search in a tree instead of reading the whole day.
+ *
+ * <p>A train number is unique within a service date. The methods that only take a train number
+ * use the departure with that number on the earliest service date in the registry, which is the
+ * next one to leave since passed departures are removed. The methods that also take a service
+ * date use the departure of that date. Departures added without a date run on the current date of
+ * the clock of the registry. When the departures that have left are removed, a day where all
+ * departures have left is dropped as a whole, and the days that have not started are not looked
+ * at.
+ *
+ * <p>A departure with a track occupies the track for a dwell time before it leaves. Two
+ * departures can use the same track as long as these occupations do not overlap, also when one
+ * of them is delayed past midnight. The occupations of each track are kept sorted, so checking
+ * for conflicts does not look at the other tracks or at departures far away in time.
+ *
+ * <p>Each registry reads the current time from its own Clock. By default this is the clock of
+ * the TimeManager, but a registry can also be given the system clock to follow the real time, or a
+ * SimulatedClock to run through the days faster than real time. The current time is counted in
+ * whole minutes, like the departure times.
+ *
+ * <p>The registry can be used by many threads at the same time. Changes are made while holding
+ * the write lock of a StampedLock. Lookups by train number first read without any lock and then
+ * check that no change was made while reading (an optimistic read), so they do not wait for other
+ * readers and almost never for writers. Reads that walk through the sorted indexes hold the read
+ * lock, which many readers can hold at the same time. Every change touches the shared sorted
+ * indexes, so changes to different trains still take turns, but they only hold the lock for a
+ * few index updates.
+ *
+ * <p>Instead of assigning the tracks one by one, every departure without a track can be given one
+ * by a TrackAllocator, which uses as few tracks as it can without putting departures in conflict.
+ * The registry keeps the allocator, and when a delay puts a departure in conflict with another
+ * departure on its track, the departures whose track was chosen by the allocator are moved to a
+ * free track. Only the departures in conflict are looked at, so the rest of the day keeps its
+ * tracks. A track assigned by hand is never moved.
+ *
+ * <p>All departures that match a query can be delayed at once, for example every departure of a
+ * line after a signal fault. They are delayed while holding the write lock once, and each day
+ * moves them in its new departure time index in one go.
+ *
+ * <p>Every change increases the version of the registry. Readers that need a consistent view of
+ * all departures can get a DepartureBoard, an unchangeable copy of the registry at one version.
+ * The board is only copied again when it is asked for after the registry has changed, so many
+ * changes in a row are copied once, and readers of an unchanged registry get the same board
+ * without any locking.
+ *
+ * <p>Every call and every rejected call, counted by reason, is recorded in the metrics of the
+ * registry. Reading the clock twice costs more than a lookup by train number, so by default only
+ * a random sample of one in 16 calls is timed.
+ *
+ * <p>Listeners can be added to be told about every change, for example to write the changes to
+ * a journal so they are not lost if the application stops.
+ *
+ * <p>It has methods for adding new departures, searching for departures objects by
  * train number or destination, removing passed departures, getting a sorted list of
  * all departures as well as assigning track and delay to a departure.
  *
  * <p>Created with help from Copilot.
  */
 public class TrainDepartureRegistry {
-  private final HashMap<Integer, TrainDeparture> trainDepartureMap;
+  /**
+   * The dwell time used when no dwell time is given to the constructor.
+   */
+  public static final Duration DEFAULT_DWELL_TIME = Duration.ofMinutes(15);
 
   /**
-   * Constructs a TrainDepartureRegistry object and creates a new HashMap.
+   * The number of calls for each call that is timed in the metrics, when it has not been changed.
+   */
+  public static final int DEFAULT_METRICS_SAMPLE_RATE = 16;
+
+  private static final ServiceDay[] NO_SERVICE_DAYS = new ServiceDay[0];
+
+  private final Clock clock;
+  private final int dwellMinutes;
+  private volatile ServiceDay[] serviceDays;
+  private final StampedLock lock;
+  private final AtomicReference<DepartureBoard> departureBoard;
+  private final List<RegistryListener> listeners;
+  private volatile long version;
+  private volatile TrackAllocator trackAllocator;
+  private final MetricsGroup metrics;
+  private final OperationMetrics addTrainDepartureMetrics;
+  private final OperationMetrics addTrainDeparturesMetrics;
+  private final OperationMetrics searchTrainDepartureMetrics;
+  private final OperationMetrics findTrainDepartureMetrics;
+  private final OperationMetrics findTrainDeparturesMetrics;
+  private final OperationMetrics searchTrainDepartureDestinationMetrics;
+  private final OperationMetrics searchTrainDepartureDestinationPrefixMetrics;
+  private final OperationMetrics searchTrainDeparturesMetrics;
+  private final OperationMetrics explainTrainDeparturesMetrics;
+  private final OperationMetrics getNextTrainDeparturesMetrics;
+  private final OperationMetrics findNextTrainDepartureMetrics;
+  private final OperationMetrics getNextTrainDeparturePerMetrics;
+  private final OperationMetrics removePassedTrainDeparturesMetrics;
+  private final OperationMetrics getTrainDepartureSortedMetrics;
+  private final OperationMetrics getDepartureBoardMetrics;
+  private final OperationMetrics assignTrackMetrics;
+  private final OperationMetrics setDelayMetrics;
+  private final OperationMetrics setDelaysMetrics;
+  private final OperationMetrics addDelaysMetrics;
+  private final OperationMetrics isTrackFreeMetrics;
+  private final OperationMetrics getFreeTracksMetrics;
+  private final OperationMetrics allocateTracksMetrics;
+
+  /**
+   * Constructs a TrainDepartureRegistry object with the default dwell time and creates a new
+   * map and the indexes. The registry uses the clock of the TimeManager.
    */
   public TrainDepartureRegistry() {
-    trainDepartureMap = new HashMap<>();
+    this(TimeManager.getClock(), DEFAULT_DWELL_TIME);
+  }
+
+  /**
+   * Constructs a TrainDepartureRegistry object that uses the clock of the TimeManager and creates
+   * a new map and the indexes. The dwell time is how long a departure occupies its track before it
+   * leaves.
+   *
+   * @param dwellTime the time a departure occupies its track, in whole minutes
+   * @throws IllegalArgumentException if the dwell time is null or not at least one minute
+   */
+  public TrainDepartureRegistry(Duration dwellTime) throws IllegalArgumentException {
+    this(TimeManager.getClock(), dwellTime);
+  }
+
+  /**
+   * Constructs a TrainDepartureRegistry object with the default dwell time that uses the given
+   * clock and creates a new map and the indexes.
+   *
+   * @param clock the clock the current time is read from
+   * @throws IllegalArgumentException if the clock is null
+   */
+  public TrainDepartureRegistry(Clock clock) throws IllegalArgumentException {
+    this(clock, DEFAULT_DWELL_TIME);
+  }
+
+  /**
+   * Constructs a TrainDepartureRegistry object that uses the given clock and creates a new map and
+   * the indexes. The dwell time is how long a departure occupies its track before it leaves.
+   *
+   * @param clock the clock the current time is read from
+   * @param dwellTime the time a departure occupies its track, in whole minutes
+   * @throws IllegalArgumentException if the clock is null or
+   *                                  if the dwell time is null or not at least one minute
+   */
+  public TrainDepartureRegistry(Clock clock, Duration dwellTime) throws IllegalArgumentException {
+    if (clock == null) {
+      throw new IllegalArgumentException("Clock cannot be null");
+    }
+    if (dwellTime == null || dwellTime.toMinutes() < 1) {
+      throw new IllegalArgumentException("Dwell time must be at least one minute");
+    }
+    this.clock = clock;
+    dwellMinutes = (int) Math.min(dwellTime.toMinutes(), TrackOccupancy.MINUTES_PER_DAY);
+    serviceDays = NO_SERVICE_DAYS;
+    lock = new StampedLock();
+    departureBoard = new AtomicReference<>(
+        new DepartureBoard(0, Collections.emptyList(), Collections.emptyList(),
+            trainDeparture -> false));
+    listeners = new CopyOnWriteArrayList<>();
+    metrics = new MetricsGroup("TrainDepartureRegistry");
+    metrics.setSampleRate(DEFAULT_METRICS_SAMPLE_RATE);
+    addTrainDepartureMetrics = metrics.operation("addTrainDeparture");
+    addTrainDeparturesMetrics = metrics.operation("addTrainDepartures");
+    searchTrainDepartureMetrics = metrics.operation("searchTrainDeparture");
+    findTrainDepartureMetrics = metrics.operation("findTrainDeparture");
+    findTrainDeparturesMetrics = metrics.operation("findTrainDepartures");
+    searchTrainDepartureDestinationMetrics = metrics.operation("searchTrainDepartureDestination");
+    searchTrainDepartureDestinationPrefixMetrics =
+        metrics.operation("searchTrainDepartureDestinationPrefix");
+    searchTrainDeparturesMetrics = metrics.operation("searchTrainDepartures");
+    explainTrainDeparturesMetrics = metrics.operation("explainTrainDepartures");
+    getNextTrainDeparturesMetrics = metrics.operation("getNextTrainDepartures");
+    findNextTrainDepartureMetrics = metrics.operation("findNextTrainDeparture");
+    getNextTrainDeparturePerMetrics = metrics.operation("getNextTrainDeparturePer");
+    removePassedTrainDeparturesMetrics = metrics.operation("removePassedTrainDepartures");
+    getTrainDepartureSortedMetrics = metrics.operation("getTrainDepartureSorted");
+    getDepartureBoardMetrics = metrics.operation("getDepartureBoard");
+    assignTrackMetrics = metrics.operation("assignTrack");
+    setDelayMetrics = metrics.operation("setDelay");
+    setDelaysMetrics = metrics.operation("setDelays");
+    addDelaysMetrics = metrics.operation("addDelays");
+    isTrackFreeMetrics = metrics.operation("isTrackFree");
+    getFreeTracksMetrics = metrics.operation("getFreeTracks");
+    allocateTracksMetrics = metrics.operation("allocateTracks");
+  }
+
+  /**
+   * Gets the clock the registry reads the current time from.
+   *
+   * @return clock
+   */
+  public Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Gets the current time of the clock of the registry, in whole minutes.
+   *
+   * @return current time
+   */
+  public LocalTime getCurrentTime() {
+    return LocalTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+  }
+
+  /**
+   * Gets the current date of the clock of the registry. Departures added without a service date
+   * run on this date.
+   *
+   * @return current date
+   */
+  public LocalDate getCurrentDate() {
+    return LocalDate.now(clock);
+  }
+
+  /**
+   * Gets the current date and time of the clock of the registry, in whole minutes.
+   *
+   * @return current date and time
+   */
+  public LocalDateTime getCurrentDateTime() {
+    return LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+  }
+
+  /**
+   * Gets the time a departure occupies its track before it leaves.
+   *
+   * @return dwell time
+   */
+  public Duration getDwellTime() {
+    return Duration.ofMinutes(dwellMinutes);
+  }
+
+  /**
+   * Gets the metrics of the registry, with the number of calls, the latency of the calls and the
+   * number of rejected calls for every operation. The metrics can be turned off, sampled more or
+   * less often and registered with JMX.
+   *
+   * @return metrics
+   */
+  public MetricsGroup getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Adds a listener that is told about every change made to the registry.
+   *
+   * @param listener the listener to be added
+   * @throws IllegalArgumentException if the listener is null
+   */
+  public void addListener(RegistryListener listener) throws IllegalArgumentException {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener cannot be null");
+    }
+    listeners.add(listener);
   }
 
   /**
-   * Creates a new TrainDeparture object and adds it to the registry.
-   * Does only add the TrainDeparture object if the train number does not already exist in the
-   * registry. If the train number already exists, an IllegalArgumentException is thrown.
+   * Removes a listener, so it is no longer told about changes.
    *
-   * <p>The TrainDeparture object is put in the HashMap with the train number as key.
+   * @param listener the listener to be removed
+   */
+  public void removeListener(RegistryListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Creates a new TrainDeparture object that runs on the current date and adds it to the
+   * registry. Does only add the TrainDeparture object if the train number does not already exist
+   * on that date. If the train number already exists, an IllegalArgumentException is thrown.
+   *
+   * <p>The TrainDeparture object is put in the map of its service date with the train number as
+   * key.
    *
    * @param trainNumber the number of the departure
    * @param hours the hour of departure
@@ -42,112 +321,1819 @@ public class TrainDepartureRegistry {
   public void addTrainDeparture(
       int trainNumber, int hours, int minutes, String line, String destination)
       throws IllegalArgumentException {
-    if (trainDepartureMap.containsKey(trainNumber)) {
-      throw new IllegalArgumentException("Train number already exists");
+    addTrainDeparture(trainNumber, getCurrentDate(), hours, minutes, line, destination);
+  }
+
+  /**
+   * Creates a new TrainDeparture object that runs on the given service date and adds it to the
+   * registry. Does only add the TrainDeparture object if the train number does not already exist
+   * on that date. The departure cannot be before the current date and time of the clock.
+   *
+   * @param trainNumber the number of the departure
+   * @param serviceDate the date the departure runs on
+   * @param hours the hour of departure
+   * @param minutes the minute of departure
+   * @param line the line the departure operates on
+   * @param destination the destination of the departure
+   * @throws IllegalArgumentException if the service date is null,
+   *                                  if the departure is before the current time or
+   *                                  if the train number already exists on the service date
+   */
+  public void addTrainDeparture(int trainNumber, LocalDate serviceDate, int hours, int minutes,
+      String line, String destination) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkServiceDate(serviceDate);
+      long stamp = lock.writeLock();
+      try {
+        ServiceDay serviceDay = serviceDay(serviceDate);
+        if (serviceDay != null && serviceDay.containsKey(trainNumber)) {
+          throw new IllegalArgumentException("Train number already exists");
+        }
+        TrainDeparture trainDeparture = new TrainDeparture(trainNumber, serviceDate,
+            hours, minutes, line, destination, getCurrentDateTime());
+        insert(trainDeparture);
+        version++;
+        for (RegistryListener listener : listeners) {
+          listener.departureAdded(trainDeparture, version);
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      changeCommitted();
+    } catch (IllegalArgumentException e) {
+      addTrainDepartureMetrics.reject(e);
+      throw e;
+    } finally {
+      addTrainDepartureMetrics.record(start);
+    }
+  }
+
+  /**
+   * Adds a TrainDeparture object that has already been created to the registry. The track and
+   * delay of the departure are kept. The departure should not be changed after it has been added,
+   * other than through the methods of the registry.
+   *
+   * @param trainDeparture the departure to be added
+   * @throws IllegalArgumentException if the departure is null,
+   *                                  if the train number already exists or
+   *                                  if the track of the departure is occupied by another train at
+   *                                  that time
+   */
+  public void addTrainDeparture(TrainDeparture trainDeparture) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (trainDeparture == null) {
+        throw new IllegalArgumentException("Train departure cannot be null");
+      }
+      long stamp = lock.writeLock();
+      try {
+        insert(trainDeparture);
+        version++;
+        for (RegistryListener listener : listeners) {
+          listener.departureAdded(trainDeparture, version);
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      changeCommitted();
+    } catch (IllegalArgumentException e) {
+      addTrainDepartureMetrics.reject(e);
+      throw e;
+    } finally {
+      addTrainDepartureMetrics.record(start);
+    }
+  }
+
+  /**
+   * Adds many TrainDeparture objects that have already been created to the registry, while only
+   * taking the write lock once. Each departure is added like with addTrainDeparture, in the order
+   * of the list. A departure that cannot be added does not stop the other departures from being
+   * added, instead the reason is returned.
+   *
+   * <p>For the service dates that have no departures yet, like when the registry is filled from a
+   * timetable or a snapshot, the sorted indexes are built from sorted lists of the departures in
+   * one go, which is much faster than adding the departures one by one.
+   *
+   * @param trainDepartures the departures to be added
+   * @return a map from the position in the list of each departure that was not added to the
+   *         reason it was not added, empty if all departures were added
+   * @throws IllegalArgumentException if the list is null
+   */
+  public Map<Integer, String> addTrainDepartures(List<TrainDeparture> trainDepartures)
+      throws IllegalArgumentException {
+    return addTrainDepartures(trainDepartures, Set.of());
+  }
+
+  /**
+   * Adds many TrainDeparture objects like addTrainDepartures, and marks the tracks of the
+   * departures at the given positions in the list as chosen by a TrackAllocator, as if they had
+   * been assigned with allocateTrack. Used when departures are loaded from a snapshot, so the
+   * allocated tracks are restored while the write lock is taken once and the version is
+   * increased once, instead of once for every departure. The listeners are told about every
+   * added departure, and then about every allocated track, with the same version.
+   *
+   * @param trainDepartures the departures to be added
+   * @param allocated the positions in the list of the departures whose track was chosen by a
+   *                  TrackAllocator, where positions of departures without a track are ignored
+   * @return a map from the position in the list of each departure that was not added to the
+   *         reason it was not added, empty if all departures were added
+   * @throws IllegalArgumentException if the list or the positions are null
+   */
+  public Map<Integer, String> addTrainDepartures(List<TrainDeparture> trainDepartures,
+      Set<Integer> allocated) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (trainDepartures == null || allocated == null) {
+        throw new IllegalArgumentException("Train departures and positions cannot be null");
+      }
+      Map<Integer, String> rejected = new TreeMap<>();
+      boolean added = false;
+      long stamp = lock.writeLock();
+      try {
+        insertAll(trainDepartures, rejected);
+        List<TrainDeparture> allocatedDepartures = new ArrayList<>();
+        for (int i : allocated) {
+          if (i >= 0 && i < trainDepartures.size() && !rejected.containsKey(i)
+              && trainDepartures.get(i).getTrack() != -1) {
+            TrainDeparture trainDeparture = trainDepartures.get(i);
+            serviceDay(trainDeparture.getServiceDate()).markAllocated(trainDeparture);
+            allocatedDepartures.add(trainDeparture);
+          }
+        }
+        added = rejected.size() < trainDepartures.size();
+        if (added) {
+          version++;
+          if (!listeners.isEmpty()) {
+            for (int i = 0; i < trainDepartures.size(); i++) {
+              if (!rejected.containsKey(i)) {
+                for (RegistryListener listener : listeners) {
+                  listener.departureAdded(trainDepartures.get(i), version);
+                }
+              }
+            }
+            for (TrainDeparture trainDeparture : allocatedDepartures) {
+              for (RegistryListener listener : listeners) {
+                listener.trackAllocated(trainDeparture.getServiceDate(),
+                    trainDeparture.getTrainNumber(), trainDeparture.getTrack(), version);
+              }
+            }
+          }
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      if (added) {
+        changeCommitted();
+      }
+      for (String reason : rejected.values()) {
+        addTrainDeparturesMetrics.reject(reason);
+      }
+      return rejected;
+    } catch (IllegalArgumentException e) {
+      addTrainDeparturesMetrics.reject(e);
+      throw e;
+    } finally {
+      addTrainDeparturesMetrics.record(start);
     }
-    TrainDeparture trainDeparture = new TrainDeparture(
-            trainNumber, hours, minutes, line, destination);
-    trainDepartureMap.put(trainNumber, trainDeparture);
   }
 
   /**
-   * Searches for a TrainDeparture object with the given train number.
-   * If the train number is not found, an IllegalArgumentException is thrown.
+   * Searches for the TrainDeparture objects with the given train number, one for every service
+   * date the train runs on. If the train number is not found, an IllegalArgumentException is
+   * thrown.
    *
    * @param trainNumber the number of the train
-   * @return a List containing the TrainDeparture object with the given train number
+   * @return a List containing the TrainDeparture objects with the given train number sorted by
+   *         service date
    * @throws IllegalArgumentException if the train number does not exist
    */
   public List<TrainDeparture> searchTrainDeparture(int trainNumber)
       throws IllegalArgumentException {
-    if (!trainDepartureMap.containsKey(trainNumber)) {
-      throw new IllegalArgumentException("Train number does not exist");
+    long start = metrics.start();
+    try {
+      List<TrainDeparture> trainDepartures = getAll(trainNumber);
+      if (trainDepartures.isEmpty()) {
+        throw new IllegalArgumentException("Train number does not exist");
+      }
+      return trainDepartures;
+    } catch (IllegalArgumentException e) {
+      searchTrainDepartureMetrics.reject(e);
+      throw e;
+    } finally {
+      searchTrainDepartureMetrics.record(start);
     }
-    return trainDepartureMap.values().stream()
-        .filter(trainDeparture -> trainDeparture.getTrainNumber() == trainNumber)
-        .collect(Collectors.toList());
   }
 
   /**
-   * Searches for TrainDeparture objects with the given Destination.
+   * Finds the TrainDeparture object with the given train number on the earliest service date it
+   * runs on. Unlike searchTrainDeparture, no exception is thrown if the train number does not
+   * exist, so this method can be used when a missing departure is normal, like when a display
+   * asks for a train that has left.
+   *
+   * @param trainNumber the number of the train
+   * @return an Optional with the TrainDeparture object, or an empty Optional if the train number
+   *         does not exist
+   */
+  public Optional<TrainDeparture> findTrainDeparture(int trainNumber) {
+    long start = metrics.start();
+    try {
+      return Optional.ofNullable(get(null, trainNumber));
+    } finally {
+      findTrainDepartureMetrics.record(start);
+    }
+  }
+
+  /**
+   * Finds the TrainDeparture object with the given train number on the given service date.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @return an Optional with the TrainDeparture object, or an empty Optional if the train does
+   *         not run on the date
+   * @throws IllegalArgumentException if the service date is null
+   */
+  public Optional<TrainDeparture> findTrainDeparture(LocalDate serviceDate, int trainNumber)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkServiceDate(serviceDate);
+      return Optional.ofNullable(get(serviceDate, trainNumber));
+    } catch (IllegalArgumentException e) {
+      findTrainDepartureMetrics.reject(e);
+      throw e;
+    } finally {
+      findTrainDepartureMetrics.record(start);
+    }
+  }
+
+  /**
+   * Finds the TrainDeparture objects with the given train numbers, on the earliest service date
+   * each of them runs on. The departure for each train number is put at the same position in the
+   * returned array as the train number in the given array, and null is put where the train number
+   * does not exist.
+   *
+   * @param trainNumbers the numbers of the trains
+   * @return an array with the TrainDeparture objects, with null for the train numbers that do not
+   *         exist
+   * @throws IllegalArgumentException if trainNumbers is null
+   */
+  public TrainDeparture[] findTrainDepartures(int[] trainNumbers) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (trainNumbers == null) {
+        throw new IllegalArgumentException("Train numbers cannot be null");
+      }
+      TrainDeparture[] trainDepartures = new TrainDeparture[trainNumbers.length];
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        ServiceDay[] days = serviceDays;
+        for (int i = 0; i < trainNumbers.length; i++) {
+          trainDepartures[i] = find(days, trainNumbers[i]);
+        }
+        if (lock.validate(stamp)) {
+          return trainDepartures;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        ServiceDay[] days = serviceDays;
+        for (int i = 0; i < trainNumbers.length; i++) {
+          trainDepartures[i] = find(days, trainNumbers[i]);
+        }
+        return trainDepartures;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    } catch (IllegalArgumentException e) {
+      findTrainDeparturesMetrics.reject(e);
+      throw e;
+    } finally {
+      findTrainDeparturesMetrics.record(start);
+    }
+  }
+
+  /**
+   * Searches for TrainDeparture objects with the given Destination. Upper and lower case is
+   * ignored, so "bergen" finds departures to "Bergen".
    * If the destination is not found, an IllegalArgumentException is thrown.
    *
    * @param destination the destination of the train
-   * @return a list of TrainDeparture objects with the given destination
+   * @return a list of TrainDeparture objects with the given destination sorted by service date
+   *         and departure time
    * @throws IllegalArgumentException if the destination is null or empty or
    *                                  if the destination does not exist
    */
   public List<TrainDeparture> searchTrainDepartureDestination(String destination)
       throws IllegalArgumentException {
-    if (destination == null || destination.isEmpty()) {
-      throw new IllegalArgumentException("Destination cannot be null or empty");
+    long start = metrics.start();
+    try {
+      if (destination == null || destination.isEmpty()) {
+        throw new IllegalArgumentException("Destination cannot be null or empty");
+      }
+      List<TrainDeparture> trainDepartures;
+      long stamp = lock.readLock();
+      try {
+        trainDepartures = new ArrayList<>();
+        for (ServiceDay serviceDay : serviceDays) {
+          trainDepartures.addAll(serviceDay.findByDestination(destination));
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      if (trainDepartures.isEmpty()) {
+        throw new IllegalArgumentException("Destination does not exist");
+      }
+      return trainDepartures;
+    } catch (IllegalArgumentException e) {
+      searchTrainDepartureDestinationMetrics.reject(e);
+      throw e;
+    } finally {
+      searchTrainDepartureDestinationMetrics.record(start);
+    }
+  }
+
+  /**
+   * Searches for TrainDeparture objects with a destination starting with the given text.
+   * Upper and lower case is ignored, so "tro" finds departures to "Trondheim".
+   * If no destination starts with the text, an IllegalArgumentException is thrown.
+   *
+   * @param prefix the start of the destination of the train
+   * @return a list of TrainDeparture objects with a matching destination sorted by service date
+   *         and departure time
+   * @throws IllegalArgumentException if the prefix is null or empty or
+   *                                  if no destination starts with the prefix
+   */
+  public List<TrainDeparture> searchTrainDepartureDestinationPrefix(String prefix)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (prefix == null || prefix.isEmpty()) {
+        throw new IllegalArgumentException("Destination cannot be null or empty");
+      }
+      List<TrainDeparture> trainDepartures;
+      long stamp = lock.readLock();
+      try {
+        trainDepartures = new ArrayList<>();
+        for (ServiceDay serviceDay : serviceDays) {
+          trainDepartures.addAll(serviceDay.findByDestinationPrefix(prefix));
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      if (trainDepartures.isEmpty()) {
+        throw new IllegalArgumentException("Destination does not exist");
+      }
+      return trainDepartures;
+    } catch (IllegalArgumentException e) {
+      searchTrainDepartureDestinationPrefixMetrics.reject(e);
+      throw e;
+    } finally {
+      searchTrainDepartureDestinationPrefixMetrics.record(start);
     }
-    if (trainDepartureMap.values().stream()
-        .noneMatch(trainDeparture -> trainDeparture.getDestination().equals(destination))) {
-      throw new IllegalArgumentException("Destination does not exist");
+  }
+
+  /**
+   * Searches for the TrainDeparture objects that match the query, on every service date. Each day
+   * reads the departures from the index with the fewest departures in the time window of the
+   * query, out of the new departure time index and the line index, destination index or track
+   * index the conditions of the query can use, and only checks the other conditions for those.
+   * All of these indexes are sorted by new departure time, so a query with a time window only
+   * reads the departures of the index inside the window, and only looks at the days that can
+   * have departures in the window. When the query has a limit, the days after the last departure
+   * that is selected are not read. See explainTrainDepartures for which index each day used.
+   *
+   * @param query the conditions, order and limit of the departures
+   * @return a list of the matching TrainDeparture objects in the order of the query, empty if
+   *         no departure matches
+   * @throws IllegalArgumentException if the query is null
+   */
+  public List<TrainDeparture> searchTrainDepartures(DepartureQuery query)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkQuery(query);
+      long stamp = lock.readLock();
+      try {
+        return find(query, null);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    } catch (IllegalArgumentException e) {
+      searchTrainDeparturesMetrics.reject(e);
+      throw e;
+    } finally {
+      searchTrainDeparturesMetrics.record(start);
+    }
+  }
+
+  /**
+   * Searches for the TrainDeparture objects that match the query like searchTrainDepartures, and
+   * tells how they were found: which index each service day read, how many departures each index
+   * had in the time window of the query, and how many departures were read and matched.
+   *
+   * @param query the conditions, order and limit of the departures
+   * @return the plan of the search, with the departures that were found
+   * @throws IllegalArgumentException if the query is null
+   */
+  public QueryPlan explainTrainDepartures(DepartureQuery query) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkQuery(query);
+      QueryPlan plan = new QueryPlan(query);
+      long stamp = lock.readLock();
+      try {
+        plan.setTrainDepartures(find(query, plan));
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      return plan;
+    } catch (IllegalArgumentException e) {
+      explainTrainDeparturesMetrics.reject(e);
+      throw e;
+    } finally {
+      explainTrainDeparturesMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gets the departures that leave in the given time window, counting their delay, on every
+   * service date. Used by platform displays and at shift handovers, which show a part of the day
+   * like 10:00 to 10:30. Only the departures in the window are read, see searchTrainDepartures.
+   *
+   * @param from the start of the window, inclusive
+   * @param to the end of the window, exclusive
+   * @return the departures in the window sorted by new departure time
+   * @throws IllegalArgumentException if from or to is null or if to is before from
+   */
+  public List<TrainDeparture> getTrainDeparturesBetween(LocalDateTime from, LocalDateTime to)
+      throws IllegalArgumentException {
+    return searchTrainDepartures(new DepartureQuery().withTimeWindow(from, to));
+  }
+
+  /**
+   * Gets the next departures that leave at or after the current time of the clock, counting their
+   * delay. Used by displays that only show the next departures instead of the whole day.
+   *
+   * @param count the largest number of departures to get
+   * @return at most count departures sorted by new departure time
+   * @throws IllegalArgumentException if the count is negative
+   */
+  public List<TrainDeparture> getNextTrainDepartures(int count) throws IllegalArgumentException {
+    return getNextTrainDepartures(getCurrentDateTime(), count);
+  }
+
+  /**
+   * Gets the next departures that leave at or after the given date and time, counting their delay.
+   *
+   * <p>Only the days that can have departures after the time are read: a delay can move a
+   * departure into the next day, so the day before the time is read as well. Each day finds its
+   * first departure at or after the time in its new departure time index and reads at most count
+   * departures from there. A later day is only read if it starts before the last of the
+   * departures found so far, so the cost grows with the number of departures asked for, and only
+   * with the logarithm of the number of departures in the registry.
+   *
+   * @param from the date and time the departures must leave at or after
+   * @param count the largest number of departures to get
+   * @return at most count departures sorted by new departure time
+   * @throws IllegalArgumentException if the date and time is null or if the count is negative
+   */
+  public List<TrainDeparture> getNextTrainDepartures(LocalDateTime from, int count)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (from == null) {
+        throw new IllegalArgumentException("Time cannot be null");
+      }
+      if (count < 0) {
+        throw new IllegalArgumentException("Count cannot be negative");
+      }
+      List<TrainDeparture> next = new ArrayList<>();
+      if (count == 0) {
+        return next;
+      }
+      TrainDeparture searchKey = TrainDeparture.searchKey(from);
+      long stamp = lock.readLock();
+      try {
+        ServiceDay[] days = serviceDays;
+        for (int i = indexOf(days, from.toLocalDate().toEpochDay() - 1); i < days.length; i++) {
+          if (next.size() == count && days[i].getDate().atStartOfDay()
+              .isAfter(next.get(count - 1).getNewDepartureDateTime())) {
+            break;
+          }
+          next = mergeFirst(next, days[i].findNext(searchKey, count), count);
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      return next;
+    } catch (IllegalArgumentException e) {
+      getNextTrainDeparturesMetrics.reject(e);
+      throw e;
+    } finally {
+      getNextTrainDeparturesMetrics.record(start);
     }
-    return trainDepartureMap.values().stream()
-        .filter(trainDeparture -> trainDeparture.getDestination().equals(destination))
-        .collect(Collectors.toList());
+  }
+
+  /**
+   * Finds the next departure to the given destination that leaves at or after the current time
+   * of the clock, counting its delay. Upper and lower case is ignored. Each day finds it with one
+   * search in its destination index.
+   *
+   * @param destination the destination of the train
+   * @return an Optional with the next departure, or an empty Optional if no departure to the
+   *         destination leaves after the current time
+   * @throws IllegalArgumentException if the destination is null or empty
+   */
+  public Optional<TrainDeparture> findNextTrainDepartureTo(String destination)
+      throws IllegalArgumentException {
+    return findNext(destination, false);
+  }
+
+  /**
+   * Finds the next departure on the given line that leaves at or after the current time of the
+   * clock, counting its delay. Upper and lower case is ignored. Each day finds it with one search
+   * in its line index.
+   *
+   * @param line the line of the train
+   * @return an Optional with the next departure, or an empty Optional if no departure on the line
+   *         leaves after the current time
+   * @throws IllegalArgumentException if the line is null or empty
+   */
+  public Optional<TrainDeparture> findNextTrainDepartureOnLine(String line)
+      throws IllegalArgumentException {
+    return findNext(line, true);
+  }
+
+  /**
+   * Gets the next departure to every destination that leaves at or after the current time of the
+   * clock, counting its delay, like a display showing the next train to each destination.
+   * Destinations that only differ in upper and lower case are the same destination. Each day
+   * searches its destination index once for every destination.
+   *
+   * @return one departure for each destination, sorted by new departure time
+   */
+  public List<TrainDeparture> getNextTrainDeparturePerDestination() {
+    return getNextOfEach(false);
+  }
+
+  /**
+   * Gets the next departure on every line that leaves at or after the current time of the clock,
+   * counting its delay. Lines that only differ in upper and lower case are the same line. Each day
+   * searches its line index once for every line.
+   *
+   * @return one departure for each line, sorted by new departure time
+   */
+  public List<TrainDeparture> getNextTrainDeparturePerLine() {
+    return getNextOfEach(true);
   }
 
   /**
    * Removes all TrainDeparture objects with a departure time before the current time from the
-   * registry. This method is called every time the current time is updated.
+   * registry. This method is called every time the current time is updated. The current date and
+   * time is read from the clock of the registry.
+   *
+   * <p>A service day where the last departure has passed is dropped as a whole, without looking at
+   * its departures. From the other days that have started, the departures are taken from the start
+   * of the new departure time index until a departure that has not passed is found, so only the
+   * departures that have passed are looked at. Because the index is updated when a delay is set,
+   * delayed departures are removed at their new departure time.
    */
   public void removePassedTrainDepartures() {
-    trainDepartureMap.values().removeIf(
-        trainDeparture -> trainDeparture.getNewDepartureTime()
-            .isBefore(TimeManager.getCurrentTime()));
+    removePassedTrainDepartures(getCurrentDateTime());
   }
 
   /**
-   * Sorts all TrainDeparture objects by departure time. If there are no TrainDeparture objects
-   * in the registry, an empty list is returned.
+   * Removes all TrainDeparture objects with a new departure time before the given time on the
+   * current date of the clock from the registry, instead of the current time of the clock.
+   *
+   * @param currentTime the time the departures must leave at or after to be kept
+   * @throws IllegalArgumentException if the time is null
+   */
+  public void removePassedTrainDepartures(LocalTime currentTime)
+      throws IllegalArgumentException {
+    removePassedTrainDepartures(atCurrentDate(currentTime));
+  }
+
+  /**
+   * Removes all TrainDeparture objects with a new departure date and time before the given date
+   * and time from the registry, instead of the current time of the clock. Used when changes are
+   * replayed from a journal, where the time they were made at is known.
+   *
+   * @param currentDateTime the date and time the departures must leave at or after to be kept
+   * @throws IllegalArgumentException if the date and time is null
+   */
+  public void removePassedTrainDepartures(LocalDateTime currentDateTime)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (currentDateTime == null) {
+        throw new IllegalArgumentException("Time cannot be null");
+      }
+      boolean removed = false;
+      long stamp = lock.writeLock();
+      try {
+        ServiceDay[] days = serviceDays;
+        ServiceDay[] remaining = new ServiceDay[days.length];
+        int kept = 0;
+        for (ServiceDay serviceDay : days) {
+          if (serviceDay.getDate().atStartOfDay().isBefore(currentDateTime)) {
+            if (serviceDay.hasPassed(currentDateTime)) {
+              removed = true;
+              continue;
+            }
+            removed |= serviceDay.removePassed(currentDateTime);
+          }
+          remaining[kept++] = serviceDay;
+        }
+        if (removed) {
+          serviceDays = kept == remaining.length ? remaining : Arrays.copyOf(remaining, kept);
+          version++;
+        }
+        for (RegistryListener listener : listeners) {
+          listener.passedDeparturesRemoved(currentDateTime, version);
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      changeCommitted();
+    } catch (IllegalArgumentException e) {
+      removePassedTrainDeparturesMetrics.reject(e);
+      throw e;
+    } finally {
+      removePassedTrainDeparturesMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gets all TrainDeparture objects sorted by departure time. If there are no TrainDeparture
+   * objects in the registry, an empty list is returned.
    *
    * @return a list of all TrainDeparture objects sorted by departure time
    */
   public List<TrainDeparture> getTrainDepartureSorted() {
-    return trainDepartureMap.values().stream()
-        .sorted(Comparator.comparing(TrainDeparture::getDepartureTime))
-        .collect(Collectors.toList());
+    return getTrainDepartureSorted(DepartureOrder.DEPARTURE_TIME);
+  }
+
+  /**
+   * Gets all TrainDeparture objects in the given order. The departures are read from the sorted
+   * indexes of the service days for that order, so no sorting is done, except for merging the
+   * days when they are ordered by new departure time. If there are no TrainDeparture objects
+   * in the registry, an empty list is returned.
+   *
+   * @param order the order of the departures
+   * @return a list of all TrainDeparture objects in the given order
+   */
+  public List<TrainDeparture> getTrainDepartureSorted(DepartureOrder order) {
+    long start = metrics.start();
+    try {
+      long stamp = lock.readLock();
+      try {
+        return collect(serviceDays, order);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    } finally {
+      getTrainDepartureSortedMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gets the TrainDeparture objects of one service date in the given order. Only the departures
+   * of that date are read. If no departures run on the date, an empty list is returned.
+   *
+   * @param serviceDate the date the departures run on
+   * @param order the order of the departures
+   * @return a list of the TrainDeparture objects of the date in the given order
+   * @throws IllegalArgumentException if the service date is null
+   */
+  public List<TrainDeparture> getTrainDepartureSorted(LocalDate serviceDate,
+      DepartureOrder order) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkServiceDate(serviceDate);
+      long stamp = lock.readLock();
+      try {
+        ServiceDay serviceDay = serviceDay(serviceDate);
+        return serviceDay == null ? new ArrayList<>()
+            : new ArrayList<>(serviceDay.getTrainDepartures(order));
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    } catch (IllegalArgumentException e) {
+      getTrainDepartureSortedMetrics.reject(e);
+      throw e;
+    } finally {
+      getTrainDepartureSortedMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gets the service dates that have departures in the registry.
+   *
+   * @return a list of the service dates in increasing order
+   */
+  public List<LocalDate> getServiceDates() {
+    ServiceDay[] days = serviceDays;
+    List<LocalDate> dates = new ArrayList<>(days.length);
+    for (ServiceDay serviceDay : days) {
+      dates.add(serviceDay.getDate());
+    }
+    return dates;
+  }
+
+  /**
+   * Gets the version of the registry. The version is increased every time a departure is added,
+   * removed or changed.
+   *
+   * @return version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets an unchangeable view of all departures in the registry. If the registry has not changed
+   * since the last board was made, the same board is returned without any locking. Otherwise a
+   * new board is copied from the sorted indexes while holding the read lock.
+   *
+   * @return the departure board for the current version
+   */
+  public DepartureBoard getDepartureBoard() {
+    long start = metrics.start();
+    try {
+      DepartureBoard board = departureBoard.get();
+      if (board.getVersion() == version) {
+        return board;
+      }
+      long stamp = lock.readLock();
+      try {
+        ServiceDay[] days = serviceDays;
+        board = new DepartureBoard(version, collect(days, DepartureOrder.DEPARTURE_TIME),
+            collect(days, DepartureOrder.NEW_DEPARTURE_TIME), this::isAllocated);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      return departureBoard.accumulateAndGet(board,
+          (current, made) -> current.getVersion() >= made.getVersion() ? current : made);
+    } finally {
+      getDepartureBoardMetrics.record(start);
+    }
   }
 
   /**
    * Assigns a track to a TrainDeparture object by searching for the train number in the registry
    * and calling the setTrack method in the TrainDeparture class on that TrainDeparture object.
+   * The departure on the earliest service date with the train number is used.
+   *
+   * <p>The track can only be assigned if no other departure occupies the track while this
+   * departure does. If the departure already has a track, it is moved to the new track.
    *
    * @param trainNumber the number of the train
    * @param track the track to be assigned
-   * @throws IllegalArgumentException if the train number does not exist or
-   *                                  if the track is already assigned to another train
+   * @throws IllegalArgumentException if the train number does not exist,
+   *                                  if the track is not a positive number or
+   *                                  if the track is occupied by another train at that time
    */
   public void assignTrack(int trainNumber, int track) throws IllegalArgumentException {
-    if (!trainDepartureMap.containsKey(trainNumber)) {
-      throw new IllegalArgumentException("Train number does not exist");
-    }
-    if (trainDepartureMap.values().stream()
-        .anyMatch(trainDeparture -> trainDeparture.getTrack() == track)) {
-      throw new IllegalArgumentException("Track is already assigned to another train");
-    }
-    TrainDeparture trainDeparture = trainDepartureMap.get(trainNumber);
-    trainDeparture.setTrack(track);
+    assignTrackOn(null, false, trainNumber, track, false);
+  }
+
+  /**
+   * Assigns a track to the TrainDeparture object with the given train number on the given service
+   * date, like assignTrack without a date.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @param track the track to be assigned
+   * @throws IllegalArgumentException if the service date is null,
+   *                                  if the train does not run on the date,
+   *                                  if the track is not a positive number or
+   *                                  if the track is occupied by another train at that time
+   */
+  public void assignTrack(LocalDate serviceDate, int trainNumber, int track)
+      throws IllegalArgumentException {
+    assignTrackOn(serviceDate, true, trainNumber, track, false);
+  }
+
+  /**
+   * Assigns a track to the TrainDeparture object with the given train number on the given service
+   * date as if a TrackAllocator had chosen it, so the departure is moved when a later delay puts
+   * it in conflict with another departure. Used when changes are replayed from a journal or loaded
+   * from a snapshot, where it is known which tracks were chosen by an allocator.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @param track the track to be assigned
+   * @throws IllegalArgumentException if the service date is null,
+   *                                  if the train does not run on the date,
+   *                                  if the track is not a positive number or
+   *                                  if the track is occupied by another train at that time
+   */
+  public void allocateTrack(LocalDate serviceDate, int trainNumber, int track)
+      throws IllegalArgumentException {
+    assignTrackOn(serviceDate, true, trainNumber, track, true);
   }
 
   /**
    * Sets a delay to a TrainDeparture object by searching for the train number in the registry and
    * calling the setDelay method in the TrainDeparture class on that TrainDeparture object.
+   * The departure on the earliest service date with the train number is used. The departure is
+   * moved to its new place in the new departure time index. The delay can move the departure
+   * past midnight into the next day.
+   *
+   * <p>If the departure has a track, the occupation of the track is moved as well. The delay is
+   * always set, but the departures that now occupy the same track at the same time are returned,
+   * so the conflict can be solved by assigning another track. If the registry has a
+   * TrackAllocator, the departures in conflict whose track was chosen by the allocator are first
+   * moved to a free track, see allocateTracks.
    *
    * @param trainNumber the number of the train
    * @param hours hours of the delay to be set
    * @param minutes hours of the delay to be set
+   * @return a list of the departures in conflict with the delayed departure on its track,
+   *         empty if there are no conflicts
    * @throws IllegalArgumentException if the train number does not exist
    */
-  public void setDelay(int trainNumber, int hours, int minutes) throws IllegalArgumentException {
-    if (!trainDepartureMap.containsKey(trainNumber)) {
+  public List<TrainDeparture> setDelay(int trainNumber, int hours, int minutes)
+      throws IllegalArgumentException {
+    return setDelayOn(null, false, trainNumber, hours, minutes);
+  }
+
+  /**
+   * Sets a delay to the TrainDeparture object with the given train number on the given service
+   * date, like setDelay without a date.
+   *
+   * @param serviceDate the date the departure runs on
+   * @param trainNumber the number of the train
+   * @param hours hours of the delay to be set
+   * @param minutes hours of the delay to be set
+   * @return a list of the departures in conflict with the delayed departure on its track,
+   *         empty if there are no conflicts
+   * @throws IllegalArgumentException if the service date is null or
+   *                                  if the train does not run on the date
+   */
+  public List<TrainDeparture> setDelay(LocalDate serviceDate, int trainNumber, int hours,
+      int minutes) throws IllegalArgumentException {
+    return setDelayOn(serviceDate, true, trainNumber, hours, minutes);
+  }
+
+  /**
+   * Sets the same delay to every TrainDeparture object that matches the query, for example all
+   * departures of a line after a signal fault. The departures are found through the indexes like
+   * in searchTrainDepartures and all of them are delayed while holding the write lock once, so
+   * the change is seen by readers as one change and increases the version once. Each service day
+   * moves its delayed departures in its indexes in one go.
+   *
+   * <p>If no departure matches, nothing is changed and an empty report is returned. If the query
+   * has a limit, only the first departures in the order of the query are delayed. Conflicts are
+   * solved by the TrackAllocator of the registry like in setDelay.
+   *
+   * @param query the conditions the departures to delay must match
+   * @param hours hours of the delay to be set
+   * @param minutes minutes of the delay to be set
+   * @return the delayed departures and the departures in conflict with them on their tracks
+   * @throws IllegalArgumentException if the query is null or
+   *                                  if hours or minutes are not between 0 and 23/59
+   */
+  public DelayReport setDelays(DepartureQuery query, int hours, int minutes)
+      throws IllegalArgumentException {
+    return delayAll(query, hours, minutes, false, setDelaysMetrics);
+  }
+
+  /**
+   * Adds a delay to the delay that every TrainDeparture object matching the query already has,
+   * like setDelays. If the new delay of any departure would be more than 23 hours and 59 minutes,
+   * no delay is changed.
+   *
+   * @param query the conditions the departures to delay must match
+   * @param hours hours to add to the delay
+   * @param minutes minutes to add to the delay
+   * @return the delayed departures and the departures in conflict with them on their tracks
+   * @throws IllegalArgumentException if the query is null,
+   *                                  if hours or minutes are not between 0 and 23/59 or
+   *                                  if a new delay would be more than 23 hours and 59 minutes
+   */
+  public DelayReport addDelays(DepartureQuery query, int hours, int minutes)
+      throws IllegalArgumentException {
+    return delayAll(query, hours, minutes, true, addDelaysMetrics);
+  }
+
+  /**
+   * Checks if a track is free between two times on the current date, meaning that no departure
+   * occupies the track at any point from the start time until the end time.
+   *
+   * @param track the track to check
+   * @param from the start time, inclusive
+   * @param to the end time, exclusive
+   * @return true if the track is free between the times
+   * @throws IllegalArgumentException if from or to is null or if to is before from
+   */
+  public boolean isTrackFree(int track, LocalTime from, LocalTime to)
+      throws IllegalArgumentException {
+    return isTrackFree(track, atCurrentDate(from), atCurrentDate(to));
+  }
+
+  /**
+   * Checks if a track is free between two dates and times, meaning that no departure of any
+   * service date occupies the track at any point from the start until the end.
+   *
+   * @param track the track to check
+   * @param from the start date and time, inclusive
+   * @param to the end date and time, exclusive
+   * @return true if the track is free between the times
+   * @throws IllegalArgumentException if from or to is null or if to is before from
+   */
+  public boolean isTrackFree(int track, LocalDateTime from, LocalDateTime to)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkTimeWindow(from, to);
+      int startMinute = TrackOccupancy.epochMinute(from);
+      int endMinute = TrackOccupancy.epochMinute(to);
+      long stamp = lock.readLock();
+      try {
+        return isFree(serviceDaysAround(startMinute, endMinute), track, startMinute, endMinute);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    } catch (IllegalArgumentException e) {
+      isTrackFreeMetrics.reject(e);
+      throw e;
+    } finally {
+      isTrackFreeMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gets the tracks that are free between two times on the current date. The station is expected
+   * to have tracks numbered from 1 up to the given number of tracks.
+   *
+   * @param from the start time, inclusive
+   * @param to the end time, exclusive
+   * @param numberOfTracks the number of tracks at the station
+   * @return a list of the free track numbers in increasing order
+   * @throws IllegalArgumentException if from or to is null or if to is before from
+   */
+  public List<Integer> getFreeTracks(LocalTime from, LocalTime to, int numberOfTracks)
+      throws IllegalArgumentException {
+    return getFreeTracks(atCurrentDate(from), atCurrentDate(to), numberOfTracks);
+  }
+
+  /**
+   * Gets the tracks that are free between two dates and times. The station is expected to have
+   * tracks numbered from 1 up to the given number of tracks.
+   *
+   * @param from the start date and time, inclusive
+   * @param to the end date and time, exclusive
+   * @param numberOfTracks the number of tracks at the station
+   * @return a list of the free track numbers in increasing order
+   * @throws IllegalArgumentException if from or to is null or if to is before from
+   */
+  public List<Integer> getFreeTracks(LocalDateTime from, LocalDateTime to, int numberOfTracks)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkTimeWindow(from, to);
+      int startMinute = TrackOccupancy.epochMinute(from);
+      int endMinute = TrackOccupancy.epochMinute(to);
+      List<Integer> freeTracks = new ArrayList<>();
+      long stamp = lock.readLock();
+      try {
+        List<ServiceDay> days = serviceDaysAround(startMinute, endMinute);
+        for (int track = 1; track <= numberOfTracks; track++) {
+          if (isFree(days, track, startMinute, endMinute)) {
+            freeTracks.add(track);
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      return freeTracks;
+    } catch (IllegalArgumentException e) {
+      getFreeTracksMetrics.reject(e);
+      throw e;
+    } finally {
+      getFreeTracksMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gives a track to every departure that does not have one, chosen by the given TrackAllocator
+   * from the new departure times and the tracks of the other departures. Departures that already
+   * have a track keep it. All departures are given their tracks while holding the write lock
+   * once, so the change is seen by readers as one change and increases the version once, and the
+   * listeners are told about every track that was assigned.
+   *
+   * <p>The allocator is kept by the registry, like with setTrackAllocator, so when a later delay
+   * puts a departure in conflict with another departure, the departures whose track was chosen by
+   * an allocator are moved to a free track. A track that is later assigned by hand is not moved.
+   *
+   * @param allocator the allocator that chooses the tracks
+   * @return the departures that were given a track and the departures that were left without one
+   *         because every track was occupied
+   * @throws IllegalArgumentException if the allocator is null
+   */
+  public AllocationReport allocateTracks(TrackAllocator allocator)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (allocator == null) {
+        throw new IllegalArgumentException("Track allocator cannot be null");
+      }
+      AllocationReport report;
+      long stamp = lock.writeLock();
+      try {
+        trackAllocator = allocator;
+        List<TrainDeparture> unassigned = new ArrayList<>();
+        for (ServiceDay serviceDay : serviceDays) {
+          unassigned.addAll(serviceDay.getUnassigned());
+        }
+        unassigned.sort(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+        AllocatedTracks allocatedTracks = new AllocatedTracks();
+        List<TrainDeparture> left = allocator.allocate(unassigned, dwellMinutes, allocatedTracks);
+        if (!allocatedTracks.assigned.isEmpty()) {
+          version++;
+          allocatedTracks.tellListeners();
+        }
+        report = new AllocationReport(allocatedTracks.assigned, left);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      if (!report.getAssigned().isEmpty()) {
+        changeCommitted();
+      }
+      return report;
+    } catch (IllegalArgumentException e) {
+      allocateTracksMetrics.reject(e);
+      throw e;
+    } finally {
+      allocateTracksMetrics.record(start);
+    }
+  }
+
+  /**
+   * Sets the TrackAllocator that moves departures whose track was chosen by an allocator when a
+   * delay puts them in conflict with another departure, without giving tracks to the departures
+   * that have none. With no allocator, conflicts are only returned by setDelay and setDelays.
+   *
+   * @param allocator the allocator, or null to stop moving departures
+   */
+  public void setTrackAllocator(TrackAllocator allocator) {
+    long stamp = lock.writeLock();
+    try {
+      trackAllocator = allocator;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Gets the TrackAllocator that moves departures in conflict after a delay.
+   *
+   * @return the allocator, or an empty Optional if the registry has none
+   */
+  public Optional<TrackAllocator> getTrackAllocator() {
+    return Optional.ofNullable(trackAllocator);
+  }
+
+  /**
+   * Assigns a track to the departure with the given train number on the given service date, or
+   * on the earliest service date if no date is given. The track is marked as chosen by an
+   * allocator if asked.
+   */
+  private void assignTrackOn(LocalDate serviceDate, boolean dated, int trainNumber, int track,
+      boolean allocated) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (dated) {
+        checkServiceDate(serviceDate);
+      }
+      long stamp = lock.writeLock();
+      try {
+        TrainDeparture trainDeparture = getExisting(serviceDate, trainNumber);
+        if (!getConflicts(trainDeparture, track).isEmpty()) {
+          throw new IllegalArgumentException(
+              "Track is already assigned to another train at that time");
+        }
+        ServiceDay serviceDay = serviceDay(trainDeparture.getServiceDate());
+        if (allocated) {
+          serviceDay.allocateTrack(trainDeparture, track);
+        } else {
+          serviceDay.assignTrack(trainDeparture, track);
+        }
+        version++;
+        for (RegistryListener listener : listeners) {
+          if (allocated) {
+            listener.trackAllocated(trainDeparture.getServiceDate(), trainNumber, track, version);
+          } else {
+            listener.trackAssigned(trainDeparture.getServiceDate(), trainNumber, track, version);
+          }
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      changeCommitted();
+    } catch (IllegalArgumentException e) {
+      assignTrackMetrics.reject(e);
+      throw e;
+    } finally {
+      assignTrackMetrics.record(start);
+    }
+  }
+
+  /**
+   * Sets the delay of the departure with the given train number on the given service date, or on
+   * the earliest service date if no date is given.
+   */
+  private List<TrainDeparture> setDelayOn(LocalDate serviceDate, boolean dated, int trainNumber,
+      int hours, int minutes) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (dated) {
+        checkServiceDate(serviceDate);
+      }
+      List<TrainDeparture> conflicts;
+      long stamp = lock.writeLock();
+      try {
+        TrainDeparture trainDeparture = getExisting(serviceDate, trainNumber);
+        serviceDay(trainDeparture.getServiceDate()).setDelay(trainDeparture, hours, minutes);
+        version++;
+        for (RegistryListener listener : listeners) {
+          listener.delaySet(trainDeparture.getServiceDate(), trainNumber,
+              trainDeparture.getDelay(), version);
+        }
+        replanTracks(Collections.singletonList(trainDeparture));
+        conflicts = trainDeparture.getTrack() == -1 ? new ArrayList<>()
+            : getConflicts(trainDeparture, trainDeparture.getTrack());
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      changeCommitted();
+      return conflicts;
+    } catch (IllegalArgumentException e) {
+      setDelayMetrics.reject(e);
+      throw e;
+    } finally {
+      setDelayMetrics.record(start);
+    }
+  }
+
+  /**
+   * Sets or adds a delay to all departures that match the query. Every new delay is checked before
+   * any departure is changed, so either all departures are delayed or none.
+   */
+  private DelayReport delayAll(DepartureQuery query, int hours, int minutes, boolean add,
+      OperationMetrics operationMetrics) throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      checkQuery(query);
+      if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+        throw new IllegalArgumentException("Hours must be between 0 and 23, "
+            + "minutes must be between 0 and 59");
+      }
+      int delayMinutes = hours * 60 + minutes;
+      List<TrainDeparture> delayed = new ArrayList<>();
+      List<TrainDeparture> conflicts;
+      long stamp = lock.writeLock();
+      try {
+        List<ServiceDay> days = serviceDaysFor(query);
+        List<List<TrainDeparture>> departuresByDay = new ArrayList<>(days.size());
+        List<int[]> delaysByDay = new ArrayList<>(days.size());
+        Set<TrainDeparture> selected = query.hasLimit() ? new HashSet<>(find(query, null)) : null;
+        for (ServiceDay serviceDay : days) {
+          List<TrainDeparture> trainDepartures = serviceDay.find(query, null);
+          if (selected != null) {
+            trainDepartures.removeIf(trainDeparture -> !selected.contains(trainDeparture));
+          }
+          int[] delays = new int[trainDepartures.size()];
+          for (int i = 0; i < delays.length; i++) {
+            TrainDeparture trainDeparture = trainDepartures.get(i);
+            delays[i] = add ? delayMinutes + trainDeparture.getDelay().getHour() * 60
+                + trainDeparture.getDelay().getMinute() : delayMinutes;
+            if (delays[i] >= TrackOccupancy.MINUTES_PER_DAY) {
+              throw new IllegalArgumentException("The delay of train "
+                  + trainDeparture.getTrainNumber()
+                  + " would be more than 23 hours and 59 minutes");
+            }
+          }
+          departuresByDay.add(trainDepartures);
+          delaysByDay.add(delays);
+        }
+        for (int i = 0; i < days.size(); i++) {
+          if (!departuresByDay.get(i).isEmpty()) {
+            days.get(i).setDelays(departuresByDay.get(i), delaysByDay.get(i));
+            delayed.addAll(departuresByDay.get(i));
+          }
+        }
+        if (!delayed.isEmpty()) {
+          version++;
+          for (TrainDeparture trainDeparture : delayed) {
+            for (RegistryListener listener : listeners) {
+              listener.delaySet(trainDeparture.getServiceDate(), trainDeparture.getTrainNumber(),
+                  trainDeparture.getDelay(), version);
+            }
+          }
+          delayed.sort(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+          replanTracks(delayed);
+        }
+        Set<TrainDeparture> conflicting = new LinkedHashSet<>();
+        for (TrainDeparture trainDeparture : delayed) {
+          if (trainDeparture.getTrack() != -1) {
+            conflicting.addAll(getConflicts(trainDeparture, trainDeparture.getTrack()));
+          }
+        }
+        conflicts = new ArrayList<>(conflicting);
+        conflicts.sort(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      if (!delayed.isEmpty()) {
+        changeCommitted();
+      }
+      return new DelayReport(delayed, conflicts);
+    } catch (IllegalArgumentException e) {
+      operationMetrics.reject(e);
+      throw e;
+    } finally {
+      operationMetrics.record(start);
+    }
+  }
+
+  /**
+   * Finds the next departure on a line or to a destination after the current time. A later day is
+   * only read if it starts before the departure found so far.
+   */
+  private Optional<TrainDeparture> findNext(String text, boolean byLine)
+      throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      if (text == null || text.isEmpty()) {
+        throw new IllegalArgumentException(
+            (byLine ? "Line" : "Destination") + " cannot be null or empty");
+      }
+      LocalDateTime from = getCurrentDateTime();
+      TrainDeparture searchKey = TrainDeparture.searchKey(from);
+      Comparator<TrainDeparture> byNewDepartureTime =
+          DepartureOrder.NEW_DEPARTURE_TIME.getComparator();
+      TrainDeparture next = null;
+      long stamp = lock.readLock();
+      try {
+        ServiceDay[] days = serviceDays;
+        for (int i = indexOf(days, from.toLocalDate().toEpochDay() - 1); i < days.length; i++) {
+          if (next != null && days[i].getDate().atStartOfDay()
+              .isAfter(next.getNewDepartureDateTime())) {
+            break;
+          }
+          TrainDeparture found = byLine ? days[i].findNextByLine(text, searchKey)
+              : days[i].findNextByDestination(text, searchKey);
+          if (found != null && (next == null || byNewDepartureTime.compare(found, next) < 0)) {
+            next = found;
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      return Optional.ofNullable(next);
+    } catch (IllegalArgumentException e) {
+      findNextTrainDepartureMetrics.reject(e);
+      throw e;
+    } finally {
+      findNextTrainDepartureMetrics.record(start);
+    }
+  }
+
+  /**
+   * Gets the next departure of every line or destination after the current time.
+   */
+  private List<TrainDeparture> getNextOfEach(boolean byLine) {
+    long start = metrics.start();
+    try {
+      LocalDateTime from = getCurrentDateTime();
+      TrainDeparture searchKey = TrainDeparture.searchKey(from);
+      Map<String, TrainDeparture> next = new HashMap<>();
+      long stamp = lock.readLock();
+      try {
+        ServiceDay[] days = serviceDays;
+        for (int i = indexOf(days, from.toLocalDate().toEpochDay() - 1); i < days.length; i++) {
+          days[i].findNextOfEach(byLine, searchKey, next);
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      List<TrainDeparture> trainDepartures = new ArrayList<>(next.values());
+      trainDepartures.sort(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+      return trainDepartures;
+    } finally {
+      getNextTrainDeparturePerMetrics.record(start);
+    }
+  }
+
+  /**
+   * Merges two lists sorted by new departure time and keeps at most count departures.
+   */
+  private static List<TrainDeparture> mergeFirst(List<TrainDeparture> first,
+      List<TrainDeparture> second, int count) {
+    if (second.isEmpty()) {
+      return first;
+    }
+    if (first.isEmpty()) {
+      return second;
+    }
+    Comparator<TrainDeparture> byNewDepartureTime =
+        DepartureOrder.NEW_DEPARTURE_TIME.getComparator();
+    List<TrainDeparture> merged = new ArrayList<>(count);
+    int i = 0;
+    int j = 0;
+    while (merged.size() < count && (i < first.size() || j < second.size())) {
+      if (j == second.size()
+          || i < first.size() && byNewDepartureTime.compare(first.get(i), second.get(j)) <= 0) {
+        merged.add(first.get(i++));
+      } else {
+        merged.add(second.get(j++));
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Moves the departures whose track was chosen by an allocator and that are in conflict with one
+   * of the delayed departures, to a free track chosen by the TrackAllocator of the registry. Only
+   * the delayed departures and the departures in conflict with them are looked at. The delayed
+   * departures are tried first, so the departures that did not change keep their tracks when
+   * possible. Must be called while holding the write lock, after the version has been increased.
+   */
+  private void replanTracks(List<TrainDeparture> delayed) {
+    TrackAllocator allocator = trackAllocator;
+    if (allocator == null || !hasAllocated()) {
+      return;
+    }
+    Set<TrainDeparture> affected = new LinkedHashSet<>();
+    List<TrainDeparture> conflicting = new ArrayList<>();
+    for (TrainDeparture trainDeparture : delayed) {
+      if (trainDeparture.getTrack() == -1) {
+        continue;
+      }
+      List<TrainDeparture> conflicts = getConflicts(trainDeparture, trainDeparture.getTrack());
+      if (!conflicts.isEmpty() && isAllocated(trainDeparture)) {
+        affected.add(trainDeparture);
+      }
+      for (TrainDeparture conflict : conflicts) {
+        if (isAllocated(conflict)) {
+          conflicting.add(conflict);
+        }
+      }
+    }
+    affected.addAll(conflicting);
+    if (affected.isEmpty()) {
+      return;
+    }
+    AllocatedTracks allocatedTracks = new AllocatedTracks();
+    allocator.replan(new ArrayList<>(affected), allocatedTracks);
+    allocatedTracks.tellListeners();
+  }
+
+  private boolean hasAllocated() {
+    for (ServiceDay serviceDay : serviceDays) {
+      if (serviceDay.hasAllocated()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isAllocated(TrainDeparture trainDeparture) {
+    return serviceDay(trainDeparture.getServiceDate()).isAllocated(trainDeparture);
+  }
+
+  /**
+   * The tracks of the registry as a TrackAllocator sees them, which remembers the departures the
+   * allocator gave a track. Must only be used while holding the write lock.
+   */
+  private class AllocatedTracks implements TrackAllocator.Station {
+    private final List<TrainDeparture> assigned = new ArrayList<>();
+
+    @Override
+    public int getBlockedUntil(TrainDeparture trainDeparture, int track) {
+      int endMinute = Math.toIntExact(trainDeparture.getNewDepartureMinute());
+      long firstDay = Math.floorDiv(endMinute - dwellMinutes, TrackOccupancy.MINUTES_PER_DAY) - 1;
+      long lastDay = Math.floorDiv(endMinute, TrackOccupancy.MINUTES_PER_DAY) + 1;
+      ServiceDay[] days = serviceDays;
+      int blockedUntil = Integer.MIN_VALUE;
+      for (int i = indexOf(days, firstDay); i < days.length; i++) {
+        if (days[i].getDate().toEpochDay() > lastDay) {
+          break;
+        }
+        blockedUntil = Math.max(blockedUntil,
+            days[i].getTrackOccupancy().getBlockedUntil(trainDeparture, track));
+      }
+      return blockedUntil;
+    }
+
+    @Override
+    public boolean isUsed(int track) {
+      for (ServiceDay serviceDay : serviceDays) {
+        if (serviceDay.getTrackOccupancy().count(track) > 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void assign(TrainDeparture trainDeparture, int track) {
+      serviceDay(trainDeparture.getServiceDate()).allocateTrack(trainDeparture, track);
+      assigned.add(trainDeparture);
+    }
+
+    /**
+     * Tells the listeners about the tracks that were allocated, with the current version.
+     */
+    private void tellListeners() {
+      for (TrainDeparture trainDeparture : assigned) {
+        for (RegistryListener listener : listeners) {
+          listener.trackAllocated(trainDeparture.getServiceDate(), trainDeparture.getTrainNumber(),
+              trainDeparture.getTrack(), version);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tells the listeners that a change has been made. Must be called after the write lock has been
+   * released.
+   */
+  private void changeCommitted() {
+    for (RegistryListener listener : listeners) {
+      listener.changeCommitted();
+    }
+  }
+
+  /**
+   * Puts a departure in the service day of its date, which is added if it does not exist yet.
+   * Must be called while holding the write lock.
+   */
+  private void insert(TrainDeparture trainDeparture) throws IllegalArgumentException {
+    checkInsert(trainDeparture);
+    ServiceDay serviceDay = serviceDay(trainDeparture.getServiceDate());
+    if (serviceDay == null) {
+      serviceDay = addServiceDay(trainDeparture.getServiceDate());
+    }
+    serviceDay.add(trainDeparture);
+  }
+
+  /**
+   * Adds many departures to the registry. The departures are checked and added to the maps and the
+   * track occupancies one at a time. The departures of service dates that were not in the registry
+   * before are put in the sorted indexes of their day from sorted lists at the end, so those trees
+   * are built in one go instead of one departure at a time. Must be called while holding the
+   * write lock.
+   */
+  private void insertAll(List<TrainDeparture> trainDepartures, Map<Integer, String> rejected) {
+    Map<ServiceDay, List<TrainDeparture>> newServiceDays = new IdentityHashMap<>();
+    for (int i = 0; i < trainDepartures.size(); i++) {
+      TrainDeparture trainDeparture = trainDepartures.get(i);
+      try {
+        if (trainDeparture == null) {
+          throw new IllegalArgumentException("Train departure cannot be null");
+        }
+        checkInsert(trainDeparture);
+        ServiceDay serviceDay = serviceDay(trainDeparture.getServiceDate());
+        if (serviceDay == null) {
+          serviceDay = addServiceDay(trainDeparture.getServiceDate());
+          newServiceDays.put(serviceDay, new ArrayList<>());
+        }
+        List<TrainDeparture> added = newServiceDays.get(serviceDay);
+        if (added == null) {
+          serviceDay.add(trainDeparture);
+        } else {
+          serviceDay.put(trainDeparture);
+          added.add(trainDeparture);
+        }
+      } catch (IllegalArgumentException e) {
+        rejected.put(i, e.getMessage());
+      }
+    }
+    for (Map.Entry<ServiceDay, List<TrainDeparture>> entry : newServiceDays.entrySet()) {
+      entry.getKey().addAllToIndexes(entry.getValue());
+    }
+  }
+
+  /**
+   * Checks that the departure can be added, without changing the registry.
+   */
+  private void checkInsert(TrainDeparture trainDeparture) throws IllegalArgumentException {
+    ServiceDay serviceDay = serviceDay(trainDeparture.getServiceDate());
+    if (serviceDay != null && serviceDay.containsKey(trainDeparture.getTrainNumber())) {
+      throw new IllegalArgumentException("Train number already exists");
+    }
+    if (trainDeparture.getTrack() != -1
+        && !getConflicts(trainDeparture, trainDeparture.getTrack()).isEmpty()) {
+      throw new IllegalArgumentException(
+          "Track is already assigned to another train at that time");
+    }
+  }
+
+  /**
+   * Gets the other departures whose occupation of the track overlaps with the occupation of the
+   * given departure if it was on the given track. The departures of the days around the new
+   * departure time are checked, since a delay can move a departure into the next day.
+   */
+  private List<TrainDeparture> getConflicts(TrainDeparture trainDeparture, int track) {
+    int endMinute = TrackOccupancy.epochMinute(trainDeparture.getNewDepartureDateTime());
+    List<TrainDeparture> conflicts = new ArrayList<>();
+    for (ServiceDay serviceDay : serviceDaysAround(endMinute - dwellMinutes, endMinute)) {
+      conflicts.addAll(serviceDay.getTrackOccupancy().getConflicts(trainDeparture, track));
+    }
+    conflicts.sort(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+    return conflicts;
+  }
+
+  /**
+   * Checks if no departure of the given days occupies the track between the start and end minute.
+   */
+  private static boolean isFree(List<ServiceDay> days, int track, int startMinute,
+      int endMinute) {
+    for (ServiceDay serviceDay : days) {
+      if (!serviceDay.getTrackOccupancy().isFree(track, startMinute, endMinute)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the service days whose departures can occupy a track between the start and end minute.
+   * A departure occupies its track at most one day before its service date and leaves at the
+   * latest at the end of the next day, so only the days from one day before the start until one
+   * day after the end are looked at.
+   */
+  private List<ServiceDay> serviceDaysAround(int startMinute, int endMinute) {
+    long firstDay = Math.floorDiv(startMinute, TrackOccupancy.MINUTES_PER_DAY) - 1;
+    long lastDay = Math.floorDiv(endMinute, TrackOccupancy.MINUTES_PER_DAY) + 1;
+    ServiceDay[] days = serviceDays;
+    List<ServiceDay> around = new ArrayList<>();
+    for (int i = indexOf(days, firstDay); i < days.length; i++) {
+      if (days[i].getDate().toEpochDay() > lastDay) {
+        break;
+      }
+      around.add(days[i]);
+    }
+    return around;
+  }
+
+  /**
+   * Gets the departures matching the query on every service day that can have any, in the order
+   * of the query. A departure leaves at or after midnight at the start of its service date, in
+   * both orders, so when the limit has been reached with a departure before the next day starts,
+   * the later days are not read. Must be called while holding a lock.
+   */
+  private List<TrainDeparture> find(DepartureQuery query, QueryPlan plan) {
+    boolean byDepartureTime = query.getOrder() == DepartureOrder.DEPARTURE_TIME;
+    List<TrainDeparture> trainDepartures = new ArrayList<>();
+    int days = 0;
+    for (ServiceDay serviceDay : serviceDaysFor(query)) {
+      if (trainDepartures.size() == query.getLimit()) {
+        TrainDeparture last = trainDepartures.get(trainDepartures.size() - 1);
+        long lastMinute = byDepartureTime ? last.getDepartureMinute()
+            : last.getNewDepartureMinute();
+        if (lastMinute < serviceDay.getDate().toEpochDay() * TrackOccupancy.MINUTES_PER_DAY) {
+          break;
+        }
+      }
+      List<TrainDeparture> found = serviceDay.find(query, plan);
+      if (found.isEmpty()) {
+        continue;
+      }
+      trainDepartures.addAll(found);
+      if (++days > 1) {
+        trainDepartures.sort(query.getOrder().getComparator());
+        if (trainDepartures.size() > query.getLimit()) {
+          trainDepartures.subList(query.getLimit(), trainDepartures.size()).clear();
+        }
+      }
+    }
+    return trainDepartures;
+  }
+
+  /**
+   * Gets the service days that can have departures matching the query. A departure leaves at the
+   * latest at the end of the day after its service date, so a query with a time window only needs
+   * the days from one day before the start of the window until the end of the window.
+   */
+  private List<ServiceDay> serviceDaysFor(DepartureQuery query) {
+    ServiceDay[] days = serviceDays;
+    if (!query.hasTimeWindow()) {
+      return Arrays.asList(days);
+    }
+    long firstDay = query.getFrom().toLocalDate().toEpochDay() - 1;
+    long lastDay = query.getTo().toLocalDate().toEpochDay();
+    List<ServiceDay> window = new ArrayList<>();
+    for (int i = indexOf(days, firstDay); i < days.length; i++) {
+      if (days[i].getDate().toEpochDay() > lastDay) {
+        break;
+      }
+      window.add(days[i]);
+    }
+    return window;
+  }
+
+  /**
+   * Gets the service day of the given date, or null if no departures run on that date.
+   */
+  private ServiceDay serviceDay(LocalDate date) {
+    ServiceDay[] days = serviceDays;
+    int index = indexOf(days, date.toEpochDay());
+    return index < days.length && days[index].getDate().equals(date) ? days[index] : null;
+  }
+
+  /**
+   * Adds an empty service day for the given date. The array of days is copied, so readers that
+   * have already read it are not disturbed. Must be called while holding the write lock.
+   */
+  private ServiceDay addServiceDay(LocalDate date) {
+    ServiceDay serviceDay = new ServiceDay(date, dwellMinutes);
+    ServiceDay[] days = serviceDays;
+    int index = indexOf(days, date.toEpochDay());
+    ServiceDay[] newDays = new ServiceDay[days.length + 1];
+    System.arraycopy(days, 0, newDays, 0, index);
+    newDays[index] = serviceDay;
+    System.arraycopy(days, index, newDays, index + 1, days.length - index);
+    serviceDays = newDays;
+    return serviceDay;
+  }
+
+  /**
+   * Gets the position of the first day in the sorted array that is on or after the given day.
+   */
+  private static int indexOf(ServiceDay[] days, long epochDay) {
+    int low = 0;
+    int high = days.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (days[middle].getDate().toEpochDay() < epochDay) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Gets the departures of all given days in the given order. The days are sorted by date, so
+   * the departures sorted by departure time only have to be put one day after the other. Ordered
+   * by new departure time, delayed departures of one day can leave after departures of the next
+   * day, so the days are merged. The sort used by List.sort finds the sorted runs of the days
+   * and only merges them, which takes linear time for each day.
+   */
+  private static List<TrainDeparture> collect(ServiceDay[] days, DepartureOrder order) {
+    int size = 0;
+    for (ServiceDay serviceDay : days) {
+      size += serviceDay.size();
+    }
+    List<TrainDeparture> trainDepartures = new ArrayList<>(size);
+    for (ServiceDay serviceDay : days) {
+      trainDepartures.addAll(serviceDay.getTrainDepartures(order));
+    }
+    if (order == DepartureOrder.NEW_DEPARTURE_TIME && days.length > 1) {
+      trainDepartures.sort(order.getComparator());
+    }
+    return trainDepartures;
+  }
+
+  /**
+   * Gets the departure with the given train number on the earliest service date it runs on.
+   */
+  private static TrainDeparture find(ServiceDay[] days, int trainNumber) {
+    for (ServiceDay serviceDay : days) {
+      TrainDeparture trainDeparture = serviceDay.get(trainNumber);
+      if (trainDeparture != null) {
+        return trainDeparture;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the departure with the given train number on the given service date, or on the earliest
+   * service date if the date is null. Must be called while holding the write lock.
+   */
+  private TrainDeparture getExisting(LocalDate serviceDate, int trainNumber)
+      throws IllegalArgumentException {
+    TrainDeparture trainDeparture;
+    if (serviceDate == null) {
+      trainDeparture = find(serviceDays, trainNumber);
+    } else {
+      ServiceDay serviceDay = serviceDay(serviceDate);
+      trainDeparture = serviceDay == null ? null : serviceDay.get(trainNumber);
+    }
+    if (trainDeparture == null) {
       throw new IllegalArgumentException("Train number does not exist");
     }
-    TrainDeparture trainDeparture = trainDepartureMap.get(trainNumber);
-    trainDeparture.setDelay(hours, minutes);
+    return trainDeparture;
+  }
+
+  /**
+   * Gets the departure with the given train number on the given service date, or on the earliest
+   * service date if the date is null, with an optimistic read. If the registry was changed while
+   * reading, it is read again while holding the read lock.
+   */
+  private TrainDeparture get(LocalDate serviceDate, int trainNumber) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      TrainDeparture trainDeparture = read(serviceDate, trainNumber);
+      if (lock.validate(stamp)) {
+        return trainDeparture;
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return read(serviceDate, trainNumber);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private TrainDeparture read(LocalDate serviceDate, int trainNumber) {
+    if (serviceDate == null) {
+      return find(serviceDays, trainNumber);
+    }
+    ServiceDay serviceDay = serviceDay(serviceDate);
+    return serviceDay == null ? null : serviceDay.get(trainNumber);
+  }
+
+  /**
+   * Gets the departures with the given train number on all service dates, with an optimistic
+   * read like get.
+   */
+  private List<TrainDeparture> getAll(int trainNumber) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      List<TrainDeparture> trainDepartures = readAll(trainNumber);
+      if (lock.validate(stamp)) {
+        return trainDepartures;
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return readAll(trainNumber);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private List<TrainDeparture> readAll(int trainNumber) {
+    ServiceDay[] days = serviceDays;
+    TrainDeparture first = null;
+    List<TrainDeparture> trainDepartures = null;
+    for (ServiceDay serviceDay : days) {
+      TrainDeparture trainDeparture = serviceDay.get(trainNumber);
+      if (trainDeparture == null) {
+        continue;
+      }
+      if (first == null) {
+        first = trainDeparture;
+      } else {
+        if (trainDepartures == null) {
+          trainDepartures = new ArrayList<>();
+          trainDepartures.add(first);
+        }
+        trainDepartures.add(trainDeparture);
+      }
+    }
+    if (trainDepartures != null) {
+      return trainDepartures;
+    }
+    return first == null ? List.of() : List.of(first);
+  }
+
+  /**
+   * Gets the given time on the current date of the clock, or null if the time is null.
+   */
+  private LocalDateTime atCurrentDate(LocalTime time) {
+    return time == null ? null : getCurrentDate().atTime(time);
+  }
+
+  private static void checkQuery(DepartureQuery query) throws IllegalArgumentException {
+    if (query == null) {
+      throw new IllegalArgumentException("Query cannot be null");
+    }
+  }
+
+  private static void checkServiceDate(LocalDate serviceDate) throws IllegalArgumentException {
+    if (serviceDate == null) {
+      throw new IllegalArgumentException("Service date cannot be null");
+    }
+  }
+
+  private static void checkTimeWindow(LocalDateTime from, LocalDateTime to)
+      throws IllegalArgumentException {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Time cannot be null");
+    }
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("End time cannot be before start time");
+    }
   }
 }
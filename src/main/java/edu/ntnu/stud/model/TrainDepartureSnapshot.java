@@ -0,0 +1,142 @@
+package edu.ntnu.stud.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * An unchangeable copy of a TrainDeparture object, taken at one point in time.
+ *
+ * <p>It has the same get methods as TrainDeparture, but since nothing in it can be changed, it
+ * can be read by any number of threads while the TrainDeparture it was copied from is changed.
+ */
+public final class TrainDepartureSnapshot {
+  private final int trainNumber;
+  private final LocalDate serviceDate;
+  private final LocalTime departureTime;
+  private final String line;
+  private final String destination;
+  private final int track;
+  private final LocalTime delay;
+  private final LocalDateTime newDepartureDateTime;
+  private final boolean trackAllocated;
+
+  /**
+   * Constructs a TrainDepartureSnapshot object by copying the fields of a TrainDeparture object
+   * whose track was not chosen by a TrackAllocator.
+   *
+   * @param trainDeparture the departure to copy
+   */
+  TrainDepartureSnapshot(TrainDeparture trainDeparture) {
+    this(trainDeparture, false);
+  }
+
+  /**
+   * Constructs a TrainDepartureSnapshot object by copying the fields of a TrainDeparture object.
+   *
+   * @param trainDeparture the departure to copy
+   * @param trackAllocated true if the track was chosen by a TrackAllocator
+   */
+  TrainDepartureSnapshot(TrainDeparture trainDeparture, boolean trackAllocated) {
+    this.trainNumber = trainDeparture.getTrainNumber();
+    this.serviceDate = trainDeparture.getServiceDate();
+    this.departureTime = trainDeparture.getDepartureTime();
+    this.line = trainDeparture.getLine();
+    this.destination = trainDeparture.getDestination();
+    this.track = trainDeparture.getTrack();
+    this.delay = trainDeparture.getDelay();
+    this.newDepartureDateTime = trainDeparture.getNewDepartureDateTime();
+    this.trackAllocated = trackAllocated;
+  }
+
+  /**
+   * Gets the train number.
+   *
+   * @return train number
+   */
+  public int getTrainNumber() {
+    return trainNumber;
+  }
+
+  /**
+   * Gets the date the departure runs on according to the timetable.
+   *
+   * @return service date
+   */
+  public LocalDate getServiceDate() {
+    return serviceDate;
+  }
+
+  /**
+   * Gets the departure time of the train.
+   *
+   * @return departure time
+   */
+  public LocalTime getDepartureTime() {
+    return departureTime;
+  }
+
+  /**
+   * Gets the line the train operates on.
+   *
+   * @return line
+   */
+  public String getLine() {
+    return line;
+  }
+
+  /**
+   * Gets the destination of the train.
+   *
+   * @return destination
+   */
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * Gets the track number.
+   *
+   * @return track
+   */
+  public int getTrack() {
+    return track;
+  }
+
+  /**
+   * Gets the delay.
+   *
+   * @return delay
+   */
+  public LocalTime getDelay() {
+    return delay;
+  }
+
+  /**
+   * Gets the new departure time.
+   *
+   * @return new departure time
+   */
+  public LocalTime getNewDepartureTime() {
+    return newDepartureDateTime.toLocalTime();
+  }
+
+  /**
+   * Gets the new departure time with its date.
+   *
+   * @return new departure date and time
+   */
+  public LocalDateTime getNewDepartureDateTime() {
+    return newDepartureDateTime;
+  }
+
+  /**
+   * Checks if the track was chosen by a TrackAllocator, so the departure is moved when a delay
+   * puts it in conflict with another departure.
+   *
+   * @return true if the track was chosen by an allocator and not changed by hand since
+   */
+  public boolean isTrackAllocated() {
+    return trackAllocated;
+  }
+}
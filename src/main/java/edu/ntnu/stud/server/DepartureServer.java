@@ -0,0 +1,446 @@
+package edu.ntnu.stud.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.ntnu.stud.metrics.MetricsGroup;
+import edu.ntnu.stud.metrics.OperationMetrics;
+import edu.ntnu.stud.model.DepartureBoard;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An HTTP server that answers queries about the departures in a TrainDepartureRegistry with
+ * JSON, so displays and other systems can read the registry without the UI.
+ *
+ * <p>The server answers GET requests on these paths:
+ *
+ * <ul>
+ *   <li>/board gives every departure, sorted by departure time.</li>
+ *   <li>/trains/[number] gives the departures of a train, one for every service date.</li>
+ *   <li>/destinations/[destination] gives the departures to a destination.</li>
+ *   <li>/departures gives the departures that match a DepartureQuery, sorted by new departure
+ *   time. The parameters line, destination, track, from and to are the conditions of the query,
+ *   where from and to are dates and times like 2024-03-04T10:00 and track=- selects the
+ *   departures without a track. Without to, every departure leaving at or after from is given.
+ *   With limit, only the first departures are given.</li>
+ * </ul>
+ *
+ * <p>Every answer is an object with the version of the registry and a list of departures, and
+ * has the version as its ETag. A client that polls the server sends the ETag it got last in
+ * If-None-Match, and gets an empty 304 answer until the registry has changed, without anything
+ * being read from the registry. The answer for /board is made from the DepartureBoard of the
+ * registry and kept, so it is only encoded once for every version, however many displays poll
+ * it. A query that is not valid gets 400 and a train or destination that does not exist gets
+ * 404, with an object with the error message.
+ *
+ * <p>The requests are handled on virtual threads when the Java runtime has them, and otherwise
+ * on a fixed pool of threads. The server only keeps a thread while it answers a request, and
+ * connections that wait between polls do not use a thread, so thousands of displays can poll
+ * the same server. The HTTP server of the JDK closes every connection after its answer when 200
+ * connections are already waiting, so unless the sun.net.httpserver.maxIdleConnections property
+ * is set, it is set to DEFAULT_MAX_IDLE_CONNECTIONS before the first server is started. It is
+ * read once, so it has no effect if another HTTP server of the JDK has been started before.
+ */
+public class DepartureServer implements AutoCloseable {
+  /**
+   * The number of connections that can wait to be accepted when no backlog is given.
+   */
+  public static final int DEFAULT_BACKLOG = 1024;
+
+  /**
+   * The largest number of connections that are kept open between requests when the
+   * sun.net.httpserver.maxIdleConnections property is not set.
+   */
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16384;
+
+  private static final String MAX_IDLE_CONNECTIONS = "sun.net.httpserver.maxIdleConnections";
+  private static final String JSON = "application/json; charset=utf-8";
+
+  private final TrainDepartureRegistry registry;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final boolean virtualThreads;
+  private final MetricsGroup metrics;
+  private final OperationMetrics notModifiedMetrics;
+  private final AtomicReference<EncodedBoard> board;
+
+  /**
+   * The JSON of a departure board, with the version of the board.
+   */
+  private static class EncodedBoard {
+    private final long version;
+    private final byte[] body;
+
+    EncodedBoard(long version, byte[] body) {
+      this.version = version;
+      this.body = body;
+    }
+  }
+
+  /**
+   * Answers a request with the JSON of the departures that were found, or null if nothing was
+   * found. The path is the part of the path of the request after the path of the context.
+   */
+  @FunctionalInterface
+  private interface Query {
+    byte[] answer(String path, Map<String, String> parameters, long version)
+        throws IllegalArgumentException;
+  }
+
+  private DepartureServer(TrainDepartureRegistry registry, HttpServer server,
+      ExecutorService executor, boolean virtualThreads) {
+    this.registry = registry;
+    this.server = server;
+    this.executor = executor;
+    this.virtualThreads = virtualThreads;
+    this.metrics = new MetricsGroup("DepartureServer");
+    this.notModifiedMetrics = metrics.operation("notModified");
+    this.board = new AtomicReference<>(new EncodedBoard(-1, new byte[0]));
+  }
+
+  /**
+   * Starts a server on the given address with the default backlog.
+   *
+   * @param registry the registry to answer queries about
+   * @param address the address to listen on, with port 0 for any free port
+   * @return the started server
+   * @throws IOException if the server cannot listen on the address
+   * @throws IllegalArgumentException if the registry or the address is null
+   */
+  public static DepartureServer start(TrainDepartureRegistry registry, InetSocketAddress address)
+      throws IOException, IllegalArgumentException {
+    return start(registry, address, DEFAULT_BACKLOG);
+  }
+
+  /**
+   * Starts a server on the given address.
+   *
+   * @param registry the registry to answer queries about
+   * @param address the address to listen on, with port 0 for any free port
+   * @param backlog the number of connections that can wait to be accepted
+   * @return the started server
+   * @throws IOException if the server cannot listen on the address
+   * @throws IllegalArgumentException if the registry or the address is null or
+   *                                  if the backlog is not a positive number
+   */
+  public static DepartureServer start(TrainDepartureRegistry registry, InetSocketAddress address,
+      int backlog) throws IOException, IllegalArgumentException {
+    if (registry == null || address == null) {
+      throw new IllegalArgumentException("Registry and address cannot be null");
+    }
+    if (backlog <= 0) {
+      throw new IllegalArgumentException("Backlog must be a positive number");
+    }
+    if (System.getProperty(MAX_IDLE_CONNECTIONS) == null) {
+      System.setProperty(MAX_IDLE_CONNECTIONS, String.valueOf(DEFAULT_MAX_IDLE_CONNECTIONS));
+    }
+    ExecutorService executor = newVirtualThreadExecutor();
+    boolean virtualThreads = executor != null;
+    if (executor == null) {
+      executor = newPlatformThreadExecutor();
+    }
+    HttpServer httpServer = HttpServer.create(address, backlog);
+    DepartureServer server = new DepartureServer(registry, httpServer, executor, virtualThreads);
+    server.createContexts();
+    httpServer.setExecutor(executor);
+    httpServer.start();
+    return server;
+  }
+
+  /**
+   * Gets the port the server listens on, which is useful when it was started on port 0.
+   *
+   * @return port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Checks if the requests are handled on virtual threads.
+   *
+   * @return true if virtual threads are used, false if a pool of platform threads is used
+   */
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Gets the metrics of the server, with one operation for every path and one that counts the
+   * requests answered with 304.
+   *
+   * @return metrics of the server
+   */
+  public MetricsGroup getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Stops the server and removes its metrics from JMX, if they are registered. The requests that
+   * are being answered get up to a second to finish.
+   */
+  @Override
+  public void close() {
+    metrics.unregister();
+    server.stop(1);
+    executor.shutdown();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void createContexts() {
+    addContext("/board", "board", (path, parameters, version) -> {
+      requireNoParameters(parameters);
+      return encodeBoard();
+    });
+    addContext("/trains/", "trains", (path, parameters, version) -> {
+      requireNoParameters(parameters);
+      int trainNumber;
+      try {
+        trainNumber = Integer.parseInt(path);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Train number must be a number");
+      }
+      try {
+        return encode(version, registry.searchTrainDeparture(trainNumber));
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    });
+    addContext("/destinations/", "destinations", (path, parameters, version) -> {
+      requireNoParameters(parameters);
+      if (path.isEmpty()) {
+        throw new IllegalArgumentException("Destination cannot be null or empty");
+      }
+      try {
+        return encode(version, registry.searchTrainDepartureDestination(path));
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    });
+    addContext("/departures", "departures", (path, parameters, version) ->
+        encode(version, registry.searchTrainDepartures(parseQuery(parameters))));
+  }
+
+  /**
+   * Adds a path that answers GET requests with the given query. The path of the request after the
+   * given path is passed to the query, which for paths that do not end with a slash must be empty.
+   */
+  private void addContext(String context, String operation, Query query) {
+    OperationMetrics operationMetrics = metrics.operation(operation);
+    server.createContext(context, exchange -> {
+      long start = metrics.start();
+      try {
+        handle(exchange, context, operationMetrics, query);
+      } finally {
+        exchange.close();
+        operationMetrics.record(start);
+      }
+    });
+  }
+
+  private void handle(HttpExchange exchange, String context, OperationMetrics operationMetrics,
+      Query query) throws IOException {
+    // The connection is only kept open for the next request if the request has been read to the
+    // end when the answer has been sent, and a 304 answer is sent as soon as its headers are.
+    exchange.getRequestBody().close();
+    String path = URLDecoder.decode(
+        exchange.getRequestURI().getRawPath().substring(context.length()),
+        StandardCharsets.UTF_8);
+    if (!context.endsWith("/") && !path.isEmpty()) {
+      operationMetrics.reject("Not found");
+      sendError(exchange, 404, "Not found");
+      return;
+    }
+    if (!exchange.getRequestMethod().equals("GET")) {
+      operationMetrics.reject("Method not allowed");
+      exchange.getResponseHeaders().set("Allow", "GET");
+      sendError(exchange, 405, "Only GET is allowed");
+      return;
+    }
+    long version = registry.getVersion();
+    String etag = "\"" + version + "\"";
+    exchange.getResponseHeaders().set("ETag", etag);
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      notModifiedMetrics.record(0);
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    byte[] body;
+    try {
+      body = query.answer(path, parseParameters(exchange.getRequestURI().getRawQuery()),
+          version);
+    } catch (IllegalArgumentException e) {
+      operationMetrics.reject(e);
+      sendError(exchange, 400, e.getMessage());
+      return;
+    }
+    if (body == null) {
+      operationMetrics.reject("Not found");
+      sendError(exchange, 404, "No departures found");
+      return;
+    }
+    send(exchange, 200, body);
+  }
+
+  /**
+   * Gets the JSON of the departure board of the registry, encoding it only if the registry has
+   * changed since it was last encoded. The ETag may be older than the board, which only makes
+   * the client ask again.
+   */
+  private byte[] encodeBoard() {
+    DepartureBoard departureBoard = registry.getDepartureBoard();
+    EncodedBoard encoded = board.get();
+    if (encoded.version != departureBoard.getVersion()) {
+      StringBuilder json = new StringBuilder(64 + departureBoard.size() * 200);
+      JsonEncoder.appendSnapshots(json, departureBoard.getVersion(),
+          departureBoard.getTrainDepartures());
+      encoded = new EncodedBoard(departureBoard.getVersion(),
+          json.toString().getBytes(StandardCharsets.UTF_8));
+      board.set(encoded);
+    }
+    return encoded.body;
+  }
+
+  private static byte[] encode(long version, List<TrainDeparture> trainDepartures) {
+    StringBuilder json = new StringBuilder(64 + trainDepartures.size() * 200);
+    JsonEncoder.appendDepartures(json, version, trainDepartures);
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static DepartureQuery parseQuery(Map<String, String> parameters)
+      throws IllegalArgumentException {
+    DepartureQuery query = new DepartureQuery();
+    for (String name : parameters.keySet()) {
+      if (!name.equals("line") && !name.equals("destination") && !name.equals("track")
+          && !name.equals("from") && !name.equals("to") && !name.equals("limit")) {
+        throw new IllegalArgumentException("Unknown parameter " + name);
+      }
+    }
+    if (parameters.containsKey("line")) {
+      query = query.withLine(parameters.get("line"));
+    }
+    if (parameters.containsKey("destination")) {
+      query = query.withDestination(parameters.get("destination"));
+    }
+    if (parameters.containsKey("track")) {
+      String track = parameters.get("track");
+      try {
+        query = query.withTrack(track.equals("-") ? -1 : Integer.parseInt(track));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Track must be a number");
+      }
+    }
+    if (parameters.containsKey("limit")) {
+      try {
+        query = query.withLimit(Integer.parseInt(parameters.get("limit")));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Limit must be a number");
+      }
+    }
+    if (parameters.containsKey("from")) {
+      LocalDateTime from = parseDateTime(parameters.get("from"));
+      LocalDateTime to = parameters.containsKey("to")
+          ? parseDateTime(parameters.get("to")) : LocalDateTime.MAX;
+      query = query.withTimeWindow(from, to);
+    } else if (parameters.containsKey("to")) {
+      throw new IllegalArgumentException("A time window must have a start time");
+    }
+    return query;
+  }
+
+  private static LocalDateTime parseDateTime(String text) throws IllegalArgumentException {
+    try {
+      return LocalDateTime.parse(text);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Time must be a date and time like 2024-03-04T10:00");
+    }
+  }
+
+  private static void requireNoParameters(Map<String, String> parameters)
+      throws IllegalArgumentException {
+    if (!parameters.isEmpty()) {
+      throw new IllegalArgumentException("Unknown parameter "
+          + parameters.keySet().iterator().next());
+    }
+  }
+
+  private static Map<String, String> parseParameters(String rawQuery) {
+    Map<String, String> parameters = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return parameters;
+    }
+    for (String parameter : rawQuery.split("&")) {
+      int equals = parameter.indexOf('=');
+      String name = equals < 0 ? parameter : parameter.substring(0, equals);
+      String value = equals < 0 ? "" : parameter.substring(equals + 1);
+      parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return parameters;
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String message)
+      throws IOException {
+    StringBuilder json = new StringBuilder(64);
+    JsonEncoder.appendError(json, message);
+    send(exchange, status, json.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", JSON);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   * Makes an executor that starts a virtual thread for every task. Virtual threads were added in
+   * Java 21, and the project is built for Java 17, so the method is looked up when the server is
+   * started.
+   *
+   * @return the executor, or null if the runtime does not have virtual threads
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Makes a pool of daemon threads. The requests only wait for their connection while they write
+   * the answer, so a few threads for every processor are enough.
+   */
+  private static ExecutorService newPlatformThreadExecutor() {
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "departure-server-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+}
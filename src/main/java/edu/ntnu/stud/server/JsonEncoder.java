@@ -0,0 +1,161 @@
+package edu.ntnu.stud.server;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureSnapshot;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Writes departures as JSON into a StringBuilder, used by the DepartureServer.
+ *
+ * <p>The fields are written one by one, without reflection and without building a tree of
+ * objects first. Dates and times are written the same way LocalDate and LocalTime write them for
+ * whole minutes, like "2024-03-04" and "08:15". A departure without a track has the track null.
+ */
+final class JsonEncoder {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private JsonEncoder() {
+  }
+
+  /**
+   * Writes an object with the version of the registry and a list of departures.
+   *
+   * @param json the builder to write to
+   * @param version the version of the registry the departures were read at
+   * @param departures the departures to write
+   */
+  static void appendDepartures(StringBuilder json, long version,
+      List<TrainDeparture> departures) {
+    json.append("{\"version\":").append(version).append(",\"departures\":[");
+    for (int i = 0; i < departures.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      TrainDeparture trainDeparture = departures.get(i);
+      appendDeparture(json, trainDeparture.getTrainNumber(), trainDeparture.getServiceDate(),
+          trainDeparture.getDepartureTime(), trainDeparture.getLine(),
+          trainDeparture.getDestination(), trainDeparture.getTrack(), trainDeparture.getDelay(),
+          trainDeparture.getNewDepartureDateTime());
+    }
+    json.append("]}");
+  }
+
+  /**
+   * Writes an object with the version of a departure board and its departures.
+   *
+   * @param json the builder to write to
+   * @param version the version of the board
+   * @param departures the departures of the board to write
+   */
+  static void appendSnapshots(StringBuilder json, long version,
+      List<TrainDepartureSnapshot> departures) {
+    json.append("{\"version\":").append(version).append(",\"departures\":[");
+    for (int i = 0; i < departures.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      TrainDepartureSnapshot trainDeparture = departures.get(i);
+      appendDeparture(json, trainDeparture.getTrainNumber(), trainDeparture.getServiceDate(),
+          trainDeparture.getDepartureTime(), trainDeparture.getLine(),
+          trainDeparture.getDestination(), trainDeparture.getTrack(), trainDeparture.getDelay(),
+          trainDeparture.getNewDepartureDateTime());
+    }
+    json.append("]}");
+  }
+
+  /**
+   * Writes an object with an error message.
+   *
+   * @param json the builder to write to
+   * @param message the message of the error
+   */
+  static void appendError(StringBuilder json, String message) {
+    json.append("{\"error\":");
+    appendString(json, message);
+    json.append('}');
+  }
+
+  /**
+   * Writes a string with quotes, escaping the characters JSON does not allow in a string.
+   *
+   * @param json the builder to write to
+   * @param text the string to write, or null
+   */
+  static void appendString(StringBuilder json, String text) {
+    if (text == null) {
+      json.append("null");
+      return;
+    }
+    json.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"' -> json.append("\\\"");
+        case '\\' -> json.append("\\\\");
+        case '\n' -> json.append("\\n");
+        case '\r' -> json.append("\\r");
+        case '\t' -> json.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+          } else {
+            json.append(c);
+          }
+        }
+      }
+    }
+    json.append('"');
+  }
+
+  private static void appendDeparture(StringBuilder json, int trainNumber, LocalDate serviceDate,
+      LocalTime departureTime, String line, String destination, int track, LocalTime delay,
+      LocalDateTime newDepartureDateTime) {
+    json.append("{\"trainNumber\":").append(trainNumber);
+    json.append(",\"serviceDate\":\"");
+    appendDate(json, serviceDate);
+    json.append("\",\"departureTime\":\"");
+    appendTime(json, departureTime);
+    json.append("\",\"line\":");
+    appendString(json, line);
+    json.append(",\"destination\":");
+    appendString(json, destination);
+    json.append(",\"track\":");
+    if (track == -1) {
+      json.append("null");
+    } else {
+      json.append(track);
+    }
+    json.append(",\"delay\":\"");
+    appendTime(json, delay);
+    json.append("\",\"newDepartureTime\":\"");
+    appendDate(json, newDepartureDateTime.toLocalDate());
+    json.append('T');
+    appendTime(json, newDepartureDateTime.toLocalTime());
+    json.append("\"}");
+  }
+
+  private static void appendDate(StringBuilder json, LocalDate date) {
+    int year = date.getYear();
+    if (year < 1000 || year > 9999) {
+      json.append(date);
+      return;
+    }
+    json.append(year).append('-');
+    appendTwoDigits(json, date.getMonthValue());
+    json.append('-');
+    appendTwoDigits(json, date.getDayOfMonth());
+  }
+
+  private static void appendTime(StringBuilder json, LocalTime time) {
+    appendTwoDigits(json, time.getHour());
+    json.append(':');
+    appendTwoDigits(json, time.getMinute());
+  }
+
+  private static void appendTwoDigits(StringBuilder json, int value) {
+    json.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+}
@@ -0,0 +1,589 @@
+package edu.ntnu.stud.view;
+
+import edu.ntnu.stud.metrics.MetricsGroup;
+import edu.ntnu.stud.metrics.OperationMetrics;
+import edu.ntnu.stud.model.DepartureOrder;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TimeManager;
+import edu.ntnu.stud.model.TrackAllocator;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs commands for a TrainDepartureRegistry read from a stream of lines, without asking the
+ * user anything, so the registry can be driven by scripts and recorded traffic can be replayed.
+ *
+ * <p>Every line is one command, with the words separated by spaces. Empty lines and lines
+ * starting with # are skipped. A date is written as YYYY-MM-DD and can be left out, which means
+ * the current date of the registry. A time is written as HH:MM. The commands are:
+ * <ul>
+ *   <li>add [date] [train number] [time] [line] [destination], where the destination is the rest
+ *   of the line and can contain spaces</li>
+ *   <li>track [date] [train number] [track]</li>
+ *   <li>delay [date] [train number] [delay], which lists the departures the delay conflicts
+ *   with</li>
+ *   <li>time [date] [time], which moves the clock of the registry, or the time of the TimeManager
+ *   when the registry does not run on a SimulatedClock, and removes the departures that have
+ *   passed, like the update time page of the UI</li>
+ *   <li>query [name=value]..., with the names train, line, destination, track, from, to, order and
+ *   limit, which lists the departures that match. From and to are a time on the current date or a
+ *   date and time written as YYYY-MM-DDTHH:MM, track=- selects the departures without a track,
+ *   order=departure sorts by departure time instead of new departure time, limit only lists the
+ *   first departures, and a value with spaces can be written in double quotes. A query with to but
+ *   without from starts at the current time of the registry.</li>
+ *   <li>allocate [number of tracks] [line=track,track]..., which gives a track to every departure
+ *   without one, with the tracks each line prefers, and lists the departures that were left
+ *   without a track because every track was occupied</li>
+ * </ul>
+ *
+ * <p>For every command a result is written, starting with the number of the line the command was
+ * read from. A command that succeeds gets "[line number] OK [rows]", followed by the number of
+ * rows that were listed, one row for each departure with the fields separated by tabs. A command
+ * that fails gets "[line number] ERR [reason]". A failed command does not stop the run.
+ *
+ * <p>The output is only written to the Writer, which should be buffered, and is flushed at the
+ * end of the run, so the commands run in a tight loop without waiting for the output. The number
+ * of commands, the failed commands and the time the run took can be read after the run.
+ *
+ * <p>Add commands that follow each other are not added one by one. The departures are collected
+ * and added with one call to addTrainDepartures when another kind of command is read, when
+ * MAX_PENDING_ADDS are waiting or when the run ends, so the write lock is only taken once for
+ * them, and the indexes of a new service date are built in one go. The results are still written
+ * in the order of the commands, and every later command sees the departures that were added before
+ * it. Listeners of the registry see the departures added in one change.
+ */
+public class BatchCommandRunner {
+  /**
+   * The largest number of add commands in a row that are added to the registry in one call.
+   */
+  public static final int MAX_PENDING_ADDS = 1 << 16;
+
+  private final TrainDepartureRegistry registry;
+  private final MetricsGroup metrics = new MetricsGroup("BatchCommandRunner");
+  private final OperationMetrics addMetrics = metrics.operation("add");
+  private final OperationMetrics addBatchMetrics = metrics.operation("addBatch");
+  private final OperationMetrics trackMetrics = metrics.operation("track");
+  private final OperationMetrics delayMetrics = metrics.operation("delay");
+  private final OperationMetrics timeMetrics = metrics.operation("time");
+  private final OperationMetrics queryMetrics = metrics.operation("query");
+  private final OperationMetrics allocateMetrics = metrics.operation("allocate");
+  private final List<TrainDeparture> rows = new ArrayList<>();
+  private final List<TrainDeparture> pendingAdds = new ArrayList<>();
+  private final List<Integer> pendingLineNumbers = new ArrayList<>();
+  private final StringBuilder result = new StringBuilder(256);
+  private String text;
+  private int position;
+  private long commandCount;
+  private long failedCount;
+  private long elapsedNanos;
+
+  /**
+   * Constructs a BatchCommandRunner that runs commands for the given registry.
+   *
+   * @param registry the registry to run the commands for
+   * @throws IllegalArgumentException if the registry is null
+   */
+  public BatchCommandRunner(TrainDepartureRegistry registry) throws IllegalArgumentException {
+    if (registry == null) {
+      throw new IllegalArgumentException("Registry cannot be null");
+    }
+    this.registry = registry;
+  }
+
+  /**
+   * Gets the metrics of the commands, one operation for each kind of command.
+   *
+   * @return metrics
+   */
+  public MetricsGroup getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Gets the number of commands that have been run, not counting skipped lines.
+   *
+   * @return number of commands
+   */
+  public long getCommandCount() {
+    return commandCount;
+  }
+
+  /**
+   * Gets the number of commands that have failed.
+   *
+   * @return number of failed commands
+   */
+  public long getFailedCount() {
+    return failedCount;
+  }
+
+  /**
+   * Gets the time the runs have taken, from reading the first line until the output was flushed.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Gets the number of commands run every second, over all the runs.
+   *
+   * @return commands every second, or 0 if no time has passed
+   */
+  public double getCommandsPerSecond() {
+    return elapsedNanos == 0 ? 0 : commandCount * 1e9 / elapsedNanos;
+  }
+
+  /**
+   * Gets a line that sums up the runs, with the number of commands, the failed commands, the time
+   * the runs took and the number of commands every second.
+   *
+   * @return the summary
+   */
+  public String getSummary() {
+    return String.format("%d commands, %d failed, in %.1f ms (%.0f commands/s)", commandCount,
+        failedCount, elapsedNanos / 1e6, getCommandsPerSecond());
+  }
+
+  /**
+   * Method that runs every command read from the reader until it ends, and writes the results to
+   * the writer. The writer is flushed at the end, but not closed.
+   *
+   * @param in the reader to read the commands from
+   * @param out the writer to write the results to
+   * @throws IOException if the commands cannot be read or the results cannot be written
+   * @throws IllegalArgumentException if the reader or the writer is null
+   */
+  public void run(BufferedReader in, Writer out) throws IOException, IllegalArgumentException {
+    if (in == null || out == null) {
+      throw new IllegalArgumentException("Reader and writer cannot be null");
+    }
+    long start = System.nanoTime();
+    try {
+      int lineNumber = 0;
+      String line;
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        String trimmed = line.strip();
+        if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+          continue;
+        }
+        commandCount++;
+        text = trimmed;
+        position = 0;
+        String name = nextCommandName();
+        if (name.equals("add")) {
+          try {
+            pendingAdds.add(readAdd());
+            pendingLineNumbers.add(lineNumber);
+            if (pendingAdds.size() == MAX_PENDING_ADDS) {
+              addPending(out);
+            }
+            continue;
+          } catch (IllegalArgumentException e) {
+            addPending(out);
+            fail(lineNumber, e, out);
+            continue;
+          }
+        }
+        addPending(out);
+        rows.clear();
+        try {
+          runCommand(name);
+          result.setLength(0);
+          result.append(lineNumber).append(" OK ").append(rows.size()).append('\n');
+          for (TrainDeparture trainDeparture : rows) {
+            appendRow(trainDeparture);
+          }
+          out.append(result);
+        } catch (IllegalArgumentException e) {
+          fail(lineNumber, e, out);
+        }
+      }
+      addPending(out);
+      out.flush();
+    } finally {
+      pendingAdds.clear();
+      pendingLineNumbers.clear();
+      elapsedNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Adds the departures of the add commands that are waiting in one call to the registry, and
+   * writes the result of every one of them.
+   */
+  private void addPending(Writer out) throws IOException {
+    if (pendingAdds.isEmpty()) {
+      return;
+    }
+    long start = metrics.start();
+    Map<Integer, String> rejected = registry.addTrainDepartures(pendingAdds);
+    addBatchMetrics.record(start);
+    result.setLength(0);
+    for (int i = 0; i < pendingAdds.size(); i++) {
+      result.append(pendingLineNumbers.get(i));
+      String reason = rejected.get(i);
+      if (reason == null) {
+        result.append(" OK 0\n");
+      } else {
+        failedCount++;
+        addMetrics.reject(reason);
+        result.append(" ERR ").append(reason).append('\n');
+      }
+    }
+    out.append(result);
+    pendingAdds.clear();
+    pendingLineNumbers.clear();
+  }
+
+  private void fail(int lineNumber, IllegalArgumentException e, Writer out) throws IOException {
+    failedCount++;
+    result.setLength(0);
+    result.append(lineNumber).append(" ERR ").append(e.getMessage()).append('\n');
+    out.append(result);
+  }
+
+  private void runCommand(String name) throws IllegalArgumentException {
+    switch (name) {
+      case "track" -> assignTrack();
+      case "delay" -> setDelay();
+      case "time" -> updateTime();
+      case "query" -> query();
+      case "allocate" -> allocateTracks();
+      default -> throw new IllegalArgumentException("Unknown command: " + name);
+    }
+  }
+
+  /**
+   * Reads an add command and creates the departure, checking that it is not before the current
+   * time like when a single departure is added. Whether the train number is free on the date is
+   * checked when the departure is added to the registry.
+   */
+  private TrainDeparture readAdd() throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      LocalDate serviceDate = readDate();
+      int trainNumber = parseNumber(requireWord("train number"), "Train number");
+      int minutes = parseTime(requireWord("time"));
+      String line = requireWord("line");
+      String destination = text.substring(position).strip();
+      if (destination.isEmpty()) {
+        throw new IllegalArgumentException("Missing destination");
+      }
+      return new TrainDeparture(trainNumber, serviceDate, minutes / 60, minutes % 60, line,
+          destination, registry.getCurrentDateTime());
+    } catch (IllegalArgumentException e) {
+      addMetrics.reject(e);
+      throw e;
+    } finally {
+      addMetrics.record(start);
+    }
+  }
+
+  private void assignTrack() throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      LocalDate serviceDate = readDate();
+      int trainNumber = parseNumber(requireWord("train number"), "Train number");
+      int track = parseNumber(requireWord("track"), "Track");
+      requireEnd();
+      registry.assignTrack(serviceDate, trainNumber, track);
+    } catch (IllegalArgumentException e) {
+      trackMetrics.reject(e);
+      throw e;
+    } finally {
+      trackMetrics.record(start);
+    }
+  }
+
+  private void setDelay() throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      LocalDate serviceDate = readDate();
+      int trainNumber = parseNumber(requireWord("train number"), "Train number");
+      int minutes = parseTime(requireWord("delay"));
+      requireEnd();
+      rows.addAll(registry.setDelay(serviceDate, trainNumber, minutes / 60, minutes % 60));
+    } catch (IllegalArgumentException e) {
+      delayMetrics.reject(e);
+      throw e;
+    } finally {
+      delayMetrics.record(start);
+    }
+  }
+
+  private void updateTime() throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      LocalDate date = readDate();
+      int minutes = parseTime(requireWord("time"));
+      requireEnd();
+      LocalDateTime time = date.atTime(minutes / 60, minutes % 60);
+      if (registry.getClock() instanceof SimulatedClock clock) {
+        if (!time.isAfter(registry.getCurrentDateTime())) {
+          throw new IllegalArgumentException(time.equals(registry.getCurrentDateTime())
+              ? "Time already set to " + time.toLocalTime()
+              : "Time cannot be set before the current time");
+        }
+        clock.advanceTo(time);
+      } else {
+        TimeManager.setCurrentDateTime(date, minutes / 60, minutes % 60);
+      }
+      registry.removePassedTrainDepartures(time);
+    } catch (IllegalArgumentException e) {
+      timeMetrics.reject(e);
+      throw e;
+    } finally {
+      timeMetrics.record(start);
+    }
+  }
+
+  private void query() throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      DepartureQuery query = new DepartureQuery();
+      int trainNumber = -1;
+      LocalDateTime from = null;
+      LocalDateTime to = null;
+      String word;
+      while ((word = nextWord()) != null) {
+        int equals = word.indexOf('=');
+        if (equals < 0) {
+          throw new IllegalArgumentException("Query conditions must be written as name=value");
+        }
+        String value = word.substring(equals + 1);
+        switch (word.substring(0, equals)) {
+          case "train" -> trainNumber = parseNumber(value, "Train number");
+          case "line" -> query = query.withLine(value);
+          case "destination" -> query = query.withDestination(value);
+          case "track" -> query = query.withTrack(
+              value.equals("-") ? -1 : parseNumber(value, "Track"));
+          case "from" -> from = parseDateTime(value);
+          case "to" -> to = parseDateTime(value);
+          case "order" -> query = query.withOrder(parseOrder(value));
+          case "limit" -> query = query.withLimit(parseNumber(value, "Limit"));
+          default -> throw new IllegalArgumentException("Unknown query condition: " + word);
+        }
+      }
+      if (from != null || to != null) {
+        query = query.withTimeWindow(from == null ? registry.getCurrentDateTime() : from,
+            to == null ? LocalDateTime.MAX : to);
+      }
+      if (trainNumber < 0) {
+        rows.addAll(registry.searchTrainDepartures(query));
+        return;
+      }
+      for (TrainDeparture trainDeparture : registry.searchTrainDeparture(trainNumber)) {
+        if (query.matches(trainDeparture)) {
+          rows.add(trainDeparture);
+        }
+      }
+      rows.sort(query.getOrder().getComparator());
+      if (rows.size() > query.getLimit()) {
+        rows.subList(query.getLimit(), rows.size()).clear();
+      }
+    } catch (IllegalArgumentException e) {
+      queryMetrics.reject(e);
+      throw e;
+    } finally {
+      queryMetrics.record(start);
+    }
+  }
+
+  private void allocateTracks() throws IllegalArgumentException {
+    long start = metrics.start();
+    try {
+      TrackAllocator allocator =
+          new TrackAllocator(parseNumber(requireWord("number of tracks"), "Number of tracks"));
+      String word;
+      while ((word = nextWord()) != null) {
+        int equals = word.indexOf('=');
+        if (equals < 0) {
+          throw new IllegalArgumentException("Preferred tracks must be written as line=tracks");
+        }
+        String[] values = word.substring(equals + 1).split(",");
+        int[] tracks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+          tracks[i] = parseNumber(values[i], "Track");
+        }
+        allocator = allocator.withPreferredTracks(word.substring(0, equals), tracks);
+      }
+      rows.addAll(registry.allocateTracks(allocator).getUnassigned());
+    } catch (IllegalArgumentException e) {
+      allocateMetrics.reject(e);
+      throw e;
+    } finally {
+      allocateMetrics.record(start);
+    }
+  }
+
+  /**
+   * Reads the next word of the command, where a part in double quotes can contain spaces and is
+   * read without the quotes.
+   *
+   * @return the word, or null if the command has no more words
+   */
+  private String nextWord() throws IllegalArgumentException {
+    int length = text.length();
+    while (position < length && Character.isWhitespace(text.charAt(position))) {
+      position++;
+    }
+    if (position == length) {
+      return null;
+    }
+    int begin = position;
+    StringBuilder quoted = null;
+    while (position < length && !Character.isWhitespace(text.charAt(position))) {
+      if (text.charAt(position) == '"') {
+        int close = text.indexOf('"', position + 1);
+        if (close < 0) {
+          throw new IllegalArgumentException("Missing closing quote");
+        }
+        if (quoted == null) {
+          quoted = new StringBuilder();
+        }
+        quoted.append(text, begin, position).append(text, position + 1, close);
+        position = close + 1;
+        begin = position;
+      } else {
+        position++;
+      }
+    }
+    if (quoted == null) {
+      return text.substring(begin, position);
+    }
+    return quoted.append(text, begin, position).toString();
+  }
+
+  /**
+   * Reads the name of the command, which is the first word and cannot be quoted.
+   */
+  private String nextCommandName() {
+    int length = text.length();
+    while (position < length && !Character.isWhitespace(text.charAt(position))) {
+      position++;
+    }
+    return text.substring(0, position);
+  }
+
+  private String requireWord(String name) throws IllegalArgumentException {
+    String word = nextWord();
+    if (word == null) {
+      throw new IllegalArgumentException("Missing " + name);
+    }
+    return word;
+  }
+
+  private void requireEnd() throws IllegalArgumentException {
+    String word = nextWord();
+    if (word != null) {
+      throw new IllegalArgumentException("Unexpected word: " + word);
+    }
+  }
+
+  /**
+   * Reads the date at the current position if there is one, and otherwise leaves the position
+   * where it is.
+   *
+   * @return the date, or the current date of the registry if no date is written
+   */
+  private LocalDate readDate() throws IllegalArgumentException {
+    int begin = position;
+    String word = nextWord();
+    if (word == null || word.length() != 10 || word.charAt(4) != '-') {
+      position = begin;
+      return registry.getCurrentDate();
+    }
+    try {
+      return LocalDate.parse(word);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Date must be written as YYYY-MM-DD");
+    }
+  }
+
+  /**
+   * Parses the order of a query, departure for the planned time or new for the time with delay.
+   */
+  private static DepartureOrder parseOrder(String word) throws IllegalArgumentException {
+    return switch (word) {
+      case "departure" -> DepartureOrder.DEPARTURE_TIME;
+      case "new" -> DepartureOrder.NEW_DEPARTURE_TIME;
+      default -> throw new IllegalArgumentException("Order must be departure or new");
+    };
+  }
+
+  /**
+   * Parses a number that cannot be negative, with at most nine digits so it cannot overflow.
+   */
+  private static int parseNumber(String word, String name) throws IllegalArgumentException {
+    if (word.isEmpty() || word.length() > 9) {
+      throw new IllegalArgumentException(name + " must be a number");
+    }
+    int value = 0;
+    for (int i = 0; i < word.length(); i++) {
+      char c = word.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException(name + " must be a number");
+      }
+      value = value * 10 + c - '0';
+    }
+    return value;
+  }
+
+  /**
+   * Parses a time written as HH:MM or H:MM.
+   *
+   * @return the time as minutes after midnight
+   */
+  private static int parseTime(String word) throws IllegalArgumentException {
+    int colon = word.indexOf(':');
+    if (colon < 1 || colon > 2 || word.length() != colon + 3) {
+      throw new IllegalArgumentException("Time must be written as HH:MM");
+    }
+    int hours = parseNumber(word.substring(0, colon), "Hours");
+    int minutes = parseNumber(word.substring(colon + 1), "Minutes");
+    if (hours > 23 || minutes > 59) {
+      throw new IllegalArgumentException("Hours must be between 0 and 23, "
+          + "minutes must be between 0 and 59");
+    }
+    return hours * 60 + minutes;
+  }
+
+  private LocalDateTime parseDateTime(String word) throws IllegalArgumentException {
+    if (word.length() <= 5) {
+      int minutes = parseTime(word);
+      return registry.getCurrentDate().atTime(minutes / 60, minutes % 60);
+    }
+    try {
+      return LocalDateTime.parse(word);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Time must be written as HH:MM or YYYY-MM-DDTHH:MM");
+    }
+  }
+
+  private void appendRow(TrainDeparture trainDeparture) {
+    result.append(trainDeparture.getTrainNumber()).append('\t')
+        .append(trainDeparture.getServiceDate()).append('\t')
+        .append(trainDeparture.getDepartureTime()).append('\t')
+        .append(trainDeparture.getLine()).append('\t')
+        .append(trainDeparture.getDestination()).append('\t');
+    if (trainDeparture.getTrack() == -1) {
+      result.append('-');
+    } else {
+      result.append(trainDeparture.getTrack());
+    }
+    result.append('\t').append(trainDeparture.getDelay()).append('\n');
+  }
+}
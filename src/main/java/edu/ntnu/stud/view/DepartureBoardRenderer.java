@@ -0,0 +1,255 @@
+package edu.ntnu.stud.view;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Renders tables of train departures for the terminal, used by the TrainDispatchUi.
+ *
+ * <p>A whole screen is built in one StringBuilder that is kept and used again for the next
+ * screen, and the rows are written into it field by field, padded with spaces, instead of
+ * formatting a String for every row. When the screen is done, it is encoded into a byte buffer
+ * that is also kept, and written to the terminal with one write and one flush. Only the rows that
+ * are shown are formatted, so showing the first page of a table with many departures costs the
+ * same as showing a table with one page.
+ *
+ * <p>The rows look the same as the rows the UI used to format with String.format: if a departure
+ * has a delay, the departure time is crossed out and the new departure time is shown next to it.
+ * The departures of other days than the current date are shown below a line with their service
+ * date.
+ *
+ * <p>A renderer is not thread safe. Each screen is built with clear, then the append methods, and
+ * then written with writeTo.
+ */
+public class DepartureBoardRenderer {
+  /**
+   * The number of departures on a page when no page size is given.
+   */
+  public static final int DEFAULT_PAGE_SIZE = 20;
+
+  static final String ANSI_RESET = "\u001B[0m";
+  static final String ANSI_UNDERLINE = "\u001B[4m";
+  private static final String ANSI_BOLD = "\u001B[1m";
+  private static final String ANSI_CROSSED_OUT = "\u001B[9m";
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+  static final String HEADER = ANSI_BOLD + "Departure time" + ANSI_RESET + "   | "
+      + ANSI_BOLD + "Line" + ANSI_RESET + "   | "
+      + ANSI_BOLD + "Number" + ANSI_RESET + "   | "
+      + ANSI_BOLD + "Destination" + ANSI_RESET + "   | "
+      + ANSI_BOLD + "Delay" + ANSI_RESET + "   | "
+      + ANSI_BOLD + "Track" + ANSI_RESET;
+  private static final LocalTime NO_DELAY = LocalTime.of(0, 0);
+
+  private final int pageSize;
+  private final ScreenWriter writer;
+  private final StringBuilder screen;
+
+  /**
+   * Constructs a DepartureBoardRenderer object with the default page size that writes text in the
+   * default charset, which is the charset System.out uses.
+   */
+  public DepartureBoardRenderer() {
+    this(DEFAULT_PAGE_SIZE, Charset.defaultCharset());
+  }
+
+  /**
+   * Constructs a DepartureBoardRenderer object.
+   *
+   * @param pageSize the number of departures on a page
+   * @param charset the charset the text is written in
+   * @throws IllegalArgumentException if the page size is not a positive number or
+   *                                  if the charset is null
+   */
+  public DepartureBoardRenderer(int pageSize, Charset charset) throws IllegalArgumentException {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be a positive number");
+    }
+    this.pageSize = pageSize;
+    this.writer = new ScreenWriter(charset);
+    this.screen = new StringBuilder(4096);
+  }
+
+  /**
+   * Gets the number of departures on a page.
+   *
+   * @return page size
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Gets the number of pages needed to show the given number of departures. An empty table has
+   * one empty page.
+   *
+   * @param departureCount the number of departures in the table
+   * @return number of pages
+   */
+  public int getPageCount(int departureCount) {
+    return Math.max(1, (departureCount + pageSize - 1) / pageSize);
+  }
+
+  /**
+   * Gets the screen that has been built since the last call to clear.
+   *
+   * @return the text of the screen, which changes when the renderer is used again
+   */
+  public CharSequence getScreen() {
+    return screen;
+  }
+
+  /**
+   * Starts a new screen. The memory used for the last screen is kept for the new one.
+   */
+  public void clear() {
+    screen.setLength(0);
+  }
+
+  /**
+   * Adds text to the screen, without ending the line.
+   *
+   * @param text the text to add
+   */
+  public void append(String text) {
+    screen.append(text);
+  }
+
+  /**
+   * Adds a line of text to the screen.
+   *
+   * @param text the text of the line, without a line separator
+   */
+  public void appendLine(String text) {
+    screen.append(text).append(LINE_SEPARATOR);
+  }
+
+  /**
+   * Adds one page of a table of departures to the screen, with the column names above the
+   * departures. Only the departures on the page are formatted. Pages are counted from 1.
+   *
+   * @param departures all departures of the table, in the order they are shown
+   * @param page the number of the page to show
+   * @param currentDate the date departures are shown without a line with their service date
+   * @throws IllegalArgumentException if the page does not exist
+   */
+  public void appendPage(List<TrainDeparture> departures, int page, LocalDate currentDate)
+      throws IllegalArgumentException {
+    if (page < 1 || page > getPageCount(departures.size())) {
+      throw new IllegalArgumentException("Page must be between 1 and "
+          + getPageCount(departures.size()));
+    }
+    int from = (page - 1) * pageSize;
+    appendTable(departures, from, Math.min(departures.size(), from + pageSize), currentDate);
+  }
+
+  /**
+   * Adds the first departures of a table to the screen, with the column names above them.
+   *
+   * @param departures all departures of the table, in the order they are shown
+   * @param count the largest number of departures to show
+   * @param currentDate the date departures are shown without a line with their service date
+   */
+  public void appendTop(List<TrainDeparture> departures, int count, LocalDate currentDate) {
+    appendTable(departures, 0, Math.max(0, Math.min(departures.size(), count)), currentDate);
+  }
+
+  /**
+   * Encodes the screen and writes it to the stream with one write, and flushes the stream.
+   *
+   * @param out the stream to write to
+   */
+  public void writeTo(PrintStream out) {
+    writer.write(screen, out);
+  }
+
+  private void appendTable(List<TrainDeparture> departures, int from, int to,
+      LocalDate currentDate) {
+    screen.append(HEADER).append(LINE_SEPARATOR);
+    LocalDate date = currentDate;
+    for (int i = from; i < to; i++) {
+      TrainDeparture trainDeparture = departures.get(i);
+      if (!trainDeparture.getServiceDate().equals(date)) {
+        date = trainDeparture.getServiceDate();
+        screen.append(ANSI_UNDERLINE).append(date).append(ANSI_RESET).append(LINE_SEPARATOR);
+      }
+      appendRow(screen, trainDeparture);
+      screen.append(LINE_SEPARATOR);
+    }
+  }
+
+  /**
+   * Adds the columns of one departure, the same as "%-6s %-9s | %-6s | %-8s | %-13s | %-7s | %-5s"
+   * would have formatted them.
+   */
+  static void appendRow(StringBuilder screen, TrainDeparture trainDeparture) {
+    LocalTime delay = trainDeparture.getDelay();
+    boolean delayed = !delay.equals(NO_DELAY);
+    int start = screen.length();
+    if (delayed) {
+      screen.append(ANSI_CROSSED_OUT);
+      appendTime(screen, trainDeparture.getDepartureTime());
+      screen.append(ANSI_RESET).append(' ');
+    } else {
+      appendTime(screen, trainDeparture.getDepartureTime());
+      pad(screen, start, 6);
+    }
+    screen.append(' ');
+    start = screen.length();
+    if (delayed) {
+      appendTime(screen, trainDeparture.getNewDepartureTime());
+    }
+    pad(screen, start, 9);
+    screen.append(" | ");
+    start = screen.length();
+    screen.append(trainDeparture.getLine());
+    pad(screen, start, 6);
+    screen.append(" | ");
+    start = screen.length();
+    screen.append(trainDeparture.getTrainNumber());
+    pad(screen, start, 8);
+    screen.append(" | ");
+    start = screen.length();
+    screen.append(trainDeparture.getDestination());
+    pad(screen, start, 13);
+    screen.append(" | ");
+    start = screen.length();
+    if (delayed) {
+      screen.append('+');
+      appendTime(screen, delay);
+    }
+    pad(screen, start, 7);
+    screen.append(" | ");
+    start = screen.length();
+    if (trainDeparture.getTrack() != -1) {
+      screen.append(trainDeparture.getTrack());
+    }
+    pad(screen, start, 5);
+  }
+
+  /**
+   * Adds a time as HH:MM, like LocalTime.toString does for whole minutes.
+   */
+  private static void appendTime(StringBuilder screen, LocalTime time) {
+    appendTwoDigits(screen, time.getHour());
+    screen.append(':');
+    appendTwoDigits(screen, time.getMinute());
+  }
+
+  private static void appendTwoDigits(StringBuilder screen, int value) {
+    screen.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+
+  /**
+   * Adds spaces until the text added since the start is at least the given width.
+   */
+  private static void pad(StringBuilder screen, int start, int width) {
+    for (int i = screen.length() - start; i < width; i++) {
+      screen.append(' ');
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package edu.ntnu.stud.view;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders a departure board that is shown again and again, and only sends the lines that changed
+ * since the last time it was shown, used by the TrainDispatchUi for the departure table.
+ *
+ * <p>The renderer keeps the lines of the last screen. A new screen is described line by line with
+ * beginScreen, addLine and addPage. A line that shows the same departure with the same track and
+ * delay as before, or the same text, is not formatted again, so only the changed lines cost more
+ * than a few comparisons, and only the lines on the page are compared. The changes can then be
+ * written in one of two ways:
+ *
+ * <ul>
+ *   <li>writeChangesTo writes them for a terminal: every changed line is written at its own row
+ *   with ANSI cursor addressing, and the rest of the old line is erased. The first screen, and the
+ *   first screen after reset, clears the terminal and writes every line. The last line is always
+ *   written, and everything below it is erased, so it can be used as a prompt.</li>
+ *   <li>writeDiffTo writes them as text for clients that are not terminals, like display walls
+ *   that keep their own copy of the board. A refresh starts with a line "= count" with the number
+ *   of lines on the screen, where lines after count are removed, and is followed by a line
+ *   "row text" for every changed line, with the rows counted from 1, and an empty line.</li>
+ * </ul>
+ *
+ * <p>The departures are compared by identity, so the lists should hold the departures of the
+ * registry and not copies of them. A renderer is not thread safe.
+ */
+public class IncrementalBoardRenderer {
+  private static final String CSI = "\u001B[";
+  private static final String CLEAR_SCREEN = CSI + "H" + CSI + "2J";
+  private static final String CLEAR_TO_END_OF_LINE = CSI + "K";
+  private static final String CLEAR_TO_END_OF_SCREEN = CSI + "J";
+
+  private final int pageSize;
+  private final ScreenWriter writer;
+  private final StringBuilder changes;
+  private final List<ScreenLine> lines;
+  private int lineCount;
+  private int previousLineCount;
+  private int changedLineCount;
+  private boolean redraw;
+
+  /**
+   * A line of the screen, with what it showed the last time it was formatted.
+   */
+  private static class ScreenLine {
+    private final StringBuilder text = new StringBuilder(96);
+    private Object shown;
+    private int track;
+    private LocalTime delay;
+    private boolean changed;
+  }
+
+  /**
+   * Constructs an IncrementalBoardRenderer object with the default page size that writes text in
+   * the default charset, which is the charset System.out uses.
+   */
+  public IncrementalBoardRenderer() {
+    this(DepartureBoardRenderer.DEFAULT_PAGE_SIZE, Charset.defaultCharset());
+  }
+
+  /**
+   * Constructs an IncrementalBoardRenderer object.
+   *
+   * @param pageSize the number of departures on a page
+   * @param charset the charset the text is written in
+   * @throws IllegalArgumentException if the page size is not a positive number or
+   *                                  if the charset is null
+   */
+  public IncrementalBoardRenderer(int pageSize, Charset charset)
+      throws IllegalArgumentException {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be a positive number");
+    }
+    this.pageSize = pageSize;
+    this.writer = new ScreenWriter(charset);
+    this.changes = new StringBuilder(4096);
+    this.lines = new ArrayList<>();
+    this.redraw = true;
+  }
+
+  /**
+   * Gets the number of departures on a page.
+   *
+   * @return page size
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Gets the number of pages needed to show the given number of departures. An empty table has
+   * one empty page.
+   *
+   * @param departureCount the number of departures in the table
+   * @return number of pages
+   */
+  public int getPageCount(int departureCount) {
+    return Math.max(1, (departureCount + pageSize - 1) / pageSize);
+  }
+
+  /**
+   * Forgets the last screen, so the next screen is written in full. It is used when something
+   * else has been written to the terminal since the board was shown.
+   */
+  public void reset() {
+    for (ScreenLine line : lines) {
+      line.shown = null;
+    }
+    previousLineCount = 0;
+    redraw = true;
+  }
+
+  /**
+   * Starts describing a new screen. The lines of the last screen are kept to compare with.
+   */
+  public void beginScreen() {
+    lineCount = 0;
+  }
+
+  /**
+   * Adds a line of text to the screen.
+   *
+   * @param text the text of the line, without a line separator
+   */
+  public void addLine(String text) {
+    ScreenLine line = nextLine();
+    if (!text.equals(line.shown)) {
+      line.shown = text;
+      line.text.setLength(0);
+      line.text.append(text);
+      changed(line);
+    }
+  }
+
+  /**
+   * Adds one page of a table of departures to the screen, with the column names above the
+   * departures, like DepartureBoardRenderer.appendPage. Pages are counted from 1.
+   *
+   * @param departures all departures of the table, in the order they are shown
+   * @param page the number of the page to show
+   * @param currentDate the date departures are shown without a line with their service date
+   * @throws IllegalArgumentException if the page does not exist
+   */
+  public void addPage(List<TrainDeparture> departures, int page, LocalDate currentDate)
+      throws IllegalArgumentException {
+    if (page < 1 || page > getPageCount(departures.size())) {
+      throw new IllegalArgumentException("Page must be between 1 and "
+          + getPageCount(departures.size()));
+    }
+    int from = (page - 1) * pageSize;
+    int to = Math.min(departures.size(), from + pageSize);
+    addLine(DepartureBoardRenderer.HEADER);
+    LocalDate date = currentDate;
+    for (int i = from; i < to; i++) {
+      TrainDeparture trainDeparture = departures.get(i);
+      if (!trainDeparture.getServiceDate().equals(date)) {
+        date = trainDeparture.getServiceDate();
+        addDate(date);
+      }
+      addRow(trainDeparture);
+    }
+  }
+
+  /**
+   * Gets the number of lines of the screen that have changed and not been written yet.
+   *
+   * @return number of changed lines
+   */
+  public int getChangedLineCount() {
+    return changedLineCount;
+  }
+
+  /**
+   * Writes the changes of the screen to a terminal with ANSI cursor addressing, with one write.
+   * The cursor is left at the end of the last line.
+   *
+   * @param out the stream to write to
+   */
+  public void writeChangesTo(PrintStream out) {
+    changes.setLength(0);
+    if (redraw) {
+      changes.append(CLEAR_SCREEN);
+    }
+    for (int i = 0; i < lineCount; i++) {
+      ScreenLine line = lines.get(i);
+      boolean last = i == lineCount - 1;
+      if (line.changed || last) {
+        changes.append(CSI).append(i + 1).append(";1H").append(line.text)
+            .append(last ? CLEAR_TO_END_OF_SCREEN : CLEAR_TO_END_OF_LINE);
+      }
+    }
+    if (lineCount == 0 && previousLineCount > 0) {
+      changes.append(CSI).append("1;1H").append(CLEAR_TO_END_OF_SCREEN);
+    }
+    written();
+    writer.write(changes, out);
+  }
+
+  /**
+   * Writes the changes of the screen as a row-level diff, with one write.
+   *
+   * @param out the stream to write to
+   */
+  public void writeDiffTo(PrintStream out) {
+    changes.setLength(0);
+    changes.append("= ").append(lineCount).append('\n');
+    for (int i = 0; i < lineCount; i++) {
+      ScreenLine line = lines.get(i);
+      if (line.changed) {
+        changes.append(i + 1).append(' ').append(line.text).append('\n');
+      }
+    }
+    changes.append('\n');
+    written();
+    writer.write(changes, out);
+  }
+
+  private void addDate(LocalDate date) {
+    ScreenLine line = nextLine();
+    if (!date.equals(line.shown)) {
+      line.shown = date;
+      line.text.setLength(0);
+      line.text.append(DepartureBoardRenderer.ANSI_UNDERLINE).append(date)
+          .append(DepartureBoardRenderer.ANSI_RESET);
+      changed(line);
+    }
+  }
+
+  private void addRow(TrainDeparture trainDeparture) {
+    ScreenLine line = nextLine();
+    if (line.shown != trainDeparture || line.track != trainDeparture.getTrack()
+        || !line.delay.equals(trainDeparture.getDelay())) {
+      line.shown = trainDeparture;
+      line.track = trainDeparture.getTrack();
+      line.delay = trainDeparture.getDelay();
+      line.text.setLength(0);
+      DepartureBoardRenderer.appendRow(line.text, trainDeparture);
+      changed(line);
+    }
+  }
+
+  /**
+   * Gets the next line of the screen. A line that was not on the last screen shows nothing yet,
+   * so it is always changed.
+   */
+  private ScreenLine nextLine() {
+    if (lineCount == lines.size()) {
+      lines.add(new ScreenLine());
+    }
+    ScreenLine line = lines.get(lineCount++);
+    if (lineCount > previousLineCount) {
+      line.shown = null;
+    }
+    return line;
+  }
+
+  private void changed(ScreenLine line) {
+    if (!line.changed) {
+      line.changed = true;
+      changedLineCount++;
+    }
+  }
+
+  private void written() {
+    for (ScreenLine line : lines) {
+      line.changed = false;
+    }
+    changedLineCount = 0;
+    previousLineCount = lineCount;
+    redraw = false;
+  }
+}
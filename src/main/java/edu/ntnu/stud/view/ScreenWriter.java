@@ -0,0 +1,61 @@
+package edu.ntnu.stud.view;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes the text of a screen to a stream with one write. The text is encoded into a byte buffer
+ * that is kept and used again for the next screen, and grows when a screen does not fit.
+ * Characters the charset cannot encode are replaced.
+ */
+class ScreenWriter {
+  private final CharsetEncoder encoder;
+  private ByteBuffer bytes;
+
+  /**
+   * Constructs a ScreenWriter object.
+   *
+   * @param charset the charset the text is written in
+   * @throws IllegalArgumentException if the charset is null
+   */
+  ScreenWriter(Charset charset) throws IllegalArgumentException {
+    if (charset == null) {
+      throw new IllegalArgumentException("Charset cannot be null");
+    }
+    this.encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.bytes = ByteBuffer.allocate(4096);
+  }
+
+  /**
+   * Encodes the text and writes it to the stream with one write, and flushes the stream.
+   *
+   * @param text the text to write
+   * @param out the stream to write to
+   */
+  void write(CharSequence text, PrintStream out) {
+    encoder.reset();
+    CharBuffer chars = CharBuffer.wrap(text);
+    bytes.clear();
+    while (encoder.encode(chars, bytes, true).isOverflow()) {
+      bytes = grow(bytes);
+    }
+    while (encoder.flush(bytes).isOverflow()) {
+      bytes = grow(bytes);
+    }
+    out.write(bytes.array(), 0, bytes.position());
+    out.flush();
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer) {
+    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+    buffer.flip();
+    larger.put(buffer);
+    return larger;
+  }
+}
@@ -1,8 +1,26 @@
 package edu.ntnu.stud.view;
 
-import edu.ntnu.stud.model.TimeManager;
+import edu.ntnu.stud.io.FsyncPolicy;
+import edu.ntnu.stud.io.ImportReport;
+import edu.ntnu.stud.io.RegistryJournal;
+import edu.ntnu.stud.io.RegistrySnapshot;
+import edu.ntnu.stud.io.TimetableImporter;
+import edu.ntnu.stud.metrics.MetricsGroup;
+import edu.ntnu.stud.metrics.OperationMetrics;
+import edu.ntnu.stud.model.DelayReport;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.SimulatedClock;
 import edu.ntnu.stud.model.TrainDeparture;
 import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Scanner;
 
@@ -17,11 +35,26 @@ import java.util.Scanner;
  * <p>The user input is fetched using the Scanner class.
  * It also initializes the registry with some default train departures.
  *
+ * <p>Every command is timed from when the user has entered the input until the result is
+ * printed, and the reasons for failed commands are counted. These metrics and the metrics of the
+ * registry are registered with JMX, so they can be read by a monitoring tool while the
+ * application runs.
+ *
+ * <p>The registry runs on a SimulatedClock that starts at 00:00 today and is only moved when the
+ * user updates the time. Today is read from the clock given to the constructor, so the UI can be
+ * started on any date.
+ *
  * <p>Created with help from Copilot.
  */
 public class TrainDispatchUi {
+  private final SimulatedClock clock;
   private TrainDepartureRegistry registry;
   private Scanner scanner;
+  private Path snapshotFile;
+  private RegistryJournal journal;
+  private final MetricsGroup metrics = new MetricsGroup("TrainDispatchUi");
+  private final DepartureBoardRenderer renderer = new DepartureBoardRenderer();
+  private final IncrementalBoardRenderer board = new IncrementalBoardRenderer();
 
   //fields for menu choices
   private static final String PRINT_DEPARTURE_TABLE = "1";
@@ -37,7 +70,27 @@ public class TrainDispatchUi {
   private static final String ANSI_RESET = "\u001B[0m";
   private static final String ANSI_UNDERLINE = "\u001B[4m";
   private static final String ANSI_BOLD = "\u001B[1m";
-  private static final String ANSI_CROSSED_OUT = "\u001B[9m";
+
+  /**
+   * Constructs a TrainDispatchUi object that starts at 00:00 today, where today is read from the
+   * system clock.
+   */
+  public TrainDispatchUi() {
+    this(Clock.systemDefaultZone());
+  }
+
+  /**
+   * Constructs a TrainDispatchUi object that starts at 00:00 on the date of the given clock.
+   *
+   * @param today the clock to read today from
+   * @throws IllegalArgumentException if the clock is null
+   */
+  public TrainDispatchUi(Clock today) throws IllegalArgumentException {
+    if (today == null) {
+      throw new IllegalArgumentException("Clock cannot be null");
+    }
+    this.clock = new SimulatedClock(LocalDate.now(today).atStartOfDay());
+  }
 
   /**
    * Method to start the UI.
@@ -49,7 +102,9 @@ public class TrainDispatchUi {
    * <p>When the user chooses an option, the corresponding method is called. After the method
    * is finished, the main menu is printed again.
    *
-   * <p>The user can exit the application by entering 8. Then the exit page is printed.
+   * <p>The user can exit the application by entering 8. Then the registry is saved to the
+   * snapshot file, if there is one, the journal is closed, if there is one, the metrics are
+   * removed from JMX and the exit page is printed.
    */
   public void start() {
     printStartPage();
@@ -70,24 +125,169 @@ public class TrainDispatchUi {
         default -> System.out.println("Invalid choice");
       }
     }
+    stop();
     printExitPage();
   }
 
+  /**
+   * Method that stops the UI without printing the exit page. The registry is saved to the
+   * snapshot file, if there is one, the journal is closed, if there is one, and the metrics are
+   * removed from JMX. It is called by start when the user exits, and can be called instead of
+   * start when the registry has been used without the menu, like in batch mode.
+   */
+  public void stop() {
+    saveSnapshot();
+    closeJournal();
+    unregisterMetrics();
+  }
+
   /**
    * Method to initialize the UI.
    *
-   * <p>It creates a new Scanner object and a new TrainDepartureRegistry object.
-   * It also adds some default train departures to the registry.
+   * <p>It creates a new Scanner object and a new TrainDepartureRegistry object on the clock of
+   * the UI. It also adds some default train departures to the registry.
    */
   public void init() {
     this.scanner = new Scanner(System.in);
-    this.registry = new TrainDepartureRegistry();
+    this.registry = new TrainDepartureRegistry(clock);
 
     this.registry.addTrainDeparture(501, 8, 15, "1", "Oslo");
     this.registry.addTrainDeparture(502, 13, 45, "1", "Trondheim");
     this.registry.addTrainDeparture(31, 10, 20, "14", "Mosjøen");
     this.registry.addTrainDeparture(135, 18, 39, "12", "Bodø");
     this.registry.addTrainDeparture(506, 22, 42, "1", "Trondheim");
+    registerMetrics();
+  }
+
+  /**
+   * Method to initialize the UI with departures from a file instead of the default train
+   * departures.
+   *
+   * <p>It creates a new Scanner object and a new TrainDepartureRegistry object. If the file is a
+   * directory, it is used as a RegistryJournal: the departures and the time are recovered from
+   * it, and every change made in the application is written to it. If the file is a
+   * snapshot written by RegistrySnapshot, the departures are loaded from it, and the registry is
+   * saved back to the same file when the application exits, unless another snapshot file is set.
+   * Otherwise the file is imported as a timetable with the TimetableImporter, and the number of
+   * imported departures and the first rows that could not be imported are printed.
+   *
+   * @param file the journal directory, the snapshot or the CSV file with the timetable
+   * @throws IOException if the file cannot be read or is not a valid journal, snapshot or
+   *                     timetable
+   */
+  public void init(Path file) throws IOException {
+    this.scanner = new Scanner(System.in);
+    this.registry = new TrainDepartureRegistry(clock);
+    registerMetrics();
+
+    if (Files.isDirectory(file)) {
+      this.journal = RegistryJournal.open(file, this.registry, FsyncPolicy.BATCH);
+      LocalDateTime time =
+          this.journal.getRecoveredTime().orElse(registry.getCurrentDateTime());
+      if (time.isAfter(registry.getCurrentDateTime())) {
+        clock.advanceTo(time);
+      }
+      System.out.println("Recovered " + this.registry.getTrainDepartureSorted().size()
+          + " departures from " + file);
+      return;
+    }
+    if (RegistrySnapshot.isSnapshot(file)) {
+      int loaded = RegistrySnapshot.read(file, this.registry);
+      System.out.println("Loaded " + loaded + " departures from " + file);
+      if (this.snapshotFile == null) {
+        this.snapshotFile = file;
+      }
+      return;
+    }
+    ImportReport report = new TimetableImporter(this.registry).importFile(file);
+    System.out.println("Imported " + report.getImportedCount() + " of " + report.getRowCount()
+        + " departures from " + file);
+    List<ImportReport.RowError> errors = report.getErrors();
+    for (int i = 0; i < Math.min(errors.size(), 20); i++) {
+      System.out.println(errors.get(i));
+    }
+    if (errors.size() > 20) {
+      System.out.println("... and " + (errors.size() - 20) + " more rows that were not imported");
+    }
+  }
+
+  /**
+   * Method that sets the file the registry is saved to as a snapshot when the application exits.
+   *
+   * @param snapshotFile the snapshot file, or null to not save the registry
+   */
+  public void setSnapshotFile(Path snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  /**
+   * Method that gets the metrics of the commands of the UI.
+   *
+   * @return metrics
+   */
+  public MetricsGroup getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Method that gets the registry of the UI, which is created by the init methods.
+   *
+   * @return the registry, or null if the UI has not been initialized
+   */
+  public TrainDepartureRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Method that registers the metrics of the UI and the registry with JMX. If they cannot be
+   * registered, the reason is printed and the application runs without them.
+   */
+  private void registerMetrics() {
+    try {
+      metrics.register("dispatcher");
+      registry.getMetrics().register("dispatcher");
+    } catch (IllegalStateException e) {
+      System.out.println("Could not register the metrics: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Method that removes the metrics of the UI and the registry from JMX.
+   */
+  private void unregisterMetrics() {
+    metrics.unregister();
+    registry.getMetrics().unregister();
+  }
+
+  /**
+   * Method that saves the registry to the snapshot file, if there is one. If the registry cannot
+   * be saved, the reason is printed.
+   */
+  private void saveSnapshot() {
+    if (snapshotFile == null) {
+      return;
+    }
+    try {
+      RegistrySnapshot.write(registry, snapshotFile);
+      System.out.println("Saved the departures to " + snapshotFile);
+    } catch (IOException e) {
+      System.out.println("Could not save the departures: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Method that closes the journal, if there is one, so all changes are written to it. If the
+   * journal cannot be closed, the reason is printed.
+   */
+  private void closeJournal() {
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.close();
+    } catch (IOException e) {
+      System.out.println("Could not write the last changes to the journal: " + e.getMessage());
+    }
   }
 
   /**
@@ -97,7 +297,7 @@ public class TrainDispatchUi {
   private void printMenu() {
     System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
         + "   Main menu                                    Current time: "
-        + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+        + currentTime() + "   " + ANSI_RESET);
     System.out.println("[1] Show departure table");
     System.out.println("[2] Add departure");
     System.out.println("[3] Assign track to departure");
@@ -109,74 +309,71 @@ public class TrainDispatchUi {
     System.out.print("> ");
   }
 
-  /**
-   * Method that returns a formatted string with the train departure information.
-   *
-   * <p>If the train departure has a delay, the departure time is crossed out and the new
-   * departure time is added next to it and the delay is added in the delay column.
-   *
-   * <p>If the train departure has been assigned a track, the track number is added in the
-   * track column.
-   *
-   * @param trainDeparture the train departure to be formatted
-   * @return a formatted string with the train departure information
-   */
-  private String formatTrainDeparture(TrainDeparture trainDeparture) {
-    String format = "%-6s %-9s | %-6s | %-8s | %-13s | %-7s | %-5s";
-    String trainNumber = String.valueOf(trainDeparture.getTrainNumber());
-    String departureTime = String.valueOf(trainDeparture.getDepartureTime());
-    String newDepartureTime = "";
-    String line = trainDeparture.getLine();
-    String destination = trainDeparture.getDestination();
-    String track = "";
-    String delay = "";
-    if (trainDeparture.getTrack() != -1) {
-      track = String.valueOf(trainDeparture.getTrack());
-    }
-    if (trainDeparture.getDelay().getHour() != 0 || trainDeparture.getDelay().getMinute() != 0) {
-      delay = "+" + trainDeparture.getDelay();
-      newDepartureTime = String.valueOf(trainDeparture.getNewDepartureTime());
-      departureTime = ANSI_CROSSED_OUT + departureTime + ANSI_RESET + " ";
-    }
-    return String.format(format, departureTime, newDepartureTime, line, trainNumber, destination,
-        delay, track);
-  }
-
   /**
    * Method that prints a list of train departures as a table. The table has columns for
    * departure time, line, train number, destination, delay and track.
    *
-   * <p>Is used when printing the departure table and when searching for train departures.
-   * First the column names are printed. Then each train departure is printed on a new line
-   * using the formatTrainDeparture method.
+   * <p>Is used when printing conflicts and when searching for train departures. The table is
+   * built by the DepartureBoardRenderer and written to the terminal at once. The departures of
+   * other days than the current date are printed below a line with their service date.
    *
    * @param departureList the list of train departures to be printed
    */
   private void printDepartures(List<TrainDeparture> departureList) {
-    System.out.println(ANSI_BOLD + "Departure time" + ANSI_RESET + "   | "
-        + ANSI_BOLD + "Line" + ANSI_RESET + "   | "
-        + ANSI_BOLD + "Number" + ANSI_RESET + "   | "
-        + ANSI_BOLD + "Destination" + ANSI_RESET + "   | "
-        + ANSI_BOLD + "Delay" + ANSI_RESET + "   | "
-        + ANSI_BOLD + "Track" + ANSI_RESET);
-    for (TrainDeparture trainDeparture : departureList) {
-      System.out.println(formatTrainDeparture(trainDeparture));
-    }
+    renderer.clear();
+    renderer.appendTop(departureList, departureList.size(), registry.getCurrentDate());
+    renderer.writeTo(System.out);
   }
 
   /**
    * Method that prints the departure table. The departure table is a list of all train departures
    * in the registry sorted by departure time.
    *
-   * <p>Lets the user go back to the main menu by pressing enter.
+   * <p>The table is shown one page at a time, and only the departures on the page are formatted.
+   * The IncrementalBoardRenderer keeps the page that is shown, so when the user goes to another
+   * page or refreshes the table, only the lines that changed are written to the terminal. The
+   * departures are only read from the registry again if it has changed since they were read.
+   * Lets the user go to the next or previous page, refresh the table, or go back to the main menu
+   * by pressing enter.
    */
   private void printDepartureTable() {
-    System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
-        + "   Train Departures                               Current time: "
-        + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
-    printDepartures(this.registry.getTrainDepartureSorted());
-    System.out.print("\nPress [Enter] to go back");
-    scanner.nextLine();
+    OperationMetrics command = metrics.operation("printDepartureTable");
+    long version = this.registry.getVersion();
+    List<TrainDeparture> departures = this.registry.getTrainDepartureSorted();
+    int page = 1;
+    board.reset();
+    boolean exit = false;
+    while (!exit) {
+      long start = metrics.start();
+      int pageCount = board.getPageCount(departures.size());
+      page = Math.min(page, pageCount);
+      board.beginScreen();
+      board.addLine(ANSI_UNDERLINE
+          + "   Train Departures                               Current time: "
+          + currentTime() + "   " + ANSI_RESET);
+      board.addPage(departures, page, registry.getCurrentDate());
+      board.addLine("");
+      if (pageCount > 1) {
+        board.addLine("Page " + page + " of " + pageCount + ". Press [n] for the next page, "
+            + "[p] for the previous page, [r] to refresh or [Enter] to go back");
+      } else {
+        board.addLine("Press [r] to refresh or [Enter] to go back");
+      }
+      board.addLine("> ");
+      board.writeChangesTo(System.out);
+      command.record(start);
+      String choice = scanner.nextLine();
+      if (choice.equals("n") && page < pageCount) {
+        page++;
+      } else if (choice.equals("p") && page > 1) {
+        page--;
+      } else if (choice.equals("r") && this.registry.getVersion() != version) {
+        version = this.registry.getVersion();
+        departures = this.registry.getTrainDepartureSorted();
+      } else if (!choice.equals("n") && !choice.equals("p") && !choice.equals("r")) {
+        exit = true;
+      }
+    }
   }
 
   /**
@@ -188,14 +385,17 @@ public class TrainDispatchUi {
    * want to try again or go back to the main menu.
    */
   private void addTrainDeparture() {
+    OperationMetrics command = metrics.operation("addTrainDeparture");
     boolean exit = false;
     while (!exit) {
       System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
           + "   Add a departure                          Current time: "
-          + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+          + currentTime() + "   " + ANSI_RESET);
+      long start = 0;
       try {
         System.out.print("Train number: ");
         final int trainNumber = Integer.parseInt(scanner.nextLine());
+        final LocalDate date = readDate();
         System.out.print("Departure hours: ");
         final int hours = Integer.parseInt(scanner.nextLine());
         System.out.print("Departure minutes: ");
@@ -204,11 +404,15 @@ public class TrainDispatchUi {
         final String line = scanner.nextLine();
         System.out.print("Destination: ");
         final String destination = scanner.nextLine();
-        this.registry.addTrainDeparture(trainNumber, hours, minutes, line, destination);
+        start = metrics.start();
+        this.registry.addTrainDeparture(trainNumber, date, hours, minutes, line, destination);
         System.out.println(ANSI_BOLD + "\nTrain departure added." + ANSI_RESET);
       } catch (IllegalArgumentException e) {
+        command.reject(e);
         System.out.println(ANSI_BOLD + "\nFailed for the following reason:\n"
             + ANSI_RESET + e.getMessage());
+      } finally {
+        command.record(start);
       }
       System.out.println("\nPress [Enter] to go back or [1] to try again");
       System.out.print("> ");
@@ -228,21 +432,27 @@ public class TrainDispatchUi {
    * want to try again or go back to the main menu.
    */
   private void assignTrack() {
+    OperationMetrics command = metrics.operation("assignTrack");
     boolean exit = false;
     while (!exit) {
       System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
           + "   Assign track to departure                      Current time: "
-          + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+          + currentTime() + "   " + ANSI_RESET);
+      long start = 0;
       try {
         System.out.print("Train number: ");
         int trainNumber = Integer.parseInt(scanner.nextLine());
         System.out.print("Track: ");
         int track = Integer.parseInt(scanner.nextLine());
+        start = metrics.start();
         this.registry.assignTrack(trainNumber, track);
         System.out.println(ANSI_BOLD + "\nTrack assigned." + ANSI_RESET);
       } catch (IllegalArgumentException e) {
+        command.reject(e);
         System.out.println(ANSI_BOLD + "\nFailed for the following reason:\n"
             + ANSI_RESET + e.getMessage());
+      } finally {
+        command.record(start);
       }
       System.out.println("\nPress [Enter] to go back or [1] to try again");
       System.out.print("> ");
@@ -256,30 +466,61 @@ public class TrainDispatchUi {
   /**
    * Method that lets the user set a delay to a train departure. The user is asked to enter
    * the train number and the delay. If the user enters invalid parameters, the method
-   * prints an error message.
+   * prints an error message. If the delayed departure is now in conflict with other departures on
+   * its track, those departures are printed.
+   *
+   * <p>If the user leaves the train number empty, the user is asked for a line, a destination and
+   * a time instead, and the delay is added to every departure that matches them, for example all
+   * departures of a line after a signal fault.
    *
    * <p>When the delay is set or has failed to be set, the user is asked if they
    * want to try again or go back to the main menu.
    */
   private void setDelay() {
+    OperationMetrics command = metrics.operation("setDelay");
     boolean exit = false;
     while (!exit) {
       System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
           + "   Set departure delay                            Current time: "
-          + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+          + currentTime() + "   " + ANSI_RESET);
+      long start = 0;
       try {
-        System.out.print("Train number: ");
-        int trainNumber = Integer.parseInt(scanner.nextLine());
+        System.out.print("Train number (empty to delay many departures): ");
+        String trainNumberString = scanner.nextLine();
+        int trainNumber = 0;
+        DepartureQuery query = null;
+        if (trainNumberString.isEmpty()) {
+          query = readQuery();
+        } else {
+          trainNumber = Integer.parseInt(trainNumberString);
+        }
         System.out.print("Hours: ");
         String hoursString = scanner.nextLine();
         int hours = hoursString.isEmpty() ? 0 : Integer.parseInt(hoursString);
         System.out.print("Minutes: ");
         int minutes = Integer.parseInt(scanner.nextLine());
-        this.registry.setDelay(trainNumber, hours, minutes);
-        System.out.println(ANSI_BOLD + "\nDelay added." + ANSI_RESET);
+        start = metrics.start();
+        List<TrainDeparture> conflicts;
+        if (query == null) {
+          conflicts = this.registry.setDelay(trainNumber, hours, minutes);
+          System.out.println(ANSI_BOLD + "\nDelay added." + ANSI_RESET);
+        } else {
+          DelayReport report = this.registry.addDelays(query, hours, minutes);
+          System.out.println(ANSI_BOLD + "\nDelay added to " + report.getDelayed().size()
+              + " departures." + ANSI_RESET);
+          conflicts = report.getConflicts();
+        }
+        if (!conflicts.isEmpty()) {
+          System.out.println(ANSI_BOLD + "\nThe delayed departures now occupy their tracks at the "
+              + "same time as the following departures:" + ANSI_RESET);
+          printDepartures(conflicts);
+        }
       } catch (IllegalArgumentException e) {
+        command.reject(e);
         System.out.println(ANSI_BOLD + "\nFailed for the following reason:\n"
             + ANSI_RESET + e.getMessage());
+      } finally {
+        command.record(start);
       }
       System.out.println("\nPress [Enter] to go back or [1] to try again");
       System.out.print("> ");
@@ -299,18 +540,24 @@ public class TrainDispatchUi {
    * want to try again or go back to the main menu.
    */
   private void searchTrainDepartureNumber() {
+    OperationMetrics command = metrics.operation("searchTrainDepartureNumber");
     boolean exit = false;
     while (!exit) {
       System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
           + "   Search for departure by number                 Current time: "
-          + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+          + currentTime() + "   " + ANSI_RESET);
+      long start = 0;
       try {
         System.out.print("Train number: ");
         int trainNumber = Integer.parseInt(scanner.nextLine());
+        start = metrics.start();
         printDepartures(this.registry.searchTrainDeparture(trainNumber));
       } catch (IllegalArgumentException e) {
+        command.reject(e);
         System.out.println(ANSI_BOLD + "\nFailed for the following reason:\n"
             + ANSI_RESET + e.getMessage());
+      } finally {
+        command.record(start);
       }
       System.out.println("\nPress [Enter] to go back or [1] to try again");
       System.out.print("> ");
@@ -323,25 +570,32 @@ public class TrainDispatchUi {
 
   /**
    * Method that lets the user search for train departures by destination. The user is asked to
-   * enter the destination. If the user enters invalid parameters or the destination does not
-   * exist in the registry, the method prints an error message.
+   * enter the destination or the start of it, in upper or lower case. If the user enters invalid
+   * parameters or the destination does not exist in the registry, the method prints an error
+   * message.
    *
    * <p>When the train departures are found or has failed to be found, the user is asked if they
    * want to try again or go back to the main menu.
    */
   private void searchTrainDepartureDestination() {
+    OperationMetrics command = metrics.operation("searchTrainDepartureDestination");
     boolean exit = false;
     while (!exit) {
       System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
           + "   Search for departure by destination            Current time: "
-          + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+          + currentTime() + "   " + ANSI_RESET);
+      long start = 0;
       try {
         System.out.print("Destination: ");
         String destination = scanner.nextLine();
-        printDepartures(this.registry.searchTrainDepartureDestination(destination));
+        start = metrics.start();
+        printDepartures(this.registry.searchTrainDepartureDestinationPrefix(destination));
       } catch (IllegalArgumentException e) {
+        command.reject(e);
         System.out.println(ANSI_BOLD + "\nFailed for the following reason:\n"
             + ANSI_RESET + e.getMessage());
+      } finally {
+        command.record(start);
       }
       System.out.println("\nPress [Enter] to go back or [1] to try again");
       System.out.print("> ");
@@ -353,31 +607,73 @@ public class TrainDispatchUi {
   }
 
   /**
-   * Method that lets the user update the current time. The user is asked to enter the hours and
-   * minutes of the new time. If the user enters invalid parameters or the time is set before or to
-   * the current time, the method prints an error message.
+   * Method that gets the current time of the registry.
+   *
+   * @return the current time
+   */
+  private LocalTime currentTime() {
+    return registry.getCurrentDateTime().toLocalTime();
+  }
+
+  /**
+   * Method that moves the clock of the registry to the given date and time.
+   *
+   * @param date the date
+   * @param hours the hours
+   * @param minutes the minutes
+   * @throws IllegalArgumentException if hours or minutes are not between 0 and 23/59, or if the
+   *                                  time is not after the current time
+   */
+  private void setCurrentDateTime(LocalDate date, int hours, int minutes)
+      throws IllegalArgumentException {
+    LocalDateTime time;
+    try {
+      time = date.atTime(hours, minutes);
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("Hours must be between 0 and 23, "
+          + "minutes must be between 0 and 59");
+    }
+    if (!time.isAfter(registry.getCurrentDateTime())) {
+      throw new IllegalArgumentException(time.equals(registry.getCurrentDateTime())
+          ? "Time already set to " + time.toLocalTime()
+          : "Time cannot be set before the current time");
+    }
+    clock.advanceTo(time);
+  }
+
+  /**
+   * Method that lets the user update the current time. The user is asked to enter the date, hours
+   * and minutes of the new time. If the user enters invalid parameters or the time is set before
+   * or to the current time, the method prints an error message.
    *
    * <p>When the time is updated or has failed to be updated, the user is asked if they
    * want to try again or go back to the main menu.
    */
   private void updateTime() {
+    OperationMetrics command = metrics.operation("updateTime");
     boolean exit = false;
     while (!exit) {
       System.out.println("\n\n\n\n\n\n\n\n\n\n" + ANSI_UNDERLINE
           + "   Update time                                    Current time: "
-          + TimeManager.getCurrentTime() + "   " + ANSI_RESET);
+          + currentTime() + "   " + ANSI_RESET);
+      long start = 0;
       try {
+        LocalDate date = readDate();
         System.out.print("Hours: ");
         String hoursString = scanner.nextLine();
         int hours = hoursString.isEmpty() ? 0 : Integer.parseInt(hoursString);
         System.out.print("Minutes: ");
         int minutes = Integer.parseInt(scanner.nextLine());
-        TimeManager.setCurrentTime(hours, minutes);
+        start = metrics.start();
+        setCurrentDateTime(date, hours, minutes);
         System.out.println(ANSI_BOLD + "\nTime updated." + ANSI_RESET);
         registry.removePassedTrainDepartures();
       } catch (IllegalArgumentException e) {
+        command.reject(e);
         System.out.println(ANSI_BOLD + "\nFailed for the following reason:\n"
             + ANSI_RESET + e.getMessage());
+      } finally {
+        command.record(start);
       }
       System.out.println("\nPress [Enter] to go back or [1] to try again");
       System.out.print("> ");
@@ -388,6 +684,58 @@ public class TrainDispatchUi {
     }
   }
 
+  /**
+   * Method that asks the user which departures to delay. Empty answers mean any line, any
+   * destination and from the current time. The departures leaving at or after the time on the
+   * current date, counting their delay, are selected.
+   *
+   * @return the query for the departures to delay
+   * @throws IllegalArgumentException if the time is not written as HH:MM
+   */
+  private DepartureQuery readQuery() throws IllegalArgumentException {
+    DepartureQuery query = new DepartureQuery();
+    System.out.print("Line (empty for all lines): ");
+    String line = scanner.nextLine();
+    if (!line.isEmpty()) {
+      query = query.withLine(line);
+    }
+    System.out.print("Destination (empty for all destinations): ");
+    String destination = scanner.nextLine();
+    if (!destination.isEmpty()) {
+      query = query.withDestination(destination);
+    }
+    System.out.print("Leaving from (HH:MM, empty for " + currentTime() + "): ");
+    String timeString = scanner.nextLine();
+    LocalDateTime from = registry.getCurrentDateTime();
+    if (!timeString.isEmpty()) {
+      try {
+        from = registry.getCurrentDate().atTime(LocalTime.parse(timeString));
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Time must be written as HH:MM");
+      }
+    }
+    return query.withTimeWindow(from, LocalDateTime.MAX);
+  }
+
+  /**
+   * Method that asks the user for a date. An empty answer means the current date.
+   *
+   * @return the date entered by the user
+   * @throws IllegalArgumentException if the date is not written as YYYY-MM-DD
+   */
+  private LocalDate readDate() throws IllegalArgumentException {
+    System.out.print("Date (YYYY-MM-DD, empty for " + registry.getCurrentDate() + "): ");
+    String dateString = scanner.nextLine();
+    if (dateString.isEmpty()) {
+      return registry.getCurrentDate();
+    }
+    try {
+      return LocalDate.parse(dateString);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Date must be written as YYYY-MM-DD");
+    }
+  }
+
   /**
    * Method that prints the start page.
    */
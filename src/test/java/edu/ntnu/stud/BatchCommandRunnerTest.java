@@ -0,0 +1,175 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TimeManager;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import edu.ntnu.stud.view.BatchCommandRunner;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the BatchCommandRunner class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class BatchCommandRunnerTest {
+  private TrainDepartureRegistry registry;
+  private BatchCommandRunner runner;
+
+  @BeforeEach
+  public void setUp() {
+    TimeManager.resetTime();
+    registry = new TrainDepartureRegistry();
+    runner = new BatchCommandRunner(registry);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    TimeManager.resetTime();
+  }
+
+  private String run(String commands) throws IOException {
+    StringWriter out = new StringWriter();
+    runner.run(new BufferedReader(new StringReader(commands)), out);
+    return out.toString();
+  }
+
+  @Test
+  public void testAddTrackAndDelay() throws IOException {
+    String output = run("# timetable\n"
+        + "add 501 08:15 L1 Oslo S\n"
+        + "\n"
+        + "add 502 8:30 L1 Trondheim\n"
+        + "track 501 2\n"
+        + "delay 502 00:05\n");
+    assertEquals("2 OK 0\n4 OK 0\n5 OK 0\n6 OK 0\n", output);
+    assertEquals("Oslo S", registry.searchTrainDeparture(501).get(0).getDestination());
+    assertEquals(2, registry.searchTrainDeparture(501).get(0).getTrack());
+    assertEquals(5, registry.searchTrainDeparture(502).get(0).getDelay().getMinute());
+    assertEquals(4, runner.getCommandCount());
+    assertEquals(0, runner.getFailedCount());
+    assertTrue(runner.getElapsedNanos() > 0);
+  }
+
+  @Test
+  public void testCommandsWithDate() throws IOException {
+    LocalDate tomorrow = TimeManager.getCurrentDate().plusDays(1);
+    String output = run("add 501 08:15 L1 Oslo\n"
+        + "add " + tomorrow + " 501 08:15 L1 Oslo\n"
+        + "track " + tomorrow + " 501 3\n"
+        + "query train=501\n");
+    assertTrue(output.startsWith("1 OK 0\n2 OK 0\n3 OK 0\n4 OK 2\n"));
+    assertTrue(output.endsWith("501\t" + tomorrow + "\t08:15\tL1\tOslo\t3\t00:00\n"));
+    assertEquals(-1, registry.searchTrainDeparture(501).get(0).getTrack());
+  }
+
+  @Test
+  public void testQueryListsMatchingDepartures() throws IOException {
+    LocalDate today = TimeManager.getCurrentDate();
+    String output = run("add 501 08:15 L1 Oslo\n"
+        + "add 31 10:20 F4 Mo i Rana\n"
+        + "add 502 13:45 L1 Trondheim\n"
+        + "query line=l1 from=09:00\n"
+        + "query destination=\"mo i rana\"\n"
+        + "query train=501 line=F4\n"
+        + "query\n"
+        + "query line=L1 order=departure limit=1\n");
+    String[] lines = output.split("\n");
+    assertEquals("4 OK 1", lines[3]);
+    assertEquals("502\t" + today + "\t13:45\tL1\tTrondheim\t-\t00:00", lines[4]);
+    assertEquals("5 OK 1", lines[5]);
+    assertTrue(lines[6].startsWith("31\t"));
+    assertEquals("6 OK 0", lines[7]);
+    assertEquals("7 OK 3", lines[8]);
+    assertEquals("8 OK 1", lines[12]);
+    assertTrue(lines[13].startsWith("501\t"));
+    assertEquals(14, lines.length);
+  }
+
+  @Test
+  public void testTimeRemovesPassedDepartures() throws IOException {
+    String output = run("add 501 08:15 L1 Oslo\n"
+        + "add 502 13:45 L1 Trondheim\n"
+        + "time 09:00\n"
+        + "query\n"
+        + "time 08:00\n");
+    assertTrue(output.contains("3 OK 0\n4 OK 1\n502\t"));
+    assertTrue(output.endsWith("5 ERR Time cannot be set before the current time\n"));
+    assertEquals(9, TimeManager.getCurrentTime().getHour());
+  }
+
+  @Test
+  public void testTimeMovesSimulatedClock() throws IOException {
+    SimulatedClock clock = new SimulatedClock(LocalDate.of(2024, 3, 4).atStartOfDay());
+    registry = new TrainDepartureRegistry(clock);
+    runner = new BatchCommandRunner(registry);
+    String output = run("add 501 08:15 L1 Oslo\n"
+        + "add 502 13:45 L1 Trondheim\n"
+        + "time 09:00\n"
+        + "query\n"
+        + "time 09:00\n"
+        + "time 2024-03-03 10:00\n");
+    assertTrue(output.contains("3 OK 0\n4 OK 1\n502\t"));
+    assertTrue(output.contains("5 ERR Time already set to 09:00\n"));
+    assertTrue(output.endsWith("6 ERR Time cannot be set before the current time\n"));
+    assertEquals(LocalDateTime.of(2024, 3, 4, 9, 0), clock.getDateTime());
+    assertEquals(0, TimeManager.getCurrentTime().getHour());
+  }
+
+  @Test
+  public void testFailedCommandsDoNotStopTheRun() throws IOException {
+    String output = run("add 501 08:15 L1 Oslo\n"
+        + "add 501 09:15 L1 Oslo\n"
+        + "add 502 25:00 L1 Oslo\n"
+        + "add 503 10:00 L1\n"
+        + "track 999 2\n"
+        + "delay 501 soon\n"
+        + "query track=0\n"
+        + "query destination=\"Mo i Rana\n"
+        + "\"depart 501\n"
+        + "track 501 two\n"
+        + "track 501 2 3\n"
+        + "add 504 10:00 L1 Oslo\n");
+    String[] lines = output.split("\n");
+    assertEquals(12, lines.length);
+    assertEquals("1 OK 0", lines[0]);
+    for (int i = 1; i < 11; i++) {
+      assertTrue(lines[i].startsWith((i + 1) + " ERR "), lines[i]);
+    }
+    assertEquals("4 ERR Missing destination", lines[3]);
+    assertEquals("9 ERR Unknown command: \"depart", lines[8]);
+    assertEquals("12 OK 0", lines[11]);
+    assertEquals(12, runner.getCommandCount());
+    assertEquals(10, runner.getFailedCount());
+    assertEquals(3, runner.getMetrics().operation("track").getRejectedCount());
+    assertThrows(IllegalArgumentException.class, () -> new BatchCommandRunner(null));
+    assertThrows(IllegalArgumentException.class, () -> runner.run(null, new StringWriter()));
+  }
+
+  @Test
+  public void testAllocateGivesTracksToDeparturesWithoutOne() throws IOException {
+    String output = run("add 501 08:15 L1 Oslo\n"
+        + "add 502 08:20 L2 Bergen\n"
+        + "add 503 08:25 L1 Oslo\n"
+        + "allocate 2 L1=2\n"
+        + "query track=-\n"
+        + "allocate 0\n"
+        + "allocate 2 L1=3\n");
+    String[] lines = output.split("\n");
+    assertEquals("4 OK 1", lines[3]);
+    assertTrue(lines[4].startsWith("503\t"));
+    assertEquals("5 OK 1", lines[5]);
+    assertEquals("6 ERR Number of tracks must be a positive number", lines[7]);
+    assertTrue(lines[8].startsWith("7 ERR Track must be between 1"));
+    assertEquals(2, registry.searchTrainDeparture(501).get(0).getTrack());
+    assertEquals(1, registry.searchTrainDeparture(502).get(0).getTrack());
+    assertEquals(2, runner.getMetrics().operation("allocate").getRejectedCount());
+  }
+}
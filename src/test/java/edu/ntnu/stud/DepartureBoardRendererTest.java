@@ -0,0 +1,118 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.view.DepartureBoardRenderer;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the DepartureBoardRenderer class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class DepartureBoardRendererTest {
+  private static final LocalDate TODAY = LocalDate.of(2024, 3, 4);
+  private static final String NEW_LINE = System.lineSeparator();
+
+  private static TrainDeparture departure(int trainNumber, LocalDate date, int hours,
+      int minutes) {
+    return new TrainDeparture(trainNumber, date, hours, minutes, "F4", "Bergen",
+        LocalDateTime.MIN);
+  }
+
+  private static List<TrainDeparture> departures(int count) {
+    List<TrainDeparture> departures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      departures.add(departure(i + 1, TODAY, i / 60, i % 60));
+    }
+    return departures;
+  }
+
+  private static String[] lines(CharSequence screen) {
+    return screen.toString().split(NEW_LINE);
+  }
+
+  @Test
+  public void testRowsLookLikeStringFormat() {
+    TrainDeparture onTime = departure(30, TODAY, 9, 5);
+    onTime.setTrack(2);
+    TrainDeparture delayed = departure(1234, TODAY, 12, 20);
+    delayed.setDelay(1, 5);
+    DepartureBoardRenderer renderer = new DepartureBoardRenderer();
+    renderer.appendTop(List.of(onTime, delayed), 2, TODAY);
+    String format = "%-6s %-9s | %-6s | %-8s | %-13s | %-7s | %-5s";
+    String[] lines = lines(renderer.getScreen());
+    assertEquals(3, lines.length);
+    assertEquals(String.format(format, "09:05", "", "F4", "30", "Bergen", "", "2"), lines[1]);
+    assertEquals(String.format(format, "\u001B[9m12:20\u001B[0m ", "13:25", "F4", "1234",
+        "Bergen", "+01:05", ""), lines[2]);
+  }
+
+  @Test
+  public void testServiceDateLineBeforeOtherDays() {
+    List<TrainDeparture> departures = List.of(departure(1, TODAY, 23, 0),
+        departure(2, TODAY.plusDays(1), 6, 0), departure(3, TODAY.plusDays(1), 7, 0));
+    DepartureBoardRenderer renderer = new DepartureBoardRenderer();
+    renderer.appendTop(departures, 3, TODAY);
+    String[] lines = lines(renderer.getScreen());
+    assertEquals(5, lines.length);
+    assertEquals("\u001B[4m" + TODAY.plusDays(1) + "\u001B[0m", lines[2]);
+  }
+
+  @Test
+  public void testAppendPage() {
+    List<TrainDeparture> departures = departures(45);
+    DepartureBoardRenderer renderer = new DepartureBoardRenderer(20, StandardCharsets.UTF_8);
+    assertEquals(3, renderer.getPageCount(departures.size()));
+    assertEquals(1, renderer.getPageCount(0));
+    renderer.appendPage(departures, 3, TODAY);
+    String[] lines = lines(renderer.getScreen());
+    assertEquals(6, lines.length);
+    assertTrue(lines[1].contains("| 41 "));
+    renderer.clear();
+    renderer.appendPage(departures, 1, TODAY);
+    assertEquals(21, lines(renderer.getScreen()).length);
+    assertThrows(IllegalArgumentException.class,
+        () -> renderer.appendPage(departures, 4, TODAY));
+    assertThrows(IllegalArgumentException.class,
+        () -> renderer.appendPage(departures, 0, TODAY));
+  }
+
+  @Test
+  public void testAppendTopShowsAtMostCount() {
+    DepartureBoardRenderer renderer = new DepartureBoardRenderer();
+    renderer.appendTop(departures(30), 10, TODAY);
+    assertEquals(11, lines(renderer.getScreen()).length);
+    renderer.clear();
+    renderer.appendTop(departures(3), 10, TODAY);
+    assertEquals(4, lines(renderer.getScreen()).length);
+  }
+
+  @Test
+  public void testWriteToWritesTheWholeScreen() {
+    DepartureBoardRenderer renderer = new DepartureBoardRenderer(500, StandardCharsets.UTF_8);
+    renderer.appendLine("Avganger til Mosjøen og Bodø");
+    renderer.appendPage(departures(500), 1, TODAY);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    renderer.writeTo(new PrintStream(bytes, false, StandardCharsets.UTF_8));
+    assertEquals(renderer.getScreen().toString(), bytes.toString(StandardCharsets.UTF_8));
+    renderer.clear();
+    renderer.append("> ");
+    bytes.reset();
+    renderer.writeTo(new PrintStream(bytes, false, StandardCharsets.UTF_8));
+    assertEquals("> ", bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testConstructorInvalidInput() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new DepartureBoardRenderer(0, StandardCharsets.UTF_8));
+    assertThrows(IllegalArgumentException.class, () -> new DepartureBoardRenderer(20, null));
+  }
+}
@@ -0,0 +1,171 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import edu.ntnu.stud.server.DepartureServer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the DepartureServer class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class DepartureServerTest {
+  private static final LocalDateTime START = LocalDateTime.of(2024, 3, 4, 6, 0);
+
+  private TrainDepartureRegistry registry;
+  private DepartureServer server;
+  private HttpClient client;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    registry = new TrainDepartureRegistry(Clock.fixed(START.toInstant(ZoneOffset.UTC),
+        ZoneOffset.UTC));
+    registry.addTrainDeparture(501, 8, 15, "L1", "Oslo");
+    registry.addTrainDeparture(31, 10, 20, "F4", "Mo i \"Rana\"");
+    registry.addTrainDeparture(502, 13, 45, "L1", "Trondheim");
+    registry.assignTrack(501, 2);
+    registry.setDelay(502, 0, 30);
+    server = DepartureServer.start(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    client = HttpClient.newHttpClient();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  private HttpResponse<String> get(String path, String etag)
+      throws IOException, InterruptedException {
+    HttpRequest.Builder request = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + server.getPort() + path));
+    if (etag != null) {
+      request.header("If-None-Match", etag);
+    }
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  public void testBoardIsJson() throws IOException, InterruptedException {
+    HttpResponse<String> response = get("/board", null);
+    assertEquals(200, response.statusCode());
+    assertEquals("application/json; charset=utf-8",
+        response.headers().firstValue("Content-Type").orElseThrow());
+    assertEquals("{\"version\":5,\"departures\":["
+        + "{\"trainNumber\":501,\"serviceDate\":\"2024-03-04\",\"departureTime\":\"08:15\","
+        + "\"line\":\"L1\",\"destination\":\"Oslo\",\"track\":2,\"delay\":\"00:00\","
+        + "\"newDepartureTime\":\"2024-03-04T08:15\"},"
+        + "{\"trainNumber\":31,\"serviceDate\":\"2024-03-04\",\"departureTime\":\"10:20\","
+        + "\"line\":\"F4\",\"destination\":\"Mo i \\\"Rana\\\"\",\"track\":null,"
+        + "\"delay\":\"00:00\",\"newDepartureTime\":\"2024-03-04T10:20\"},"
+        + "{\"trainNumber\":502,\"serviceDate\":\"2024-03-04\",\"departureTime\":\"13:45\","
+        + "\"line\":\"L1\",\"destination\":\"Trondheim\",\"track\":null,\"delay\":\"00:30\","
+        + "\"newDepartureTime\":\"2024-03-04T14:15\"}]}", response.body());
+  }
+
+  @Test
+  public void testNotModifiedUntilRegistryChanges() throws IOException, InterruptedException {
+    HttpResponse<String> response = get("/board", null);
+    String etag = response.headers().firstValue("ETag").orElseThrow();
+    assertEquals("\"5\"", etag);
+    response = get("/board", etag);
+    assertEquals(304, response.statusCode());
+    assertEquals("", response.body());
+    registry.setDelay(501, 0, 5);
+    response = get("/board", etag);
+    assertEquals(200, response.statusCode());
+    assertEquals("\"6\"", response.headers().firstValue("ETag").orElseThrow());
+    assertTrue(response.body().contains("\"delay\":\"00:05\""));
+    assertEquals(1, server.getMetrics().operation("notModified").getCount());
+  }
+
+  @Test
+  public void testMetricsAreRegisteredUntilClose() throws Exception {
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = server.getMetrics().getObjectName("serverTest", "board");
+    server.getMetrics().register("serverTest");
+    assertEquals(200, get("/board", null).statusCode());
+    long end = System.currentTimeMillis() + 5_000;
+    while (!mbeanServer.getAttribute(name, "Count").equals(1L)
+        && System.currentTimeMillis() < end) {
+      // the request is counted after the response has been sent
+      Thread.sleep(10);
+    }
+    assertEquals(1L, mbeanServer.getAttribute(name, "Count"));
+    server.close();
+    assertFalse(mbeanServer.isRegistered(name));
+  }
+
+  @Test
+  public void testSearchByTrainNumberAndDestination() throws IOException, InterruptedException {
+    HttpResponse<String> response = get("/trains/31", null);
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().contains("\"trainNumber\":31"));
+    assertFalse(response.body().contains("\"trainNumber\":501"));
+    response = get("/destinations/mo%20i%20%22rana%22", null);
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().contains("\"trainNumber\":31"));
+    assertEquals(404, get("/trains/999", null).statusCode());
+    assertEquals(404, get("/destinations/Bergen", null).statusCode());
+  }
+
+  @Test
+  public void testDeparturesInTimeWindow() throws IOException, InterruptedException {
+    HttpResponse<String> response =
+        get("/departures?line=l1&from=2024-03-04T09:00&to=2024-03-04T15:00", null);
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().contains("\"trainNumber\":502"));
+    assertFalse(response.body().contains("\"trainNumber\":501"));
+    response = get("/departures?from=2024-03-04T14:00", null);
+    assertTrue(response.body().contains("\"trainNumber\":502"));
+    assertFalse(response.body().contains("\"trainNumber\":31"));
+    response = get("/departures?track=2&from=2024-03-04T08:00&to=2024-03-04T08:30", null);
+    assertTrue(response.body().contains("\"trainNumber\":501"));
+    assertFalse(response.body().contains("\"trainNumber\":502"));
+    response = get("/departures?limit=1", null);
+    assertTrue(response.body().contains("\"trainNumber\":501"));
+    assertFalse(response.body().contains("\"trainNumber\":31"));
+    response = get("/departures?track=-", null);
+    assertTrue(response.body().contains("\"trainNumber\":31"));
+    assertFalse(response.body().contains("\"trainNumber\":501"));
+    response = get("/departures?destination=Bergen", null);
+    assertEquals(200, response.statusCode());
+    assertEquals("{\"version\":5,\"departures\":[]}", response.body());
+  }
+
+  @Test
+  public void testInvalidRequests() throws IOException, InterruptedException {
+    HttpResponse<String> response = get("/departures?from=tomorrow", null);
+    assertEquals(400, response.statusCode());
+    assertTrue(response.body().startsWith("{\"error\":"));
+    assertEquals(400, get("/departures?to=2024-03-04T10:00", null).statusCode());
+    assertEquals(400, get("/departures?track=two", null).statusCode());
+    assertEquals(400, get("/departures?limit=0", null).statusCode());
+    assertEquals(400, get("/trains/abc", null).statusCode());
+    assertEquals(400, get("/board?page=2", null).statusCode());
+    assertEquals(404, get("/board/1", null).statusCode());
+    HttpRequest post = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + server.getPort() + "/board"))
+        .POST(HttpRequest.BodyPublishers.noBody()).build();
+    assertEquals(405, client.send(post, HttpResponse.BodyHandlers.ofString()).statusCode());
+    assertThrows(IllegalArgumentException.class,
+        () -> DepartureServer.start(null, new InetSocketAddress(0)));
+    assertThrows(IllegalArgumentException.class,
+        () -> DepartureServer.start(registry, new InetSocketAddress(0), 0));
+  }
+}
@@ -0,0 +1,131 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.view.DepartureBoardRenderer;
+import edu.ntnu.stud.view.IncrementalBoardRenderer;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the IncrementalBoardRenderer class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class IncrementalBoardRendererTest {
+  private static final LocalDate TODAY = LocalDate.of(2024, 3, 4);
+
+  private static List<TrainDeparture> departures(int count) {
+    List<TrainDeparture> departures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      departures.add(new TrainDeparture(i + 1, TODAY, i / 60, i % 60, "F4", "Bergen",
+          LocalDateTime.MIN));
+    }
+    return departures;
+  }
+
+  private static String diff(IncrementalBoardRenderer board) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    board.writeDiffTo(new PrintStream(bytes, false, StandardCharsets.UTF_8));
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String changes(IncrementalBoardRenderer board) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    board.writeChangesTo(new PrintStream(bytes, false, StandardCharsets.UTF_8));
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  private static void describe(IncrementalBoardRenderer board, List<TrainDeparture> departures,
+      int page) {
+    board.beginScreen();
+    board.addLine("Departures");
+    board.addPage(departures, page, TODAY);
+    board.addLine("> ");
+  }
+
+  @Test
+  public void testFirstScreenSendsEveryLine() {
+    List<TrainDeparture> departures = departures(5);
+    IncrementalBoardRenderer board = new IncrementalBoardRenderer(20, StandardCharsets.UTF_8);
+    describe(board, departures, 1);
+    assertEquals(8, board.getChangedLineCount());
+    DepartureBoardRenderer renderer = new DepartureBoardRenderer(20, StandardCharsets.UTF_8);
+    renderer.appendLine("Departures");
+    renderer.appendPage(departures, 1, TODAY);
+    String[] lines = diff(board).split("\n");
+    String[] expected = renderer.getScreen().toString().split(System.lineSeparator());
+    assertEquals("= 8", lines[0]);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals((i + 1) + " " + expected[i], lines[i + 1]);
+    }
+    assertEquals("8 > ", lines[8]);
+  }
+
+  @Test
+  public void testOnlyChangedRowsAreSent() {
+    List<TrainDeparture> departures = departures(5);
+    IncrementalBoardRenderer board = new IncrementalBoardRenderer(20, StandardCharsets.UTF_8);
+    describe(board, departures, 1);
+    diff(board);
+    describe(board, departures, 1);
+    assertEquals(0, board.getChangedLineCount());
+    assertEquals("= 8\n\n", diff(board));
+    departures.get(2).setDelay(0, 5);
+    departures.get(4).setTrack(3);
+    describe(board, departures, 1);
+    assertEquals(2, board.getChangedLineCount());
+    String[] lines = diff(board).split("\n");
+    assertEquals(3, lines.length);
+    assertTrue(lines[1].startsWith("5 "));
+    assertTrue(lines[1].contains("+00:05"));
+    assertTrue(lines[2].startsWith("7 "));
+  }
+
+  @Test
+  public void testShorterScreenRemovesLines() {
+    List<TrainDeparture> departures = departures(25);
+    IncrementalBoardRenderer board = new IncrementalBoardRenderer(20, StandardCharsets.UTF_8);
+    describe(board, departures, 1);
+    diff(board);
+    describe(board, departures, 2);
+    String[] lines = diff(board).split("\n");
+    assertEquals("= 8", lines[0]);
+    assertEquals(7, lines.length);
+    assertTrue(lines[1].startsWith("3 "));
+    assertTrue(lines[6].startsWith("8 > "));
+  }
+
+  @Test
+  public void testWriteChangesToUsesCursorAddressing() {
+    List<TrainDeparture> departures = departures(5);
+    IncrementalBoardRenderer board = new IncrementalBoardRenderer(20, StandardCharsets.UTF_8);
+    describe(board, departures, 1);
+    assertTrue(changes(board).startsWith("\u001B[H\u001B[2J\u001B[1;1HDepartures\u001B[K"));
+    departures.get(0).setTrack(1);
+    describe(board, departures, 1);
+    String changes = changes(board);
+    assertTrue(changes.startsWith("\u001B[3;1H"));
+    assertTrue(changes.endsWith("\u001B[8;1H> \u001B[J"));
+    assertFalse(changes.contains("Departures"));
+    board.reset();
+    describe(board, departures, 1);
+    assertEquals(8, board.getChangedLineCount());
+    assertTrue(changes(board).contains("Departures"));
+  }
+
+  @Test
+  public void testConstructorInvalidInput() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new IncrementalBoardRenderer(0, StandardCharsets.UTF_8));
+    assertThrows(IllegalArgumentException.class, () -> new IncrementalBoardRenderer(20, null));
+    IncrementalBoardRenderer board = new IncrementalBoardRenderer();
+    assertThrows(IllegalArgumentException.class,
+        () -> board.addPage(departures(5), 2, TODAY));
+  }
+}
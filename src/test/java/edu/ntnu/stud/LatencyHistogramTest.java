@@ -0,0 +1,121 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the LatencyHistogram class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 50; i++) {
+      histogram.record(i);
+    }
+    assertEquals(50, histogram.getCount());
+    assertEquals(25.5, histogram.getMean());
+    assertEquals(25, histogram.getValueAtPercentile(50));
+    assertEquals(50, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void testLargeValuesAreWithinThreePercent() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] values = {100, 1_000, 12_345, 987_654, 3_000_000_000L, Long.MAX_VALUE / 3};
+    for (long value : values) {
+      histogram.reset();
+      histogram.record(value);
+      histogram.record(1);
+      long percentile = histogram.getValueAtPercentile(100);
+      assertTrue(percentile >= value, value + " was reported as " + percentile);
+      assertEquals(value, histogram.getMax());
+      histogram.record(value + 1);
+      percentile = histogram.getValueAtPercentile(60);
+      assertTrue(percentile >= value && percentile <= value * 1.032,
+          value + " was reported as " + percentile);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 990; i++) {
+      histogram.record(10_000);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(5_000_000);
+    }
+    assertTrue(histogram.getValueAtPercentile(50) < 10_400);
+    assertTrue(histogram.getValueAtPercentile(99) < 10_400);
+    assertTrue(histogram.getValueAtPercentile(99.5) >= 5_000_000);
+    assertEquals(5_000_000, histogram.getMax());
+  }
+
+  @Test
+  public void testNegativeValueIsRecordedAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1234);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  public void testInvalidPercentile() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(-1));
+    assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(100.5));
+    assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(Double.NaN));
+  }
+
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(40_000, histogram.getCount());
+    assertEquals(10_000, histogram.getMax());
+    assertEquals(5000.5, histogram.getMean());
+  }
+}
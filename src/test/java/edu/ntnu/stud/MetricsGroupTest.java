@@ -0,0 +1,126 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.metrics.MetricsGroup;
+import edu.ntnu.stud.metrics.OperationMetrics;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the MetricsGroup and OperationMetrics classes. It has both positive and
+ * negative tests. The method names explain what is being tested.
+ */
+public class MetricsGroupTest {
+
+  @Test
+  public void testOperationIsCreatedOnce() {
+    MetricsGroup metrics = new MetricsGroup("Test");
+    OperationMetrics search = metrics.operation("search");
+    assertSame(search, metrics.operation("search"));
+    metrics.operation("add");
+    assertEquals(List.of("add", "search"),
+        metrics.getOperations().stream().map(OperationMetrics::getName).toList());
+  }
+
+  @Test
+  public void testRecordAndReject() {
+    MetricsGroup metrics = new MetricsGroup("Test");
+    OperationMetrics add = metrics.operation("add");
+    long start = metrics.start();
+    add.record(start);
+    add.record(metrics.start());
+    add.reject(new IllegalArgumentException("Train number already exists"));
+    add.reject(new NumberFormatException("For input string: \"abc\""));
+    add.reject(new NumberFormatException("For input string: \"x\""));
+    assertEquals(2, add.getCount());
+    assertEquals(2, add.getTimedCount());
+    assertEquals(3, add.getRejectedCount());
+    assertEquals(Map.of("Train number already exists", 1L, "Not a number", 2L),
+        add.getRejectionsByReason());
+    assertTrue(add.getMaxMicros() >= add.getP50Micros());
+    add.reset();
+    assertEquals(0, add.getCount());
+    assertTrue(add.getRejectionsByReason().isEmpty());
+  }
+
+  @Test
+  public void testNumberOfReasonsIsBounded() {
+    OperationMetrics add = new MetricsGroup("Test").operation("add");
+    for (int i = 0; i < 100; i++) {
+      add.reject("Reason " + i);
+    }
+    assertEquals(100, add.getRejectedCount());
+    assertEquals(OperationMetrics.MAX_REASONS + 1, add.getRejectionsByReason().size());
+    assertEquals(100 - OperationMetrics.MAX_REASONS, add.getRejectionsByReason().get("Other"));
+  }
+
+  @Test
+  public void testTurnedOffGroupDoesNotTime() {
+    MetricsGroup metrics = new MetricsGroup("Test");
+    OperationMetrics add = metrics.operation("add");
+    metrics.setEnabled(false);
+    assertFalse(metrics.isEnabled());
+    assertEquals(0, metrics.start());
+    add.record(metrics.start());
+    assertEquals(1, add.getCount());
+    assertEquals(0, add.getTimedCount());
+  }
+
+  @Test
+  public void testSampleRate() {
+    MetricsGroup metrics = new MetricsGroup("Test");
+    OperationMetrics add = metrics.operation("add");
+    metrics.setSampleRate(8);
+    assertEquals(8, metrics.getSampleRate());
+    for (int i = 0; i < 8000; i++) {
+      add.record(metrics.start());
+    }
+    assertEquals(8000, add.getCount());
+    assertTrue(add.getTimedCount() > 700 && add.getTimedCount() < 1300);
+    assertThrows(IllegalArgumentException.class, () -> metrics.setSampleRate(0));
+  }
+
+  @Test
+  public void testRegisterWithJmx() throws Exception {
+    MetricsGroup metrics = new MetricsGroup("MetricsGroupTest");
+    OperationMetrics add = metrics.operation("add");
+    add.record(metrics.start());
+    add.reject("Train number already exists");
+    metrics.register("registerTest");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = metrics.getObjectName("registerTest", "add");
+      assertEquals(1L, server.getAttribute(name, "Count"));
+      assertEquals(1L, server.getAttribute(name, "RejectedCount"));
+      TabularData reasons = (TabularData) server.getAttribute(name, "RejectionsByReason");
+      assertEquals(1, reasons.size());
+
+      metrics.operation("search");
+      assertTrue(server.isRegistered(metrics.getObjectName("registerTest", "search")));
+      assertThrows(IllegalStateException.class, () -> metrics.register("other"));
+      MetricsGroup sameName = new MetricsGroup("MetricsGroupTest");
+      sameName.operation("add");
+      assertThrows(IllegalStateException.class, () -> sameName.register("registerTest"));
+    } finally {
+      metrics.unregister();
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertFalse(server.isRegistered(metrics.getObjectName("registerTest", "add")));
+    metrics.unregister();
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new MetricsGroup(null));
+    assertThrows(IllegalArgumentException.class, () -> new MetricsGroup(""));
+    MetricsGroup metrics = new MetricsGroup("Test");
+    assertThrows(IllegalArgumentException.class, () -> metrics.operation(""));
+    assertThrows(IllegalArgumentException.class, () -> metrics.register(null));
+    assertThrows(IllegalArgumentException.class, () -> metrics.register("a,b=c"));
+  }
+}
@@ -0,0 +1,212 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.ChangeBatch;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.RegistryChange;
+import edu.ntnu.stud.model.RegistryChangeFeed;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the RegistryChangeFeed class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class RegistryChangeFeedTest {
+  private static final LocalDateTime START = LocalDateTime.of(2024, 3, 4, 6, 0);
+
+  private TrainDepartureRegistry registry;
+  private ExecutorService executor;
+
+  /**
+   * A subscriber that puts the batches it gets in a queue and requests one batch at a time,
+   * but only after it has been told to start.
+   */
+  private static class QueueSubscriber implements Flow.Subscriber<ChangeBatch> {
+    private final BlockingQueue<ChangeBatch> batches = new LinkedBlockingQueue<>();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean completed;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(ChangeBatch batch) {
+      batches.add(batch);
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    ChangeBatch next() throws InterruptedException {
+      ChangeBatch batch = batches.poll(5, TimeUnit.SECONDS);
+      assertNotNull(batch);
+      return batch;
+    }
+  }
+
+  @BeforeEach
+  public void setUp() {
+    registry = new TrainDepartureRegistry(Clock.fixed(START.toInstant(ZoneOffset.UTC),
+        ZoneOffset.UTC));
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private QueueSubscriber subscribe(RegistryChangeFeed feed) throws InterruptedException {
+    QueueSubscriber subscriber = new QueueSubscriber();
+    feed.subscribe(subscriber);
+    while (subscriber.subscription == null) {
+      Thread.sleep(1);
+    }
+    return subscriber;
+  }
+
+  @Test
+  public void testChangesArePublishedInOrder() throws InterruptedException {
+    RegistryChangeFeed feed = RegistryChangeFeed.open(registry, executor, 16);
+    QueueSubscriber subscriber = subscribe(feed);
+    subscriber.subscription.request(1);
+    registry.addTrainDeparture(1, 8, 0, "L1", "Oslo");
+    registry.assignTrack(1, 4);
+    registry.setDelay(1, 0, 10);
+    registry.removePassedTrainDepartures(LocalTime.of(9, 0));
+
+    ChangeBatch added = subscriber.next();
+    assertEquals(0, added.getPreviousVersion());
+    assertEquals(1, added.getVersion());
+    RegistryChange change = added.getChanges().get(0);
+    assertEquals(RegistryChange.Type.ADDED, change.getType());
+    assertEquals(1, change.getDeparture().getTrainNumber());
+    assertEquals("Oslo", change.getDeparture().getDestination());
+
+    change = subscriber.next().getChanges().get(0);
+    assertEquals(RegistryChange.Type.TRACK_ASSIGNED, change.getType());
+    assertEquals(4, change.getTrack());
+    change = subscriber.next().getChanges().get(0);
+    assertEquals(RegistryChange.Type.DELAYED, change.getType());
+    assertEquals(LocalTime.of(0, 10), change.getDelay());
+    ChangeBatch expired = subscriber.next();
+    assertEquals(3, expired.getPreviousVersion());
+    assertEquals(RegistryChange.Type.EXPIRED, expired.getChanges().get(0).getType());
+    assertEquals(START.toLocalDate().atTime(9, 0),
+        expired.getChanges().get(0).getExpiredBefore());
+    feed.close();
+  }
+
+  @Test
+  public void testRemovingNothingDoesNotLookLikeAGap() throws InterruptedException {
+    RegistryChangeFeed feed = RegistryChangeFeed.open(registry, executor, 16);
+    QueueSubscriber subscriber = subscribe(feed);
+    subscriber.subscription.request(1);
+    registry.removePassedTrainDepartures(LocalTime.of(7, 0));
+    registry.addTrainDeparture(1, 8, 0, "L1", "Oslo");
+    registry.removePassedTrainDepartures(LocalTime.of(7, 30));
+    registry.assignTrack(1, 4);
+
+    ChangeBatch added = subscriber.next();
+    assertEquals(0, added.getPreviousVersion());
+    assertEquals(1, added.getVersion());
+    assertEquals(RegistryChange.Type.ADDED, added.getChanges().get(0).getType());
+    ChangeBatch assigned = subscriber.next();
+    assertEquals(1, assigned.getPreviousVersion());
+    assertEquals(2, assigned.getVersion());
+    assertEquals(RegistryChange.Type.TRACK_ASSIGNED, assigned.getChanges().get(0).getType());
+    feed.close();
+  }
+
+  @Test
+  public void testBulkChangeIsOneBatch() throws InterruptedException {
+    registry.addTrainDeparture(1, 8, 0, "L1", "Oslo");
+    registry.addTrainDeparture(2, 9, 0, "L1", "Oslo");
+    registry.addTrainDeparture(3, 10, 0, "L2", "Oslo");
+    RegistryChangeFeed feed = RegistryChangeFeed.open(registry, executor, 16);
+    QueueSubscriber subscriber = subscribe(feed);
+    subscriber.subscription.request(1);
+    registry.addDelays(new DepartureQuery().withLine("L1"), 0, 5);
+    ChangeBatch batch = subscriber.next();
+    assertEquals(3, batch.getPreviousVersion());
+    assertEquals(4, batch.getVersion());
+    List<Integer> trainNumbers = new ArrayList<>();
+    for (RegistryChange change : batch.getChanges()) {
+      assertEquals(RegistryChange.Type.DELAYED, change.getType());
+      trainNumbers.add(change.getTrainNumber());
+    }
+    assertEquals(List.of(1, 2), trainNumbers);
+    feed.close();
+  }
+
+  @Test
+  public void testSlowSubscriberDoesNotStallWriters() throws InterruptedException {
+    RegistryChangeFeed feed = RegistryChangeFeed.open(registry, executor, 4);
+    QueueSubscriber slow = subscribe(feed);
+    for (int i = 1; i <= 100; i++) {
+      registry.addTrainDeparture(i, 8, 0, "L1", "Oslo");
+    }
+    assertEquals(100, registry.getVersion());
+    assertEquals(96, feed.getDroppedCount());
+
+    slow.subscription.request(1);
+    for (int version = 1; version <= 4; version++) {
+      ChangeBatch batch = slow.next();
+      assertEquals(version - 1, batch.getPreviousVersion());
+      assertEquals(version, batch.getVersion());
+    }
+    registry.addTrainDeparture(101, 8, 0, "L1", "Oslo");
+    ChangeBatch batch = slow.next();
+    assertEquals(100, batch.getPreviousVersion());
+    assertEquals(101, batch.getVersion());
+    feed.close();
+  }
+
+  @Test
+  public void testCloseCompletesSubscribers() throws InterruptedException {
+    RegistryChangeFeed feed = RegistryChangeFeed.open(registry, executor, 16);
+    QueueSubscriber subscriber = subscribe(feed);
+    assertEquals(1, feed.getSubscriberCount());
+    feed.close();
+    registry.addTrainDeparture(1, 8, 0, "L1", "Oslo");
+    for (int i = 0; i < 500 && !subscriber.completed; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(subscriber.completed);
+    assertTrue(subscriber.batches.isEmpty());
+  }
+
+  @Test
+  public void testOpenInvalidInput() {
+    assertThrows(IllegalArgumentException.class,
+        () -> RegistryChangeFeed.open(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> RegistryChangeFeed.open(registry, null, 16));
+    assertThrows(IllegalArgumentException.class,
+        () -> RegistryChangeFeed.open(registry, executor, 0));
+  }
+}
@@ -0,0 +1,289 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.io.FsyncPolicy;
+import edu.ntnu.stud.io.RegistryJournal;
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TrackAllocator;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the RegistryJournal class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class RegistryJournalTest {
+
+  @TempDir
+  Path directory;
+
+  private static TrainDepartureRegistry newRegistry() {
+    return new TrainDepartureRegistry(new SimulatedClock(LocalDate.of(2024, 1, 1).atStartOfDay()));
+  }
+
+  private static void makeChanges(TrainDepartureRegistry registry) {
+    registry.addTrainDeparture(501, 8, 15, "1", "Oslo");
+    registry.addTrainDeparture(502, 13, 45, "1", "Trondheim");
+    registry.addTrainDeparture(31, 10, 20, "14", "Mosjøen");
+    registry.assignTrack(502, 2);
+    registry.setDelay(31, 0, 40);
+    registry.removePassedTrainDepartures(LocalTime.of(9, 0));
+  }
+
+  private List<String> fileNames() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testOpenEmptyDirectory() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS)) {
+      assertEquals(0, journal.getReplayedCount());
+      assertTrue(journal.getRecoveredTime().isEmpty());
+      assertTrue(registry.getTrainDepartureSorted().isEmpty());
+    }
+    assertEquals(List.of("journal-1.log", "snapshot-1.bin"), fileNames());
+  }
+
+  @Test
+  public void testRecoverChangesAfterClose() throws IOException {
+    for (FsyncPolicy policy : FsyncPolicy.values()) {
+      Path journalDirectory = directory.resolve(policy.name());
+      TrainDepartureRegistry registry = newRegistry();
+      try (RegistryJournal journal = RegistryJournal.open(journalDirectory, registry, policy)) {
+        assertEquals(policy, journal.getPolicy());
+      }
+      try (RegistryJournal journal = RegistryJournal.open(journalDirectory, registry, policy)) {
+        makeChanges(registry);
+        assertTrue(journal.getFailure().isEmpty());
+      }
+
+      TrainDepartureRegistry recovered = newRegistry();
+      try (RegistryJournal journal = RegistryJournal.open(journalDirectory, recovered, policy)) {
+        assertEquals(LocalDate.of(2024, 1, 1).atTime(9, 0), journal.getRecoveredTime().get());
+      }
+      assertTrue(recovered.findTrainDeparture(501).isEmpty());
+      assertEquals(2, recovered.findTrainDeparture(502).get().getTrack());
+      assertEquals(LocalTime.of(11, 0),
+          recovered.findTrainDeparture(31).get().getNewDepartureTime());
+      assertEquals("Mosjøen", recovered.findTrainDeparture(31).get().getDestination());
+    }
+  }
+
+  @Test
+  public void testRecoverWithoutCloseAfterSync() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.NEVER);
+    makeChanges(registry);
+    journal.sync();
+
+    TrainDepartureRegistry recovered = newRegistry();
+    try (RegistryJournal other = RegistryJournal.open(directory, recovered, FsyncPolicy.ALWAYS)) {
+      assertEquals(5, other.getReplayedCount());
+    }
+    assertEquals(2, recovered.getTrainDepartureSorted().size());
+    assertEquals(2, recovered.findTrainDeparture(502).get().getTrack());
+    journal.close();
+  }
+
+  @Test
+  public void testRecoverIgnoresTornRecord() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS)) {
+      makeChanges(registry);
+      assertTrue(journal.getFailure().isEmpty());
+    }
+    Files.write(directory.resolve("journal-1.log"), new byte[] {0, 0, 0, 40, 2, 0, 0},
+        StandardOpenOption.APPEND);
+
+    TrainDepartureRegistry recovered = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, recovered, FsyncPolicy.ALWAYS)) {
+      assertEquals(0, journal.getSkippedCount());
+    }
+    assertEquals(2, recovered.getTrainDepartureSorted().size());
+  }
+
+  @Test
+  public void testCompactKeepsChanges() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.BATCH)) {
+      makeChanges(registry);
+      journal.compact();
+      assertEquals(List.of("journal-2.log", "snapshot-2.bin"), fileNames());
+      registry.addTrainDeparture(135, 18, 39, "12", "Bodø");
+      registry.setDelay(502, 0, 5);
+    }
+
+    TrainDepartureRegistry recovered = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, recovered, FsyncPolicy.BATCH)) {
+      assertEquals(2, journal.getReplayedCount());
+      assertEquals(LocalDate.of(2024, 1, 1).atTime(9, 0), journal.getRecoveredTime().get());
+    }
+    assertEquals(3, recovered.getTrainDepartureSorted().size());
+    assertEquals(LocalTime.of(0, 5), recovered.findTrainDeparture(502).get().getDelay());
+    assertEquals(List.of("journal-3.log", "snapshot-3.bin"), fileNames());
+  }
+
+  @Test
+  public void testCompactsInBackgroundWhenSegmentIsLarge() throws Exception {
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS)) {
+      journal.setCompactionSize(1024);
+      for (int i = 1; i <= 200; i++) {
+        registry.addTrainDeparture(i, 12, i % 60, "L" + i, "Bergen");
+      }
+      long end = System.currentTimeMillis() + 10_000;
+      while (fileNames().contains("journal-1.log") && System.currentTimeMillis() < end) {
+        Thread.sleep(10);
+      }
+      assertFalse(fileNames().contains("journal-1.log"));
+    }
+
+    TrainDepartureRegistry recovered = newRegistry();
+    RegistryJournal.open(directory, recovered, FsyncPolicy.ALWAYS).close();
+    assertEquals(200, recovered.getTrainDepartureSorted().size());
+  }
+
+  @Test
+  public void testRecoverBulkAdd() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.BATCH)) {
+      List<TrainDeparture> trainDepartures = new ArrayList<>();
+      LocalDate date = registry.getCurrentDate();
+      for (int i = 1; i <= 100; i++) {
+        trainDepartures.add(new TrainDeparture(i, date, 10, i % 60, "F" + i, "Bergen",
+            registry.getCurrentDateTime()));
+      }
+      trainDepartures.add(new TrainDeparture(1, date, 11, 0, "F1", "Bergen",
+          registry.getCurrentDateTime()));
+      assertEquals(1, registry.addTrainDepartures(trainDepartures).size());
+      assertTrue(journal.getFailure().isEmpty());
+    }
+    TrainDepartureRegistry recovered = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, recovered, FsyncPolicy.BATCH)) {
+      assertEquals(100, journal.getReplayedCount());
+    }
+    assertEquals(100, recovered.getTrainDepartureSorted().size());
+  }
+
+  @Test
+  public void testConcurrentChangesAreAllRecovered() throws Exception {
+    TrainDepartureRegistry registry = newRegistry();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        int first = thread * 100 + 1;
+        futures.add(executor.submit(() -> {
+          for (int i = first; i < first + 100; i++) {
+            registry.addTrainDeparture(i, 6 + i % 17, i % 60, "R" + i % 5, "Stavanger");
+            registry.setDelay(i, 0, i % 30);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      assertTrue(journal.getFailure().isEmpty());
+    } finally {
+      executor.shutdown();
+    }
+    TrainDepartureRegistry recovered = newRegistry();
+    RegistryJournal.open(directory, recovered, FsyncPolicy.ALWAYS).close();
+    assertEquals(400, recovered.getTrainDepartureSorted().size());
+    assertEquals(LocalTime.of(0, 17), recovered.findTrainDeparture(317).get().getDelay());
+  }
+
+  @Test
+  public void testRecoverKeepsAllocatedTracks() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS)) {
+      registry.addTrainDeparture(1, 12, 0, "L1", "Oslo");
+      registry.addTrainDeparture(2, 12, 30, "L1", "Oslo");
+      registry.addTrainDeparture(3, 14, 0, "L2", "Bergen");
+      registry.assignTrack(3, 1);
+      registry.allocateTracks(new TrackAllocator(3));
+      assertTrue(journal.getFailure().isEmpty());
+    }
+    // the first recovery replays the journal, the second one loads the snapshot it wrote
+    RegistryJournal.open(directory, newRegistry(), FsyncPolicy.ALWAYS).close();
+    TrainDepartureRegistry recovered = newRegistry();
+    RegistryJournal.open(directory, recovered, FsyncPolicy.ALWAYS).close();
+
+    recovered.setTrackAllocator(new TrackAllocator(3));
+    assertTrue(recovered.setDelay(1, 0, 30).isEmpty());
+    assertEquals(2, recovered.findTrainDeparture(1).get().getTrack());
+    assertEquals(1, recovered.findTrainDeparture(2).get().getTrack());
+    assertTrue(recovered.setDelay(2, 1, 30).isEmpty());
+    assertEquals(2, recovered.findTrainDeparture(2).get().getTrack());
+    assertEquals(1, recovered.findTrainDeparture(3).get().getTrack());
+  }
+
+  @Test
+  public void testWriteFailureIsKeptWithoutStoppingChanges() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS);
+    Files.createFile(directory.resolve("journal-2.log"));
+    assertThrows(IOException.class, journal::compact);
+    assertTrue(journal.getFailure().isPresent());
+
+    registry.addTrainDeparture(501, 8, 15, "1", "Oslo");
+    registry.assignTrack(501, 2);
+    assertEquals(2, registry.findTrainDeparture(501).get().getTrack());
+    assertThrows(IOException.class, journal::sync);
+    assertThrows(IOException.class, journal::close);
+  }
+
+  @Test
+  public void testOpenNullArguments() {
+    assertThrows(IllegalArgumentException.class,
+        () -> RegistryJournal.open(null, newRegistry(), FsyncPolicy.ALWAYS));
+    assertThrows(IllegalArgumentException.class,
+        () -> RegistryJournal.open(directory, null, FsyncPolicy.ALWAYS));
+    assertThrows(IllegalArgumentException.class,
+        () -> RegistryJournal.open(directory, newRegistry(), null));
+  }
+
+  @Test
+  public void testRecoverChangesOnSeveralDays() throws IOException {
+    LocalDate monday = LocalDate.of(2024, 1, 1);
+    TrainDepartureRegistry registry = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, registry, FsyncPolicy.ALWAYS)) {
+      for (int day = 0; day < 3; day++) {
+        registry.addTrainDeparture(501, monday.plusDays(day), 8, 15, "1", "Oslo");
+      }
+      registry.assignTrack(monday.plusDays(1), 501, 3);
+      registry.setDelay(monday.plusDays(2), 501, 0, 20);
+      registry.removePassedTrainDepartures(monday.plusDays(1).atTime(7, 0));
+      assertTrue(journal.getFailure().isEmpty());
+    }
+
+    TrainDepartureRegistry recovered = newRegistry();
+    try (RegistryJournal journal = RegistryJournal.open(directory, recovered, FsyncPolicy.ALWAYS)) {
+      assertEquals(monday.plusDays(1).atTime(7, 0), journal.getRecoveredTime().get());
+    }
+    assertEquals(List.of(monday.plusDays(1), monday.plusDays(2)), recovered.getServiceDates());
+    assertEquals(3, recovered.findTrainDeparture(501).get().getTrack());
+    assertEquals(LocalTime.of(0, 20),
+        recovered.findTrainDeparture(monday.plusDays(2), 501).get().getDelay());
+    assertEquals(-1, recovered.findTrainDeparture(monday.plusDays(2), 501).get().getTrack());
+  }
+}
@@ -0,0 +1,235 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.io.RegistrySnapshot;
+import edu.ntnu.stud.model.DepartureOrder;
+import edu.ntnu.stud.model.RegistryListener;
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TrackAllocator;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the RegistrySnapshot class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class RegistrySnapshotTest {
+
+  @TempDir
+  Path directory;
+
+  private static TrainDepartureRegistry newRegistry() {
+    return new TrainDepartureRegistry(new SimulatedClock(LocalDate.of(2024, 1, 1).atStartOfDay()));
+  }
+
+  private static TrainDepartureRegistry filledRegistry() {
+    TrainDepartureRegistry registry = newRegistry();
+    registry.addTrainDeparture(501, 8, 15, "1", "Oslo");
+    registry.addTrainDeparture(502, 13, 45, "1", "Trondheim");
+    registry.addTrainDeparture(31, 10, 20, "14", "Mosjøen");
+    registry.addTrainDeparture(7, 23, 0, "F7", "Oslo");
+    registry.assignTrack(502, 2);
+    registry.assignTrack(31, 4);
+    registry.setDelay(31, 1, 5);
+    return registry;
+  }
+
+  @Test
+  public void testWriteAndReadKeepsDepartures() throws IOException {
+    TrainDepartureRegistry registry = filledRegistry();
+    Path file = directory.resolve("registry.snapshot");
+    assertEquals(registry.getVersion(), RegistrySnapshot.write(registry, file));
+
+    TrainDepartureRegistry loaded = newRegistry();
+    assertEquals(4, RegistrySnapshot.read(file, loaded));
+    TrainDeparture trainDeparture = loaded.findTrainDeparture(31).get();
+    assertEquals(LocalTime.of(10, 20), trainDeparture.getDepartureTime());
+    assertEquals("14", trainDeparture.getLine());
+    assertEquals("Mosjøen", trainDeparture.getDestination());
+    assertEquals(4, trainDeparture.getTrack());
+    assertEquals(LocalTime.of(1, 5), trainDeparture.getDelay());
+    assertEquals(-1, loaded.findTrainDeparture(501).get().getTrack());
+    assertEquals(2, loaded.searchTrainDepartureDestination("oslo").size());
+
+    List<TrainDeparture> expected = registry.getTrainDepartureSorted(
+        DepartureOrder.NEW_DEPARTURE_TIME);
+    List<TrainDeparture> actual = loaded.getTrainDepartureSorted(
+        DepartureOrder.NEW_DEPARTURE_TIME);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getTrainNumber(), actual.get(i).getTrainNumber());
+    }
+  }
+
+  @Test
+  public void testReadKeepsTrackOccupancy() throws IOException {
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(filledRegistry(), file);
+    TrainDepartureRegistry loaded = newRegistry();
+    RegistrySnapshot.read(file, loaded);
+    assertFalse(loaded.isTrackFree(2, LocalTime.of(13, 40), LocalTime.of(13, 45)));
+    loaded.addTrainDeparture(40, 11, 20, "2", "Bodø");
+    assertThrows(IllegalArgumentException.class, () -> loaded.assignTrack(40, 4));
+  }
+
+  @Test
+  public void testReadEmptyRegistry() throws IOException {
+    Path file = directory.resolve("empty.snapshot");
+    RegistrySnapshot.write(newRegistry(), file);
+    TrainDepartureRegistry loaded = newRegistry();
+    assertEquals(0, RegistrySnapshot.read(file, loaded));
+    assertTrue(loaded.getTrainDepartureSorted().isEmpty());
+  }
+
+  @Test
+  public void testWriteReplacesOldSnapshot() throws IOException {
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(filledRegistry(), file);
+    TrainDepartureRegistry registry = newRegistry();
+    registry.addTrainDeparture(1, 12, 0, "1", "Bergen");
+    RegistrySnapshot.write(registry, file);
+
+    TrainDepartureRegistry loaded = newRegistry();
+    assertEquals(1, RegistrySnapshot.read(file, loaded));
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  public void testReadSkipsExistingTrainNumbers() throws IOException {
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(filledRegistry(), file);
+    TrainDepartureRegistry loaded = newRegistry();
+    loaded.addTrainDeparture(501, 9, 0, "2", "Bergen");
+    assertEquals(3, RegistrySnapshot.read(file, loaded));
+    assertEquals("Bergen", loaded.findTrainDeparture(501).get().getDestination());
+  }
+
+  @Test
+  public void testReadDamagedSnapshot() throws IOException {
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(filledRegistry(), file);
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length / 2] ^= 0x01;
+    Files.write(file, bytes);
+    assertThrows(IOException.class, () -> RegistrySnapshot.read(file, newRegistry()));
+  }
+
+  @Test
+  public void testReadTruncatedSnapshot() throws IOException {
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(filledRegistry(), file);
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+    assertThrows(IOException.class, () -> RegistrySnapshot.read(file, newRegistry()));
+  }
+
+  @Test
+  public void testIsSnapshot() throws IOException {
+    Path snapshot = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(filledRegistry(), snapshot);
+    Path timetable = directory.resolve("timetable.csv");
+    Files.writeString(timetable, "train_number,departure_time,line,destination\n");
+    Path empty = Files.createFile(directory.resolve("empty"));
+    assertTrue(RegistrySnapshot.isSnapshot(snapshot));
+    assertFalse(RegistrySnapshot.isSnapshot(timetable));
+    assertFalse(RegistrySnapshot.isSnapshot(empty));
+    assertThrows(IOException.class, () -> RegistrySnapshot.read(timetable, newRegistry()));
+  }
+
+  @Test
+  public void testNullArguments() {
+    Path file = directory.resolve("registry.snapshot");
+    assertThrows(IllegalArgumentException.class, () -> RegistrySnapshot.write(null, file));
+    assertThrows(IllegalArgumentException.class, () -> RegistrySnapshot.read(file, null));
+  }
+
+  @Test
+  public void testWriteAndReadKeepsServiceDates() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    LocalDate tomorrow = LocalDate.of(2024, 1, 2);
+    registry.addTrainDeparture(501, 8, 15, "1", "Oslo");
+    registry.addTrainDeparture(501, tomorrow, 8, 15, "1", "Oslo");
+    registry.addTrainDeparture(7, 23, 0, "F7", "Oslo");
+    registry.setDelay(7, 1, 30);
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(registry, file);
+
+    TrainDepartureRegistry loaded = newRegistry();
+    assertEquals(3, RegistrySnapshot.read(file, loaded));
+    assertEquals(List.of(LocalDate.of(2024, 1, 1), tomorrow), loaded.getServiceDates());
+    assertEquals(tomorrow.atTime(0, 30),
+        loaded.findTrainDeparture(7).get().getNewDepartureDateTime());
+    assertTrue(loaded.findTrainDeparture(tomorrow, 501).isPresent());
+  }
+
+  @Test
+  public void testReadKeepsAllocatedTracks() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    registry.addTrainDeparture(1, 12, 0, "L1", "Oslo");
+    registry.addTrainDeparture(2, 12, 30, "L1", "Oslo");
+    registry.allocateTracks(new TrackAllocator(2));
+    registry.assignTrack(2, 1);
+    Path file = directory.resolve("registry.snapshot");
+    RegistrySnapshot.write(registry, file);
+    assertTrue(registry.getDepartureBoard().getTrainDepartures().get(0).isTrackAllocated());
+    assertFalse(registry.getDepartureBoard().getTrainDepartures().get(1).isTrackAllocated());
+
+    TrainDepartureRegistry loaded = newRegistry();
+    List<Long> allocatedVersions = new ArrayList<>();
+    loaded.addListener(new RegistryListener() {
+      @Override
+      public void trackAllocated(LocalDate serviceDate, int trainNumber, int track,
+          long version) {
+        allocatedVersions.add(version);
+      }
+    });
+    assertEquals(2, RegistrySnapshot.read(file, loaded));
+    assertEquals(1, loaded.getVersion());
+    assertEquals(List.of(1L), allocatedVersions);
+    assertTrue(loaded.getDepartureBoard().getTrainDepartures().get(0).isTrackAllocated());
+    assertFalse(loaded.getDepartureBoard().getTrainDepartures().get(1).isTrackAllocated());
+    loaded.setTrackAllocator(new TrackAllocator(2));
+    assertTrue(loaded.setDelay(1, 0, 30).isEmpty());
+    assertEquals(2, loaded.findTrainDeparture(1).get().getTrack());
+    assertEquals(1, loaded.findTrainDeparture(2).get().getTrack());
+  }
+
+  @Test
+  public void testReadFormatVersionOneUsesCurrentDate() throws IOException {
+    byte[] text = "Oslo".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(24 + 4 + text.length + 20 + 4);
+    buffer.putInt(0x54445253).putInt(1).putLong(3).putInt(1).putInt(1);
+    buffer.putInt(text.length).put(text);
+    buffer.putInt(501).putShort((short) (8 * 60 + 15)).putShort((short) 5).putInt(0).putInt(0)
+        .putInt(2);
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) checksum.getValue());
+    Path file = directory.resolve("old.snapshot");
+    Files.write(file, buffer.array());
+
+    assertEquals(3, RegistrySnapshot.readVersion(file));
+    TrainDepartureRegistry loaded = newRegistry();
+    assertEquals(1, RegistrySnapshot.read(file, loaded));
+    TrainDeparture trainDeparture = loaded.findTrainDeparture(501).get();
+    assertEquals(LocalDate.of(2024, 1, 1), trainDeparture.getServiceDate());
+    assertEquals(LocalTime.of(8, 20), trainDeparture.getNewDepartureTime());
+    assertEquals(2, trainDeparture.getTrack());
+  }
+}
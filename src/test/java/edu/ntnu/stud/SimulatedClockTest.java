@@ -0,0 +1,95 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the SimulatedClock class, and a TrainDepartureRegistry running on it.
+ * It has both positive and negative tests. The method names explain what is being tested.
+ */
+public class SimulatedClockTest {
+  private static final LocalDateTime START = LocalDate.of(2024, 1, 1).atStartOfDay();
+
+  @Test
+  public void testAdvance() {
+    SimulatedClock clock = new SimulatedClock(START);
+    clock.advance(Duration.ofMinutes(90));
+    assertEquals(START.plusMinutes(90), clock.getDateTime());
+    assertEquals(LocalTime.of(1, 30), LocalTime.now(clock));
+  }
+
+  @Test
+  public void testAdvanceInvalidInput() {
+    SimulatedClock clock = new SimulatedClock(START);
+    clock.advance(Duration.ofMinutes(10));
+    assertThrows(IllegalArgumentException.class, () -> clock.advance(Duration.ofMinutes(-1)));
+    assertThrows(IllegalArgumentException.class, () -> clock.advanceTo(START));
+  }
+
+  @Test
+  public void testListenersAreToldTheNewTime() {
+    SimulatedClock clock = new SimulatedClock(START);
+    List<LocalDateTime> times = new ArrayList<>();
+    clock.addListener(times::add);
+    clock.advance(Duration.ofMinutes(1));
+    clock.advanceTo(START.plusHours(1));
+    assertEquals(List.of(START.plusMinutes(1), START.plusHours(1)), times);
+  }
+
+  @Test
+  public void testRunStopsAtEnd() throws InterruptedException {
+    SimulatedClock clock = new SimulatedClock(START);
+    List<LocalDateTime> times = new ArrayList<>();
+    clock.addListener(times::add);
+    clock.run(START.plusMinutes(25), Duration.ofMinutes(10), Double.POSITIVE_INFINITY);
+    assertEquals(List.of(START.plusMinutes(10), START.plusMinutes(20), START.plusMinutes(25)), times);
+  }
+
+  @Test
+  public void testRunAtSpeed() throws InterruptedException {
+    SimulatedClock clock = new SimulatedClock(START);
+    long start = System.nanoTime();
+    clock.run(START.plusMinutes(10), Duration.ofMinutes(1), 6000);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    assertTrue(elapsedMillis >= 90, "ten minutes at 6000x should take about 100 ms");
+  }
+
+  @Test
+  public void testRunInvalidInput() {
+    SimulatedClock clock = new SimulatedClock(START);
+    assertThrows(IllegalArgumentException.class, () -> clock.run(START, Duration.ZERO, 1));
+    assertThrows(IllegalArgumentException.class, () -> clock.run(START, Duration.ofMinutes(1), 0));
+  }
+
+  @Test
+  public void testRegistryReplaysServiceDay() throws InterruptedException {
+    SimulatedClock clock = new SimulatedClock(START);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(clock);
+    for (int minute = 0; minute < 24 * 60; minute++) {
+      registry.addTrainDeparture(minute + 1, minute / 60, minute % 60, "L1", "Oslo");
+    }
+    List<Integer> remaining = new ArrayList<>();
+    clock.addListener(time -> {
+      registry.removePassedTrainDepartures();
+      remaining.add(registry.getTrainDepartureSorted().size());
+    });
+
+    clock.run(START.plusHours(12), Duration.ofMinutes(1), Double.POSITIVE_INFINITY);
+    assertEquals(LocalTime.NOON, registry.getCurrentTime());
+    assertEquals(12 * 60, registry.getTrainDepartureSorted().size());
+    assertEquals(12 * 60 + 1, registry.getTrainDepartureSorted().get(0).getTrainNumber());
+    assertThrows(IllegalArgumentException.class, () -> registry.addTrainDeparture(9999, 11, 0, "L1", "Oslo"));
+
+    clock.run(START.plusHours(23).plusMinutes(59), Duration.ofMinutes(1), Double.POSITIVE_INFINITY);
+    assertEquals(1, registry.getTrainDepartureSorted().size());
+    assertEquals(24 * 60 - 1, remaining.size());
+  }
+}
@@ -1,6 +1,9 @@
 package edu.ntnu.stud;
 
 import edu.ntnu.stud.model.TimeManager;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -54,4 +57,27 @@ public class TimeManagerTest {
     assertThrows(IllegalArgumentException.class, () -> TimeManager.setCurrentTime(hours, minutes));
     TimeManager.resetTime();
   }
+
+  @Test
+  public void getClockFollowsCurrentTime() {
+    TimeManager.setCurrentTime(12, 30);
+    assertEquals(LocalTime.of(12, 30), LocalTime.now(TimeManager.getClock()));
+    TimeManager.resetTime();
+    assertEquals(LocalTime.of(0, 0), LocalTime.now(TimeManager.getClock()));
+  }
+
+  @Test
+  public void setCurrentDateTimeToNextDay() {
+    LocalDate tomorrow = TimeManager.getCurrentDate().plusDays(1);
+    TimeManager.setCurrentTime(22, 0);
+    TimeManager.setCurrentDateTime(tomorrow, 1, 30);
+    assertEquals(tomorrow.atTime(1, 30), TimeManager.getCurrentDateTime());
+    assertEquals(tomorrow.atTime(1, 30), LocalDateTime.now(TimeManager.getClock()));
+    assertThrows(IllegalArgumentException.class, () -> TimeManager.setCurrentTime(1, 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> TimeManager.setCurrentDateTime(tomorrow.minusDays(1), 23, 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> TimeManager.setCurrentDateTime(null, 23, 0));
+    TimeManager.resetTime();
+  }
 }
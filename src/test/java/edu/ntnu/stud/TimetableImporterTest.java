@@ -0,0 +1,158 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.io.ImportReport;
+import edu.ntnu.stud.io.TimetableImporter;
+import edu.ntnu.stud.model.SimulatedClock;
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureRegistry;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the TimetableImporter class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class TimetableImporterTest {
+
+  private static TrainDepartureRegistry newRegistry() {
+    return new TrainDepartureRegistry(new SimulatedClock(LocalDate.of(2024, 1, 1).atStartOfDay()));
+  }
+
+  @Test
+  public void testImportSimpleTimetable() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    String timetable = "train_number,departure_time,line,destination,track,delay\n"
+        + "501,08:15,1,Oslo,,\n"
+        + "502,13:45,1,Trondheim,2,00:10\n"
+        + "\n"
+        + "31,10:20,14,\"Mosjøen, sentrum\",,\n";
+    ImportReport report = new TimetableImporter(registry).importFrom(new StringReader(timetable));
+    assertEquals(3, report.getRowCount());
+    assertEquals(3, report.getImportedCount());
+    assertTrue(report.getErrors().isEmpty());
+    TrainDeparture trainDeparture = registry.findTrainDeparture(502).get();
+    assertEquals(2, trainDeparture.getTrack());
+    assertEquals(LocalTime.of(13, 55), trainDeparture.getNewDepartureTime());
+    assertEquals("Mosjøen, sentrum", registry.findTrainDeparture(31).get().getDestination());
+  }
+
+  @Test
+  public void testImportReportsErrorsAndContinues() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    String timetable = "destination,line,departure_time,train_number\n"
+        + "Oslo,1,08:15,501\n"
+        + "Oslo,1,8.15,502\n"
+        + "Oslo,1,48:00,503\n"
+        + "Oslo,,09:00,504\n"
+        + "Oslo,1,09:00,abc\n"
+        + "Oslo,1,09:00,501\n"
+        + "Oslo,1\n"
+        + "Oslo,1,10:00,505\n";
+    ImportReport report = new TimetableImporter(registry, 2, 2).importFrom(new StringReader(timetable));
+    assertEquals(8, report.getRowCount());
+    assertEquals(2, report.getImportedCount());
+    assertEquals(6, report.getErrors().size());
+    assertEquals(3, report.getErrors().get(0).getLineNumber());
+    assertEquals(7, report.getErrors().get(4).getLineNumber());
+    assertEquals("Train number already exists", report.getErrors().get(4).getMessage());
+    assertEquals(8, report.getErrors().get(5).getLineNumber());
+    assertTrue(registry.findTrainDeparture(505).isPresent());
+  }
+
+  @Test
+  public void testImportGtfsStopTimes() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    String stopTimes = "trip_id,arrival_time,departure_time,stop_id,stop_sequence,stop_headsign,route_short_name\n"
+        + "101,08:00:00,08:02:00,TRD,1,Bodø,R1\n"
+        + "101,09:00:00,09:01:00,STJ,2,Bodø,R1\n"
+        + "102,10:00:00,10:05:00,TRD,1,Oslo,R2\n";
+    TimetableImporter importer = new TimetableImporter(registry);
+    importer.setStopId("TRD");
+    ImportReport report = importer.importFrom(new StringReader(stopTimes));
+    assertEquals(2, report.getImportedCount());
+    assertEquals(1, report.getSkippedCount());
+    assertEquals(LocalTime.of(8, 2), registry.findTrainDeparture(101).get().getDepartureTime());
+    assertEquals("R2", registry.findTrainDeparture(102).get().getLine());
+  }
+
+  @Test
+  public void testImportGtfsFeed() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    String routes = "route_id,agency_id,route_short_name,route_long_name,route_type\n"
+        + "NSB:Line:R1,NSB,R1,Trondheim - Bodø,2\n"
+        + "NSB:Line:F6,NSB,,Oslo - Trondheim,2\n";
+    String trips = "route_id,service_id,trip_id,trip_headsign,trip_short_name\n"
+        + "NSB:Line:R1,WD,NSB:ServiceJourney:471,Bodø,471\n"
+        + "NSB:Line:F6,WD,NSB:ServiceJourney:a,Oslo,\n"
+        + "NSB:Line:F6,WD,405,Oslo S,\n";
+    String stopTimes = "trip_id,arrival_time,departure_time,stop_id,stop_sequence,stop_headsign\n"
+        + "NSB:ServiceJourney:471,08:00:00,08:02:00,TRD,1,\n"
+        + "NSB:ServiceJourney:471,09:00:00,09:01:00,STJ,2,\n"
+        + "NSB:ServiceJourney:a,10:00:00,10:05:00,TRD,1,Oslo lufthavn\n"
+        + "405,11:00:00,11:05:00,TRD,1,\n"
+        + "NSB:ServiceJourney:b,12:00:00,12:05:00,TRD,1,\n";
+    TimetableImporter importer = new TimetableImporter(registry);
+    importer.setStopId("TRD");
+    ImportReport report = importer.importGtfs(new StringReader(routes), new StringReader(trips),
+        new StringReader(stopTimes));
+    assertEquals(3, report.getImportedCount());
+    assertEquals(1, report.getSkippedCount());
+    assertEquals(1, report.getErrors().size());
+    assertEquals(6, report.getErrors().get(0).getLineNumber());
+
+    TrainDeparture trainDeparture = registry.findTrainDeparture(471).get();
+    assertEquals(LocalTime.of(8, 2), trainDeparture.getDepartureTime());
+    assertEquals("R1", trainDeparture.getLine());
+    assertEquals("Bodø", trainDeparture.getDestination());
+    assertEquals("NSB:Line:F6", registry.findTrainDeparture(405).get().getLine());
+    assertEquals("Oslo lufthavn", registry.findTrainDeparture(472).get().getDestination());
+    assertEquals("Oslo S", registry.findTrainDeparture(405).get().getDestination());
+  }
+
+  @Test
+  public void testImportGtfsMissingColumn() {
+    TrainDepartureRegistry registry = newRegistry();
+    assertThrows(IOException.class, () -> new TimetableImporter(registry).importGtfs(
+        new StringReader("route_short_name\nR1\n"), new StringReader("trip_id,route_id\n"),
+        new StringReader("trip_id,departure_time\n")));
+  }
+
+  @Test
+  public void testImportMissingColumn() {
+    TrainDepartureRegistry registry = newRegistry();
+    String timetable = "train_number,departure_time,line\n501,08:15,1\n";
+    assertThrows(IOException.class,
+        () -> new TimetableImporter(registry).importFrom(new StringReader(timetable)));
+    assertThrows(IOException.class,
+        () -> new TimetableImporter(registry).importFrom(new StringReader("")));
+  }
+
+  @Test
+  public void testConstructorInvalidInput() {
+    assertThrows(IllegalArgumentException.class, () -> new TimetableImporter(null));
+    assertThrows(IllegalArgumentException.class, () -> new TimetableImporter(newRegistry(), 0, 1));
+  }
+
+  @Test
+  public void testImportServiceDates() throws IOException {
+    TrainDepartureRegistry registry = newRegistry();
+    String timetable = "train_number,departure_time,line,destination,service_date\n"
+        + "501,08:15,1,Oslo,2024-01-02\n"
+        + "501,08:15,1,Oslo,20240103\n"
+        + "502,25:10:00,1,Oslo,20240102\n"
+        + "503,09:00,1,Oslo,\n"
+        + "504,09:00,1,Oslo,2.1.2024\n";
+    ImportReport report = new TimetableImporter(registry).importFrom(new StringReader(timetable));
+    assertEquals(4, report.getImportedCount());
+    assertEquals(1, report.getErrors().size());
+    assertEquals(6, report.getErrors().get(0).getLineNumber());
+    assertEquals(2, registry.searchTrainDeparture(501).size());
+    assertEquals(LocalDate.of(2024, 1, 3).atTime(1, 10),
+        registry.findTrainDeparture(502).get().getDepartureDateTime());
+    assertEquals(LocalDate.of(2024, 1, 1), registry.findTrainDeparture(503).get().getServiceDate());
+  }
+}
@@ -0,0 +1,137 @@
+package edu.ntnu.stud;
+
+import edu.ntnu.stud.model.TrainDeparture;
+import edu.ntnu.stud.model.TrainDepartureMap;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the TrainDepartureMap class. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class TrainDepartureMapTest {
+
+  private static TrainDeparture departure(int trainNumber, int hours) {
+    return new TrainDeparture(trainNumber, LocalDate.of(2024, 3, 4), hours, 20, "F4", "Bergen",
+        LocalDateTime.MIN);
+  }
+
+  @Test
+  public void testPutAndGet() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    TrainDeparture trainDeparture = departure(30, 12);
+    assertNull(map.put(30, trainDeparture));
+    assertSame(trainDeparture, map.get(30));
+    assertTrue(map.containsKey(30));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void testPutReplacesDeparture() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    TrainDeparture first = departure(30, 12);
+    TrainDeparture second = departure(30, 13);
+    map.put(30, first);
+    assertSame(first, map.put(30, second));
+    assertSame(second, map.get(30));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void testGetTrainNumberDoesNotExist() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    assertNull(map.get(30));
+    assertNull(map.get(-1));
+    assertFalse(map.containsKey(0));
+  }
+
+  @Test
+  public void testPutInvalidInput() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    TrainDeparture trainDeparture = departure(30, 12);
+    assertThrows(IllegalArgumentException.class, () -> map.put(0, trainDeparture));
+    assertThrows(IllegalArgumentException.class, () -> map.put(30, null));
+  }
+
+  @Test
+  public void testRemove() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    TrainDeparture trainDeparture = departure(30, 12);
+    map.put(30, trainDeparture);
+    assertSame(trainDeparture, map.remove(30));
+    assertNull(map.remove(30));
+    assertFalse(map.containsKey(30));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testValues() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    for (int trainNumber = 1; trainNumber <= 100; trainNumber++) {
+      map.put(trainNumber, departure(trainNumber, 12));
+    }
+    HashSet<Integer> trainNumbers = new HashSet<>();
+    for (TrainDeparture trainDeparture : map.values()) {
+      trainNumbers.add(trainDeparture.getTrainNumber());
+    }
+    assertEquals(100, map.values().size());
+    assertEquals(100, trainNumbers.size());
+  }
+
+  @Test
+  public void testSameContentAsHashMapAfterRandomChanges() {
+    TrainDepartureMap map = new TrainDepartureMap();
+    HashMap<Integer, TrainDeparture> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      int trainNumber = 1 + random.nextInt(2000);
+      if (random.nextBoolean()) {
+        TrainDeparture trainDeparture = departure(trainNumber, 12);
+        assertSame(expected.put(trainNumber, trainDeparture), map.put(trainNumber, trainDeparture));
+      } else {
+        assertSame(expected.remove(trainNumber), map.remove(trainNumber));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (int trainNumber = 1; trainNumber <= 2000; trainNumber++) {
+      assertSame(expected.get(trainNumber), map.get(trainNumber));
+    }
+  }
+
+  @Test
+  public void testReadWhileGrowingDoesNotThrow() throws Exception {
+    TrainDepartureMap map = new TrainDepartureMap();
+    TrainDeparture trainDeparture = departure(1, 12);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      Random random = new Random(7);
+      try {
+        while (!done.get()) {
+          int trainNumber = 1 + random.nextInt(200000);
+          map.containsKey(trainNumber);
+          map.get(trainNumber);
+        }
+      } catch (RuntimeException e) {
+        failure.set(e);
+      }
+    });
+    reader.start();
+    for (int round = 0; round < 5; round++) {
+      for (int trainNumber = 1; trainNumber <= 200000; trainNumber++) {
+        map.put(trainNumber, trainDeparture);
+      }
+      map.clear();
+    }
+    done.set(true);
+    reader.join();
+    assertNull(failure.get());
+  }
+}
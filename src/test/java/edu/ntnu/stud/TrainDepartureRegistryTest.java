@@ -1,8 +1,37 @@
 package edu.ntnu.stud;
 
+import edu.ntnu.stud.metrics.OperationMetrics;
+import edu.ntnu.stud.model.AllocationReport;
+import edu.ntnu.stud.model.DelayReport;
+import edu.ntnu.stud.model.DepartureBoard;
+import edu.ntnu.stud.model.DepartureOrder;
+import edu.ntnu.stud.model.DepartureQuery;
+import edu.ntnu.stud.model.QueryPlan;
+import edu.ntnu.stud.model.RegistryListener;
+import edu.ntnu.stud.model.SimulatedClock;
 import edu.ntnu.stud.model.TimeManager;
+import edu.ntnu.stud.model.TrackAllocator;
 import edu.ntnu.stud.model.TrainDeparture;
 import edu.ntnu.stud.model.TrainDepartureRegistry;
+import edu.ntnu.stud.model.TrainDepartureSnapshot;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +64,161 @@ public class TrainDepartureRegistryTest {
     assertThrows(IllegalArgumentException.class, () -> registry.addTrainDeparture(30, 12, 20, "F4", "Bergen"));
   }
 
+  @Test
+  public void testAddTrainDepartures() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    TrainDeparture onOccupiedTrack = new TrainDeparture(32, 12, 25, "F4", "Bergen");
+    onOccupiedTrack.setTrack(1);
+    Map<Integer, String> rejected = registry.addTrainDepartures(List.of(
+        new TrainDeparture(31, 12, 10, "F4", "Bergen"),
+        new TrainDeparture(30, 13, 0, "F4", "Bergen"),
+        onOccupiedTrack,
+        new TrainDeparture(33, 12, 0, "F4", "Bergen")));
+    assertEquals(2, rejected.size());
+    assertEquals("Train number already exists", rejected.get(1));
+    assertTrue(rejected.containsKey(2));
+    assertEquals(3, registry.getTrainDepartureSorted().size());
+    assertEquals(33, registry.getTrainDepartureSorted().get(0).getTrainNumber());
+  }
+
+  @Test
+  public void testAddTrainDeparturesWithAllocatedTracks() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atStartOfDay()));
+    TrainDeparture onTrack = new TrainDeparture(1, monday, 12, 0, "F4", "Bergen",
+        LocalDateTime.MIN);
+    onTrack.setTrack(1);
+    TrainDeparture withoutTrack = new TrainDeparture(2, monday, 12, 30, "F4", "Bergen",
+        LocalDateTime.MIN);
+    TrainDeparture onOccupiedTrack = new TrainDeparture(3, monday, 12, 0, "F4", "Bergen",
+        LocalDateTime.MIN);
+    onOccupiedTrack.setTrack(1);
+    Map<Integer, String> rejected = registry.addTrainDepartures(
+        List.of(onTrack, withoutTrack, onOccupiedTrack), Set.of(0, 1, 2, 7));
+    assertEquals(List.of(2), List.copyOf(rejected.keySet()));
+    assertEquals(1, registry.getVersion());
+    List<TrainDepartureSnapshot> board = registry.getDepartureBoard().getTrainDepartures();
+    assertTrue(board.get(0).isTrackAllocated());
+    assertFalse(board.get(1).isTrackAllocated());
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.addTrainDepartures(List.of(), null));
+  }
+
+  @Test
+  public void testAddTrainDeparturesIntoEmptyRegistry() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    TrainDeparture delayed = new TrainDeparture(31, 12, 10, "F4", "Bergen");
+    delayed.setDelay(1, 0);
+    TrainDeparture onTrack = new TrainDeparture(32, 12, 25, "F4", "Bodø");
+    onTrack.setTrack(1);
+    TrainDeparture onOccupiedTrack = new TrainDeparture(34, 12, 30, "F4", "Bergen");
+    onOccupiedTrack.setTrack(1);
+    Map<Integer, String> rejected = registry.addTrainDepartures(List.of(delayed, onTrack,
+        new TrainDeparture(31, 13, 0, "F4", "Bergen"), onOccupiedTrack,
+        new TrainDeparture(33, 12, 0, "F4", "bergen")));
+    assertEquals(List.of(2, 3), List.copyOf(rejected.keySet()));
+
+    List<TrainDeparture> byDepartureTime = registry.getTrainDepartureSorted();
+    assertEquals(33, byDepartureTime.get(0).getTrainNumber());
+    assertEquals(31, byDepartureTime.get(1).getTrainNumber());
+    assertEquals(32, byDepartureTime.get(2).getTrainNumber());
+    List<TrainDeparture> byNewDepartureTime =
+        registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+    assertEquals(31, byNewDepartureTime.get(2).getTrainNumber());
+    assertEquals(2, registry.searchTrainDepartureDestination("Bergen").size());
+    assertFalse(registry.isTrackFree(1, LocalTime.of(12, 15), LocalTime.of(12, 20)));
+
+    registry.addTrainDeparture(35, 11, 0, "F4", "Bergen");
+    registry.setDelay(33, 2, 0);
+    assertEquals(35, registry.getTrainDepartureSorted().get(0).getTrainNumber());
+    assertEquals(33, registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME)
+        .get(3).getTrainNumber());
+  }
+
+  @Test
+  public void testListenersAreToldAboutChanges() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    List<String> changes = new ArrayList<>();
+    RegistryListener listener = new RegistryListener() {
+      @Override
+      public void departureAdded(TrainDeparture trainDeparture, long version) {
+        changes.add("added " + trainDeparture.getTrainNumber() + " " + version);
+      }
+
+      @Override
+      public void trackAssigned(LocalDate serviceDate, int trainNumber, int track,
+          long version) {
+        changes.add("track " + serviceDate + " " + trainNumber + " " + track + " " + version);
+      }
+
+      @Override
+      public void delaySet(LocalDate serviceDate, int trainNumber, LocalTime delay,
+          long version) {
+        changes.add("delay " + serviceDate + " " + trainNumber + " " + delay + " " + version);
+      }
+
+      @Override
+      public void passedDeparturesRemoved(LocalDateTime currentDateTime, long version) {
+        changes.add("time " + currentDateTime + " " + version);
+      }
+
+      @Override
+      public void changeCommitted() {
+        changes.add("committed");
+      }
+    };
+    registry.addListener(listener);
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    assertThrows(IllegalArgumentException.class, () -> registry.assignTrack(31, 1));
+    registry.setDelay(30, 0, 10);
+    registry.removePassedTrainDepartures(LocalTime.of(13, 0));
+    registry.removeListener(listener);
+    registry.addTrainDeparture(31, 14, 0, "F4", "Bergen");
+    LocalDate today = registry.getCurrentDate();
+    assertEquals(List.of("added 30 1", "committed", "track " + today + " 30 1 2", "committed",
+        "delay " + today + " 30 00:10 3", "committed", "time " + today + "T13:00 4", "committed"),
+        changes);
+    assertThrows(IllegalArgumentException.class, () -> registry.addListener(null));
+  }
+
+  @Test
+  public void testMetricsCountCallsAndRejections() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    assertEquals(TrainDepartureRegistry.DEFAULT_METRICS_SAMPLE_RATE,
+        registry.getMetrics().getSampleRate());
+    registry.getMetrics().setSampleRate(1);
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.addTrainDeparture(30, 13, 20, "F4", "Bergen"));
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDeparture(31));
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDeparture(32));
+    registry.searchTrainDeparture(30);
+    registry.addTrainDepartures(List.of(new TrainDeparture(30, 14, 0, "F4", "Bergen"),
+        new TrainDeparture(33, 14, 0, "F4", "Bergen")));
+
+    OperationMetrics add = registry.getMetrics().operation("addTrainDeparture");
+    assertEquals(2, add.getCount());
+    assertEquals(1, add.getRejectedCount());
+    assertEquals(Map.of("Train number already exists", 1L), add.getRejectionsByReason());
+    OperationMetrics search = registry.getMetrics().operation("searchTrainDeparture");
+    assertEquals(3, search.getCount());
+    assertEquals(Map.of("Train number does not exist", 2L), search.getRejectionsByReason());
+    OperationMetrics addAll = registry.getMetrics().operation("addTrainDepartures");
+    assertEquals(1, addAll.getCount());
+    assertEquals(Map.of("Train number already exists", 1L), addAll.getRejectionsByReason());
+
+    registry.getMetrics().setEnabled(false);
+    registry.searchTrainDeparture(30);
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDeparture(31));
+    assertEquals(5, search.getCount());
+    assertEquals(3, search.getTimedCount());
+    assertEquals(3, search.getRejectedCount());
+  }
+
   @Test
   public void testSearchTrainDeparture() {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
@@ -50,6 +234,28 @@ public class TrainDepartureRegistryTest {
     assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDeparture(30));
   }
 
+  @Test
+  public void testFindTrainDeparture() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    assertTrue(registry.findTrainDeparture(30).isPresent());
+    assertEquals(30, registry.findTrainDeparture(30).get().getTrainNumber());
+    assertTrue(registry.findTrainDeparture(31).isEmpty());
+  }
+
+  @Test
+  public void testFindTrainDepartures() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 30, "F4", "Bergen");
+    TrainDeparture[] trainDepartures = registry.findTrainDepartures(new int[] {31, 99, 30});
+    assertEquals(3, trainDepartures.length);
+    assertEquals(31, trainDepartures[0].getTrainNumber());
+    assertNull(trainDepartures[1]);
+    assertEquals(30, trainDepartures[2].getTrainNumber());
+    assertThrows(IllegalArgumentException.class, () -> registry.findTrainDepartures(null));
+  }
+
   @Test
   public void testSearchTrainDepartureDestination() {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
@@ -71,6 +277,45 @@ public class TrainDepartureRegistryTest {
     assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDepartureDestination(""));
   }
 
+  @Test
+  public void testSearchTrainDepartureDestinationIgnoresCase() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 30, "F4", "Bergen lufthavn");
+    assertEquals(1, registry.searchTrainDepartureDestination("bERGEN").size());
+    assertEquals(30, registry.searchTrainDepartureDestination("bERGEN").get(0).getTrainNumber());
+  }
+
+  @Test
+  public void testSearchTrainDepartureDestinationPrefix() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "1", "Trondheim");
+    registry.addTrainDeparture(31, 12, 10, "1", "Tromsø");
+    registry.addTrainDeparture(32, 12, 15, "F4", "Bergen");
+    assertEquals(2, registry.searchTrainDepartureDestinationPrefix("tro").size());
+    assertEquals(31, registry.searchTrainDepartureDestinationPrefix("tro").get(0).getTrainNumber());
+    assertEquals(30, registry.searchTrainDepartureDestinationPrefix("tro").get(1).getTrainNumber());
+    assertEquals(1, registry.searchTrainDepartureDestinationPrefix("TROND").size());
+  }
+
+  @Test
+  public void testSearchTrainDepartureDestinationPrefixDoesNotExist() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "1", "Trondheim");
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDepartureDestinationPrefix("Ber"));
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDepartureDestinationPrefix(""));
+  }
+
+  @Test
+  public void testSearchTrainDepartureDestinationAfterRemovePassed() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    TimeManager.setCurrentTime(12, 21);
+    registry.removePassedTrainDepartures();
+    TimeManager.resetTime();
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDepartureDestination("Bergen"));
+  }
+
   @Test
   public void testRemovePassedTrainDepartures() {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
@@ -81,6 +326,23 @@ public class TrainDepartureRegistryTest {
     TimeManager.resetTime();
   }
 
+  @Test
+  public void testRemovePassedTrainDeparturesKeepsDelayedDeparture() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 25, "F4", "Bergen");
+    registry.setDelay(30, 0, 30);
+    TimeManager.setCurrentTime(12, 30);
+    registry.removePassedTrainDepartures();
+    assertEquals(1, registry.getTrainDepartureSorted().size());
+    assertEquals(30, registry.getTrainDepartureSorted().get(0).getTrainNumber());
+    TimeManager.setCurrentTime(12, 51);
+    registry.removePassedTrainDepartures();
+    assertEquals(0, registry.getTrainDepartureSorted().size());
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDeparture(30));
+    TimeManager.resetTime();
+  }
+
   @Test
   public void testGetTrainDepartureSorted() {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
@@ -93,6 +355,82 @@ public class TrainDepartureRegistryTest {
     assertEquals(31, registry.getTrainDepartureSorted().get(2).getTrainNumber());
   }
 
+  @Test
+  public void testGetTrainDepartureSortedByNewDepartureTime() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 30, "F4", "Bergen");
+    registry.addTrainDeparture(32, 12, 10, "F4", "Bergen");
+    registry.setDelay(32, 0, 30);
+    assertEquals(32, registry.getTrainDepartureSorted(DepartureOrder.DEPARTURE_TIME).get(0).getTrainNumber());
+    assertEquals(30, registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).get(0).getTrainNumber());
+    assertEquals(31, registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).get(1).getTrainNumber());
+    assertEquals(32, registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).get(2).getTrainNumber());
+  }
+
+  @Test
+  public void testGetTrainDepartureSortedAfterInvalidDelay() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    assertThrows(IllegalArgumentException.class, () -> registry.setDelay(30, 1, 60));
+    assertEquals(1, registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).size());
+  }
+
+  @Test
+  public void testRemovePassedTrainDeparturesUpdatesSortedOrder() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 22, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 22, 30, "F4", "Bergen");
+    registry.setDelay(30, 0, 20);
+    TimeManager.setCurrentTime(22, 35);
+    registry.removePassedTrainDepartures();
+    TimeManager.resetTime();
+    assertEquals(1, registry.getTrainDepartureSorted(DepartureOrder.DEPARTURE_TIME).size());
+    assertEquals(30, registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).get(0).getTrainNumber());
+  }
+
+  @Test
+  public void testGetDepartureBoard() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 10, "F4", "Bergen");
+    DepartureBoard board = registry.getDepartureBoard();
+    assertEquals(registry.getVersion(), board.getVersion());
+    assertEquals(2, board.size());
+    assertEquals(31, board.getTrainDepartures().get(0).getTrainNumber());
+    assertSame(board, registry.getDepartureBoard());
+  }
+
+  @Test
+  public void testGetDepartureBoardDoesNotChange() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 30, "F4", "Bergen");
+    DepartureBoard board = registry.getDepartureBoard();
+    registry.setDelay(30, 0, 30);
+    registry.assignTrack(31, 2);
+    assertEquals(0, board.getTrainDepartures().get(0).getDelay().getMinute());
+    assertEquals(-1, board.getTrainDepartures().get(1).getTrack());
+    assertEquals(30, board.getTrainDepartures(DepartureOrder.NEW_DEPARTURE_TIME).get(0).getTrainNumber());
+    assertThrows(UnsupportedOperationException.class, () -> board.getTrainDepartures().clear());
+
+    DepartureBoard newBoard = registry.getDepartureBoard();
+    assertEquals(board.getVersion() + 2, newBoard.getVersion());
+    assertEquals(30, newBoard.getTrainDepartures().get(0).getDelay().getMinute());
+    assertEquals(31, newBoard.getTrainDepartures(DepartureOrder.NEW_DEPARTURE_TIME).get(0).getTrainNumber());
+  }
+
+  @Test
+  public void testVersionDoesNotChangeWhenChangeFails() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    long version = registry.getVersion();
+    assertThrows(IllegalArgumentException.class, () -> registry.addTrainDeparture(30, 12, 20, "F4", "Bergen"));
+    assertThrows(IllegalArgumentException.class, () -> registry.setDelay(31, 0, 10));
+    registry.removePassedTrainDepartures();
+    assertEquals(version, registry.getVersion());
+  }
+
   @Test
   public void testAssignTrack() {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
@@ -116,6 +454,72 @@ public class TrainDepartureRegistryTest {
     assertThrows(IllegalArgumentException.class, () -> registry.assignTrack(31, 1));
   }
 
+  @Test
+  public void testAssignTrackUsedAtAnotherTime() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 14, 30, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(31, 1);
+    assertEquals(1, registry.getTrainDepartureSorted().get(1).getTrack());
+  }
+
+  @Test
+  public void testAssignTrackWithDwellTime() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(Duration.ofMinutes(5));
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 25, "F4", "Bergen");
+    registry.addTrainDeparture(32, 12, 24, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(31, 1);
+    assertThrows(IllegalArgumentException.class, () -> registry.assignTrack(32, 1));
+  }
+
+  @Test
+  public void testAssignTrackMovesDepartureToNewTrack() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 30, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(30, 2);
+    registry.assignTrack(31, 1);
+    assertEquals(2, registry.getTrainDepartureSorted().get(0).getTrack());
+    assertEquals(1, registry.getTrainDepartureSorted().get(1).getTrack());
+  }
+
+  @Test
+  public void testAssignDelayReturnsTrackConflicts() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 13, 0, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(31, 1);
+    assertTrue(registry.setDelay(30, 0, 10).isEmpty());
+    List<TrainDeparture> conflicts = registry.setDelay(30, 0, 35);
+    assertEquals(1, conflicts.size());
+    assertEquals(31, conflicts.get(0).getTrainNumber());
+    assertTrue(registry.setDelay(30, 1, 0).isEmpty());
+  }
+
+  @Test
+  public void testGetFreeTracks() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 10, 10, "F4", "Bergen");
+    registry.addTrainDeparture(31, 10, 40, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(31, 2);
+    assertEquals(List.of(2, 3), registry.getFreeTracks(LocalTime.of(10, 0), LocalTime.of(10, 20), 3));
+    assertTrue(registry.isTrackFree(1, LocalTime.of(10, 10), LocalTime.of(10, 30)));
+    assertFalse(registry.isTrackFree(2, LocalTime.of(10, 10), LocalTime.of(10, 30)));
+  }
+
+  @Test
+  public void testGetFreeTracksInvalidWindow() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.getFreeTracks(LocalTime.of(10, 20), LocalTime.of(10, 0), 3));
+  }
+
   @Test
   public void testAssignDelay() {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
@@ -130,4 +534,822 @@ public class TrainDepartureRegistryTest {
     TrainDepartureRegistry registry = new TrainDepartureRegistry();
     assertThrows(IllegalArgumentException.class, () -> registry.setDelay(30, 1, 0));
   }
+
+  @Test
+  public void testConcurrentChangesKeepInvariants() throws Exception {
+    TimeManager.resetTime();
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    AtomicInteger added = new AtomicInteger();
+    AtomicBoolean writersDone = new AtomicBoolean();
+    Set<Integer> reportedConflicts = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> writers = new ArrayList<>();
+    List<Future<?>> readers = new ArrayList<>();
+    for (int thread = 0; thread < 4; thread++) {
+      Random random = new Random(thread);
+      writers.add(executor.submit(() -> {
+        for (int i = 0; i < 5000; i++) {
+          int trainNumber = 1 + random.nextInt(2000);
+          try {
+            switch (random.nextInt(3)) {
+              case 0 -> {
+                registry.addTrainDeparture(trainNumber, random.nextInt(24), random.nextInt(60),
+                    "L" + random.nextInt(5), "Destination " + random.nextInt(20));
+                added.incrementAndGet();
+              }
+              case 1 -> registry.assignTrack(trainNumber, 1 + random.nextInt(8));
+              default -> {
+                List<TrainDeparture> conflicts = registry.setDelay(trainNumber, 0, random.nextInt(60));
+                if (!conflicts.isEmpty()) {
+                  reportedConflicts.add(trainNumber);
+                }
+              }
+            }
+          } catch (IllegalArgumentException e) {
+            // duplicate train numbers, missing trains and occupied tracks are expected
+          }
+        }
+      }));
+    }
+    for (int thread = 0; thread < 4; thread++) {
+      Random random = new Random(100 + thread);
+      readers.add(executor.submit(() -> {
+        while (!writersDone.get()) {
+          registry.findTrainDeparture(1 + random.nextInt(2000));
+          List<TrainDeparture> sorted = registry.getTrainDepartureSorted();
+          Set<Integer> trainNumbers = new HashSet<>();
+          for (int i = 0; i < sorted.size(); i++) {
+            assertTrue(trainNumbers.add(sorted.get(i).getTrainNumber()));
+            if (i > 0) {
+              assertFalse(sorted.get(i).getDepartureTime().isBefore(sorted.get(i - 1).getDepartureTime()));
+            }
+          }
+        }
+      }));
+    }
+    for (Future<?> writer : writers) {
+      writer.get(60, TimeUnit.SECONDS);
+    }
+    writersDone.set(true);
+    for (Future<?> reader : readers) {
+      reader.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    List<TrainDeparture> sorted = registry.getTrainDepartureSorted();
+    assertEquals(added.get(), sorted.size());
+    assertEquals(added.get(), registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).size());
+    Set<Integer> trainNumbers = new HashSet<>();
+    for (TrainDeparture trainDeparture : sorted) {
+      assertTrue(trainNumbers.add(trainDeparture.getTrainNumber()));
+      assertSame(trainDeparture, registry.findTrainDeparture(trainDeparture.getTrainNumber()).get());
+    }
+    long dwellMinutes = registry.getDwellTime().toMinutes();
+    for (TrainDeparture first : sorted) {
+      for (TrainDeparture second : sorted) {
+        if (first.getTrainNumber() < second.getTrainNumber() && first.getTrack() != -1
+            && first.getTrack() == second.getTrack()
+            && Math.abs(Duration.between(first.getNewDepartureDateTime(),
+                second.getNewDepartureDateTime()).toMinutes()) < dwellMinutes) {
+          assertTrue(reportedConflicts.contains(first.getTrainNumber())
+              || reportedConflicts.contains(second.getTrainNumber()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSameTrainNumberOnDifferentDays() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(6, 0)));
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(30, monday.plusDays(1), 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(30, monday.plusDays(2), 12, 20, "F4", "Bergen");
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.addTrainDeparture(30, monday.plusDays(1), 14, 0, "F4", "Bergen"));
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.addTrainDeparture(31, monday.minusDays(1), 14, 0, "F4", "Bergen"));
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.addTrainDeparture(31, null, 14, 0, "F4", "Bergen"));
+
+    assertEquals(List.of(monday, monday.plusDays(1), monday.plusDays(2)),
+        registry.getServiceDates());
+    assertEquals(3, registry.searchTrainDeparture(30).size());
+    assertEquals(monday, registry.findTrainDeparture(30).get().getServiceDate());
+    registry.setDelay(monday.plusDays(1), 30, 0, 15);
+    assertEquals(LocalTime.of(0, 0), registry.findTrainDeparture(30).get().getDelay());
+    assertEquals(LocalTime.of(0, 15),
+        registry.findTrainDeparture(monday.plusDays(1), 30).get().getDelay());
+    assertTrue(registry.findTrainDeparture(monday.plusDays(3), 30).isEmpty());
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.assignTrack(monday.plusDays(3), 30, 1));
+    assertEquals(1, registry.getTrainDepartureSorted(monday.plusDays(2),
+        DepartureOrder.DEPARTURE_TIME).size());
+    assertEquals(3, registry.searchTrainDepartureDestination("Bergen").size());
+  }
+
+  @Test
+  public void testDelayPastMidnightKeepsOrderAndTrackConflicts() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(6, 0)));
+    registry.addTrainDeparture(30, 23, 50, "F4", "Bergen");
+    registry.addTrainDeparture(31, monday.plusDays(1), 0, 30, "F4", "Bergen");
+    registry.addTrainDeparture(32, monday.plusDays(1), 6, 0, "F4", "Bergen");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(31, 1);
+
+    List<TrainDeparture> conflicts = registry.setDelay(30, 0, 35);
+    assertEquals(1, conflicts.size());
+    assertEquals(31, conflicts.get(0).getTrainNumber());
+    assertFalse(registry.isTrackFree(1, monday.plusDays(1).atTime(0, 10),
+        monday.plusDays(1).atTime(0, 20)));
+    assertEquals(List.of(2, 3), registry.getFreeTracks(monday.plusDays(1).atTime(0, 10),
+        monday.plusDays(1).atTime(0, 20), 3));
+
+    List<TrainDeparture> byNewDepartureTime =
+        registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+    assertEquals(List.of(30, 31, 32), byNewDepartureTime.stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    registry.setDelay(30, 1, 0);
+    byNewDepartureTime = registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+    assertEquals(List.of(31, 30, 32), byNewDepartureTime.stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(List.of(30, 31, 32), registry.getDepartureBoard().getTrainDepartures().stream()
+        .map(departure -> departure.getTrainNumber()).toList());
+  }
+
+  @Test
+  public void testRemovePassedTrainDeparturesDropsPassedDays() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    SimulatedClock clock = new SimulatedClock(monday.atTime(6, 0));
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(clock);
+    for (int day = 0; day < 3; day++) {
+      registry.addTrainDeparture(30, monday.plusDays(day), 12, 20, "F4", "Bergen");
+      registry.addTrainDeparture(31, monday.plusDays(day), 23, 0, "F4", "Bergen");
+    }
+    registry.setDelay(31, 2, 0);
+
+    clock.advanceTo(monday.plusDays(1).atTime(0, 30));
+    registry.removePassedTrainDepartures();
+    assertEquals(List.of(monday, monday.plusDays(1), monday.plusDays(2)),
+        registry.getServiceDates());
+    assertEquals(1, registry.getTrainDepartureSorted(monday, DepartureOrder.DEPARTURE_TIME)
+        .size());
+
+    long version = registry.getVersion();
+    clock.advanceTo(monday.plusDays(1).atTime(13, 0));
+    registry.removePassedTrainDepartures();
+    assertEquals(List.of(monday.plusDays(1), monday.plusDays(2)), registry.getServiceDates());
+    assertEquals(version + 1, registry.getVersion());
+    assertEquals(31, registry.findTrainDeparture(31).get().getTrainNumber());
+    assertEquals(monday.plusDays(1), registry.findTrainDeparture(31).get().getServiceDate());
+    assertEquals(monday.plusDays(2), registry.findTrainDeparture(30).get().getServiceDate());
+
+    registry.removePassedTrainDepartures(LocalTime.of(23, 30));
+    assertEquals(List.of(monday.plusDays(2)), registry.getServiceDates());
+    assertEquals(2, registry.getTrainDepartureSorted().size());
+  }
+
+  @Test
+  public void testSearchTrainDepartures() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(6, 0)));
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 14, 0, "L1", "Trondheim");
+    registry.addTrainDeparture(32, 15, 0, "F4", "Oslo");
+    registry.addTrainDeparture(30, monday.plusDays(1), 12, 20, "F4", "Bergen");
+    registry.setDelay(30, 2, 0);
+
+    List<TrainDeparture> found = registry.searchTrainDepartures(new DepartureQuery()
+        .withLine("f4").withTimeWindow(monday.atTime(14, 0), monday.atTime(16, 0)));
+    assertEquals(List.of(30, 32), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    found = registry.searchTrainDepartures(new DepartureQuery().withDestination("BERGEN"));
+    assertEquals(List.of(monday, monday.plusDays(1)), found.stream()
+        .map(TrainDeparture::getServiceDate).toList());
+    assertEquals(4, registry.searchTrainDepartures(new DepartureQuery()).size());
+    assertTrue(registry.searchTrainDepartures(new DepartureQuery().withLine("R10")).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> registry.searchTrainDepartures(null));
+    assertThrows(IllegalArgumentException.class, () -> new DepartureQuery().withLine(""));
+    assertThrows(IllegalArgumentException.class, () -> new DepartureQuery()
+        .withTimeWindow(monday.atTime(16, 0), monday.atTime(14, 0)));
+  }
+
+  @Test
+  public void testSetDelaysByLineAfterTime() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(6, 0)));
+    registry.addTrainDeparture(1, 13, 0, "L1", "Trondheim");
+    registry.addTrainDeparture(2, 14, 0, "L1", "Trondheim");
+    registry.addTrainDeparture(3, 14, 30, "L2", "Oslo");
+    registry.addTrainDeparture(4, 15, 0, "L1", "Lillehammer");
+    registry.addTrainDeparture(5, monday.plusDays(1), 8, 0, "L1", "Trondheim");
+    registry.setDelay(1, 1, 30);
+    List<Integer> delayedTrains = new ArrayList<>();
+    registry.addListener(new RegistryListener() {
+      @Override
+      public void delaySet(LocalDate serviceDate, int trainNumber, LocalTime delay,
+          long version) {
+        delayedTrains.add(trainNumber);
+      }
+    });
+
+    long version = registry.getVersion();
+    DelayReport report = registry.setDelays(new DepartureQuery().withLine("L1")
+        .withTimeWindow(monday.atTime(14, 0), LocalDateTime.MAX), 0, 20);
+    assertEquals(List.of(1, 2, 4, 5), report.getDelayed().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(version + 1, registry.getVersion());
+    assertEquals(List.of(2, 1, 4, 5), delayedTrains);
+    assertEquals(LocalTime.of(0, 20), registry.findTrainDeparture(1).get().getDelay());
+    assertEquals(LocalTime.of(0, 0), registry.findTrainDeparture(3).get().getDelay());
+    assertEquals(List.of(1, 2, 3, 4, 5),
+        registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).stream()
+            .map(TrainDeparture::getTrainNumber).toList());
+
+    report = registry.addDelays(new DepartureQuery().withDestination("trondheim"), 0, 40);
+    assertEquals(3, report.getDelayed().size());
+    assertEquals(LocalTime.of(1, 0), registry.findTrainDeparture(2).get().getDelay());
+    assertEquals(List.of(1, 3, 2, 4, 5),
+        registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME).stream()
+            .map(TrainDeparture::getTrainNumber).toList());
+
+    version = registry.getVersion();
+    report = registry.setDelays(new DepartureQuery().withLine("R10"), 0, 20);
+    assertTrue(report.getDelayed().isEmpty());
+    assertEquals(version, registry.getVersion());
+  }
+
+  @Test
+  public void testAddDelaysChangesNothingWhenOneDelayIsTooLong() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 10, 0, "F4", "Bergen");
+    registry.addTrainDeparture(31, 11, 0, "F4", "Bergen");
+    registry.setDelay(31, 23, 30);
+    long version = registry.getVersion();
+    DepartureQuery query = new DepartureQuery().withLine("F4");
+    assertThrows(IllegalArgumentException.class, () -> registry.addDelays(query, 0, 30));
+    assertThrows(IllegalArgumentException.class, () -> registry.setDelays(query, 24, 0));
+    assertThrows(IllegalArgumentException.class, () -> registry.setDelays(null, 1, 0));
+    assertEquals(version, registry.getVersion());
+    assertEquals(LocalTime.of(0, 0), registry.findTrainDeparture(30).get().getDelay());
+    assertEquals(LocalTime.of(23, 30), registry.findTrainDeparture(31).get().getDelay());
+  }
+
+  @Test
+  public void testSetDelaysReturnsTrackConflicts() {
+    TrainDepartureRegistry registry = new TrainDepartureRegistry();
+    registry.addTrainDeparture(30, 12, 20, "F4", "Bergen");
+    registry.addTrainDeparture(31, 12, 30, "F4", "Bergen");
+    registry.addTrainDeparture(32, 13, 0, "L1", "Trondheim");
+    registry.assignTrack(30, 1);
+    registry.assignTrack(31, 2);
+    registry.assignTrack(32, 1);
+    DelayReport report = registry.setDelays(new DepartureQuery().withLine("F4"), 0, 35);
+    assertEquals(2, report.getDelayed().size());
+    assertEquals(List.of(32), report.getConflicts().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+  }
+
+  @Test
+  public void testSetDelaysOnMostOfTheDayKeepsOrder() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(0, 0)));
+    Random random = new Random(42);
+    for (int trainNumber = 1; trainNumber <= 500; trainNumber++) {
+      registry.addTrainDeparture(trainNumber, random.nextInt(24), random.nextInt(60),
+          trainNumber % 3 == 0 ? "L2" : "L1", "Trondheim");
+    }
+    registry.addTrainDeparture(501, 6, 0, "L3", "Oslo");
+    registry.setDelays(new DepartureQuery().withLine("L1"), 1, 15);
+    registry.addDelays(new DepartureQuery().withTimeWindow(monday.atTime(20, 0),
+        LocalDateTime.MAX), 0, 45);
+    registry.setDelays(new DepartureQuery().withLine("L3"), 7, 0);
+
+    List<TrainDeparture> byNewDepartureTime =
+        registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+    List<TrainDeparture> sorted = new ArrayList<>(byNewDepartureTime);
+    sorted.sort(DepartureOrder.NEW_DEPARTURE_TIME.getComparator());
+    assertEquals(sorted, byNewDepartureTime);
+    assertEquals(501, byNewDepartureTime.size());
+    long passed = byNewDepartureTime.stream()
+        .filter(departure -> departure.getNewDepartureDateTime().isBefore(monday.atTime(13, 0)))
+        .count();
+    registry.removePassedTrainDepartures(monday.atTime(13, 0));
+    assertEquals(501 - passed, registry.getTrainDepartureSorted().size());
+    assertEquals(LocalTime.of(13, 0), registry.findTrainDeparture(501).get().getNewDepartureTime());
+  }
+
+  @Test
+  public void testGetNextTrainDepartures() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    SimulatedClock clock = new SimulatedClock(monday.atTime(6, 0));
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(clock);
+    registry.addTrainDeparture(30, 8, 0, "F4", "Bergen");
+    registry.addTrainDeparture(31, 9, 0, "L1", "Trondheim");
+    registry.addTrainDeparture(32, 23, 30, "L1", "Oslo");
+    registry.addTrainDeparture(33, monday.plusDays(1), 0, 15, "F4", "Bergen");
+    registry.addTrainDeparture(34, monday.plusDays(1), 7, 0, "L1", "Oslo");
+    registry.setDelay(30, 1, 30);
+    registry.setDelay(32, 1, 0);
+
+    assertEquals(List.of(31, 30, 33), registry.getNextTrainDepartures(3).stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(List.of(33, 32, 34), registry.getNextTrainDepartures(
+        monday.atTime(23, 45), 10).stream().map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(List.of(32, 34), registry.getNextTrainDepartures(
+        monday.plusDays(1).atTime(0, 30), 10).stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertTrue(registry.getNextTrainDepartures(0).isEmpty());
+    assertTrue(registry.getNextTrainDepartures(monday.plusDays(2).atTime(0, 0), 5).isEmpty());
+
+    clock.advanceTo(monday.atTime(9, 15));
+    assertEquals(List.of(30, 33), registry.getNextTrainDepartures(2).stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertThrows(IllegalArgumentException.class, () -> registry.getNextTrainDepartures(-1));
+    assertThrows(IllegalArgumentException.class, () -> registry.getNextTrainDepartures(null, 5));
+  }
+
+  @Test
+  public void testFindNextTrainDepartureToDestinationAndOnLine() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    SimulatedClock clock = new SimulatedClock(monday.atTime(6, 0));
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(clock);
+    registry.addTrainDeparture(30, 8, 0, "F4", "Bergen");
+    registry.addTrainDeparture(31, 8, 30, "F4", "Bergen");
+    registry.addTrainDeparture(32, 9, 0, "L1", "Oslo");
+    registry.addTrainDeparture(33, monday.plusDays(1), 7, 0, "L1", "Trondheim");
+    registry.setDelay(30, 1, 0);
+
+    assertEquals(31, registry.findNextTrainDepartureTo("bergen").get().getTrainNumber());
+    assertEquals(32, registry.findNextTrainDepartureOnLine("l1").get().getTrainNumber());
+    clock.advanceTo(monday.atTime(9, 0));
+    assertEquals(30, registry.findNextTrainDepartureTo("Bergen").get().getTrainNumber());
+    assertEquals(32, registry.findNextTrainDepartureOnLine("L1").get().getTrainNumber());
+    clock.advanceTo(monday.atTime(9, 1));
+    assertEquals(33, registry.findNextTrainDepartureOnLine("L1").get().getTrainNumber());
+    assertEquals(33, registry.findNextTrainDepartureTo("Trondheim").get().getTrainNumber());
+    assertTrue(registry.findNextTrainDepartureTo("Oslo").isEmpty());
+    assertTrue(registry.findNextTrainDepartureOnLine("R10").isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> registry.findNextTrainDepartureTo(""));
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.findNextTrainDepartureOnLine(null));
+  }
+
+  @Test
+  public void testGetNextTrainDeparturePerDestinationAndLine() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(8, 0)));
+    registry.addTrainDeparture(30, 8, 0, "F4", "Bergen");
+    registry.addTrainDeparture(31, 8, 30, "F4", "bergen");
+    registry.addTrainDeparture(32, 9, 0, "L1", "Oslo");
+    registry.addTrainDeparture(33, 10, 0, "L1", "Trondheim");
+    registry.addTrainDeparture(34, monday.plusDays(1), 7, 0, "R10", "Trondheim");
+    registry.setDelay(30, 0, 45);
+
+    assertEquals(List.of(31, 32, 33), registry.getNextTrainDeparturePerDestination().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(List.of(31, 32, 34), registry.getNextTrainDeparturePerLine().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertTrue(new TrainDepartureRegistry().getNextTrainDeparturePerLine().isEmpty());
+  }
+
+  @Test
+  public void testNextTrainDeparturesMatchSortedDeparturesAfterDelays() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    SimulatedClock clock = new SimulatedClock(monday.atTime(0, 0));
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(clock);
+    Random random = new Random(7);
+    List<TrainDeparture> timetable = new ArrayList<>();
+    for (int trainNumber = 1; trainNumber <= 600; trainNumber++) {
+      timetable.add(new TrainDeparture(trainNumber, monday.plusDays(trainNumber % 3),
+          random.nextInt(24), random.nextInt(60), "L" + trainNumber % 4,
+          "Destination " + trainNumber % 7, LocalDateTime.MIN));
+    }
+    registry.addTrainDepartures(timetable);
+    for (int i = 0; i < 200; i++) {
+      int trainNumber = 1 + random.nextInt(600);
+      registry.setDelay(monday.plusDays(trainNumber % 3), trainNumber, random.nextInt(5),
+          random.nextInt(60));
+    }
+    registry.setDelays(new DepartureQuery().withLine("L1"), 2, 0);
+    clock.advanceTo(monday.atTime(17, 0));
+    registry.removePassedTrainDepartures();
+
+    for (int hour = 17; hour < 72; hour += 5) {
+      LocalDateTime from = monday.atStartOfDay().plusHours(hour);
+      List<TrainDeparture> expected = registry.getTrainDepartureSorted(
+          DepartureOrder.NEW_DEPARTURE_TIME).stream()
+          .filter(departure -> !departure.getNewDepartureDateTime().isBefore(from))
+          .limit(25).toList();
+      assertEquals(expected, registry.getNextTrainDepartures(from, 25));
+    }
+    for (int destination = 0; destination < 7; destination++) {
+      String name = "Destination " + destination;
+      TrainDeparture expected = registry.getTrainDepartureSorted(
+          DepartureOrder.NEW_DEPARTURE_TIME).stream()
+          .filter(departure -> departure.getDestination().equals(name)).findFirst().get();
+      assertEquals(expected, registry.findNextTrainDepartureTo(name).get());
+    }
+    List<TrainDeparture> byDepartureTime =
+        registry.searchTrainDepartureDestination("Destination 3");
+    List<TrainDeparture> sorted = new ArrayList<>(byDepartureTime);
+    sorted.sort(DepartureOrder.DEPARTURE_TIME.getComparator());
+    assertEquals(sorted, byDepartureTime);
+    List<TrainDeparture> nextPerLine = new ArrayList<>();
+    List<TrainDeparture> nextPerDestination = new ArrayList<>();
+    for (TrainDeparture departure : registry.getTrainDepartureSorted(
+        DepartureOrder.NEW_DEPARTURE_TIME)) {
+      if (nextPerLine.stream().noneMatch(found -> found.getLine().equals(departure.getLine()))) {
+        nextPerLine.add(departure);
+      }
+      if (nextPerDestination.stream()
+          .noneMatch(found -> found.getDestination().equals(departure.getDestination()))) {
+        nextPerDestination.add(departure);
+      }
+    }
+    assertEquals(4, nextPerLine.size());
+    assertEquals(nextPerLine, registry.getNextTrainDeparturePerLine());
+    assertEquals(nextPerDestination, registry.getNextTrainDeparturePerDestination());
+  }
+
+  @Test
+  public void testGetTrainDeparturesBetweenAndByTrack() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(6, 0)));
+    registry.addTrainDeparture(30, 10, 0, "F4", "Bergen");
+    registry.addTrainDeparture(31, 10, 29, "L1", "Trondheim");
+    registry.addTrainDeparture(32, 10, 30, "F4", "Oslo");
+    registry.addTrainDeparture(33, 9, 50, "L1", "Oslo");
+    registry.addTrainDeparture(34, monday.plusDays(1), 10, 15, "F4", "Oslo");
+    registry.assignTrack(30, 2);
+    registry.assignTrack(32, 2);
+    registry.assignTrack(monday.plusDays(1), 34, 2);
+    registry.setDelay(33, 0, 20);
+
+    List<TrainDeparture> found =
+        registry.getTrainDeparturesBetween(monday.atTime(10, 0), monday.atTime(10, 30));
+    assertEquals(List.of(30, 33, 31), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    found = registry.getTrainDeparturesBetween(monday.atTime(10, 0, 30), monday.atTime(10, 30, 1));
+    assertEquals(List.of(33, 31, 32), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    assertTrue(registry.getTrainDeparturesBetween(monday.atTime(11, 0), monday.atTime(11, 0))
+        .isEmpty());
+
+    found = registry.searchTrainDepartures(new DepartureQuery().withTrack(2));
+    assertEquals(List.of(30, 32, 34), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    found = registry.searchTrainDepartures(new DepartureQuery().withTrack(2)
+        .withTimeWindow(monday.atTime(10, 1), LocalDateTime.MAX));
+    assertEquals(List.of(32, 34), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    found = registry.searchTrainDepartures(new DepartureQuery().withTrack(-1));
+    assertEquals(List.of(33, 31), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    found = registry.searchTrainDepartures(new DepartureQuery().withDestination("oslo")
+        .withTrack(-1));
+    assertEquals(List.of(33), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    assertTrue(registry.searchTrainDepartures(new DepartureQuery().withTrack(3)).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> new DepartureQuery().withTrack(0));
+    assertThrows(IllegalArgumentException.class, () -> registry.getTrainDeparturesBetween(
+        monday.atTime(11, 0), monday.atTime(10, 0)));
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.getTrainDeparturesBetween(null, monday.atTime(10, 0)));
+  }
+
+  @Test
+  public void testTimeWindowQueriesMatchFilteredDepartures() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(0, 0)), Duration.ofMinutes(1));
+    Random random = new Random(11);
+    List<TrainDeparture> timetable = new ArrayList<>();
+    for (int trainNumber = 1; trainNumber <= 600; trainNumber++) {
+      TrainDeparture trainDeparture = new TrainDeparture(trainNumber,
+          monday.plusDays(trainNumber % 3), random.nextInt(24), random.nextInt(60),
+          "L" + trainNumber % 4, "Destination " + trainNumber % 7, LocalDateTime.MIN);
+      if (trainNumber % 2 == 0) {
+        trainDeparture.setTrack(1 + trainNumber % 5);
+      }
+      timetable.add(trainDeparture);
+    }
+    registry.addTrainDepartures(timetable);
+    for (int i = 0; i < 200; i++) {
+      int trainNumber = 1 + random.nextInt(600);
+      registry.setDelay(monday.plusDays(trainNumber % 3), trainNumber, random.nextInt(5),
+          random.nextInt(60));
+    }
+    List<TrainDeparture> all = registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+
+    for (int i = 0; i < 200; i++) {
+      LocalDateTime from = monday.atStartOfDay().plusSeconds(random.nextInt(4 * 24 * 3600));
+      LocalDateTime to = i % 10 == 0 ? LocalDateTime.MAX
+          : from.plusSeconds(random.nextInt(6 * 3600));
+      DepartureQuery query = new DepartureQuery().withTimeWindow(from, to);
+      switch (i % 5) {
+        case 1 -> query = query.withLine("l" + random.nextInt(4));
+        case 2 -> query = query.withDestination("Destination " + random.nextInt(7));
+        case 3 -> query = query.withTrack(1 + random.nextInt(5));
+        case 4 -> query = query.withTrack(-1).withLine("L" + random.nextInt(4));
+        default -> {
+        }
+      }
+      DepartureQuery window = query;
+      assertEquals(all.stream().filter(window::matches).toList(),
+          registry.searchTrainDepartures(window));
+    }
+  }
+
+  @Test
+  public void testSearchTrainDeparturesWithOrderAndLimit() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(6, 0)));
+    registry.addTrainDeparture(30, 10, 0, "L1", "Trondheim");
+    registry.addTrainDeparture(31, 10, 10, "L1", "Trondheim");
+    registry.addTrainDeparture(32, 10, 20, "L1", "Oslo");
+    registry.addTrainDeparture(33, 23, 50, "L1", "Trondheim");
+    registry.addTrainDeparture(30, monday.plusDays(1), 0, 5, "L1", "Trondheim");
+    registry.assignTrack(31, 4);
+    registry.setDelay(30, 0, 30);
+
+    DepartureQuery query = new DepartureQuery().withLine("L1").withDestination("trondheim")
+        .withTrack(-1);
+    List<TrainDeparture> found = registry.searchTrainDepartures(query);
+    assertEquals(List.of(30, 33, 30), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    found = registry.searchTrainDepartures(query.withLimit(2));
+    assertEquals(List.of(monday, monday), found.stream()
+        .map(TrainDeparture::getServiceDate).toList());
+    found = registry.searchTrainDepartures(query.withOrder(DepartureOrder.DEPARTURE_TIME)
+        .withLimit(1));
+    assertEquals(List.of(30), found.stream().map(TrainDeparture::getTrainNumber).toList());
+    registry.setDelay(33, 0, 20);
+    found = registry.searchTrainDepartures(query.withLimit(3));
+    assertEquals(List.of(monday, monday.plusDays(1), monday), found.stream()
+        .map(TrainDeparture::getServiceDate).toList());
+
+    DelayReport report = registry.setDelays(new DepartureQuery().withLine("L1").withLimit(2), 0, 5);
+    assertEquals(List.of(31, 32), report.getDelayed().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertThrows(IllegalArgumentException.class, () -> query.withLimit(0));
+    assertThrows(IllegalArgumentException.class, () -> query.withOrder(null));
+  }
+
+  @Test
+  public void testExplainTrainDeparturesChoosesTheSmallestIndex() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(0, 0)), Duration.ofMinutes(1));
+    for (int trainNumber = 1; trainNumber <= 200; trainNumber++) {
+      registry.addTrainDeparture(trainNumber, 8 + trainNumber / 20, trainNumber % 20,
+          trainNumber <= 190 ? "L1" : "R10", trainNumber % 2 == 0 ? "Oslo" : "Bergen");
+    }
+    registry.assignTrack(monday, 5, 3);
+    registry.assignTrack(monday, 6, 3);
+
+    QueryPlan plan = registry.explainTrainDepartures(new DepartureQuery().withLine("R10")
+        .withDestination("Oslo"));
+    assertEquals(5, plan.getTrainDepartures().size());
+    assertEquals(1, plan.getDays().size());
+    QueryPlan.DayPlan day = plan.getDays().get(0);
+    assertEquals(monday, day.getServiceDate());
+    assertEquals(QueryPlan.Index.LINE, day.getIndex());
+    assertEquals(Map.of(QueryPlan.Index.LINE, 10, QueryPlan.Index.DESTINATION, 100),
+        day.getCounts());
+    assertEquals(10, day.getRead());
+    assertEquals(5, day.getMatched());
+
+    plan = registry.explainTrainDepartures(new DepartureQuery().withLine("L1").withTrack(3)
+        .withTimeWindow(monday.atTime(8, 0), monday.atTime(9, 0)));
+    assertEquals(QueryPlan.Index.TRACK, plan.getDays().get(0).getIndex());
+    assertEquals(2, plan.getRead());
+    assertEquals(List.of(5, 6), plan.getTrainDepartures().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+
+    plan = registry.explainTrainDepartures(new DepartureQuery().withLine("L1")
+        .withDestination("oslo").withTimeWindow(monday.atTime(9, 0), monday.atTime(9, 5)));
+    assertEquals(QueryPlan.Index.DESTINATION, plan.getDays().get(0).getIndex());
+    assertEquals(Map.of(QueryPlan.Index.LINE, 3, QueryPlan.Index.DESTINATION, 3),
+        plan.getDays().get(0).getCounts());
+    assertEquals(List.of(20, 22, 24), plan.getTrainDepartures().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+
+    plan = registry.explainTrainDepartures(new DepartureQuery().withTrack(-1).withLimit(3));
+    assertEquals(QueryPlan.Index.TRACK, plan.getDays().get(0).getIndex());
+    assertEquals(3, plan.getRead());
+    assertEquals(List.of(1, 2, 3), plan.getTrainDepartures().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertTrue(plan.toString().startsWith("track=- order=NEW_DEPARTURE_TIME limit=3: "
+        + "3 departures, read 3\n2024-03-04: TRACK, read 3, matched 3"));
+    plan = registry.explainTrainDepartures(new DepartureQuery()
+        .withTimeWindow(monday.atTime(9, 0), monday.atTime(9, 5)));
+    assertEquals(QueryPlan.Index.TIME, plan.getDays().get(0).getIndex());
+    assertEquals(Map.of(QueryPlan.Index.TIME, 5), plan.getDays().get(0).getCounts());
+    assertThrows(IllegalArgumentException.class, () -> registry.explainTrainDepartures(null));
+  }
+
+  @Test
+  public void testCompoundQueriesMatchFilteredDepartures() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry = new TrainDepartureRegistry(
+        new SimulatedClock(monday.atTime(0, 0)), Duration.ofMinutes(1));
+    Random random = new Random(13);
+    List<TrainDeparture> timetable = new ArrayList<>();
+    for (int trainNumber = 1; trainNumber <= 900; trainNumber++) {
+      timetable.add(new TrainDeparture(trainNumber, monday.plusDays(trainNumber % 3),
+          random.nextInt(24), random.nextInt(60), "L" + trainNumber % 5,
+          "Destination " + trainNumber % 11, LocalDateTime.MIN));
+    }
+    registry.addTrainDepartures(timetable);
+    for (int i = 0; i < 300; i++) {
+      int trainNumber = 1 + random.nextInt(900);
+      LocalDate serviceDate = monday.plusDays(trainNumber % 3);
+      if (i % 2 == 0) {
+        registry.setDelay(serviceDate, trainNumber, random.nextInt(5), random.nextInt(60));
+      } else {
+        try {
+          registry.assignTrack(serviceDate, trainNumber, 1 + random.nextInt(4));
+        } catch (IllegalArgumentException e) {
+          // The track is taken at that time
+        }
+      }
+    }
+    registry.setDelays(new DepartureQuery().withTrack(-1).withLine("L2"), 1, 0);
+
+    for (int i = 0; i < 300; i++) {
+      DepartureQuery query = new DepartureQuery();
+      if (random.nextBoolean()) {
+        query = query.withLine("L" + random.nextInt(5));
+      }
+      if (random.nextBoolean()) {
+        query = query.withDestination("Destination " + random.nextInt(11));
+      }
+      if (random.nextBoolean()) {
+        query = query.withTrack(random.nextInt(3) == 0 ? -1 : 1 + random.nextInt(4));
+      }
+      if (random.nextBoolean()) {
+        LocalDateTime from = monday.atStartOfDay().plusMinutes(random.nextInt(4 * 24 * 60));
+        query = query.withTimeWindow(from, from.plusMinutes(random.nextInt(12 * 60)));
+      }
+      if (random.nextBoolean()) {
+        query = query.withOrder(DepartureOrder.DEPARTURE_TIME);
+      }
+      if (random.nextBoolean()) {
+        query = query.withLimit(1 + random.nextInt(40));
+      }
+      DepartureQuery compound = query;
+      List<TrainDeparture> expected = registry.getTrainDepartureSorted(query.getOrder()).stream()
+          .filter(compound::matches).limit(query.getLimit()).toList();
+      assertEquals(expected, registry.searchTrainDepartures(query), query.toString());
+      assertEquals(expected, registry.explainTrainDepartures(query).getTrainDepartures());
+    }
+  }
+
+  @Test
+  public void testAllocateTracksUsesAsFewTracksAsDeparturesAtTheSameTime() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry =
+        new TrainDepartureRegistry(new SimulatedClock(monday.atTime(0, 0)));
+    Random random = new Random(17);
+    List<TrainDeparture> timetable = new ArrayList<>();
+    for (int trainNumber = 1; trainNumber <= 2000; trainNumber++) {
+      timetable.add(new TrainDeparture(trainNumber, monday.plusDays(trainNumber % 2),
+          random.nextInt(24), random.nextInt(60), "L" + trainNumber % 5, "Oslo",
+          LocalDateTime.MIN));
+    }
+    registry.addTrainDepartures(timetable);
+    registry.setDelays(new DepartureQuery().withLine("L3"), 0, 40);
+
+    AllocationReport report = registry.allocateTracks(new TrackAllocator(100));
+    assertEquals(2000, report.getAssigned().size());
+    assertTrue(report.getUnassigned().isEmpty());
+    List<TrainDeparture> sorted = registry.getTrainDepartureSorted(DepartureOrder.NEW_DEPARTURE_TIME);
+    int atTheSameTime = 0;
+    int first = 0;
+    for (int last = 0; last < sorted.size(); last++) {
+      while (!sorted.get(first).getNewDepartureDateTime()
+          .isAfter(sorted.get(last).getNewDepartureDateTime().minusMinutes(15))) {
+        first++;
+      }
+      atTheSameTime = Math.max(atTheSameTime, last - first + 1);
+    }
+    assertEquals(atTheSameTime, report.getTracks().size());
+    assertEquals(List.of(1, atTheSameTime), List.of(report.getTracks().get(0),
+        report.getTracks().get(report.getTracks().size() - 1)));
+    assertNoTrackConflicts(sorted, 15);
+    assertTrue(registry.searchTrainDepartures(new DepartureQuery().withTrack(-1)).isEmpty());
+  }
+
+  @Test
+  public void testAllocateTracksKeepsAssignedTracksAndPreferredTracks() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry =
+        new TrainDepartureRegistry(new SimulatedClock(monday.atTime(0, 0)));
+    registry.addTrainDeparture(1, monday, 12, 0, "L1", "Oslo");
+    registry.addTrainDeparture(2, monday, 12, 5, "L2", "Bergen");
+    registry.addTrainDeparture(3, monday, 12, 10, "L1", "Oslo");
+    registry.addTrainDeparture(4, monday, 12, 20, "L2", "Bergen");
+    registry.addTrainDeparture(5, monday, 12, 12, "L2", "Bergen");
+    registry.addTrainDeparture(6, monday, 13, 0, "L1", "Oslo");
+    registry.assignTrack(monday, 2, 1);
+    List<Integer> assigned = new ArrayList<>();
+    registry.addListener(new RegistryListener() {
+      @Override
+      public void trackAssigned(LocalDate serviceDate, int trainNumber, int track, long version) {
+        assigned.add(trainNumber);
+      }
+    });
+    long version = registry.getVersion();
+
+    TrackAllocator allocator = new TrackAllocator(3).withPreferredTracks("l1", 3, 2);
+    AllocationReport report = registry.allocateTracks(allocator);
+    assertEquals(List.of(1, 3, 4, 6), report.getAssigned().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(List.of(5), report.getUnassigned().stream()
+        .map(TrainDeparture::getTrainNumber).toList());
+    assertEquals(List.of(2, 3), report.getTracks());
+    assertEquals(3, registry.findTrainDeparture(monday, 1).get().getTrack());
+    assertEquals(1, registry.findTrainDeparture(monday, 2).get().getTrack());
+    assertEquals(2, registry.findTrainDeparture(monday, 3).get().getTrack());
+    assertEquals(3, registry.findTrainDeparture(monday, 4).get().getTrack());
+    assertEquals(-1, registry.findTrainDeparture(monday, 5).get().getTrack());
+    assertEquals(3, registry.findTrainDeparture(monday, 6).get().getTrack());
+    assertEquals(List.of(1, 3, 4, 6), assigned);
+    assertEquals(version + 1, registry.getVersion());
+    assertEquals(allocator, registry.getTrackAllocator().get());
+    assertEquals(List.of(3, 2), allocator.getPreferredTracks("L1"));
+    assertTrue(allocator.withPreferredTracks("L1").getPreferredTracks("L1").isEmpty());
+
+    assertTrue(registry.allocateTracks(allocator).getAssigned().isEmpty());
+    assertEquals(version + 1, registry.getVersion());
+    assertThrows(IllegalArgumentException.class, () -> registry.allocateTracks(null));
+    assertThrows(IllegalArgumentException.class, () -> new TrackAllocator(0));
+    assertThrows(IllegalArgumentException.class, () -> allocator.withPreferredTracks("L1", 4));
+    assertThrows(IllegalArgumentException.class, () -> allocator.withPreferredTracks("", 1));
+    assertEquals(3, registry.getMetrics().operation("allocateTracks").getCount());
+  }
+
+  @Test
+  public void testSetDelayMovesAllocatedTracksInConflict() {
+    LocalDate monday = LocalDate.of(2024, 3, 4);
+    TrainDepartureRegistry registry =
+        new TrainDepartureRegistry(new SimulatedClock(monday.atTime(0, 0)));
+    registry.addTrainDeparture(1, monday, 12, 0, "L1", "Oslo");
+    registry.addTrainDeparture(2, monday, 12, 30, "L1", "Oslo");
+    registry.addTrainDeparture(3, monday, 14, 0, "L2", "Bergen");
+    registry.assignTrack(monday, 3, 1);
+    registry.allocateTracks(new TrackAllocator(3));
+    assertEquals(1, registry.findTrainDeparture(monday, 1).get().getTrack());
+    assertEquals(1, registry.findTrainDeparture(monday, 2).get().getTrack());
+    List<String> assigned = new ArrayList<>();
+    registry.addListener(new RegistryListener() {
+      @Override
+      public void trackAssigned(LocalDate serviceDate, int trainNumber, int track, long version) {
+        assigned.add(trainNumber + ":" + track + ":" + version);
+      }
+    });
+
+    assertTrue(registry.setDelay(monday, 1, 0, 30).isEmpty());
+    assertEquals(2, registry.findTrainDeparture(monday, 1).get().getTrack());
+    assertEquals(1, registry.findTrainDeparture(monday, 2).get().getTrack());
+    assertEquals(List.of("1:2:" + registry.getVersion()), assigned);
+
+    assertTrue(registry.setDelay(monday, 2, 1, 30).isEmpty());
+    assertEquals(2, registry.findTrainDeparture(monday, 2).get().getTrack());
+    assertEquals(1, registry.findTrainDeparture(monday, 3).get().getTrack());
+
+    registry.assignTrack(monday, 2, 2);
+    assertTrue(registry.setDelay(monday, 1, 1, 55).isEmpty());
+    assertEquals(3, registry.findTrainDeparture(monday, 1).get().getTrack());
+    assertEquals(2, registry.findTrainDeparture(monday, 2).get().getTrack());
+
+    DelayReport report = registry.setDelays(new DepartureQuery().withLine("L1"), 1, 30);
+    assertTrue(report.getConflicts().isEmpty());
+    assertEquals(2, registry.findTrainDeparture(monday, 2).get().getTrack());
+    assertNoTrackConflicts(registry.getTrainDepartureSorted(), 15);
+
+    registry.addTrainDeparture(7, monday, 15, 0, "L2", "Bergen");
+    registry.assignTrack(monday, 7, 3);
+    registry.setTrackAllocator(null);
+    assertTrue(registry.getTrackAllocator().isEmpty());
+    assertEquals(1, registry.setDelay(monday, 1, 2, 55).size());
+    assertEquals(3, registry.findTrainDeparture(monday, 1).get().getTrack());
+  }
+
+  private static void assertNoTrackConflicts(List<TrainDeparture> trainDepartures,
+      int dwellMinutes) {
+    List<TrainDeparture> byTrack = new ArrayList<>(trainDepartures);
+    byTrack.sort(Comparator.comparingInt(TrainDeparture::getTrack)
+        .thenComparing(TrainDeparture::getNewDepartureDateTime));
+    for (int i = 1; i < byTrack.size(); i++) {
+      TrainDeparture before = byTrack.get(i - 1);
+      TrainDeparture after = byTrack.get(i);
+      if (before.getTrack() != -1 && before.getTrack() == after.getTrack()) {
+        assertFalse(before.getNewDepartureDateTime().plusMinutes(dwellMinutes)
+            .isAfter(after.getNewDepartureDateTime()), before + " and " + after);
+      }
+    }
+  }
 }
@@ -2,6 +2,8 @@ package edu.ntnu.stud;
 
 import edu.ntnu.stud.model.TimeManager;
 import edu.ntnu.stud.model.TrainDeparture;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,6 +79,7 @@ public class TrainDepartureTest {
 
     TimeManager.setCurrentTime(hours, minutes);
     assertThrows(IllegalArgumentException.class, () -> new TrainDeparture(trainNumber, hours - 1, minutes, line, destination));
+    TimeManager.resetTime();
   }
 
   @Test
@@ -167,4 +170,30 @@ public class TrainDepartureTest {
     int delayMinutes = -1;
     assertThrows(IllegalArgumentException.class, () -> trainDeparture.setDelay(delayHours, delayMinutes));
   }
+
+  @Test
+  public void testSetDelayPastMidnightMovesToNextDay() {
+    LocalDate serviceDate = LocalDate.of(2024, 3, 1);
+    TrainDeparture trainDeparture = new TrainDeparture(30, serviceDate, 23, 40, "F4", "Bergen",
+        serviceDate.atStartOfDay());
+    assertEquals(serviceDate, trainDeparture.getServiceDate());
+    assertEquals(serviceDate.atTime(23, 40), trainDeparture.getDepartureDateTime());
+    trainDeparture.setDelay(0, 30);
+    assertEquals(LocalTime.of(0, 10), trainDeparture.getNewDepartureTime());
+    assertEquals(serviceDate.plusDays(1).atTime(0, 10), trainDeparture.getNewDepartureDateTime());
+    assertEquals(serviceDate, trainDeparture.getServiceDate());
+  }
+
+  @Test
+  public void testConstructorWithServiceDateInvalidInput() {
+    LocalDate serviceDate = LocalDate.of(2024, 3, 1);
+    assertThrows(IllegalArgumentException.class, () -> new TrainDeparture(30, null, 12, 0,
+        "F4", "Bergen", serviceDate.atStartOfDay()));
+    assertThrows(IllegalArgumentException.class, () -> new TrainDeparture(30, serviceDate, 12, 0,
+        "F4", "Bergen", null));
+    assertThrows(IllegalArgumentException.class, () -> new TrainDeparture(30, serviceDate, 12, 0,
+        "F4", "Bergen", serviceDate.plusDays(1).atStartOfDay()));
+    assertEquals(serviceDate, new TrainDeparture(30, serviceDate, 12, 0, "F4", "Bergen",
+        serviceDate.minusDays(1).atTime(13, 0)).getServiceDate());
+  }
 }
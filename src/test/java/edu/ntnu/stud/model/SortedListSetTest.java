@@ -0,0 +1,92 @@
+package edu.ntnu.stud.model;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the SortedListSet class. It is in the model package because the class is
+ * package-private. It has both positive and negative tests.
+ * The method names explain what is being tested.
+ */
+public class SortedListSetTest {
+  private final SortedListSet<Integer> set =
+      new SortedListSet<>(List.of(10, 20, 30, 40), Comparator.naturalOrder());
+
+  @Test
+  public void testFirstAndLast() {
+    assertEquals(10, set.first());
+    assertEquals(40, set.last());
+    assertEquals(4, set.size());
+  }
+
+  @Test
+  public void testFillsEmptyTreeSet() {
+    TreeSet<Integer> tree = new TreeSet<>(Comparator.naturalOrder());
+    tree.addAll(set);
+    assertEquals(List.of(10, 20, 30, 40), List.copyOf(tree));
+  }
+
+  @Test
+  public void testSubSet() {
+    assertEquals(List.of(20, 30), List.copyOf(set.subSet(20, 40)));
+    assertEquals(List.of(20, 30), List.copyOf(set.subSet(15, 35)));
+    assertEquals(List.of(10, 20, 30, 40), List.copyOf(set.subSet(0, 50)));
+  }
+
+  @Test
+  public void testSubSetFromAfterTo() {
+    assertThrows(IllegalArgumentException.class, () -> set.subSet(30, 20));
+    assertThrows(IllegalArgumentException.class, () -> set.subSet(35, 15));
+  }
+
+  @Test
+  public void testSubSetEmptyRange() {
+    assertTrue(set.subSet(20, 20).isEmpty());
+    assertTrue(set.subSet(21, 29).isEmpty());
+    assertTrue(set.subSet(50, 60).isEmpty());
+    assertTrue(set.subSet(0, 5).isEmpty());
+  }
+
+  @Test
+  public void testHeadSetElementNotInList() {
+    assertEquals(List.of(10, 20), List.copyOf(set.headSet(25)));
+    assertTrue(set.headSet(5).isEmpty());
+    assertEquals(List.of(10, 20, 30, 40), List.copyOf(set.headSet(45)));
+    assertEquals(List.of(10, 20), List.copyOf(set.headSet(30)));
+  }
+
+  @Test
+  public void testTailSetElementNotInList() {
+    assertEquals(List.of(30, 40), List.copyOf(set.tailSet(25)));
+    assertEquals(List.of(10, 20, 30, 40), List.copyOf(set.tailSet(5)));
+    assertTrue(set.tailSet(45).isEmpty());
+    assertEquals(List.of(30, 40), List.copyOf(set.tailSet(30)));
+  }
+
+  @Test
+  public void testSubSetOfSubSet() {
+    SortedSet<Integer> view = set.subSet(15, 45);
+    assertEquals(List.of(20, 30), List.copyOf(view.headSet(35)));
+    assertEquals(List.of(40), List.copyOf(view.tailSet(35)));
+    assertEquals(20, view.first());
+    assertEquals(40, view.last());
+  }
+
+  @Test
+  public void testFirstAndLastOfEmptyView() {
+    SortedSet<Integer> empty = set.subSet(21, 29);
+    assertThrows(NoSuchElementException.class, empty::first);
+    assertThrows(NoSuchElementException.class, empty::last);
+  }
+
+  @Test
+  public void testCannotBeChanged() {
+    assertThrows(UnsupportedOperationException.class, () -> set.add(50));
+    assertThrows(UnsupportedOperationException.class, () -> set.headSet(30).clear());
+  }
+}